@@ -0,0 +1,48 @@
+package librarySystem;
+
+import librarySystem.book.SecondayIndexManager;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * IndexRebuildTool class
+ * It writes the title, author, genre and last name index files again, with the collation keys of the current format
+ * and the changes of their log files
+ * The conversion of the index files of previous versions also runs when the application opens them, the tool only allows running it ahead of time
+ * It must be run from the directory with the index files
+ */
+public class IndexRebuildTool {
+
+    private static final String[] INDEX_FILES = {"title_index.dat", "author_index.dat", "genre_index.dat", "lastName_index.dat"};
+
+    /**
+     * Main method to run the rebuild
+     * It loads each index that has a base file or a log file, writes its base file again and prints its size before and after
+     * @param args Arguments
+     */
+    public static void main(String[] args) {
+
+        long sizeBefore;
+        SecondayIndexManager index;
+
+        for (String indexFile : INDEX_FILES) {
+            if (!new File(indexFile).exists() && !new File(indexFile + ".log").exists()) {
+                System.out.println(indexFile + ": not found, skipped");
+                continue;
+            }
+            sizeBefore = new File(indexFile).length();
+            try {
+                index = new SecondayIndexManager(indexFile);
+                try {
+                    index.rebuild();
+                } finally {
+                    index.close();
+                }
+                System.out.println(indexFile + ": " + sizeBefore + " bytes -> " + new File(indexFile).length() + " bytes");
+            } catch (IOException e) {
+                System.out.println("Error rebuilding " + indexFile + " : " + e.getMessage());
+            }
+        }
+    }
+}
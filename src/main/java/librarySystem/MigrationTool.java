@@ -0,0 +1,52 @@
+package librarySystem;
+
+import librarySystem.book.BookHandler;
+import librarySystem.patron.PatronHandler;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * MigrationTool class
+ * It migrates the book and patron data files with fixed-size records of previous versions to slotted pages
+ * The migration also runs when the application opens the files, the tool only allows running it ahead of time
+ * It must be run from the directory with the data files
+ */
+public class MigrationTool {
+
+    private static final String[] DATA_FILES = {"book.dat", "patron.dat"};
+
+    /**
+     * Main method to run the migration
+     * It opens both handlers, which migrate their data files, closes them and prints the size of the data files before and after
+     * @param args Arguments
+     */
+    public static void main(String[] args) {
+
+        long[] sizesBefore = new long[DATA_FILES.length];
+        BookHandler bookHandler;
+        PatronHandler patronHandler;
+
+        for (int i = 0; i < DATA_FILES.length; i++) {
+            sizesBefore[i] = new File(DATA_FILES[i]).length();
+        }
+
+        // The handlers migrate the files when they are opened and write out their pages when they are closed
+        try {
+            bookHandler = new BookHandler();
+            try (bookHandler) {
+                patronHandler = new PatronHandler();
+                try (patronHandler) {
+                    System.out.println("Data files migrated, closing them...");
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Error closing the handlers : " + e.getMessage());
+            return;
+        }
+
+        for (int i = 0; i < DATA_FILES.length; i++) {
+            System.out.println(DATA_FILES[i] + ": " + sizesBefore[i] + " bytes -> " + new File(DATA_FILES[i]).length() + " bytes");
+        }
+    }
+}
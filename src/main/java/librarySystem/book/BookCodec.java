@@ -0,0 +1,290 @@
+package librarySystem.book;
+
+import librarySystem.storage.RecordBuffers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Encodes and decodes the records of the book data file.
+ * A compact record starts with a marker byte and a version byte, followed by:
+ * - The string fields, each as a variable-length byte count and its UTF-8 bytes.
+ * - The start year, and the end year and edition year as differences from the start year, as signed variable-length integers.
+ * - The total volumes and the acquired volumes counter, as variable-length integers.
+ * - The acquired volumes, as the runs of consecutive volumes or as a bitset over 1..totalVolumes, whichever is smaller.
+ *   A list that is not sorted, or has volumes outside 1..totalVolumes, is stored as differences between consecutive volumes.
+ * Records of previous versions start with the 2-byte length of the ISBN written by writeUTF, whose first byte is always 0
+ * because an ISBN is never longer than 255 bytes, so they are told apart by the marker and decoded with their old layout.
+ */
+public final class BookCodec {
+
+    private static final byte MARKER = (byte) 0xBC;
+    private static final byte VERSION = 1;
+
+    private static final byte VOLUMES_LIST = 0;
+    private static final byte VOLUMES_RUNS = 1;
+    private static final byte VOLUMES_BITSET = 2;
+
+    private BookCodec() {
+    }
+
+    /**
+     * Encodes a book object as a compact record.
+     * @param book The book object to encode.
+     * @return The bytes of the record.
+     */
+    public static byte[] encode(Book book) {
+
+        int[] volumes = book.getAcquiredVolumes().stream().mapToInt(Integer::intValue).toArray();
+        int totalVolumes = book.getTotalVolumes();
+        byte[][] strings = {
+                utf8(book.getIsbn()), utf8(book.getTitle()), utf8(book.getAuthor()),
+                utf8(book.getGenre()), utf8(book.getMagazine()), utf8(book.getPublisher())
+        };
+        int maxLength = 2 + 7 * 5 + 1 + 5 + 10 * volumes.length;
+        byte encoding = volumesEncoding(volumes, totalVolumes);
+        ByteBuffer record;
+
+        for (byte[] string : strings) {
+            maxLength += 5 + string.length;
+        }
+        record = ByteBuffer.allocate(maxLength);
+        record.put(MARKER).put(VERSION);
+        for (byte[] string : strings) {
+            RecordBuffers.putVarInt(record, string.length);
+            record.put(string);
+        }
+        RecordBuffers.putSignedVarInt(record, book.getStartYear());
+        RecordBuffers.putSignedVarInt(record, book.getEndYear() - book.getStartYear());
+        RecordBuffers.putSignedVarInt(record, book.getEditionYear() - book.getStartYear());
+        RecordBuffers.putVarInt(record, totalVolumes);
+        RecordBuffers.putVarInt(record, book.getAcquiredVolumesCounter());
+
+        record.put(encoding);
+        if (encoding == VOLUMES_RUNS) {
+            writeRuns(record, volumes);
+        } else if (encoding == VOLUMES_BITSET) {
+            writeBitset(record, volumes, totalVolumes);
+        } else {
+            RecordBuffers.putVarInt(record, volumes.length);
+            for (int i = 0; i < volumes.length; i++) {
+                RecordBuffers.putSignedVarInt(record, volumes[i] - (i == 0 ? 0 : volumes[i - 1]));
+            }
+        }
+        return Arrays.copyOf(record.array(), record.position());
+    }
+
+    /**
+     * Decodes a book object from a record, in the compact layout or in the layout of previous versions.
+     * The list of acquired volumes of the book is unmodifiable, since the record cache hands the same book to every reader.
+     * @param record The buffer with the bytes of the record.
+     * @return The book object read from the record.
+     * @throws IOException If the record is malformed or has an unknown version.
+     */
+    public static Book decode(ByteBuffer record) throws IOException {
+
+        String[] strings = new String[6];
+        int startYear;
+        int endYear;
+        int editionYear;
+        int totalVolumes;
+        int acquiredVolumesCount;
+        List<Integer> acquiredVolumes;
+        byte encoding;
+        int count;
+        int volume = 0;
+
+        if (record.get(record.position()) != MARKER) {
+            return decodeLegacy(record);
+        }
+        record.get();
+        if (record.get() != VERSION) {
+            throw new IOException("unknown book record version");
+        }
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString(record);
+        }
+        startYear = RecordBuffers.getSignedVarInt(record);
+        endYear = startYear + RecordBuffers.getSignedVarInt(record);
+        editionYear = startYear + RecordBuffers.getSignedVarInt(record);
+        totalVolumes = RecordBuffers.getVarInt(record);
+        acquiredVolumesCount = RecordBuffers.getVarInt(record);
+
+        encoding = record.get();
+        if (encoding == VOLUMES_RUNS) {
+            acquiredVolumes = readRuns(record);
+        } else if (encoding == VOLUMES_BITSET) {
+            acquiredVolumes = readBitset(record, totalVolumes);
+        } else {
+            acquiredVolumes = new ArrayList<>();
+            count = RecordBuffers.getVarInt(record);
+            for (int i = 0; i < count; i++) {
+                volume += RecordBuffers.getSignedVarInt(record);
+                acquiredVolumes.add(volume);
+            }
+        }
+        return new Book(strings[0], strings[1], strings[2], startYear, endYear, strings[3], strings[4], strings[5],
+                editionYear, totalVolumes, acquiredVolumesCount, List.copyOf(acquiredVolumes));
+    }
+
+    /**
+     * Decodes a book object from a record written by previous versions, with writeUTF strings and 4-byte integers.
+     * @param record The buffer with the bytes of the record.
+     * @return The book object read from the record.
+     * @throws IOException If the record is malformed.
+     */
+    private static Book decodeLegacy(ByteBuffer record) throws IOException {
+
+        String isbn = RecordBuffers.readUTF(record);
+        String title = RecordBuffers.readUTF(record);
+        String author = RecordBuffers.readUTF(record);
+        int startYear = record.getInt();
+        int endYear = record.getInt();
+        String genre = RecordBuffers.readUTF(record);
+        String magazine = RecordBuffers.readUTF(record);
+        String publisher = RecordBuffers.readUTF(record);
+        int editionYear = record.getInt();
+        int totalVolumes = record.getInt();
+        int acquiredVolumesCount = record.getInt();
+
+        List<Integer> acquiredVolumes = new ArrayList<>();
+        for (int i = 0; i < acquiredVolumesCount; i++) {
+            acquiredVolumes.add(record.getInt());
+        }
+
+        return new Book(isbn, title, author, startYear, endYear, genre, magazine, publisher, editionYear, totalVolumes, acquiredVolumesCount, List.copyOf(acquiredVolumes));
+    }
+
+    /**
+     * Chooses the encoding of the acquired volumes.
+     * @param volumes The acquired volumes.
+     * @param totalVolumes The total number of volumes.
+     * @return The encoding with the fewest bytes that can store the volumes.
+     */
+    private static byte volumesEncoding(int[] volumes, int totalVolumes) {
+
+        int runsLength = 0;
+        int runs = 0;
+        int previous = 0;
+        int runStart;
+
+        for (int i = 0; i < volumes.length; i++) {
+            if (volumes[i] <= previous || volumes[i] > totalVolumes) {
+                return VOLUMES_LIST;
+            }
+            runStart = volumes[i];
+            while (i + 1 < volumes.length && volumes[i + 1] == volumes[i] + 1) {
+                i++;
+            }
+            runsLength += RecordBuffers.varIntLength(runStart - previous - 1) + RecordBuffers.varIntLength(volumes[i] - runStart);
+            runs++;
+            previous = volumes[i];
+        }
+        runsLength += RecordBuffers.varIntLength(runs);
+        return totalVolumes > 0 && (totalVolumes + 7) / 8 < runsLength ? VOLUMES_BITSET : VOLUMES_RUNS;
+    }
+
+    /**
+     * Writes sorted volumes as runs of consecutive volumes: the number of runs, then for each run
+     * the gap after the previous run and the length of the run minus one.
+     * @param record The buffer to write to.
+     * @param volumes The acquired volumes, sorted.
+     */
+    private static void writeRuns(ByteBuffer record, int[] volumes) {
+
+        List<int[]> runs = new ArrayList<>();
+        int previous = 0;
+        int runStart;
+
+        for (int i = 0; i < volumes.length; i++) {
+            runStart = volumes[i];
+            while (i + 1 < volumes.length && volumes[i + 1] == volumes[i] + 1) {
+                i++;
+            }
+            runs.add(new int[] {runStart, volumes[i]});
+        }
+        RecordBuffers.putVarInt(record, runs.size());
+        for (int[] run : runs) {
+            RecordBuffers.putVarInt(record, run[0] - previous - 1);
+            RecordBuffers.putVarInt(record, run[1] - run[0]);
+            previous = run[1];
+        }
+    }
+
+    /**
+     * Reads volumes written by writeRuns.
+     * @param record The buffer to read from.
+     * @return The acquired volumes.
+     * @throws IOException If the record is malformed.
+     */
+    private static List<Integer> readRuns(ByteBuffer record) throws IOException {
+
+        List<Integer> volumes = new ArrayList<>();
+        int runs = RecordBuffers.getVarInt(record);
+        int previous = 0;
+        int runStart;
+        int runEnd;
+
+        for (int i = 0; i < runs; i++) {
+            runStart = previous + RecordBuffers.getVarInt(record) + 1;
+            runEnd = runStart + RecordBuffers.getVarInt(record);
+            for (int volume = runStart; volume <= runEnd; volume++) {
+                volumes.add(volume);
+            }
+            previous = runEnd;
+        }
+        return volumes;
+    }
+
+    /**
+     * Writes sorted volumes as a bitset over 1..totalVolumes, the volume v being the bit (v - 1) % 8 of the byte (v - 1) / 8.
+     * @param record The buffer to write to.
+     * @param volumes The acquired volumes, sorted and within 1..totalVolumes.
+     * @param totalVolumes The total number of volumes.
+     */
+    private static void writeBitset(ByteBuffer record, int[] volumes, int totalVolumes) {
+
+        byte[] bits = new byte[(totalVolumes + 7) / 8];
+
+        for (int volume : volumes) {
+            bits[(volume - 1) / 8] |= 1 << ((volume - 1) % 8);
+        }
+        record.put(bits);
+    }
+
+    /**
+     * Reads volumes written by writeBitset.
+     * @param record The buffer to read from.
+     * @param totalVolumes The total number of volumes.
+     * @return The acquired volumes.
+     */
+    private static List<Integer> readBitset(ByteBuffer record, int totalVolumes) {
+
+        List<Integer> volumes = new ArrayList<>();
+        byte[] bits = new byte[(totalVolumes + 7) / 8];
+
+        record.get(bits);
+        for (int volume = 1; volume <= totalVolumes; volume++) {
+            if ((bits[(volume - 1) / 8] & (1 << ((volume - 1) % 8))) != 0) {
+                volumes.add(volume);
+            }
+        }
+        return volumes;
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String readString(ByteBuffer record) throws IOException {
+
+        byte[] bytes = new byte[RecordBuffers.getVarInt(record)];
+
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
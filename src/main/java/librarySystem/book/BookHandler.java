@@ -1,479 +1,1538 @@
 package librarySystem.book;
 
+import librarySystem.storage.AtomicFileWriter;
+import librarySystem.storage.BPlusTree;
+import librarySystem.storage.RecordBuffers;
+import librarySystem.storage.RecordCache;
+import librarySystem.storage.RecordStore;
+import librarySystem.storage.RoaringBitmap;
+import librarySystem.storage.SlottedPageFile;
+import librarySystem.storage.WriteAheadLog;
+
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 
 /**
  * Handles the CRUD operations for the book class.
-    * The data is stored in a binary file named "book.dat" with a fixed record size of 2048 bytes.
-    * The index is stored in a binary file named "index.dat" with a variable record size.
-    * The title index is stored in a binary file named "title_index.dat" with a variable record size.
-    * The deleted records spaces are stored in a list.
+    * The data is stored in a binary file named "book.dat" with variable-length records in slotted pages of 8192 bytes.
+    * The records are written in the compact layout of BookCodec, which still reads the records of previous versions.
+    * The data file stays open in a SlottedPageFile, optionally mapped in memory, and records are decoded from byte buffers.
+    * Data files with the fixed record size of 2048 bytes of previous versions are migrated to slotted pages when they are opened.
+    * The index is stored in a B+tree file named "index.dat" with a fixed page size of 4096 bytes, and maps each ISBN to a record id.
+    * The index is loaded once into a sorted in-memory map, and the B+tree file is kept as its durable copy.
+    * The title, author and genre indexes are kept in memory by SecondayIndexManager objects and stored in
+    * "title_index.dat", "author_index.dat" and "genre_index.dat", each with a log of the changes since it was last written.
+    * The words of the titles are also indexed by a FullTextIndex stored in "title_text_index.dat", for the searches by words of the title.
+    * The start, end and edition years are indexed by YearIndexManager objects stored in "start_year_index.dat", "end_year_index.dat"
+    * and "edition_year_index.dat", for the searches by a range of years.
+    * The publishers and magazines are indexed like the genres, in "publisher_index.dat" and "magazine_index.dat", and the genre,
+    * publisher and magazine of the books are kept in memory in the bitmaps of a FacetIndex, for the faceted filtering.
+    * Searches combining several criteria are described by a BookQuery and planned over these indexes by a QueryPlanner.
+    * The searches by title, author, genre and years and the listing of the titles can also return one page at a time,
+    * reading only the index entries of the page.
+    * The whole catalog can be read with the scanBooks stream, which reads the data file sequentially a chunk at a time,
+    * or in parallel by ranges of pages.
+    * The pages with space freed by deleted records are stored in a persistent free list, in a file named "book_free.dat".
+    * Books can also be added in bulk with the addBooks and importBooks methods, which write each index once for the whole batch.
+    * The handler is safe for concurrent use: lookups and searches share a read lock and run in parallel,
+    * while adds, updates and deletes take the write lock, so a reader never sees a book half written.
+    * Adds, updates and deletes are first written to a write-ahead log named "book_wal.log" and return once the log is durable,
+    * the data file and the indexes being forced by the checkpoints of the log. The pages of the data file and the index file
+    * changed by a change are not written to the files before its log record is durable. The log is replayed when the handler is created,
+    * so a crash between writing a record and its index entries is repaired on the next start.
+    * The handler is closed with the close method, which leaves the changes not yet checkpointed in the log for the next handler.
+    * The decoded books are kept in a RecordCache bounded by a number of books and by the size of their records,
+    * so the popular books found again and again by the searches are not read and decoded each time.
  */
-public class BookHandler {
+public class BookHandler implements Closeable {
 
 
     private static final String DATA_FILE = "book.dat";
+    private static final String FREE_LIST_FILE = "book_free.dat";
     private static final String INDEX_FILE = "index.dat";
-    private static final String TEMP_FILE = "temp.dat";
     private static final String TITLE_INDEX_FILE = "title_index.dat";
     private static final String AUTHOR_INDEX_FILE = "author_index.dat";
     private static final String GENRE_INDEX_FILE = "genre_index.dat";
-    private static final int RECORD_SIZE = 2048;
-    private final List<Long> deletedRecordsSpaces;
+    private static final String PUBLISHER_INDEX_FILE = "publisher_index.dat";
+    private static final String MAGAZINE_INDEX_FILE = "magazine_index.dat";
+    private static final String TITLE_TEXT_INDEX_FILE = "title_text_index.dat";
+    private static final int READ_BATCH = 256;
+    private static final int ESTIMATED_BOOKS_PER_PAGE = 64;
+    private static final String WAL_FILE = "book_wal.log";
+    private static final int LEGACY_RECORD_SIZE = 2048;
+    private static final int DEFAULT_CACHE_ENTRIES = 10000;
+    private static final long DEFAULT_CACHE_BYTES = 16L * 1024 * 1024;
+    private final TreeMap<String, Long> primaryIndex;
+    private BPlusTree indexTree;
+    private final SlottedPageFile dataFile;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final WriteAheadLog writeAheadLog;
+    private final RecordCache<Book> cache;
     private SecondayIndexManager authorIndexManager;
     private SecondayIndexManager genreIndexManager;
+    private final SecondayIndexManager publisherIndexManager;
+    private final SecondayIndexManager magazineIndexManager;
+    private final FacetIndex facetIndex = new FacetIndex();
     public SecondayIndexManager titleIndexManager;
+    private final FullTextIndex titleTextIndex;
+    private final Map<YearField, YearIndexManager> yearIndexManagers = new EnumMap<>(YearField.class);
 
     private static final int NOT_FOUND = -1;
 
     /**
-     * Creates a new MangaHandler object.
-     * The constructor initializes the list of deleted records spaces by calling the loadDeletedRecordsSpaces method.
+     * Year field enum
+     * It lists the years of a book that can be searched by range, and the file of their index
+     */
+    public enum YearField {
+        START_YEAR("start_year_index.dat"), END_YEAR("end_year_index.dat"), EDITION_YEAR("edition_year_index.dat");
+
+        private final String indexFile;
+
+        YearField(String indexFile) {
+            this.indexFile = indexFile;
+        }
+
+        /**
+         * Retrieves the year of a book for this field.
+         * @param book The book.
+         * @return The year.
+         */
+        public int yearOf(Book book) {
+            switch (this) {
+                case START_YEAR:
+                    return book.getStartYear();
+                case END_YEAR:
+                    return book.getEndYear();
+                default:
+                    return book.getEditionYear();
+            }
+        }
+    }
+
+    /**
+     * Facet enum
+     * It lists the fields of a book with few distinct values that can be combined in the faceted filters
+     */
+    public enum Facet {
+        GENRE, PUBLISHER, MAGAZINE;
+
+        /**
+         * Retrieves the value of a book for this field.
+         * @param book The book.
+         * @return The value.
+         */
+        public String keyOf(Book book) {
+            switch (this) {
+                case GENRE:
+                    return book.getGenre();
+                case PUBLISHER:
+                    return book.getPublisher();
+                default:
+                    return book.getMagazine();
+            }
+        }
+    }
+
+    /**
+     * Creates a new MangaHandler object that reads the data file with positional channel reads.
      */
     public BookHandler() {
-        deletedRecordsSpaces = new ArrayList<>();
+        this(false);
+    }
+
+    /**
+     * Creates a new MangaHandler object with a book cache of the default size.
+     * @param memoryMapped True to map the data file in memory, false to read it with positional channel reads.
+     */
+    public BookHandler(boolean memoryMapped) {
+        this(memoryMapped, DEFAULT_CACHE_ENTRIES, DEFAULT_CACHE_BYTES);
+    }
+
+    /**
+     * Creates a new MangaHandler object.
+     * The constructor migrates a data file with fixed-size records by calling the migrateDataFile method,
+     * opens the slotted page data file and loads the primary index into memory by calling the loadIndex method.
+     * The full-text index of the titles and the year, publisher and magazine indexes that are empty are built from the data file. The bitmaps of the facets are built from the genre, publisher and magazine indexes.
+     * Then it guards the data file and the index file by the write-ahead log, replays the log and runs a checkpoint.
+     * @param memoryMapped True to map the data file in memory, false to read it with positional channel reads.
+     * @param cacheEntries The maximum number of books in the cache, 0 to disable the cache.
+     * @param cacheBytes The maximum total size of the records of the books in the cache, in bytes.
+     */
+    public BookHandler(boolean memoryMapped, int cacheEntries, long cacheBytes) {
+        primaryIndex = new TreeMap<>();
+        cache = new RecordCache<>(cacheEntries, cacheBytes);
+        migrateDataFile();
+        indexTree = openIndex();
+        try {
+            dataFile = new SlottedPageFile(DATA_FILE, FREE_LIST_FILE, memoryMapped);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error opening the data file", e);
+        }
         titleIndexManager = new SecondayIndexManager(TITLE_INDEX_FILE);
         authorIndexManager = new SecondayIndexManager(AUTHOR_INDEX_FILE);
         genreIndexManager = new SecondayIndexManager(GENRE_INDEX_FILE);
-        loadDeletedRecordsSpaces();
+        publisherIndexManager = new SecondayIndexManager(PUBLISHER_INDEX_FILE);
+        magazineIndexManager = new SecondayIndexManager(MAGAZINE_INDEX_FILE);
+        titleTextIndex = new FullTextIndex(TITLE_TEXT_INDEX_FILE);
+        for (YearField field : YearField.values()) {
+            yearIndexManagers.put(field, new YearIndexManager(field.indexFile));
+        }
+        loadIndex();
+        try {
+            buildNewIndexes();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error building the full-text, year, publisher and magazine indexes", e);
+        }
+        buildFacetIndex();
+        try {
+            writeAheadLog = new WriteAheadLog(WAL_FILE, this::forceFiles);
+            dataFile.setWriteAheadLog(writeAheadLog);
+            indexTree.setWriteAheadLog(writeAheadLog);
+            writeAheadLog.replay(this::redo);
+            writeAheadLog.checkpoint();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error replaying the write-ahead log", e);
+        }
     }
 
     /**
-     * Loads the deleted records spaces from the data file.
-     * The method reads the data file and adds the file pointers of the deleted records to the deletedRecordsSpaces list.
+     * Migrates a data file with the fixed record size of previous versions to slotted pages.
+     * The method copies the records that are not marked as deleted to a new slotted page file and builds a new
+     * index file with their record ids, both as temporary files.
+     * Each file is replaced atomically, the index file first and the data file last, so a migration stopped halfway is started again the next time.
      */
-    private void loadDeletedRecordsSpaces(){
+    private void migrateDataFile() {
 
-        char status;
+        File legacyFile = new File(DATA_FILE);
+        String pageFilename = DATA_FILE + ".tmp";
+        String freeListFilename = FREE_LIST_FILE + ".tmp";
+        String indexFilename = INDEX_FILE + ".tmp";
+        ByteBuffer record;
+        Book book;
 
-        try (RandomAccessFile dataFile = new RandomAccessFile(DATA_FILE, "rw")){
-            long pointer = 0;
-            while (pointer < dataFile.length()) {
-                dataFile.seek(pointer);
-                status = dataFile.readChar();
-                if (status == '*') {
-                    deletedRecordsSpaces.add(pointer);
+        if (legacyFile.length() == 0 || SlottedPageFile.isPageFile(DATA_FILE)) {
+            return;
+        }
+        SlottedPageFile.deleteFiles(pageFilename, freeListFilename);
+        new File(indexFilename).delete();
+        try (RecordStore legacyStore = RecordStore.open(DATA_FILE, false);
+             SlottedPageFile pageFile = new SlottedPageFile(pageFilename, freeListFilename, false);
+             BPlusTree tree = new BPlusTree(indexFilename)) {
+            for (long pointer = 0; pointer < legacyStore.size(); pointer += LEGACY_RECORD_SIZE) {
+                record = legacyStore.read(pointer, (int) Math.min(LEGACY_RECORD_SIZE, legacyStore.size() - pointer));
+                if (record.getChar(0) != '*') {
+                    book = BookCodec.decode(record);
+                    tree.insert(book.getIsbn(), pageFile.insert(BookCodec.encode(book)));
                 }
-                pointer += RECORD_SIZE;
             }
+            pageFile.force();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error migrating the data file", e);
+        }
+        try {
+            AtomicFileWriter.replace(Paths.get(indexFilename), Paths.get(INDEX_FILE));
+            AtomicFileWriter.replace(Paths.get(freeListFilename), Paths.get(FREE_LIST_FILE));
+            AtomicFileWriter.replace(Paths.get(pageFilename), legacyFile.toPath());
         } catch (IOException e) {
-            System.out.println("Error in loadDeletedRecordsSpaces : " + e.getMessage());
+            throw new UncheckedIOException("Error replacing the migrated files", e);
         }
     }
 
 
     /**
      * Adds a new book to the data file.
-     * The method writes the book object to the data file and adds an index entry to the index file.
-     * The method also adds a title index entry to the title index file.
+     * The method logs the book in the write-ahead log, writes the book object to a slot of the data file and adds an index entry
+     * with its record id to the index file. The method also adds title, author and genre index entries.
+     * It returns once the log record is durable.
      * @param book The book object to be added.
-     * @throws IOException If an I/O error occurs.
+     * @throws IOException If an I/O error occurs, the book already exists or its ISBN is too long for the index.
      */
     public void addBook(Book book) throws IOException {
 
-        long filePointer;
+        byte[] record = BookCodec.encode(book);
+        long sequence;
+
+        checkIsbn(book.getIsbn());
+        lock.writeLock().lock();
+        try {
+            if(getPositionFromIndexFile(book.getIsbn()) != NOT_FOUND){
+                throw new IOException("book already exists");
+            }
 
-        if(getPositionFromIndexFile(book.getIsbn()) != NOT_FOUND){
-            throw new IOException("book already exists");
+            sequence = writeAheadLog.log(WriteAheadLog.PUT, book.getIsbn(), record, () -> putBook(book.getIsbn(), record, book));
+        } finally {
+            lock.writeLock().unlock();
         }
+        writeAheadLog.awaitDurable(sequence);
+    }
 
-        if (!deletedRecordsSpaces.isEmpty()) {
-            filePointer = deletedRecordsSpaces.remove(0);
-        } else {
-            try (RandomAccessFile dataFile = new RandomAccessFile(DATA_FILE, "rw")) {
-                    filePointer = dataFile.length();
-            }catch(FileNotFoundException e){
-                System.out.println("File not found, creating new file...");
-                filePointer = 0;
-            }
+    /**
+     * Adds many books to the data file at once.
+     * The method appends the records sequentially to new pages of the data file, then writes the B+tree of the index file
+     * once from the sorted primaryIndex map and adds the entries of the title, author, genre, publisher, magazine and year indexes
+     * in one batch each.
+     * The books are not written to the write-ahead log, the files are forced once at the end instead.
+     * Books that already exist, or appear twice, and books with an ISBN too long for the index are skipped.
+     * @param books The books to add.
+     * @return The number of books added.
+     * @throws IOException If an I/O error occurs.
+     */
+    public int addBooks(Iterable<Book> books) throws IOException {
+
+        List<KeyIndexEntry> titleEntries = new ArrayList<>();
+        List<KeyIndexEntry> authorEntries = new ArrayList<>();
+        List<KeyIndexEntry> genreEntries = new ArrayList<>();
+        List<KeyIndexEntry> publisherEntries = new ArrayList<>();
+        List<KeyIndexEntry> magazineEntries = new ArrayList<>();
+        Map<YearField, List<YearIndexEntry>> yearEntries = new EnumMap<>(YearField.class);
+
+        for (YearField field : YearField.values()) {
+            yearEntries.put(field, new ArrayList<>());
+        }
+        lock.writeLock().lock();
+        try {
+            writeAheadLog.run(() -> {
+                String isbn;
+
+                try (SlottedPageFile.Appender appender = dataFile.appender()) {
+                    for (Book book : books) {
+                        isbn = book.getIsbn();
+                        if (primaryIndex.containsKey(isbn)) {
+                            System.out.println("book already exists: " + isbn);
+                            continue;
+                        }
+                        if (RecordBuffers.utfLength(isbn) > BPlusTree.MAX_KEY_LENGTH) {
+                            System.out.println("isbn too long: " + isbn);
+                            continue;
+                        }
+                        primaryIndex.put(isbn, appender.append(BookCodec.encode(book)));
+                        titleEntries.add(new KeyIndexEntry(book.getTitle(), isbn));
+                        authorEntries.add(new KeyIndexEntry(book.getAuthor(), isbn));
+                        genreEntries.add(new KeyIndexEntry(book.getGenre(), isbn));
+                        publisherEntries.add(new KeyIndexEntry(book.getPublisher(), isbn));
+                        magazineEntries.add(new KeyIndexEntry(book.getMagazine(), isbn));
+                        for (YearField field : YearField.values()) {
+                            yearEntries.get(field).add(new YearIndexEntry(field.yearOf(book), isbn));
+                        }
+                        for (Facet facet : Facet.values()) {
+                            facetIndex.set(facet, isbn, facet.keyOf(book));
+                        }
+                    }
+                } finally {
+                    // Index the books written so far even if the import stopped halfway
+                    rebuildIndex();
+                    titleIndexManager.addSecondaryIndexes(titleEntries);
+                    titleTextIndex.addAll(titleEntries);
+                    authorIndexManager.addSecondaryIndexes(authorEntries);
+                    genreIndexManager.addSecondaryIndexes(genreEntries);
+                    publisherIndexManager.addSecondaryIndexes(publisherEntries);
+                    magazineIndexManager.addSecondaryIndexes(magazineEntries);
+                    for (YearField field : YearField.values()) {
+                        yearIndexManagers.get(field).addYearIndexes(yearEntries.get(field));
+                    }
+                }
+                forceFiles();
+            });
+        } finally {
+            lock.writeLock().unlock();
         }
+        return titleEntries.size();
+    }
+
+    /**
+     * Imports the books of a CSV or JSON Lines file with the addBooks method.
+     * The file is read one line at a time, see BookImporter for the formats.
+     * @param file The path of the file.
+     * @return The number of books added.
+     * @throws IOException If an I/O error occurs or a line of the file is malformed.
+     */
+    public int importBooks(Path file) throws IOException {
 
-        try (RandomAccessFile dataFile = new RandomAccessFile(DATA_FILE, "rw")) {
-            dataFile.seek(filePointer);
-            writeBook(dataFile, book);
-            addIndex(book.getIsbn(), filePointer);
-            titleIndexManager.addSecondaryIndex(book.getTitle(), book.getIsbn());
-            authorIndexManager.addSecondaryIndex(book.getAuthor(), book.getIsbn());
-            genreIndexManager.addSecondaryIndex(book.getGenre(), book.getIsbn());
-        }catch(FileNotFoundException e){
-            System.out.println("FIle not found, creating new file...");
+        try (BookImporter importer = new BookImporter(file)) {
+            return addBooks(importer);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
     }
 
     /**
      * Retrieves a book from the data file by its ISBN.
-     * The method reads the data file using the file pointer from the index file.
+     * The method returns the cached book, or reads the data file using the record id from the index file and caches the book.
      * @param isbn The ISBN of the book to retrieve.
      * @return The book object with the specified ISBN, or null if not found.
      * @throws IOException If an I/O error occurs.
      */
     public Book getBook(String isbn) throws IOException{
 
-        long filePointer = getPositionFromIndexFile(isbn);
+        long recordId;
+        ByteBuffer record;
+        Book book;
 
-        if (filePointer == NOT_FOUND){
-            System.out.println("book not found");
-            return null;
+        lock.readLock().lock();
+        try {
+            recordId = getPositionFromIndexFile(isbn);
+            if (recordId == NOT_FOUND){
+                System.out.println("book not found");
+                return null;
+            }
+            book = cache.get(isbn);
+            if (book == null) {
+                record = dataFile.read(recordId);
+                book = BookCodec.decode(record.duplicate());
+                cache.put(isbn, book, record.remaining());
+            }
+            return book;
+        } finally {
+            lock.readLock().unlock();
         }
-        try (RandomAccessFile dataFile = new RandomAccessFile(DATA_FILE, "r")) {
-            dataFile.seek(filePointer);
-            return readBook(dataFile);
-        }catch (FileNotFoundException e){
-            System.out.println("File not found");
-            return null;
+    }
+
+    /**
+     * Retrieves several books from the data file by their ISBNs.
+     * The method takes the cached books, looks up the record ids of the others in the index, and reads them with
+     * SlottedPageFile.readAll, which visits the pages in file order and reads each page once. The books read are cached.
+     * @param isbns The ISBNs of the books to retrieve.
+     * @return The books found, in the order of the ISBNs. The ISBNs not found are skipped.
+     * @throws IOException If an I/O error occurs.
+     */
+    public List<Book> getBooks(Collection<String> isbns) throws IOException {
+
+        String[] keys = isbns.toArray(new String[0]);
+        Book[] found = new Book[keys.length];
+        int[] recordPositions = new int[keys.length];
+        long[] recordIds = new long[keys.length];
+        int missingCount = 0;
+        ByteBuffer[] records;
+        ByteBuffer record;
+        List<Book> books = new ArrayList<>(keys.length);
+        long recordId;
+
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < keys.length; i++) {
+                recordPositions[i] = -1;
+                recordId = getPositionFromIndexFile(keys[i]);
+                if (recordId != NOT_FOUND) {
+                    found[i] = cache.get(keys[i]);
+                    if (found[i] == null) {
+                        recordPositions[i] = missingCount;
+                        recordIds[missingCount++] = recordId;
+                    }
+                }
+            }
+            records = dataFile.readAll(Arrays.copyOf(recordIds, missingCount));
+            for (int i = 0; i < keys.length; i++) {
+                if (recordPositions[i] >= 0 && records[recordPositions[i]] != null) {
+                    record = records[recordPositions[i]];
+                    found[i] = BookCodec.decode(record.duplicate());
+                    cache.put(keys[i], found[i], record.remaining());
+                }
+                if (found[i] != null) {
+                    books.add(found[i]);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
         }
+        return books;
     }
 
     /**
      * Updates a book in the data file by its ISBN.
-     * The method reads the data file using the file pointer from the index file and updates the book object.
+     * The method logs the updated book in the write-ahead log and replaces its record in the data file, see putBook.
+     * It returns once the log record is durable.
      * @param isbn The ISBN of the book to update.
      * @param updatedBook The updated book object.
-     * @throws IOException If an I/O error occurs.
+     * @throws IOException If an I/O error occurs, the book is not found or the ISBN is too long for the index.
      */
     public void updateBook(String isbn, Book updatedBook) throws IOException {
 
-        long filePointer = getPositionFromIndexFile(isbn);
+        byte[] record = BookCodec.encode(updatedBook);
+        long sequence;
 
-        if (filePointer == NOT_FOUND){
-            throw new IOException("book not found");
-        }
-        try (RandomAccessFile dataFile = new RandomAccessFile(DATA_FILE, "rw")) {
-            dataFile.seek(filePointer);
-            // Check if the title has changed and update the title index
-            Book tempBook = getBook(isbn);
-            if(!tempBook.getTitle().equals(updatedBook.getTitle())){
-                titleIndexManager.removeSecondaryIndex(isbn);
-                titleIndexManager.addSecondaryIndex(updatedBook.getTitle(), isbn);
-                }
-            writeBook(dataFile, updatedBook);
-        }catch(FileNotFoundException e){
-            System.out.println("File not found");
+        checkIsbn(isbn);
+        lock.writeLock().lock();
+        try {
+            if (getPositionFromIndexFile(isbn) == NOT_FOUND){
+                throw new IOException("book not found");
+            }
+            sequence = writeAheadLog.log(WriteAheadLog.PUT, isbn, record, () -> putBook(isbn, record, updatedBook));
+        } finally {
+            lock.writeLock().unlock();
         }
+        writeAheadLog.awaitDurable(sequence);
     }
 
     /**
      * Deletes a book from the data file by its ISBN.
-     * The method reads the data file using the file pointer from the index file and marks the record as deleted.
-     * The method also removes the index entry and the title index entry.
+     * The method logs the deletion in the write-ahead log and removes the book, see removeBook.
+     * It returns once the log record is durable.
      * @param isbn The ISBN of the book to delete.
      * @throws IOException If an I/O error occurs.
      */
     public void deleteBook(String isbn) throws IOException {
 
-        long filePointer = getPositionFromIndexFile(isbn);
+        long sequence;
 
-        if (filePointer == NOT_FOUND){
-            throw new IOException("book not found");
+        lock.writeLock().lock();
+        try {
+            if (getPositionFromIndexFile(isbn) == NOT_FOUND){
+                throw new IOException("book not found");
+            }
+
+            sequence = writeAheadLog.log(WriteAheadLog.DELETE, isbn, new byte[0], () -> removeBook(isbn));
+        } finally {
+            lock.writeLock().unlock();
         }
+        writeAheadLog.awaitDurable(sequence);
+    }
 
-        try (RandomAccessFile dataFile = new RandomAccessFile(DATA_FILE, "rw")) {
-            dataFile.seek(filePointer);
-            //Mark register as deleted
-            dataFile.writeChar('*');
-            deletedRecordsSpaces.add(filePointer);
+    /**
+     * Closes the handler: stops the write-ahead log once its records are durable and closes the data, index and index log files.
+     * The files are not checkpointed, the next handler replays the changes still in the log.
+     * The handler cannot be used after it is closed.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+
+        lock.writeLock().lock();
+        try {
+            writeAheadLog.close();
+            dataFile.close();
+            indexTree.close();
+            titleIndexManager.close();
+            titleTextIndex.close();
+            authorIndexManager.close();
+            genreIndexManager.close();
+            publisherIndexManager.close();
+            magazineIndexManager.close();
+            for (YearIndexManager yearIndexManager : yearIndexManagers.values()) {
+                yearIndexManager.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the record of a book and its index entries, inserting the book or replacing the current record of its ISBN.
+     * If the updated record no longer fits in its page, it is moved and the index entry gets its new record id.
+     * The title, author, genre, publisher, magazine and year index entries of the ISBN are replaced when their value changed,
+     * and so are the facet bitmaps of the book.
+     * @param isbn The ISBN of the book.
+     * @param record The record of the book, encoded by BookCodec.
+     * @param book The book object.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void putBook(String isbn, byte[] record, Book book) throws IOException {
+
+        long recordId = getPositionFromIndexFile(isbn);
+        long updatedRecordId;
+        Book currentBook;
+
+        cache.invalidate(isbn);
+        if (recordId == NOT_FOUND) {
+            recordId = dataFile.insert(record);
+            try {
+                addIndex(isbn, recordId);
+            } catch (IOException | RuntimeException e) {
+                // The record is freed, so an ISBN rejected by the index leaves no orphan record in the data file
+                dataFile.delete(recordId);
+                throw e;
+            }
+            titleIndexManager.addSecondaryIndex(book.getTitle(), isbn);
+            titleTextIndex.add(isbn, book.getTitle());
+            authorIndexManager.addSecondaryIndex(book.getAuthor(), isbn);
+            genreIndexManager.addSecondaryIndex(book.getGenre(), isbn);
+            publisherIndexManager.addSecondaryIndex(book.getPublisher(), isbn);
+            magazineIndexManager.addSecondaryIndex(book.getMagazine(), isbn);
+            for (YearField field : YearField.values()) {
+                yearIndexManagers.get(field).addYearIndex(field.yearOf(book), isbn);
+            }
+            for (Facet facet : Facet.values()) {
+                facetIndex.set(facet, isbn, facet.keyOf(book));
+            }
+            return;
+        }
+        currentBook = BookCodec.decode(dataFile.read(recordId));
+        if (!currentBook.getTitle().equals(book.getTitle())) {
+            titleIndexManager.addSecondaryIndex(book.getTitle(), isbn);
+            titleTextIndex.add(isbn, book.getTitle());
+        }
+        if (!currentBook.getAuthor().equals(book.getAuthor())) {
+            authorIndexManager.addSecondaryIndex(book.getAuthor(), isbn);
+        }
+        if (!currentBook.getGenre().equals(book.getGenre())) {
+            genreIndexManager.addSecondaryIndex(book.getGenre(), isbn);
+        }
+        if (!currentBook.getPublisher().equals(book.getPublisher())) {
+            publisherIndexManager.addSecondaryIndex(book.getPublisher(), isbn);
+        }
+        if (!currentBook.getMagazine().equals(book.getMagazine())) {
+            magazineIndexManager.addSecondaryIndex(book.getMagazine(), isbn);
+        }
+        for (Facet facet : Facet.values()) {
+            facetIndex.set(facet, isbn, facet.keyOf(book));
+        }
+        for (YearField field : YearField.values()) {
+            if (field.yearOf(currentBook) != field.yearOf(book)) {
+                yearIndexManagers.get(field).addYearIndex(field.yearOf(book), isbn);
+            }
+        }
+        updatedRecordId = dataFile.update(recordId, record);
+        if (updatedRecordId != recordId) {
+            addIndex(isbn, updatedRecordId);
+        }
+    }
+
+    /**
+     * Removes a book: frees the slot of its record and removes its index, title, title words, author, genre, publisher, magazine
+     * and year index entries, and its facet bitmaps.
+     * Entries that are already gone are skipped, so the method can be applied again by the log replay.
+     * @param isbn The ISBN of the book to remove.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void removeBook(String isbn) throws IOException {
+
+        long recordId = getPositionFromIndexFile(isbn);
+
+        cache.invalidate(isbn);
+        if (recordId != NOT_FOUND) {
+            dataFile.delete(recordId);
+            removeIndex(isbn);
         }
-        removeIndex(isbn);
         titleIndexManager.removeSecondaryIndex(isbn);
+        titleTextIndex.remove(isbn);
         authorIndexManager.removeSecondaryIndex(isbn);
         genreIndexManager.removeSecondaryIndex(isbn);
+        publisherIndexManager.removeSecondaryIndex(isbn);
+        magazineIndexManager.removeSecondaryIndex(isbn);
+        for (YearIndexManager yearIndexManager : yearIndexManagers.values()) {
+            yearIndexManager.removeYearIndex(isbn);
+        }
+        facetIndex.remove(isbn);
+    }
+
+    /**
+     * Applies again a record of the write-ahead log, when the log is replayed on startup.
+     * A record that is already in the data file is not written again, and the index entries are added again
+     * in case the crash happened before they were written. An index entry whose slot no longer holds the book is dropped first,
+     * see currentRecordId.
+     * @param operation The operation of the log record.
+     * @param isbn The ISBN of the book.
+     * @param record The record of the book, empty for a deletion.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void redo(byte operation, String isbn, byte[] record) throws IOException {
+
+        long recordId = currentRecordId(isbn);
+        Book book;
+
+        if (operation == WriteAheadLog.DELETE) {
+            removeBook(isbn);
+            return;
+        }
+        book = BookCodec.decode(ByteBuffer.wrap(record));
+        if (recordId == NOT_FOUND || !dataFile.read(recordId).equals(ByteBuffer.wrap(record))) {
+            putBook(isbn, record, book);
+        }
+        titleIndexManager.addSecondaryIndex(book.getTitle(), isbn);
+        titleTextIndex.add(isbn, book.getTitle());
+        authorIndexManager.addSecondaryIndex(book.getAuthor(), isbn);
+        genreIndexManager.addSecondaryIndex(book.getGenre(), isbn);
+        publisherIndexManager.addSecondaryIndex(book.getPublisher(), isbn);
+        magazineIndexManager.addSecondaryIndex(book.getMagazine(), isbn);
+        for (YearField field : YearField.values()) {
+            yearIndexManagers.get(field).addYearIndex(field.yearOf(book), isbn);
+        }
+        for (Facet facet : Facet.values()) {
+            facetIndex.set(facet, isbn, facet.keyOf(book));
+        }
+    }
+
+    /**
+     * Retrieves the record id of a book for the log replay, after checking that its slot still holds the book.
+     * The pages of the data file and of the index file changed since the last checkpoint are written back in any order once
+     * the log is durable, so after a crash the index file can still point to the old slot of a record moved by an update,
+     * a slot that is now free or holds another book. Such an entry is removed from the index without freeing the slot,
+     * and the replayed record writes the book again. The copy of the book at its new place is no longer indexed,
+     * so the lookups and the scans skip it.
+     * @param isbn The ISBN of the book.
+     * @return The record id of the book, or -1 if it is not found or its index entry was dropped.
+     * @throws IOException If an I/O error occurs.
+     */
+    private long currentRecordId(String isbn) throws IOException {
+
+        long recordId = getPositionFromIndexFile(isbn);
+        ByteBuffer record;
+        String storedIsbn;
+
+        if (recordId == NOT_FOUND) {
+            return NOT_FOUND;
+        }
+        record = dataFile.read(recordId);
+        try {
+            storedIsbn = record == null ? null : BookCodec.decode(record.duplicate()).getIsbn();
+        } catch (IOException | RuntimeException e) {
+            storedIsbn = null;
+        }
+        if (isbn.equals(storedIsbn)) {
+            return recordId;
+        }
+        System.out.println("Dropping the index entry of " + isbn + ", its slot no longer holds the book");
+        removeIndex(isbn);
+        return NOT_FOUND;
+    }
+
+    /**
+     * Forces the data file, the index file and the logs of the title, title words, author, genre, publisher, magazine and year indexes
+     * to the storage device.
+     * It is called by the checkpoints of the write-ahead log, while no change is applied.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void forceFiles() throws IOException {
+        dataFile.force();
+        indexTree.force();
+        titleIndexManager.force();
+        titleTextIndex.force();
+        authorIndexManager.force();
+        genreIndexManager.force();
+        publisherIndexManager.force();
+        magazineIndexManager.force();
+        for (YearIndexManager yearIndexManager : yearIndexManagers.values()) {
+            yearIndexManager.force();
+        }
+    }
+
+    /**
+     * Builds the full-text index of the titles and the year, publisher and magazine indexes that are empty from the books of the data file,
+     * for a data file created before these indexes or a full-text index whose base file could not be read.
+     * The method reads the books in batches, in ISBN order, with getBooks.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void buildNewIndexes() throws IOException {
+
+        List<YearField> emptyFields = new ArrayList<>();
+        Map<YearField, List<YearIndexEntry>> yearEntries = new EnumMap<>(YearField.class);
+        List<KeyIndexEntry> publisherEntries = new ArrayList<>();
+        List<KeyIndexEntry> magazineEntries = new ArrayList<>();
+        boolean buildPublishers = publisherIndexManager.isEmpty();
+        boolean buildMagazines = magazineIndexManager.isEmpty();
+        boolean buildTitleText = titleTextIndex.isEmpty();
+        List<KeyIndexEntry> titleEntries = new ArrayList<>();
+        List<String> isbns = new ArrayList<>(primaryIndex.keySet());
+
+        for (YearField field : YearField.values()) {
+            if (yearIndexManagers.get(field).isEmpty()) {
+                emptyFields.add(field);
+                yearEntries.put(field, new ArrayList<>());
+            }
+        }
+        if ((emptyFields.isEmpty() && !buildPublishers && !buildMagazines && !buildTitleText) || isbns.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < isbns.size(); i += READ_BATCH) {
+            for (Book book : getBooks(isbns.subList(i, Math.min(isbns.size(), i + READ_BATCH)))) {
+                for (YearField field : emptyFields) {
+                    yearEntries.get(field).add(new YearIndexEntry(field.yearOf(book), book.getIsbn()));
+                }
+                if (buildPublishers) {
+                    publisherEntries.add(new KeyIndexEntry(book.getPublisher(), book.getIsbn()));
+                }
+                if (buildMagazines) {
+                    magazineEntries.add(new KeyIndexEntry(book.getMagazine(), book.getIsbn()));
+                }
+                if (buildTitleText) {
+                    titleEntries.add(new KeyIndexEntry(book.getTitle(), book.getIsbn()));
+                }
+            }
+        }
+        for (YearField field : emptyFields) {
+            yearIndexManagers.get(field).addYearIndexes(yearEntries.get(field));
+        }
+        publisherIndexManager.addSecondaryIndexes(publisherEntries);
+        magazineIndexManager.addSecondaryIndexes(magazineEntries);
+        if (buildTitleText) {
+            titleTextIndex.addAll(titleEntries);
+        }
+    }
+
+    /**
+     * Builds the bitmaps of the facets from the entries of the genre, publisher and magazine indexes, without reading the data file.
+     */
+    private void buildFacetIndex() {
+        for (KeyIndexEntry entry : genreIndexManager.getEntries()) {
+            facetIndex.set(Facet.GENRE, entry.getIsbn(), entry.getKey());
+        }
+        for (KeyIndexEntry entry : publisherIndexManager.getEntries()) {
+            facetIndex.set(Facet.PUBLISHER, entry.getIsbn(), entry.getKey());
+        }
+        for (KeyIndexEntry entry : magazineIndexManager.getEntries()) {
+            facetIndex.set(Facet.MAGAZINE, entry.getIsbn(), entry.getKey());
+        }
     }
 
 
     /**
      * Searches for mangas by title.
      * The method searches the title index file for all titles that match the specified title.
-     * For each title found, the method retrieves the ISBNs from the title index file and retrieves the mangas from the data file.
+     * The method retrieves the ISBNs from the title index file and reads their mangas from the data file with getBooks.
      * @param title The title to search for.
      * @return A list of book objects with titles that match the specified title.
      * @throws IOException If an I/O error occurs.
      */
     public List<Book> searchBooksByTitle(String title) throws IOException {
 
-        List<String> isbns = titleIndexManager.getIsbnsByKey(title);
-        List<Book> books = new ArrayList<>();
-        Book book;
+        List<String> isbns;
 
-        for (String isbn : isbns) {
-            book = getBook(isbn);
-            if (book != null) {
-                books.add(book);
-            }
+        lock.readLock().lock();
+        try {
+            isbns = titleIndexManager.getIsbnsByKey(title);
+            return getBooks(isbns);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Searches for mangas by the words of their title.
+     * The method finds the ISBNs in the full-text index of the titles, where the titles and the query are split into words
+     * without case and accents, and retrieves the mangas from the data file with getBooks.
+     * @param query The words to search for, such as "one piece".
+     * @param mode ALL for the books with every word of the query, ANY for the books with at least one of them.
+     * @param limit The maximum number of books to return.
+     * @return A list of book objects, the best matches first according to their BM25 score.
+     * @throws IOException If an I/O error occurs.
+     */
+    public List<Book> searchBooksByTitleWords(String query, FullTextIndex.Mode mode, int limit) throws IOException {
+
+        List<String> isbns;
+
+        lock.readLock().lock();
+        try {
+            isbns = titleTextIndex.search(query, mode, limit);
+            return getBooks(isbns);
+        } finally {
+            lock.readLock().unlock();
         }
-        return books;
     }
 
     /**
      * Searches for mangas by author.
      * The method searches the author index file for all authors that match the specified author.
-     * For each author found, the method retrieves the ISBNs from the author index file and retrieves the mangas from the data file.
+     * The method retrieves the ISBNs from the author index file and reads their mangas from the data file with getBooks.
      * @param author The author to search for.
      * @return A list of book objects with authors that match the specified author.
      * @throws IOException If an I/O error occurs.
      */
     public List<Book> searchBooksByAuthor(String author) throws IOException {
 
-        List<String> isbns = authorIndexManager.getIsbnsByKey(author);
-        List<Book> books = new ArrayList<>();
-        Book book;
+        List<String> isbns;
 
-        for (String isbn : isbns) {
-            book = getBook(isbn);
-            if (book != null) {
-                books.add(book);
-            }
+        lock.readLock().lock();
+        try {
+            isbns = authorIndexManager.getIsbnsByKey(author);
+            return getBooks(isbns);
+        } finally {
+            lock.readLock().unlock();
         }
-        return books;
+    }
+
+    /**
+     * Searches for mangas by an author that may be misspelled.
+     * The method finds the authors within the edit distance in the author index, comparing them without case, accents and
+     * word order, so "Oda Eiichirou" finds "Eiichiro Oda", and retrieves their mangas from the data file with getBooks.
+     * @param author The author to search for.
+     * @param maxDistance The maximum number of inserted, deleted or replaced characters, at most 2 and lowered for short names.
+     * @return A list of book objects with authors close to the specified author, the closest authors first.
+     * @throws IOException If an I/O error occurs.
+     */
+    public List<Book> searchBooksByAuthorFuzzy(String author, int maxDistance) throws IOException {
+
+        List<String> isbns;
+
+        lock.readLock().lock();
+        try {
+            isbns = authorIndexManager.getIsbnsByFuzzyKey(author, maxDistance);
+            return getBooks(isbns);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Searches for mangas by a title that may be misspelled.
+     * The method finds the titles within the edit distance in the title index, comparing them without case, accents and
+     * word order, and retrieves their mangas from the data file with getBooks.
+     * @param title The title to search for.
+     * @param maxDistance The maximum number of inserted, deleted or replaced characters, at most 2 and lowered for short titles.
+     * @return A list of book objects with titles close to the specified title, the closest titles first.
+     * @throws IOException If an I/O error occurs.
+     */
+    public List<Book> searchBooksByTitleFuzzy(String title, int maxDistance) throws IOException {
+
+        List<String> isbns;
+
+        lock.readLock().lock();
+        try {
+            isbns = titleIndexManager.getIsbnsByFuzzyKey(title, maxDistance);
+            return getBooks(isbns);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Searches for mangas with a year in a range, such as the series started between 1995 and 2000.
+     * The method finds the ISBNs in the year index of the field, sorted by year, and returns a stream that reads their mangas
+     * from the data file with getBooks, a batch of 256 at a time, as the stream is consumed. The data file is not scanned.
+     * A manga changed or deleted after the call may be returned as it is when its batch is read, or skipped.
+     * @param field The year to search by: start year, end year or edition year.
+     * @param from The first year of the range.
+     * @param to The last year of the range, included.
+     * @return A stream of the book objects, sorted by year. A read error is thrown as an UncheckedIOException.
+     */
+    public Stream<Book> searchBooksByYearRange(YearField field, int from, int to) {
+
+        List<String> isbns;
+
+        lock.readLock().lock();
+        try {
+            isbns = yearIndexManagers.get(field).getIsbnsByRange(from, to);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return IntStream.range(0, (isbns.size() + READ_BATCH - 1) / READ_BATCH)
+                .mapToObj(batch -> isbns.subList(batch * READ_BATCH, Math.min(isbns.size(), (batch + 1) * READ_BATCH)))
+                .flatMap(batch -> {
+                    try {
+                        return getBooks(batch).stream();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
     }
 
     /**
      * Searches for mangas by genre.
      * The method searches the genre index file for all genres that match the specified genre.
-     * For each genre found, the method retrieves the ISBNs from the genre index file and retrieves the mangas from the data file.
+     * The method retrieves the ISBNs from the genre index file and reads their mangas from the data file with getBooks.
      * @param genre The genre to search for.
      * @return A list of book objects with genres that match the specified genre.
      * @throws IOException If an I/O error occurs.
      */
     public List<Book> searchBooksByGenre(String genre) throws IOException {
 
-        List<String> isbns = genreIndexManager.getIsbnsByKey(genre);
+        List<String> isbns;
+
+        lock.readLock().lock();
+        try {
+            isbns = genreIndexManager.getIsbnsByKey(genre);
+            return getBooks(isbns);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Searches for mangas matching the criteria of a query, such as a genre and a range of start years, or one of two authors.
+     * The QueryPlanner estimates the number of books of each criterion from the indexes and intersects the books of the most
+     * selective ones before any book is read, the other criteria being tested on the books read. The data file is scanned
+     * only when no index applies to the query, such as a query made of a matching predicate only.
+     * @param query The query.
+     * @return A list of book objects matching the query, sorted by ISBN.
+     * @throws IOException If an I/O error occurs.
+     */
+    public List<Book> searchBooks(BookQuery query) throws IOException {
+
         List<Book> books = new ArrayList<>();
-        Book book;
 
-        for (String isbn : isbns) {
-            book = getBook(isbn);
-            if (book != null) {
-                books.add(book);
+        runQuery(query, books);
+        return books;
+    }
+
+    /**
+     * Runs a query like searchBooks and describes how it ran: the steps chosen by the planner, with the number of books
+     * estimated for each step and the number actually found.
+     * @param query The query.
+     * @return The plan of the query, with its estimated and actual rows.
+     * @throws IOException If an I/O error occurs.
+     */
+    public QueryPlan explain(BookQuery query) throws IOException {
+        return runQuery(query, new ArrayList<>());
+    }
+
+    /**
+     * Plans and runs a query.
+     * The method finds the books of the indexed steps of the plan and reads them in batches of 256 with getBooks,
+     * or reads all the books with scanBooks, and keeps the books matching the query, testing them only if the plan has filter steps.
+     * @param query The query.
+     * @param books The list to add the books found to.
+     * @return The plan of the query, with its actual rows.
+     * @throws IOException If an I/O error occurs.
+     */
+    private QueryPlan runQuery(BookQuery query, List<Book> books) throws IOException {
+
+        QueryPlanner planner;
+        QueryPlan plan;
+        List<QueryPlan> filters = new ArrayList<>();
+        List<String> isbns;
+
+        lock.readLock().lock();
+        try {
+            planner = new QueryPlanner(titleIndexManager, authorIndexManager, yearIndexManagers, facetIndex, primaryIndex.size());
+            plan = planner.plan(query);
+            plan.collectFilters(filters);
+            if (plan.getAccess() == QueryPlan.Access.FETCH) {
+                isbns = facetIndex.isbnsOf(planner.evaluate(plan));
+                Collections.sort(isbns);
+                for (int i = 0; i < isbns.size(); i += READ_BATCH) {
+                    for (Book book : getBooks(isbns.subList(i, Math.min(isbns.size(), i + READ_BATCH)))) {
+                        collectMatch(book, query, filters, books);
+                    }
+                }
+            } else {
+                try (Stream<Book> scan = scanBooks()) {
+                    scan.forEach(book -> collectMatch(book, query, filters, books));
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                books.sort(Comparator.comparing(Book::getIsbn));
+            }
+            plan.setActualRows(books.size());
+            return plan;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a book read by a query to its results if it matches the query, and counts it in the filter steps it passes.
+     * @param book The book.
+     * @param query The query.
+     * @param filters The filter steps of the plan, none if the indexes found exactly the books of the query.
+     * @param books The results of the query.
+     */
+    private void collectMatch(Book book, BookQuery query, List<QueryPlan> filters, List<Book> books) {
+        for (QueryPlan filter : filters) {
+            if (filter.getQuery().test(book)) {
+                filter.addActualRow();
             }
         }
-        return books;
+        if (filters.isEmpty() || query.test(book)) {
+            books.add(book);
+        }
     }
 
+    /**
+     * Reads all the mangas of the data file, for the reports and the exports of the whole catalog.
+     * The method reads the data file in file order with a BookSpliterator, a chunk of 1 MB at a time, and decodes
+     * the records of a chunk as the stream is consumed, so the catalog can be larger than the memory.
+     * The chunks are read around the buffer pool and the book cache, so a scan does not evict the pages and books used by the searches.
+     * Each chunk is read and checked against the primary index under the read lock of the handler, taken once per chunk,
+     * and a record is returned only if the index points to it, so a manga moved by an update during the scan is returned
+     * once at most, and a manga changed or deleted during the scan may be skipped.
+     * The pages added to the data file after the call are not read.
+     * @return A stream of the book objects, in file order. A read error is thrown as an UncheckedIOException.
+     */
+    public Stream<Book> scanBooks() {
+        return scanBooks(false);
+    }
 
+    /**
+     * Reads all the mangas of the data file like scanBooks, optionally in parallel.
+     * A parallel stream splits the pages of the data file into ranges of whole chunks, and each worker reads its ranges
+     * with its own positional reads, so the scans and aggregations of the reports use all the cores.
+     * @param parallel True for a parallel stream, false for a sequential one.
+     * @return A stream of the book objects, in file order. A read error is thrown as an UncheckedIOException.
+     */
+    public Stream<Book> scanBooks(boolean parallel) {
+        return StreamSupport.stream(new BookSpliterator(1, dataFile.pageCount()), parallel);
+    }
+
+    /**
+     * BookSpliterator class
+     * It reads the books of a range of pages of the data file with a SlottedPageFile.Scanner
+     * The books of a chunk are decoded together, under a single read lock of the handler, and handed out one at a time
+     * A spliterator that has not started reading is split in two halves of whole chunks, down to two chunks of 128 pages
+     */
+    private class BookSpliterator implements Spliterator<Book> {
+        private int firstPage;
+        private final int endPage;
+        private SlottedPageFile.Scanner scanner;
+        private final Deque<Book> books = new ArrayDeque<>();
+
+        private BookSpliterator(int firstPage, int endPage) {
+            this.firstPage = firstPage;
+            this.endPage = endPage;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Book> action) {
 
+            if (scanner == null) {
+                scanner = dataFile.scan(firstPage, endPage);
+            }
+            while (books.isEmpty()) {
+                if (!readChunk()) {
+                    return false;
+                }
+            }
+            action.accept(books.poll());
+            return true;
+        }
 
+        /**
+         * Reads the next chunk of records and decodes the records the primary index points to.
+         * @return False if the range has no record left, true otherwise.
+         */
+        private boolean readChunk() {
+
+            Book book;
+
+            lock.readLock().lock();
+            try {
+                if (!scanner.hasNext()) {
+                    return false;
+                }
+                do {
+                    book = decodeCurrent(scanner.next(), scanner.recordId());
+                    if (book != null) {
+                        books.add(book);
+                    }
+                } while (scanner.remainingInChunk() > 0);
+                return true;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public Spliterator<Book> trySplit() {
+
+            int middle;
+            BookSpliterator prefix;
+
+            if (scanner != null || endPage - firstPage < 2 * SlottedPageFile.SCAN_CHUNK_PAGES) {
+                return null;
+            }
+            middle = firstPage + (endPage - firstPage) / 2 / SlottedPageFile.SCAN_CHUNK_PAGES * SlottedPageFile.SCAN_CHUNK_PAGES;
+            prefix = new BookSpliterator(firstPage, middle);
+            firstPage = middle;
+            return prefix;
+        }
+
+        /**
+         * Estimates the number of books of the range from its number of pages.
+         * @return The number of pages of the range, times the number of small records of a page.
+         */
+        @Override
+        public long estimateSize() {
+            return (long) (endPage - firstPage) * ESTIMATED_BOOKS_PER_PAGE;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+    }
 
     /**
-     * Searches for a book by its ISBN.
-     * The method retrieves the book from the data file using the getManga method.
-     * @param isbn The ISBN of the book to search for.
-     * @return A list with the book object with the specified ISBN, or an empty list if not found.
-     * @throws IOException If an I/O error occurs.
+     * Decodes a record read by a scan if the primary index points to it, the caller holding the read lock.
+     * @param record The record.
+     * @param recordId The record id of the record.
+     * @return The book, or null if the index points to another record or to none.
      */
-    public List<Book> searchBookByIsbn(String isbn) throws IOException {
+    private Book decodeCurrent(ByteBuffer record, long recordId) {
 
-        List<Book> mangases = new ArrayList<>();
-        Book book = getBook(isbn);
+        Book book;
 
-        if (book != null) {
-            mangases.add(book);
+        try {
+            book = BookCodec.decode(record);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        return mangases;
+        return getPositionFromIndexFile(book.getIsbn()) == recordId ? book : null;
     }
 
     /**
-     * Writes a book object to the data file.
-     * The method writes the book object to the data file using the specified record size.
-     * The method fills the remaining space with blank bytes to complete the record size.
-     * @param data_file The RandomAccessFile object for the data file.
-     * @param book The book object to write.
-     * @throws IOException If an I/O error occurs.
+     * Retrieves the books with a value of a facet, as a bitmap to combine with the bitmaps of other facets.
+     * The bitmaps are combined with their and, or and andNot methods, the books without a value being found with
+     * getAllBooksBitmap().andNot(bitmap), and their books are read with getBooks(RoaringBitmap).
+     * @param facet The field: genre, publisher or magazine.
+     * @param value The value, compared without case and accents.
+     * @return The bitmap of the books, which the caller may change.
      */
-    private void writeBook(RandomAccessFile data_file, Book book) throws IOException {
+    public RoaringBitmap getFacetBitmap(Facet facet, String value) {
+
+        lock.readLock().lock();
+        try {
+            return facetIndex.get(facet, value);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
 
-        long start_Pointer = data_file.getFilePointer();
-        data_file.writeUTF(book.getIsbn());
-        data_file.writeUTF(book.getTitle());
-        data_file.writeUTF(book.getAuthor());
-        data_file.writeInt(book.getStartYear());
-        data_file.writeInt(book.getEndYear());
-        data_file.writeUTF(book.getGenre());
-        data_file.writeUTF(book.getMagazine());
-        data_file.writeUTF(book.getPublisher());
-        data_file.writeInt(book.getEditionYear());
-        data_file.writeInt(book.getTotalVolumes());
-        data_file.writeInt(book.getAcquiredVolumesCounter());
+    /**
+     * Retrieves all the books, as a bitmap, for the NOT of the faceted filters.
+     * @return The bitmap of all the books, which the caller may change.
+     */
+    public RoaringBitmap getAllBooksBitmap() {
 
-        for (Integer volume : book.getAcquiredVolumes()) {
-            data_file.writeInt(volume);
+        lock.readLock().lock();
+        try {
+            return facetIndex.allBooks();
+        } finally {
+            lock.readLock().unlock();
         }
+    }
 
-        long end_Pointer = data_file.getFilePointer();
+    /**
+     * Counts the books of each value of a facet among the books of a filter, for the counts shown next to the facet values.
+     * @param facet The field: genre, publisher or magazine.
+     * @param filter The bitmap of the books to count, such as the result of the other facets.
+     * @return The values with at least one book, mapped to their number of books.
+     */
+    public Map<String, Integer> getFacetCounts(Facet facet, RoaringBitmap filter) {
 
-        // Fill the remaining space with blank bytes to complete the record size
-        long remainingBytes = RECORD_SIZE - (end_Pointer - start_Pointer);
-        if (remainingBytes > 0) {
-            data_file.write(new byte[(int) remainingBytes]);
+        lock.readLock().lock();
+        try {
+            return facetIndex.count(facet, filter);
+        } finally {
+            lock.readLock().unlock();
         }
     }
 
     /**
-     * Reads a book object from the data file.
-     * The method reads the book object from the data file using the specified record size.
-     * @param file The RandomAccessFile object for the data file.
-     * @return The book object read from the data file.
+     * Retrieves the books of a bitmap, the result of a faceted filter.
+     * The method turns the bitmap into ISBNs with the FacetIndex and reads their mangas from the data file with getBooks.
+     * The books deleted since the bitmap was taken are skipped.
+     * @param bitmap The bitmap of the books.
+     * @return The book objects, in the order the books were first indexed.
      * @throws IOException If an I/O error occurs.
      */
-    private Book readBook(RandomAccessFile file) throws IOException {
+    public List<Book> getBooks(RoaringBitmap bitmap) throws IOException {
 
-        String isbn = file.readUTF();
-        String title = file.readUTF();
-        String author = file.readUTF();
-        int startYear = file.readInt();
-        int endYear = file.readInt();
-        String genre = file.readUTF();
-        String magazine = file.readUTF();
-        String publisher = file.readUTF();
-        int editionYear = file.readInt();
-        int totalVolumes = file.readInt();
-        int acquiredVolumesCount = file.readInt();
+        List<String> isbns;
 
-        List<Integer> acquiredVolumes = new ArrayList<>();
-        for (int i = 0; i < acquiredVolumesCount; i++) {
-            acquiredVolumes.add(file.readInt());
+        lock.readLock().lock();
+        try {
+            isbns = facetIndex.isbnsOf(bitmap);
+            return getBooks(isbns);
+        } finally {
+            lock.readLock().unlock();
         }
+    }
 
-        file.seek(file.getFilePointer() + (RECORD_SIZE - (file.getFilePointer() % RECORD_SIZE)));
-        return new Book(isbn, title, author, startYear, endYear, genre, magazine, publisher, editionYear, totalVolumes, acquiredVolumesCount, acquiredVolumes);
+    /**
+     * Searches for mangas by title, one page at a time.
+     * The method reads the entries of the page only from the title index, starting after the cursor, and reads their mangas with getBooks.
+     * @param title The title to search for.
+     * @param after The cursor of the previous page, or null for the first page.
+     * @param limit The maximum number of mangas of the page, at least 1.
+     * @return The page of book objects, with the cursor of the next page.
+     * @throws IOException If an I/O error occurs.
+     */
+    public Page<Book> searchBooksByTitle(String title, String after, int limit) throws IOException {
+        return searchBooksByKey(titleIndexManager, title, after, limit);
     }
 
     /**
-     * Adds an index entry to the index file.
-     * The method reads the current index entries from the index file and adds the new index entry.
-     * The method sorts the index entries by ISBN and writes them back to the index file.
-     * @param isbn The ISBN of the  to add to the index file.
-     * @param filePointer The file pointer of the  in the data file.
+     * Searches for mangas by author, one page at a time, like searchBooksByTitle.
+     * @param author The author to search for.
+     * @param after The cursor of the previous page, or null for the first page.
+     * @param limit The maximum number of mangas of the page, at least 1.
+     * @return The page of book objects, with the cursor of the next page.
      * @throws IOException If an I/O error occurs.
      */
-    private void addIndex(String isbn, long filePointer) throws IOException {
+    public Page<Book> searchBooksByAuthor(String author, String after, int limit) throws IOException {
+        return searchBooksByKey(authorIndexManager, author, after, limit);
+    }
 
-        List<IndexEntry> indexEntries = new ArrayList<>();
-        String currentIsbn;
-        long currentPointer;
-
-        // Read all actual index
-        try (RandomAccessFile indexFile = new RandomAccessFile(INDEX_FILE, "r")) {
-            while (indexFile.getFilePointer() < indexFile.length()) {
-                currentIsbn = indexFile.readUTF();
-                currentPointer = indexFile.readLong();
-                indexEntries.add(new IndexEntry(currentIsbn, currentPointer));
-            }
-        }catch(FileNotFoundException e){
-            System.out.println("File not found, creating new file...");
-        }catch(IOException e){
-            System.out.println("I/O Error in addIndex method");
-        }catch(Exception e){
-            System.out.println("Error in addIndex method");
-        }
+    /**
+     * Searches for mangas by genre, one page at a time, like searchBooksByTitle.
+     * @param genre The genre to search for.
+     * @param after The cursor of the previous page, or null for the first page.
+     * @param limit The maximum number of mangas of the page, at least 1.
+     * @return The page of book objects, with the cursor of the next page.
+     * @throws IOException If an I/O error occurs.
+     */
+    public Page<Book> searchBooksByGenre(String genre, String after, int limit) throws IOException {
+        return searchBooksByKey(genreIndexManager, genre, after, limit);
+    }
 
-        indexEntries.add(new IndexEntry(isbn, filePointer));
+    /**
+     * Searches for mangas with a year in a range, one page at a time.
+     * The method reads the ISBNs of the page only from the year index, starting after the cursor, and reads their mangas with getBooks.
+     * @param field The year to search by: start year, end year or edition year.
+     * @param from The first year of the range.
+     * @param to The last year of the range, included.
+     * @param after The cursor of the previous page, or null for the first page.
+     * @param limit The maximum number of mangas of the page, at least 1.
+     * @return The page of book objects, sorted by year, with the cursor of the next page.
+     * @throws IOException If an I/O error occurs.
+     */
+    public Page<Book> searchBooksByYearRange(YearField field, int from, int to, String after, int limit) throws IOException {
 
-        indexEntries.sort(Comparator.comparing(IndexEntry::getIsbn));
+        Page<String> isbns;
 
-        try (RandomAccessFile indexFile = new RandomAccessFile(INDEX_FILE, "rw")) {
-            indexFile.setLength(0); //Clear the file
-            for (IndexEntry entry : indexEntries) {
-                indexFile.writeUTF(entry.getIsbn());
-                indexFile.writeLong(entry.getFilePointer());
-            }
+        lock.readLock().lock();
+        try {
+            isbns = yearIndexManagers.get(field).getIsbnsPage(from, to, after, limit);
+            return new Page<>(getBooks(isbns.getItems()), isbns.getNextCursor());
+        } finally {
+            lock.readLock().unlock();
         }
     }
 
     /**
-     * Retrieves the file pointer of a  in the data file by its ISBN.
-     * The method reads the index file and uses binary search to find the index entry with the specified ISBN.
-     * @param isbn The ISBN of the  to find.
-     * @return The file pointer of the book in the data file, or -1 if not found.
+     * Searches for mangas by the key of a secondary index, one page at a time.
+     * @param indexManager The secondary index.
+     * @param key The key to search for.
+     * @param after The cursor of the previous page, or null for the first page.
+     * @param limit The maximum number of mangas of the page, at least 1.
+     * @return The page of book objects, with the cursor of the next page.
      * @throws IOException If an I/O error occurs.
      */
-    private long getPositionFromIndexFile(String isbn) throws IOException {
+    private Page<Book> searchBooksByKey(SecondayIndexManager indexManager, String key, String after, int limit) throws IOException {
 
-        List<IndexEntry> indexEntries = new ArrayList<>();
-        String currentIsbn;
-        long filePointer;
-
-        // Read all current indexes
-        try (RandomAccessFile indexFile = new RandomAccessFile(INDEX_FILE, "r")) {
-            while (indexFile.getFilePointer() < indexFile.length()) {
-                currentIsbn = indexFile.readUTF();
-                filePointer = indexFile.readLong();
-                indexEntries.add(new IndexEntry(currentIsbn, filePointer));
-            }
-        }catch(FileNotFoundException e){
-            System.out.println("File not found in getPositionFromIndexFile method");
-        }
-
-        // Use binary search to find the index
-        IndexEntry midEntry;
-        int mid;
-        int cmp;
-        int left = 0;
-        int right = indexEntries.size() - 1;
-
-        while (left <= right) {
-            mid = (left + right) / 2;
-            midEntry = indexEntries.get(mid);
-            cmp = midEntry.getIsbn().compareTo(isbn);
-            if (cmp < 0) {
-                left = mid + 1;
-            } else if (cmp > 0) {
-                right = mid - 1;
-            } else {
-                return midEntry.getFilePointer();
+        Page<KeyIndexEntry> entries;
+        List<String> isbns = new ArrayList<>();
+
+        lock.readLock().lock();
+        try {
+            entries = indexManager.getEntriesPage(key, after, limit);
+            for (KeyIndexEntry entry : entries.getItems()) {
+                isbns.add(entry.getIsbn());
             }
+            return new Page<>(getBooks(isbns), entries.getNextCursor());
+        } finally {
+            lock.readLock().unlock();
         }
-        return NOT_FOUND;
     }
 
     /**
-     * Removes an index entry from the index file.
-     * The method reads the current index entries from the index file and writes them back to a temporary file.
-     * The method skips the index entry with the specified ISBN and renames the temporary file to the index file.
-     * @param isbn_rem The ISBN of the book to remove from the index file.
+     * Searches for a book by its ISBN.
+     * The method retrieves the book from the data file using the getManga method.
+     * @param isbn The ISBN of the book to search for.
+     * @return A list with the book object with the specified ISBN, or an empty list if not found.
      * @throws IOException If an I/O error occurs.
      */
-    private void removeIndex(String isbn_rem) throws IOException {
+    public List<Book> searchBookByIsbn(String isbn) throws IOException {
+
+        List<Book> mangases = new ArrayList<>();
+        Book book = getBook(isbn);
 
-        File tempFile = new File(TEMP_FILE);
-        String currentIsbn;
-        long filePointer;
-
-        try (RandomAccessFile indexFile = new RandomAccessFile(INDEX_FILE, "rw");
-            RandomAccessFile tempIndexFile = new RandomAccessFile(tempFile, "rw")) {
-            // Besides storing the IndexEntry in a list, we write it to a temporary file to avoid reading the whole index file again
-            while (indexFile.getFilePointer() < indexFile.length()) {
-                currentIsbn = indexFile.readUTF();
-                filePointer = indexFile.readLong();
-                if (!currentIsbn.equals(isbn_rem)) {
-                    tempIndexFile.writeUTF(currentIsbn);
-                    tempIndexFile.writeLong(filePointer);
+        if (book != null) {
+            mangases.add(book);
+        }
+        return mangases;
+    }
+
+    /**
+     * Retrieves the counters of the book cache: hits, misses, evictions, and the number and size of the cached books.
+     * @return The counters of the cache.
+     */
+    public RecordCache.Stats getCacheStats() {
+        return cache.getStats();
+    }
+
+    /**
+     * Opens the B+tree of the primary index.
+     * If the index file still has the flat format of previous versions (sorted ISBN and file pointer pairs) next to a data file
+     * that is already in slotted pages,
+     * the method converts it to a B+tree file first.
+     * @return The B+tree of the primary index.
+     */
+    private BPlusTree openIndex() {
+
+        Path indexFile = Paths.get(INDEX_FILE);
+        Path convertedFile;
+
+        AtomicFileWriter.deleteStaleTempFiles(indexFile);
+        try {
+            if (new File(INDEX_FILE).length() > 0 && !BPlusTree.isTreeFile(INDEX_FILE)) {
+                convertedFile = AtomicFileWriter.createTempFile(indexFile);
+                try (BPlusTree tree = new BPlusTree(convertedFile.toString())) {
+                    for (IndexEntry entry : readFlatIndex()) {
+                        tree.insert(entry.getIsbn(), entry.getFilePointer());
+                    }
                 }
+                AtomicFileWriter.replace(convertedFile, indexFile);
             }
-        }catch(FileNotFoundException e){
-            System.out.println("File not found in removeIndex method");
+            return new BPlusTree(INDEX_FILE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error opening the index file", e);
         }
-        tempFile.renameTo(new File(INDEX_FILE));
     }
 
-    public List<String> getAllMangaTitles() throws IOException {
-        List<String> titles = new ArrayList<>();
-        String title;
+    /**
+     * Reads the index entries of a flat index file.
+     * @return The index entries, sorted by ISBN.
+     * @throws IOException If an I/O error occurs.
+     */
+    private List<IndexEntry> readFlatIndex() throws IOException {
 
-        try (RandomAccessFile indexFile = new RandomAccessFile(TITLE_INDEX_FILE, "r")) {
+        List<IndexEntry> indexEntries = new ArrayList<>();
 
-            indexFile.seek(0);
-            while (indexFile.getFilePointer() < indexFile.length()) {
-                title = indexFile.readUTF();
-                indexFile.readUTF(); // Skip the ISBN
-                titles.add(title);
+        try (DataInputStream indexFile = new DataInputStream(new BufferedInputStream(new FileInputStream(INDEX_FILE)))) {
+            while (indexFile.available() > 0) {
+                indexEntries.add(new IndexEntry(indexFile.readUTF(), indexFile.readLong()));
             }
         }
+        return indexEntries;
+    }
+
+    /**
+     * Loads the primary index from the index file into memory.
+     * The method visits every index entry of the B+tree once and keeps it in the sorted primaryIndex map,
+     * so lookups never have to read the index file again.
+     */
+    private void loadIndex() {
 
-        return titles;
+        try {
+            indexTree.forEach(primaryIndex::put);
+        } catch (IOException e) {
+            System.out.println("Error in loadIndex : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Checks that an ISBN fits in a key of the B+tree of the index file, before anything is logged or written.
+     * @param isbn The ISBN to check.
+     * @throws IOException If the ISBN is too long.
+     */
+    private static void checkIsbn(String isbn) throws IOException {
+        if (RecordBuffers.utfLength(isbn) > BPlusTree.MAX_KEY_LENGTH) {
+            throw new IOException("isbn too long: " + isbn);
+        }
     }
-}
 
+    /**
+     * Adds an index entry to the primary index.
+     * The method inserts the new index entry in the B+tree of the index file and in the in-memory primaryIndex map.
+     * @param isbn The ISBN of the book to add to the index.
+     * @param recordId The record id of the book in the data file.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void addIndex(String isbn, long recordId) throws IOException {
 
+        indexTree.insert(isbn, recordId);
+        primaryIndex.put(isbn, recordId);
+    }
 
+    /**
+     * Writes the B+tree of the index file again from the in-memory primaryIndex map.
+     * The new tree is built in a temporary file, with each page written once, and atomically replaces the index file when complete.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void rebuildIndex() throws IOException {
+
+        Path rebuiltFile = AtomicFileWriter.createTempFile(Paths.get(INDEX_FILE));
+
+        indexTree.close();
+        try {
+            BPlusTree.bulkLoad(rebuiltFile.toString(), primaryIndex.entrySet());
+            AtomicFileWriter.replace(rebuiltFile, Paths.get(INDEX_FILE));
+        } catch (IOException | RuntimeException e) {
+            AtomicFileWriter.discard(rebuiltFile);
+            throw e;
+        } finally {
+            indexTree = new BPlusTree(INDEX_FILE);
+            indexTree.setWriteAheadLog(writeAheadLog);
+        }
+    }
 
+    /**
+     * Retrieves the record id of a book in the data file by its ISBN.
+     * The method looks the ISBN up in the in-memory primaryIndex map.
+     * @param isbn The ISBN of the book to find.
+     * @return The record id of the book in the data file, or -1 if not found.
+     */
+    private long getPositionFromIndexFile(String isbn) {
+
+        Long recordId = primaryIndex.get(isbn);
+        return recordId == null ? NOT_FOUND : recordId;
+    }
+
+    /**
+     * Removes an index entry from the primary index.
+     * The method deletes the index entry from the B+tree of the index file and from the in-memory primaryIndex map.
+     * @param isbn_rem The ISBN of the book to remove from the index.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void removeIndex(String isbn_rem) throws IOException {
+
+        indexTree.delete(isbn_rem);
+        primaryIndex.remove(isbn_rem);
+    }
+
+    /**
+     * Retrieves all the titles of the books.
+     * The method reads the titles, in title order, from the in-memory title index.
+     * @return A list of all the titles of the books.
+     * @throws IOException If an I/O error occurs.
+     */
+    public List<String> getAllMangaTitles() throws IOException {
+
+        lock.readLock().lock();
+        try {
+            return titleIndexManager.getAllKeys();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the titles of the books one page at a time, in title order, for the listings of large catalogs.
+     * @param after The cursor of the previous page, or null for the first page.
+     * @param limit The maximum number of titles of the page, at least 1.
+     * @return The page of titles, with the cursor of the next page.
+     */
+    public Page<String> getMangaTitles(String after, int limit) {
+
+        Page<KeyIndexEntry> entries;
+        List<String> titles = new ArrayList<>();
+
+        lock.readLock().lock();
+        try {
+            entries = titleIndexManager.getEntriesPage(null, after, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (KeyIndexEntry entry : entries.getItems()) {
+            titles.add(entry.getKey());
+        }
+        return new Page<>(titles, entries.getNextCursor());
+    }
+
+    /**
+     * Retrieves the most common titles starting with a prefix, for the autocompletion of the title search.
+     * @param prefix The beginning of the title typed by the user, compared without case and accents.
+     * @param limit The maximum number of titles.
+     * @return The titles with their number of books, the most common first.
+     */
+    public List<Completion> getTitleCompletions(String prefix, int limit) {
+        return titleIndexManager.getCompletions(prefix, limit);
+    }
+
+    /**
+     * Retrieves the most common authors starting with a prefix, for the autocompletion of the author search.
+     * @param prefix The beginning of the author typed by the user, compared without case and accents.
+     * @param limit The maximum number of authors.
+     * @return The authors with their number of books, the most common first.
+     */
+    public List<Completion> getAuthorCompletions(String prefix, int limit) {
+        return authorIndexManager.getCompletions(prefix, limit);
+    }
+}
@@ -0,0 +1,381 @@
+package librarySystem.book;
+
+import librarySystem.storage.CsvLines;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Reads the books of an import file, one book per line, without loading the whole file in memory.
+ * Two formats are accepted, chosen by the extension of the file:
+ * - JSON Lines (".jsonl" or ".json"): one object per line with the fields isbn, title, author, startYear, endYear, genre,
+ *   magazine, publisher, editionYear, totalVolumes and acquiredVolumes, the last one being an array of numbers.
+ * - CSV (any other extension): the same fields in the same order, the acquired volumes separated by commas inside a quoted field.
+ *   A first line starting with "isbn" is a header line and is skipped.
+ * The numbers are ints. A number written with a fraction or an exponent, such as 2000.0 or 2e3, is accepted if its value is whole,
+ * and a number with a fractional part or outside the range of an int is reported as a malformed line.
+ * The iterator reports malformed lines and read errors as UncheckedIOException, since Iterator methods cannot throw IOException.
+ */
+public class BookImporter implements Iterable<Book>, Closeable {
+
+    private static final String[] FIELDS = {
+            "isbn", "title", "author", "startYear", "endYear", "genre", "magazine", "publisher", "editionYear", "totalVolumes", "acquiredVolumes"
+    };
+
+    private final BufferedReader reader;
+    private final boolean jsonLines;
+    private int lineNumber;
+
+    /**
+     * Opens an import file.
+     * @param file The path of the file.
+     * @throws IOException If an I/O error occurs.
+     */
+    public BookImporter(Path file) throws IOException {
+
+        String name = file.getFileName().toString().toLowerCase();
+
+        reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        jsonLines = name.endsWith(".jsonl") || name.endsWith(".json");
+    }
+
+    /**
+     * Retrieves an iterator over the books of the file.
+     * The file can be iterated only once.
+     * @return The iterator.
+     */
+    @Override
+    public Iterator<Book> iterator() {
+        return new Iterator<>() {
+            private Book next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    next = readBook();
+                }
+                return next != null;
+            }
+
+            @Override
+            public Book next() {
+
+                Book book;
+
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                book = next;
+                next = null;
+                return book;
+            }
+        };
+    }
+
+    /**
+     * Closes the import file.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Reads the next book of the file, skipping blank lines and the header line.
+     * @return The book read, or null at the end of the file.
+     */
+    private Book readBook() {
+
+        String line;
+
+        try {
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || (!jsonLines && lineNumber == 1 && line.regionMatches(true, 0, "isbn", 0, 4))) {
+                    continue;
+                }
+                return jsonLines ? parseJsonLine(line) : parseCsvLine(line);
+            }
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Parses a CSV line.
+     * @param line The line.
+     * @return The book of the line.
+     * @throws IOException If the line is malformed.
+     */
+    private Book parseCsvLine(String line) throws IOException {
+
+        List<String> fields;
+        Map<String, Object> values = new HashMap<>();
+        List<Integer> volumes = new ArrayList<>();
+
+        try {
+            fields = CsvLines.split(line);
+        } catch (IOException e) {
+            throw malformed(e.getMessage());
+        }
+        if (fields.size() < FIELDS.length - 1 || fields.size() > FIELDS.length) {
+            throw malformed("expected " + FIELDS.length + " fields but found " + fields.size());
+        }
+
+        for (int i = 0; i < FIELDS.length - 1; i++) {
+            values.put(FIELDS[i], fields.get(i).trim());
+        }
+        if (fields.size() == FIELDS.length && !fields.get(FIELDS.length - 1).isBlank()) {
+            for (String volume : fields.get(FIELDS.length - 1).split(",")) {
+                volumes.add(parseInt(volume.trim(), "acquiredVolumes"));
+            }
+        }
+        values.put("acquiredVolumes", volumes);
+        return toBook(values);
+    }
+
+    /**
+     * Parses a JSON line with a flat object of strings, numbers and arrays of numbers.
+     * @param line The line.
+     * @return The book of the line.
+     * @throws IOException If the line is malformed.
+     */
+    private Book parseJsonLine(String line) throws IOException {
+
+        Map<String, Object> values = new HashMap<>();
+        JsonCursor cursor = new JsonCursor(line);
+        String name;
+
+        cursor.expect('{');
+        if (!cursor.consume('}')) {
+            do {
+                name = cursor.readString();
+                cursor.expect(':');
+                values.put(name, cursor.readValue());
+            } while (cursor.consume(','));
+            cursor.expect('}');
+        }
+        if (!cursor.atEnd()) {
+            throw malformed("unexpected content after the object");
+        }
+        return toBook(values);
+    }
+
+    /**
+     * Builds a book from the values of its fields.
+     * Missing text fields are empty, missing numbers are 0 and the acquired volumes counter is the number of acquired volumes.
+     * @param values The values by field name, numbers being strings, longs or decimals.
+     * @return The book.
+     * @throws IOException If the ISBN is missing or a number is malformed.
+     */
+    private Book toBook(Map<String, Object> values) throws IOException {
+
+        List<Integer> volumes = new ArrayList<>();
+        Object acquired = values.get("acquiredVolumes");
+
+        if (text(values, "isbn").isEmpty()) {
+            throw malformed("missing isbn");
+        }
+        if (acquired instanceof List) {
+            for (Object volume : (List<?>) acquired) {
+                volumes.add(number(volume, "acquiredVolumes"));
+            }
+        } else if (acquired != null) {
+            throw malformed("acquiredVolumes is not a list");
+        }
+        return new Book(text(values, "isbn"), text(values, "title"), text(values, "author"),
+                number(values.get("startYear"), "startYear"), number(values.get("endYear"), "endYear"),
+                text(values, "genre"), text(values, "magazine"), text(values, "publisher"),
+                number(values.get("editionYear"), "editionYear"), number(values.get("totalVolumes"), "totalVolumes"),
+                volumes.size(), volumes);
+    }
+
+    private static String text(Map<String, Object> values, String field) {
+
+        Object value = values.get(field);
+        return value == null ? "" : value.toString();
+    }
+
+    private int number(Object value, String field) throws IOException {
+
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof Long) {
+            try {
+                return Math.toIntExact((Long) value);
+            } catch (ArithmeticException e) {
+                throw malformed(field + " is out of range: " + value);
+            }
+        }
+        if (value instanceof BigDecimal) {
+            return wholeNumber((BigDecimal) value, field);
+        }
+        return value.toString().isEmpty() ? 0 : parseInt(value.toString(), field);
+    }
+
+    private int parseInt(String value, String field) throws IOException {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            // A number with a fraction, an exponent or too many digits
+            try {
+                return wholeNumber(new BigDecimal(value), field);
+            } catch (NumberFormatException notNumber) {
+                throw malformed(field + " is not a number: " + value);
+            }
+        }
+    }
+
+    private int wholeNumber(BigDecimal value, String field) throws IOException {
+
+        if (value.signum() != 0 && value.stripTrailingZeros().scale() > 0) {
+            throw malformed(field + " is not a whole number: " + value);
+        }
+        try {
+            return value.intValueExact();
+        } catch (ArithmeticException e) {
+            throw malformed(field + " is out of range: " + value);
+        }
+    }
+
+    private IOException malformed(String message) {
+        return new IOException("malformed line " + lineNumber + ": " + message);
+    }
+
+    /**
+     * JsonCursor class
+     * It reads the tokens of a JSON line from left to right
+     */
+    private class JsonCursor {
+        private final String line;
+        private int position;
+
+        private JsonCursor(String line) {
+            this.line = line;
+        }
+
+        private void skipSpaces() {
+            while (position < line.length() && Character.isWhitespace(line.charAt(position))) {
+                position++;
+            }
+        }
+
+        private boolean atEnd() {
+            skipSpaces();
+            return position == line.length();
+        }
+
+        private boolean consume(char c) {
+            skipSpaces();
+            if (position < line.length() && line.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) throws IOException {
+            if (!consume(c)) {
+                throw malformed("expected '" + c + "' at column " + (position + 1));
+            }
+        }
+
+        /**
+         * Reads a string, a number, null, a boolean or an array of these values.
+         * @return The value: a String, a Long, a BigDecimal for a number with a fraction, an exponent or too many digits for a long,
+         * null, a Boolean or a List.
+         * @throws IOException If the value is malformed.
+         */
+        private Object readValue() throws IOException {
+
+            List<Object> list;
+            int start;
+
+            skipSpaces();
+            if (position == line.length()) {
+                throw malformed("missing value");
+            }
+            if (line.charAt(position) == '"') {
+                return readString();
+            }
+            if (consume('[')) {
+                list = new ArrayList<>();
+                if (!consume(']')) {
+                    do {
+                        list.add(readValue());
+                    } while (consume(','));
+                    expect(']');
+                }
+                return list;
+            }
+            for (String literal : new String[] {"null", "true", "false"}) {
+                if (line.startsWith(literal, position)) {
+                    position += literal.length();
+                    return literal.equals("null") ? null : Boolean.valueOf(literal);
+                }
+            }
+            start = position;
+            while (position < line.length() && "+-0123456789.eE".indexOf(line.charAt(position)) >= 0) {
+                position++;
+            }
+            try {
+                return Long.parseLong(line.substring(start, position));
+            } catch (NumberFormatException e) {
+                try {
+                    return new BigDecimal(line.substring(start, position));
+                } catch (NumberFormatException notNumber) {
+                    throw malformed("unexpected value at column " + (start + 1));
+                }
+            }
+        }
+
+        private String readString() throws IOException {
+
+            StringBuilder value = new StringBuilder();
+            char c;
+
+            expect('"');
+            while (position < line.length()) {
+                c = line.charAt(position++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (position == line.length()) {
+                    break;
+                }
+                c = line.charAt(position++);
+                switch (c) {
+                    case 'b': value.append('\b'); break;
+                    case 'f': value.append('\f'); break;
+                    case 'n': value.append('\n'); break;
+                    case 'r': value.append('\r'); break;
+                    case 't': value.append('\t'); break;
+                    case 'u':
+                        if (position + 4 > line.length()) {
+                            throw malformed("truncated escape at column " + position);
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(line.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw malformed("malformed escape at column " + position);
+                        }
+                        position += 4;
+                        break;
+                    default: value.append(c);
+                }
+            }
+            throw malformed("unterminated string");
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package librarySystem.book;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+
+/**
+ * Search criteria of the books, run by BookHandler.searchBooks and BookHandler.explain.
+ * A query is a predicate on a field, such as title("Naruto") or yearRange(START_YEAR, 1995, 2000), or a combination of
+ * queries with and and or. The title, author, genre, publisher and magazine are compared without case and accents,
+ * like the secondary indexes that answer them. A matching query tests the books with any predicate and has no index,
+ * so it is only used to filter the books found by the other criteria, or a scan of all the books when it is alone.
+ * Queries are immutable.
+ */
+public final class BookQuery {
+
+    /**
+     * Kind enum
+     * It lists the kinds of criteria of a query
+     */
+    enum Kind {
+        TITLE, AUTHOR, FACET, YEAR_RANGE, MATCHING, AND, OR
+    }
+
+    private final Kind kind;
+    private final String value;
+    private final BookHandler.Facet facet;
+    private final BookHandler.YearField yearField;
+    private final int from;
+    private final int to;
+    private final Predicate<Book> predicate;
+    private final List<BookQuery> children;
+
+    private BookQuery(Kind kind, String value, BookHandler.Facet facet, BookHandler.YearField yearField, int from, int to,
+                      Predicate<Book> predicate, List<BookQuery> children) {
+        this.kind = kind;
+        this.value = value;
+        this.facet = facet;
+        this.yearField = yearField;
+        this.from = from;
+        this.to = to;
+        this.predicate = predicate;
+        this.children = children;
+    }
+
+    /**
+     * Creates a query for the books with a title.
+     * @param title The title.
+     * @return The query.
+     */
+    public static BookQuery title(String title) {
+        return new BookQuery(Kind.TITLE, title, null, null, 0, 0, null, Collections.emptyList());
+    }
+
+    /**
+     * Creates a query for the books of an author.
+     * @param author The author.
+     * @return The query.
+     */
+    public static BookQuery author(String author) {
+        return new BookQuery(Kind.AUTHOR, author, null, null, 0, 0, null, Collections.emptyList());
+    }
+
+    /**
+     * Creates a query for the books with a value of a facet: genre, publisher or magazine.
+     * @param facet The field.
+     * @param value The value.
+     * @return The query.
+     */
+    public static BookQuery facet(BookHandler.Facet facet, String value) {
+        return new BookQuery(Kind.FACET, value, facet, null, 0, 0, null, Collections.emptyList());
+    }
+
+    public static BookQuery genre(String genre) {
+        return facet(BookHandler.Facet.GENRE, genre);
+    }
+
+    public static BookQuery publisher(String publisher) {
+        return facet(BookHandler.Facet.PUBLISHER, publisher);
+    }
+
+    public static BookQuery magazine(String magazine) {
+        return facet(BookHandler.Facet.MAGAZINE, magazine);
+    }
+
+    /**
+     * Creates a query for the books with a year in a range.
+     * @param field The year: start year, end year or edition year.
+     * @param from The first year of the range.
+     * @param to The last year of the range, included.
+     * @return The query.
+     */
+    public static BookQuery yearRange(BookHandler.YearField field, int from, int to) {
+        return new BookQuery(Kind.YEAR_RANGE, null, null, field, from, to, null, Collections.emptyList());
+    }
+
+    /**
+     * Creates a query for the books accepted by a predicate, which no index can answer.
+     * @param predicate The predicate.
+     * @return The query.
+     */
+    public static BookQuery matching(Predicate<Book> predicate) {
+        return new BookQuery(Kind.MATCHING, null, null, null, 0, 0, predicate, Collections.emptyList());
+    }
+
+    /**
+     * Creates a query for the books matching all the queries.
+     * @param queries The queries, at least one.
+     * @return The query.
+     */
+    public static BookQuery and(BookQuery... queries) {
+        return combine(Kind.AND, queries);
+    }
+
+    /**
+     * Creates a query for the books matching at least one of the queries.
+     * @param queries The queries, at least one.
+     * @return The query.
+     */
+    public static BookQuery or(BookQuery... queries) {
+        return combine(Kind.OR, queries);
+    }
+
+    public BookQuery and(BookQuery other) {
+        return and(this, other);
+    }
+
+    public BookQuery or(BookQuery other) {
+        return or(this, other);
+    }
+
+    /**
+     * Checks if a book matches the query, reading its fields instead of the indexes.
+     * @param book The book.
+     * @return True if the book matches, false otherwise.
+     */
+    public boolean test(Book book) {
+
+        int year;
+
+        switch (kind) {
+            case TITLE:
+                return TextAnalyzer.fold(book.getTitle()).equals(TextAnalyzer.fold(value));
+            case AUTHOR:
+                return TextAnalyzer.fold(book.getAuthor()).equals(TextAnalyzer.fold(value));
+            case FACET:
+                return TextAnalyzer.fold(facet.keyOf(book)).equals(TextAnalyzer.fold(value));
+            case YEAR_RANGE:
+                year = yearField.yearOf(book);
+                return year >= from && year <= to;
+            case MATCHING:
+                return predicate.test(book);
+            case AND:
+                for (BookQuery child : children) {
+                    if (!child.test(book)) {
+                        return false;
+                    }
+                }
+                return true;
+            default:
+                for (BookQuery child : children) {
+                    if (child.test(book)) {
+                        return true;
+                    }
+                }
+                return false;
+        }
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+
+    String getValue() {
+        return value;
+    }
+
+    BookHandler.Facet getFacet() {
+        return facet;
+    }
+
+    BookHandler.YearField getYearField() {
+        return yearField;
+    }
+
+    int getFrom() {
+        return from;
+    }
+
+    int getTo() {
+        return to;
+    }
+
+    List<BookQuery> getChildren() {
+        return children;
+    }
+
+    /**
+     * Describes the criterion of the query, without its children.
+     * @return The description, such as title = "Naruto" or AND.
+     */
+    @Override
+    public String toString() {
+        switch (kind) {
+            case TITLE:
+                return "title = \"" + value + "\"";
+            case AUTHOR:
+                return "author = \"" + value + "\"";
+            case FACET:
+                return facet.name().toLowerCase(Locale.ROOT) + " = \"" + value + "\"";
+            case YEAR_RANGE:
+                return yearField.name().toLowerCase(Locale.ROOT) + " between " + from + " and " + to;
+            case MATCHING:
+                return "matching predicate";
+            default:
+                return kind.name();
+        }
+    }
+
+    private static BookQuery combine(Kind kind, BookQuery[] queries) {
+
+        List<BookQuery> children = new ArrayList<>();
+
+        if (queries.length == 0) {
+            throw new IllegalArgumentException("a combination needs at least one query");
+        }
+        for (BookQuery query : queries) {
+            // A nested combination of the same kind is flattened, so and(and(a, b), c) is planned as and(a, b, c)
+            if (query.kind == kind) {
+                children.addAll(query.children);
+            } else {
+                children.add(query);
+            }
+        }
+        return new BookQuery(kind, null, null, null, 0, 0, null, Collections.unmodifiableList(children));
+    }
+}
@@ -0,0 +1,43 @@
+package librarySystem.book;
+
+/**
+ * Completion class
+ * It represents a key suggested for a prefix typed by the user
+ * - key: Title, author, genre or last name
+ * - count: Number of books or patrons with the key
+ */
+public class Completion {
+    private final String key;
+    private final int count;
+
+    /**
+     * Constructor
+     * @param key key
+     * @param count count
+     */
+    public Completion(String key, int count) {
+        this.key = key;
+        this.count = count;
+    }
+
+    /**
+     * Get the key
+     * @return Key
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Get the count
+     * @return Count
+     */
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return key + " (" + count + ")";
+    }
+}
@@ -0,0 +1,205 @@
+package librarySystem.book;
+
+import librarySystem.storage.RoaringBitmap;
+
+import java.util.*;
+
+/**
+ * Bitmap index of the fields with few distinct values (genre, publisher and magazine), for the faceted filtering of the books.
+ * Each book gets an ordinal, a small integer, the first time the index sees its ISBN, and each value of a field has a
+ * RoaringBitmap of the ordinals of its books, so a filter such as "genre Shonen and publisher Shueisha but not magazine Jump"
+ * is computed with the and, or and andNot methods of the bitmaps, without reading the books or their secondary indexes.
+ * The ordinal of an ISBN is never given to another ISBN, so a bitmap taken from the index keeps its meaning after the
+ * book is deleted, the deleted books being left out when the bitmap is turned back into ISBNs.
+ * The values are compared without case and accents, like the keys of SecondayIndexManager.
+ * The index is kept in memory only and is built from the secondary indexes when the handler is created.
+ * The index is not synchronized, its owner must lock it.
+ */
+public class FacetIndex {
+
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final List<String> isbnsByOrdinal = new ArrayList<>();
+    private final RoaringBitmap allBooks = new RoaringBitmap();
+    private final Map<BookHandler.Facet, Map<String, RoaringBitmap>> bitmaps = new EnumMap<>(BookHandler.Facet.class);
+    private final Map<BookHandler.Facet, Map<String, String>> displayValues = new EnumMap<>(BookHandler.Facet.class);
+    private final Map<BookHandler.Facet, List<String>> valuesByOrdinal = new EnumMap<>(BookHandler.Facet.class);
+
+    /**
+     * Creates a new empty FacetIndex object.
+     */
+    public FacetIndex() {
+        for (BookHandler.Facet facet : BookHandler.Facet.values()) {
+            bitmaps.put(facet, new HashMap<>());
+            displayValues.put(facet, new HashMap<>());
+            valuesByOrdinal.put(facet, new ArrayList<>());
+        }
+    }
+
+    /**
+     * Sets the value of a field of a book, replacing its previous value.
+     * @param facet The field.
+     * @param isbn The ISBN of the book.
+     * @param value The value of the field.
+     */
+    public void set(BookHandler.Facet facet, String isbn, String value) {
+
+        int ordinal = ordinalOf(isbn);
+        String folded = TextAnalyzer.fold(value);
+        List<String> values = valuesByOrdinal.get(facet);
+
+        if (folded.equals(values.get(ordinal))) {
+            allBooks.add(ordinal);
+            return;
+        }
+        clear(facet, ordinal);
+        bitmaps.get(facet).computeIfAbsent(folded, key -> new RoaringBitmap()).add(ordinal);
+        displayValues.get(facet).putIfAbsent(folded, value);
+        values.set(ordinal, folded);
+        allBooks.add(ordinal);
+    }
+
+    /**
+     * Removes a book from the bitmaps of all the fields. Nothing is done if the book is not in the index.
+     * @param isbn The ISBN of the book.
+     */
+    public void remove(String isbn) {
+
+        Integer ordinal = ordinals.get(isbn);
+
+        if (ordinal == null) {
+            return;
+        }
+        for (BookHandler.Facet facet : BookHandler.Facet.values()) {
+            clear(facet, ordinal);
+        }
+        allBooks.remove(ordinal);
+    }
+
+    /**
+     * Retrieves the books with a value of a field.
+     * @param facet The field.
+     * @param value The value, compared without case and accents.
+     * @return A copy of the bitmap of the ordinals of the books, empty if no book has the value.
+     */
+    public RoaringBitmap get(BookHandler.Facet facet, String value) {
+
+        RoaringBitmap bitmap = bitmaps.get(facet).get(TextAnalyzer.fold(value));
+
+        return bitmap == null ? new RoaringBitmap() : bitmap.copy();
+    }
+
+    /**
+     * Counts the books with a value of a field, without copying their bitmap.
+     * @param facet The field.
+     * @param value The value, compared without case and accents.
+     * @return The number of books.
+     */
+    public int cardinality(BookHandler.Facet facet, String value) {
+
+        RoaringBitmap bitmap = bitmaps.get(facet).get(TextAnalyzer.fold(value));
+
+        return bitmap == null ? 0 : bitmap.cardinality();
+    }
+
+    /**
+     * Turns ISBNs into a bitmap of their ordinals, to combine the books found by another index with the bitmaps.
+     * @param isbns The ISBNs of the books.
+     * @return The bitmap of the ordinals of the books in the index. The ISBNs not in the index are skipped.
+     */
+    public RoaringBitmap bitmapOf(Collection<String> isbns) {
+
+        RoaringBitmap bitmap = new RoaringBitmap();
+        Integer ordinal;
+
+        for (String isbn : isbns) {
+            ordinal = ordinals.get(isbn);
+            if (ordinal != null && allBooks.contains(ordinal)) {
+                bitmap.add(ordinal);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Retrieves all the books of the index, the complement of a bitmap being computed with allBooks().andNot(bitmap).
+     * @return A copy of the bitmap of the ordinals of all the books.
+     */
+    public RoaringBitmap allBooks() {
+        return allBooks.copy();
+    }
+
+    /**
+     * Counts the books of each value of a field among the books of a filter, for the counts shown next to the facets.
+     * @param facet The field.
+     * @param filter The ordinals of the books to count.
+     * @return The values with at least one book, as first seen by the index, mapped to their number of books, in folded value order.
+     */
+    public Map<String, Integer> count(BookHandler.Facet facet, RoaringBitmap filter) {
+
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        List<String> foldedValues = new ArrayList<>(bitmaps.get(facet).keySet());
+        int count;
+
+        Collections.sort(foldedValues);
+        for (String folded : foldedValues) {
+            count = bitmaps.get(facet).get(folded).and(filter).cardinality();
+            if (count > 0) {
+                counts.put(displayValues.get(facet).get(folded), count);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Retrieves the ISBNs of the books of a bitmap.
+     * @param bitmap The ordinals of the books.
+     * @return The ISBNs of the books still in the index, in ordinal order.
+     */
+    public List<String> isbnsOf(RoaringBitmap bitmap) {
+
+        List<String> isbns = new ArrayList<>();
+
+        bitmap.forEach(ordinal -> {
+            if (ordinal < isbnsByOrdinal.size() && allBooks.contains(ordinal)) {
+                isbns.add(isbnsByOrdinal.get(ordinal));
+            }
+        });
+        return isbns;
+    }
+
+    private int ordinalOf(String isbn) {
+
+        Integer ordinal = ordinals.get(isbn);
+
+        if (ordinal == null) {
+            ordinal = isbnsByOrdinal.size();
+            ordinals.put(isbn, ordinal);
+            isbnsByOrdinal.add(isbn);
+            for (List<String> values : valuesByOrdinal.values()) {
+                values.add(null);
+            }
+        }
+        return ordinal;
+    }
+
+    /**
+     * Removes a book from the bitmap of its value of a field, dropping the bitmap when it has no book left.
+     * @param facet The field.
+     * @param ordinal The ordinal of the book.
+     */
+    private void clear(BookHandler.Facet facet, int ordinal) {
+
+        String folded = valuesByOrdinal.get(facet).set(ordinal, null);
+        RoaringBitmap bitmap;
+
+        if (folded == null) {
+            return;
+        }
+        bitmap = bitmaps.get(facet).get(folded);
+        bitmap.remove(ordinal);
+        if (bitmap.isEmpty()) {
+            bitmaps.get(facet).remove(folded);
+            displayValues.get(facet).remove(folded);
+        }
+    }
+}
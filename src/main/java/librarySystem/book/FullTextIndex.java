@@ -0,0 +1,650 @@
+package librarySystem.book;
+
+import librarySystem.storage.AtomicFileWriter;
+import librarySystem.storage.DeltaLog;
+
+import java.io.*;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Full-text index of the words of a text of the books, used for the titles.
+ * The texts are split into folded words by TextAnalyzer, and each book gets an ordinal, a number given in the order the books are added.
+ * For each word, the index keeps a posting list with the ordinals of the books containing the word and the number of times it appears.
+ * A posting list is compressed: each ordinal is stored as its difference with the previous ordinal, and the differences and counts
+ * are stored as variable-length integers of 7 bits per byte, so most postings take 2 bytes.
+ * - Adding a book gives it a new ordinal, larger than all the others, so its postings are appended at the end of the lists.
+ *   Adding a book with the words it already has changes nothing, so replaying a log over a base file that has its changes
+ *   does not give the books new ordinals.
+ * - Removing a book marks its ordinal as deleted, and the postings of the deleted ordinals are skipped by the searches.
+ *   Updating a text removes the book and adds it again.
+ * - When more than a quarter of the ordinals are deleted, the posting lists are rewritten without them and the ordinals are renumbered.
+ * A search returns the books containing all the words (ALL) or any of the words (ANY), ranked by their BM25 score,
+ * which favors the words that are rare among the books and the short texts.
+ * The index is stored like the secondary indexes: a base file with the ordinals and the compressed posting lists,
+ * and a log file, with the name of the index followed by ".log", with the additions and removals made after the base file was written.
+ * If the base file cannot be read, the index is emptied along with its log, which only holds the changes made after the base file,
+ * and the owner of the index adds the texts again from its data.
+ */
+public class FullTextIndex {
+
+    /**
+     * Mode enum
+     * It lists how the words of a search are combined
+     * - ALL: the books must contain every word
+     * - ANY: the books must contain at least one word
+     */
+    public enum Mode {
+        ALL, ANY
+    }
+
+    private static final int MAGIC = 0x46545832; // "FTX2"
+    private static final int LEGACY_MAGIC = 0x46545831; // "FTX1", without the hashes of the words
+    private static final int COMPACTION_THRESHOLD = 1000;
+    private static final char ADD = '+';
+    private static final char REMOVE = '-';
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "full-text-index-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String filename;
+    private final Map<String, Postings> postings = new HashMap<>();
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final List<String> isbns = new ArrayList<>();
+    private int[] lengths = new int[1024];
+    private int[] hashes = new int[1024];
+    private long totalLength;
+    private int deletedCount;
+    private DeltaLog log;
+    private boolean compacting;
+
+    /**
+     * Postings class
+     * It represents the compressed posting list of a word
+     * - bytes: Differences of the ordinals and counts, as variable-length integers
+     * - size: Number of bytes used in the array
+     * - count: Number of postings, including the deleted ordinals
+     * - lastOrdinal: Last ordinal of the list, the base of the next difference
+     * The bytes before size are never changed, so a copy of the fields is a snapshot of the list.
+     */
+    private static class Postings {
+        private byte[] bytes;
+        private int size;
+        private int count;
+        private int lastOrdinal = -1;
+
+        private Postings(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        private void add(int ordinal, int frequency) {
+            if (size + 10 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(16, bytes.length + (bytes.length >> 1) + 10));
+            }
+            size = writeVarInt(bytes, size, ordinal - lastOrdinal);
+            size = writeVarInt(bytes, size, frequency);
+            lastOrdinal = ordinal;
+            count++;
+        }
+    }
+
+    /**
+     * Cursor class
+     * It reads the postings of a list in ordinal order
+     * - ordinal: Ordinal of the current posting, Integer.MAX_VALUE after the last one
+     * - frequency: Number of times the word appears in the book of the current posting
+     */
+    private static class Cursor {
+        private final byte[] bytes;
+        private final int size;
+        private int position;
+        private int ordinal = -1;
+        private int frequency;
+
+        private Cursor(Postings list) {
+            bytes = list.bytes;
+            size = list.size;
+            next();
+        }
+
+        private void next() {
+
+            int value = 0;
+
+            if (position >= size) {
+                ordinal = Integer.MAX_VALUE;
+                return;
+            }
+            for (int shift = 0; ; shift += 7) {
+                value |= (bytes[position] & 0x7F) << shift;
+                if ((bytes[position++] & 0x80) == 0) {
+                    break;
+                }
+            }
+            ordinal += value;
+            frequency = 0;
+            for (int shift = 0; ; shift += 7) {
+                frequency |= (bytes[position] & 0x7F) << shift;
+                if ((bytes[position++] & 0x80) == 0) {
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Moves to the first posting with an ordinal greater than or equal to the target.
+         * @param target The ordinal to reach.
+         */
+        private void advance(int target) {
+            while (ordinal < target) {
+                next();
+            }
+        }
+    }
+
+    /**
+     * Creates a new FullTextIndex object.
+     * The constructor loads the base file and replays the log file by calling the loadIndex method.
+     * @param filename The name of the index file.
+     */
+    public FullTextIndex(String filename) {
+        this.filename = filename;
+        loadIndex();
+    }
+
+    /**
+     * Loads the index into memory.
+     * The method reads the base file and then applies the operations of the log file.
+     * If a previous compaction did not finish, the method finishes it.
+     * If the base file cannot be read, the method deletes the log files and writes an empty base file,
+     * so the index is empty until the texts are added again.
+     */
+    private void loadIndex() {
+
+        AtomicFileWriter.deleteStaleTempFiles(Paths.get(filename));
+        try (DataInputStream indexFile = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+            readBaseFile(indexFile);
+        } catch (FileNotFoundException e) {
+            System.out.println("File not found in loadIndex method, creating new file...");
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Error in loadIndex : " + e.getMessage() + ", the index must be rebuilt");
+            postings.clear();
+            ordinals.clear();
+            isbns.clear();
+            totalLength = 0;
+            deletedCount = 0;
+            new File(filename + ".log").delete();
+            new File(filename + ".log.old").delete();
+            try {
+                writeSnapshot().run();
+            } catch (UncheckedIOException writeError) {
+                System.out.println("Error in loadIndex : " + writeError.getCause().getMessage());
+            }
+        }
+
+        try {
+            log = new DeltaLog(filename + ".log");
+            log.replay((operation, text, isbn) -> {
+                if (operation == ADD) {
+                    index(isbn, text);
+                } else {
+                    unindex(isbn);
+                }
+            });
+            if (log.hasRotated()) {
+                writeSnapshot().run();
+                log.deleteRotated();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error opening the log of " + filename, e);
+        }
+    }
+
+    /**
+     * Adds the text of a book to the index, replacing its previous text.
+     * @param isbn The ISBN of the book.
+     * @param text The text of the book.
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized void add(String isbn, String text) throws IOException {
+
+        log.append(ADD, text, isbn);
+        index(isbn, text);
+        compactIfNeeded();
+    }
+
+    /**
+     * Adds the texts of many books to the index.
+     * The method appends all the entries to the log file with a single flush.
+     * @param entries The entries, with the text as key.
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized void addAll(Collection<KeyIndexEntry> entries) throws IOException {
+
+        List<String> texts = new ArrayList<>(entries.size());
+        List<String> entryIsbns = new ArrayList<>(entries.size());
+
+        for (KeyIndexEntry entry : entries) {
+            texts.add(entry.getKey());
+            entryIsbns.add(entry.getIsbn());
+        }
+        log.appendAll(ADD, texts, entryIsbns);
+        for (KeyIndexEntry entry : entries) {
+            index(entry.getIsbn(), entry.getKey());
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * Removes a book from the index.
+     * @param isbn The ISBN of the book.
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized void remove(String isbn) throws IOException {
+
+        if (!ordinals.containsKey(isbn)) {
+            return;
+        }
+        log.append(REMOVE, "", isbn);
+        unindex(isbn);
+        compactIfNeeded();
+    }
+
+    /**
+     * Checks if the index has no book.
+     * @return True if no book is indexed, false otherwise.
+     */
+    public synchronized boolean isEmpty() {
+        return ordinals.isEmpty();
+    }
+
+    /**
+     * Searches the books whose text contains the words of a query, ranked by BM25 score.
+     * - ALL: the posting lists are intersected, starting from the shortest one, and the other lists are only read up to its end.
+     * - ANY: the scores of the postings of every list are added in an array indexed by ordinal.
+     * The books with the same score are returned in the order they were added.
+     * @param query The words to search for.
+     * @param mode ALL to require every word, ANY to require at least one.
+     * @param limit The maximum number of books to return.
+     * @return The ISBNs of the best books, best first.
+     */
+    public synchronized List<String> search(String query, Mode mode, int limit) {
+
+        List<Postings> lists = new ArrayList<>();
+        List<Double> idfs = new ArrayList<>();
+        Postings list;
+        int liveCount = isbns.size() - deletedCount;
+        double averageLength = liveCount == 0 ? 1 : Math.max(1, (double) totalLength / liveCount);
+        PriorityQueue<double[]> best;
+        List<String> result = new ArrayList<>();
+
+        for (String word : new LinkedHashSet<>(TextAnalyzer.tokenize(query))) {
+            list = postings.get(word);
+            if (list == null) {
+                if (mode == Mode.ALL) {
+                    return result;
+                }
+                continue;
+            }
+            lists.add(list);
+            idfs.add(Math.log(1 + Math.max(0, liveCount - list.count + 0.5) / (list.count + 0.5)));
+        }
+        if (lists.isEmpty() || limit <= 0) {
+            return result;
+        }
+
+        // Min-heap of (score, ordinal): the worst of the best books is on top
+        best = new PriorityQueue<>((a, b) -> a[0] != b[0] ? Double.compare(a[0], b[0]) : Double.compare(b[1], a[1]));
+        if (mode == Mode.ALL) {
+            searchAll(lists, idfs, averageLength, best, limit);
+        } else {
+            searchAny(lists, idfs, averageLength, best, limit);
+        }
+        while (!best.isEmpty()) {
+            result.add(isbns.get((int) best.poll()[1]));
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Closes the log file, after waiting for a compaction already running.
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized void close() throws IOException {
+
+        while (compacting) {
+            try {
+                wait(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for the compaction of " + filename);
+            }
+        }
+        log.close();
+    }
+
+    /**
+     * Forces the log file to the storage device, so the changes made so far survive a power loss.
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized void force() throws IOException {
+        log.force();
+    }
+
+    /**
+     * Intersects the posting lists, from the shortest one, and keeps the best books.
+     */
+    private void searchAll(List<Postings> lists, List<Double> idfs, double averageLength, PriorityQueue<double[]> best, int limit) {
+
+        Integer[] order = new Integer[lists.size()];
+        Cursor[] cursors = new Cursor[lists.size()];
+        Cursor lead;
+        int ordinal;
+        double score;
+        boolean match;
+
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> lists.get(i).count));
+        for (int i = 0; i < order.length; i++) {
+            cursors[i] = new Cursor(lists.get(order[i]));
+        }
+        lead = cursors[0];
+        while (lead.ordinal != Integer.MAX_VALUE) {
+            ordinal = lead.ordinal;
+            match = true;
+            for (int i = 1; i < cursors.length && match; i++) {
+                cursors[i].advance(ordinal);
+                if (cursors[i].ordinal == Integer.MAX_VALUE) {
+                    return;
+                }
+                match = cursors[i].ordinal == ordinal;
+            }
+            if (match && isbns.get(ordinal) != null) {
+                score = 0;
+                for (int i = 0; i < cursors.length; i++) {
+                    score += score(idfs.get(order[i]), cursors[i].frequency, lengths[ordinal], averageLength);
+                }
+                offer(best, score, ordinal, limit);
+            }
+            lead.next();
+        }
+    }
+
+    /**
+     * Adds the scores of all the posting lists by ordinal and keeps the best books.
+     */
+    private void searchAny(List<Postings> lists, List<Double> idfs, double averageLength, PriorityQueue<double[]> best, int limit) {
+
+        double[] scores = new double[isbns.size()];
+        Cursor cursor;
+
+        for (int i = 0; i < lists.size(); i++) {
+            for (cursor = new Cursor(lists.get(i)); cursor.ordinal != Integer.MAX_VALUE; cursor.next()) {
+                scores[cursor.ordinal] += score(idfs.get(i), cursor.frequency, lengths[cursor.ordinal], averageLength);
+            }
+        }
+        for (int ordinal = 0; ordinal < scores.length; ordinal++) {
+            if (scores[ordinal] > 0 && isbns.get(ordinal) != null) {
+                offer(best, scores[ordinal], ordinal, limit);
+            }
+        }
+    }
+
+    private static double score(double idf, int frequency, int length, double averageLength) {
+        return idf * frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * length / averageLength));
+    }
+
+    private static void offer(PriorityQueue<double[]> best, double score, int ordinal, int limit) {
+        if (best.size() < limit) {
+            best.add(new double[] {score, ordinal});
+        } else if (score > best.peek()[0]) {
+            best.poll();
+            best.add(new double[] {score, ordinal});
+        }
+    }
+
+    /**
+     * Adds a book to the in-memory index with a new ordinal, removing its previous ordinal.
+     * If the book is already indexed with the same words, the method keeps its ordinal and changes nothing.
+     * @param isbn The ISBN of the book.
+     * @param text The text of the book.
+     */
+    private void index(String isbn, String text) {
+
+        List<String> words = TextAnalyzer.tokenize(text);
+        Map<String, Integer> frequencies = new LinkedHashMap<>();
+        Integer previous = ordinals.get(isbn);
+        int ordinal = isbns.size();
+
+        if (previous != null && lengths[previous] == words.size() && hashes[previous] == words.hashCode()) {
+            return;
+        }
+        unindex(isbn);
+        for (String word : words) {
+            frequencies.merge(word, 1, Integer::sum);
+        }
+        isbns.add(isbn);
+        ordinals.put(isbn, ordinal);
+        if (ordinal == lengths.length) {
+            lengths = Arrays.copyOf(lengths, lengths.length * 2);
+            hashes = Arrays.copyOf(hashes, hashes.length * 2);
+        }
+        lengths[ordinal] = words.size();
+        hashes[ordinal] = words.hashCode();
+        totalLength += words.size();
+        for (Map.Entry<String, Integer> frequency : frequencies.entrySet()) {
+            postings.computeIfAbsent(frequency.getKey(), word -> new Postings(4)).add(ordinal, frequency.getValue());
+        }
+    }
+
+    /**
+     * Marks the ordinal of a book as deleted.
+     * @param isbn The ISBN of the book.
+     */
+    private void unindex(String isbn) {
+
+        Integer ordinal = ordinals.remove(isbn);
+
+        if (ordinal != null) {
+            isbns.set(ordinal, null);
+            totalLength -= lengths[ordinal];
+            deletedCount++;
+        }
+    }
+
+    /**
+     * Rewrites the posting lists without the deleted ordinals, renumbering the ordinals in the same order.
+     */
+    private void purgeDeleted() {
+
+        int[] renumbered = new int[isbns.size()];
+        List<String> liveIsbns = new ArrayList<>(isbns.size() - deletedCount);
+        int[] liveLengths = new int[Math.max(1024, isbns.size() - deletedCount)];
+        int[] liveHashes = new int[liveLengths.length];
+        Map<String, Postings> livePostings = new HashMap<>();
+        Postings list;
+        Cursor cursor;
+
+        totalLength = 0;
+        for (int ordinal = 0; ordinal < isbns.size(); ordinal++) {
+            renumbered[ordinal] = -1;
+            if (isbns.get(ordinal) != null) {
+                renumbered[ordinal] = liveIsbns.size();
+                liveLengths[liveIsbns.size()] = lengths[ordinal];
+                liveHashes[liveIsbns.size()] = hashes[ordinal];
+                totalLength += lengths[ordinal];
+                ordinals.put(isbns.get(ordinal), liveIsbns.size());
+                liveIsbns.add(isbns.get(ordinal));
+            }
+        }
+        for (Map.Entry<String, Postings> entry : postings.entrySet()) {
+            list = null;
+            for (cursor = new Cursor(entry.getValue()); cursor.ordinal != Integer.MAX_VALUE; cursor.next()) {
+                if (renumbered[cursor.ordinal] >= 0) {
+                    if (list == null) {
+                        list = new Postings(Math.min(entry.getValue().size, 64));
+                    }
+                    list.add(renumbered[cursor.ordinal], cursor.frequency);
+                }
+            }
+            if (list != null) {
+                livePostings.put(entry.getKey(), list);
+            }
+        }
+        postings.clear();
+        postings.putAll(livePostings);
+        isbns.clear();
+        isbns.addAll(liveIsbns);
+        lengths = liveLengths;
+        hashes = liveHashes;
+        deletedCount = 0;
+    }
+
+    /**
+     * Starts a background compaction if the log file reached the threshold.
+     * The method purges the deleted ordinals if there are too many, rotates the log file, and writes a snapshot
+     * of the index to the base file in the background. The rotated log is deleted once the base file is written.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void compactIfNeeded() throws IOException {
+
+        Runnable write;
+
+        if (compacting || log.size() < COMPACTION_THRESHOLD || !log.rotate()) {
+            return;
+        }
+        if (deletedCount * 4 > isbns.size()) {
+            purgeDeleted();
+        }
+        write = writeSnapshot();
+        compacting = true;
+        COMPACTOR.execute(() -> {
+            try {
+                write.run();
+                log.deleteRotated();
+            } catch (UncheckedIOException e) {
+                System.out.println("Error compacting " + filename + " : " + e.getCause().getMessage());
+            } finally {
+                synchronized (this) {
+                    compacting = false;
+                }
+            }
+        });
+    }
+
+    /**
+     * Takes a snapshot of the index, to be written to the base file while the index keeps changing.
+     * The posting lists are not copied, only their current size, since their first bytes never change.
+     * @return The task that writes the snapshot to the base file, throwing an UncheckedIOException if it fails.
+     */
+    private Runnable writeSnapshot() {
+
+        List<String> snapshotIsbns = new ArrayList<>(isbns);
+        int[] snapshotLengths = Arrays.copyOf(lengths, isbns.size());
+        int[] snapshotHashes = Arrays.copyOf(hashes, isbns.size());
+        List<String> words = new ArrayList<>(postings.keySet());
+        List<Postings> lists = new ArrayList<>(words.size());
+        Postings copy;
+
+        for (String word : words) {
+            copy = new Postings(0);
+            copy.bytes = postings.get(word).bytes;
+            copy.size = postings.get(word).size;
+            copy.count = postings.get(word).count;
+            copy.lastOrdinal = postings.get(word).lastOrdinal;
+            lists.add(copy);
+        }
+        return () -> {
+            try {
+                AtomicFileWriter.write(Paths.get(filename), indexFile -> {
+                    indexFile.writeInt(MAGIC);
+                    indexFile.writeInt(snapshotIsbns.size());
+                    for (int ordinal = 0; ordinal < snapshotIsbns.size(); ordinal++) {
+                        indexFile.writeBoolean(snapshotIsbns.get(ordinal) != null);
+                        indexFile.writeUTF(snapshotIsbns.get(ordinal) != null ? snapshotIsbns.get(ordinal) : "");
+                        indexFile.writeInt(snapshotLengths[ordinal]);
+                        indexFile.writeInt(snapshotHashes[ordinal]);
+                    }
+                    indexFile.writeInt(words.size());
+                    for (int i = 0; i < words.size(); i++) {
+                        indexFile.writeUTF(words.get(i));
+                        indexFile.writeInt(lists.get(i).count);
+                        indexFile.writeInt(lists.get(i).lastOrdinal);
+                        indexFile.writeInt(lists.get(i).size);
+                        indexFile.write(lists.get(i).bytes, 0, lists.get(i).size);
+                    }
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    /**
+     * Reads the base file into the in-memory index.
+     * A base file of the previous version has no hashes of the words, so the first replayed addition of each book gives it a new ordinal.
+     * @param indexFile The stream of the base file.
+     * @throws IOException If an I/O error occurs or the file is not a full-text index file.
+     */
+    private void readBaseFile(DataInputStream indexFile) throws IOException {
+
+        int magic = indexFile.readInt();
+        int count;
+        boolean live;
+        String isbn;
+        String word;
+        Postings list;
+
+        if (magic != MAGIC && magic != LEGACY_MAGIC) {
+            throw new IOException(filename + " is not a full-text index file");
+        }
+        count = indexFile.readInt();
+        lengths = new int[Math.max(1024, count)];
+        hashes = new int[lengths.length];
+        for (int ordinal = 0; ordinal < count; ordinal++) {
+            live = indexFile.readBoolean();
+            isbn = indexFile.readUTF();
+            lengths[ordinal] = indexFile.readInt();
+            if (magic == MAGIC) {
+                hashes[ordinal] = indexFile.readInt();
+            }
+            if (live) {
+                totalLength += lengths[ordinal];
+                isbns.add(isbn);
+                ordinals.put(isbn, ordinal);
+            } else {
+                isbns.add(null);
+                deletedCount++;
+            }
+        }
+        count = indexFile.readInt();
+        for (int i = 0; i < count; i++) {
+            word = indexFile.readUTF();
+            list = new Postings(0);
+            list.count = indexFile.readInt();
+            list.lastOrdinal = indexFile.readInt();
+            list.size = indexFile.readInt();
+            list.bytes = new byte[list.size];
+            indexFile.readFully(list.bytes);
+            postings.put(word, list);
+        }
+    }
+
+    private static int writeVarInt(byte[] bytes, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+        return position;
+    }
+}
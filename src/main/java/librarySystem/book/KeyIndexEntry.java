@@ -1,14 +1,18 @@
 package librarySystem.book;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * TitleIndexEntry class
  * It represents a title index entry object with its attributes
  * - key: Title, author, or genre
  * - isbn: International Standard Book Number
+ * - collationKey: Key folded by TextAnalyzer, in UTF-8, compared byte by byte to sort the entries without case and accents
  */
 public class KeyIndexEntry {
     private final String key;
     private final String isbn;
+    private final byte[] collationKey;
 
     /**
      * Constructor
@@ -16,8 +20,28 @@ public class KeyIndexEntry {
      * @param isbn ISBN
      */
     public KeyIndexEntry(String key, String isbn) {
+        this(key, isbn, collationKeyOf(key));
+    }
+
+    /**
+     * Constructor with a collation key already computed, such as one read from an index file
+     * @param key key
+     * @param isbn ISBN
+     * @param collationKey Collation key of the key
+     */
+    public KeyIndexEntry(String key, String isbn, byte[] collationKey) {
         this.key = key;
         this.isbn = isbn;
+        this.collationKey = collationKey;
+    }
+
+    /**
+     * Computes the collation key of a key
+     * @param key key
+     * @return The folded key in UTF-8
+     */
+    public static byte[] collationKeyOf(String key) {
+        return TextAnalyzer.fold(key).getBytes(StandardCharsets.UTF_8);
     }
 
     /**
@@ -35,4 +59,12 @@ public class KeyIndexEntry {
     public String getIsbn() {
         return isbn;
     }
+
+    /**
+     * Get the collation key
+     * @return Collation key
+     */
+    public byte[] getCollationKey() {
+        return collationKey;
+    }
 }
@@ -0,0 +1,51 @@
+package librarySystem.book;
+
+import java.util.List;
+
+/**
+ * Page class
+ * It represents a page of the results of a paginated search or listing
+ * - items: Results of the page, in index order
+ * - nextCursor: Cursor to pass as the after argument to get the next page, or null if this page is the last one
+ * The cursor is the position of the last result in its index, so the next page starts right after it
+ * even if results were added or removed in between
+ * @param <T> The type of the results
+ */
+public class Page<T> {
+    private final List<T> items;
+    private final String nextCursor;
+
+    /**
+     * Constructor
+     * @param items results
+     * @param nextCursor cursor of the next page, null for the last page
+     */
+    public Page(List<T> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Get the results
+     * @return Results
+     */
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * Get the cursor of the next page
+     * @return Cursor, or null if there is no next page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Check if there is a next page
+     * @return True if there is a next page, false otherwise
+     */
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,273 @@
+package librarySystem.book;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Compact prefix tree of the keys of a secondary index, used to suggest the keys starting with a typed prefix.
+ * The keys are folded by TextAnalyzer, so the prefix matches without case and accents, and each edge of the tree holds
+ * a whole run of characters instead of one, so a key adds at most two nodes.
+ * Each node keeps the number of entries of its key and the largest number of entries in its subtree,
+ * so the most common completions of a prefix are found by visiting the best subtrees first, without reading the others.
+ * The tree is not synchronized, its owner must lock it.
+ */
+public class PrefixTrie {
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private final Node root = new Node("");
+
+    /**
+     * Node class
+     * It represents a node of the tree and the edge leading to it
+     * - label: Characters of the edge from the parent node
+     * - children: Child nodes, sorted by the first character of their label
+     * - count: Number of entries with the key ending at the node, 0 if no key ends there
+     * - maxCount: Largest count of the node and its descendants
+     * - key: Key as it was added, before folding, shown in the completions
+     */
+    private static class Node {
+        private String label;
+        private Node[] children = NO_CHILDREN;
+        private int count;
+        private int maxCount;
+        private String key;
+
+        private Node(String label) {
+            this.label = label;
+        }
+
+        private int childIndex(char first) {
+
+            int low = 0;
+            int high = children.length - 1;
+            int middle;
+
+            while (low <= high) {
+                middle = (low + high) >>> 1;
+                if (children[middle].label.charAt(0) < first) {
+                    low = middle + 1;
+                } else if (children[middle].label.charAt(0) > first) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -(low + 1);
+        }
+
+        private void insertChild(int position, Node child) {
+
+            Node[] grown = new Node[children.length + 1];
+
+            System.arraycopy(children, 0, grown, 0, position);
+            grown[position] = child;
+            System.arraycopy(children, position, grown, position + 1, children.length - position);
+            children = grown;
+        }
+
+        private void removeChild(int position) {
+
+            Node[] shrunk = new Node[children.length - 1];
+
+            System.arraycopy(children, 0, shrunk, 0, position);
+            System.arraycopy(children, position + 1, shrunk, position, children.length - position - 1);
+            children = shrunk;
+        }
+
+        private void updateMaxCount() {
+            maxCount = count;
+            for (Node child : children) {
+                maxCount = Math.max(maxCount, child.maxCount);
+            }
+        }
+    }
+
+    /**
+     * Candidate class
+     * It represents a key or a subtree waiting in the queue of a completion search
+     * - priority: Count of the key, or largest count of the subtree
+     * - node: Node of the key or root of the subtree
+     * - isKey: True for the key of the node, false for its subtree
+     */
+    private static class Candidate {
+        private final int priority;
+        private final Node node;
+        private final boolean isKey;
+
+        private Candidate(int priority, Node node, boolean isKey) {
+            this.priority = priority;
+            this.node = node;
+            this.isKey = isKey;
+        }
+    }
+
+    /**
+     * Adds an entry with a key.
+     * @param key The key of the entry.
+     */
+    public void add(String key) {
+
+        String folded = TextAnalyzer.fold(key);
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        Node child;
+        Node split;
+        int position = 0;
+        int index;
+        int common;
+
+        path.add(node);
+        while (position < folded.length()) {
+            index = node.childIndex(folded.charAt(position));
+            if (index < 0) {
+                child = new Node(folded.substring(position));
+                node.insertChild(-index - 1, child);
+                node = child;
+                path.add(node);
+                break;
+            }
+            child = node.children[index];
+            common = commonLength(child.label, folded, position);
+            if (common < child.label.length()) {
+                // Split the edge at the end of the common characters
+                split = new Node(child.label.substring(0, common));
+                child.label = child.label.substring(common);
+                split.children = new Node[] {child};
+                split.maxCount = child.maxCount;
+                node.children[index] = split;
+                child = split;
+            }
+            node = child;
+            path.add(node);
+            position += common;
+        }
+        node.count++;
+        node.key = key;
+        for (int i = path.size() - 1; i >= 0; i--) {
+            path.get(i).updateMaxCount();
+        }
+    }
+
+    /**
+     * Removes an entry with a key. Nothing is done if the key has no entry.
+     * @param key The key of the entry.
+     */
+    public void remove(String key) {
+
+        String folded = TextAnalyzer.fold(key);
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        Node parent;
+        Node child;
+        int position = 0;
+        int index;
+
+        path.add(node);
+        while (position < folded.length()) {
+            index = node.childIndex(folded.charAt(position));
+            if (index < 0 || !folded.startsWith(node.children[index].label, position)) {
+                return;
+            }
+            node = node.children[index];
+            path.add(node);
+            position += node.label.length();
+        }
+        if (node.count == 0) {
+            return;
+        }
+        node.count--;
+        for (int i = path.size() - 1; i > 0; i--) {
+            node = path.get(i);
+            parent = path.get(i - 1);
+            if (node.count == 0 && node.children.length == 0) {
+                parent.removeChild(parent.childIndex(node.label.charAt(0)));
+            } else if (node.count == 0 && node.children.length == 1) {
+                // Join the node with its only child
+                child = node.children[0];
+                child.label = node.label + child.label;
+                parent.children[parent.childIndex(node.label.charAt(0))] = child;
+            } else {
+                node.updateMaxCount();
+            }
+        }
+        root.updateMaxCount();
+    }
+
+    /**
+     * Retrieves the most common keys starting with a prefix.
+     * The method finds the node of the prefix and visits its subtree best first: a priority queue holds the subtrees by
+     * their largest count and the keys by their count, so a key leaves the queue only when no better key remains.
+     * @param prefix The prefix, compared without case and accents.
+     * @param limit The maximum number of completions.
+     * @return The completions, the most common first.
+     */
+    public List<Completion> complete(String prefix, int limit) {
+
+        String folded = TextAnalyzer.fold(prefix);
+        List<Completion> completions = new ArrayList<>();
+        PriorityQueue<Candidate> queue;
+        Candidate candidate;
+        Node node = root;
+        int position = 0;
+        int index;
+        int common;
+
+        while (position < folded.length()) {
+            index = node.childIndex(folded.charAt(position));
+            if (index < 0) {
+                return completions;
+            }
+            node = node.children[index];
+            common = commonLength(node.label, folded, position);
+            if (common < node.label.length() && position + common < folded.length()) {
+                return completions;
+            }
+            position += common;
+        }
+        if (limit <= 0 || node.maxCount == 0) {
+            return completions;
+        }
+
+        // The highest priority first, and the keys before the subtrees of the same priority
+        queue = new PriorityQueue<>((a, b) -> a.priority != b.priority ? Integer.compare(b.priority, a.priority)
+                : Boolean.compare(b.isKey, a.isKey));
+        queue.add(new Candidate(node.maxCount, node, false));
+        while (!queue.isEmpty() && completions.size() < limit) {
+            candidate = queue.poll();
+            node = candidate.node;
+            if (candidate.isKey) {
+                completions.add(new Completion(node.key, node.count));
+                continue;
+            }
+            if (node.count > 0) {
+                queue.add(new Candidate(node.count, node, true));
+            }
+            for (Node child : node.children) {
+                queue.add(new Candidate(child.maxCount, child, false));
+            }
+        }
+        return completions;
+    }
+
+    /**
+     * Removes all the keys.
+     */
+    public void clear() {
+        root.children = NO_CHILDREN;
+        root.count = 0;
+        root.maxCount = 0;
+    }
+
+    private static int commonLength(String label, String key, int position) {
+
+        int length = Math.min(label.length(), key.length() - position);
+        int common = 0;
+
+        while (common < length && label.charAt(common) == key.charAt(position + common)) {
+            common++;
+        }
+        return common;
+    }
+}
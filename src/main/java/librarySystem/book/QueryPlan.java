@@ -0,0 +1,111 @@
+package librarySystem.book;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Plan of a BookQuery chosen by the QueryPlanner, with the number of books estimated for each step before the query ran
+ * and the number of books actually found by it, as returned by BookHandler.explain.
+ * The root step fetches the books of the indexed steps, or scans all the books when no index applies, and its children
+ * are the steps of the criteria of the query, in the order they were evaluated.
+ */
+public class QueryPlan {
+
+    /**
+     * Access enum
+     * It lists how a step finds its books
+     * - INDEX: reads the ISBNs or the bitmap of a secondary index
+     * - INTERSECT: intersects the bitmaps of its indexed children, filtering the books with the others
+     * - UNION: unites the bitmaps of its children
+     * - FILTER: tests the books found by the other steps, its actual rows being the books that passed the test
+     * - FETCH: reads the books of its child from the data file, testing them again if a step was a filter
+     * - SCAN: reads all the books of the data file and tests them
+     */
+    public enum Access {
+        INDEX, INTERSECT, UNION, FILTER, FETCH, SCAN
+    }
+
+    private final BookQuery query;
+    private Access access;
+    private final long estimatedRows;
+    private long actualRows;
+    private final List<QueryPlan> children;
+    final double cost;
+
+    QueryPlan(BookQuery query, Access access, long estimatedRows, double cost, List<QueryPlan> children) {
+        this.query = query;
+        this.access = access;
+        this.estimatedRows = estimatedRows;
+        this.cost = cost;
+        this.children = children;
+    }
+
+    public BookQuery getQuery() {
+        return query;
+    }
+
+    public Access getAccess() {
+        return access;
+    }
+
+    public long getEstimatedRows() {
+        return estimatedRows;
+    }
+
+    public long getActualRows() {
+        return actualRows;
+    }
+
+    public List<QueryPlan> getChildren() {
+        return Collections.unmodifiableList(children);
+    }
+
+    void setAccess(Access access) {
+        this.access = access;
+    }
+
+    void setActualRows(long actualRows) {
+        this.actualRows = actualRows;
+    }
+
+    void addActualRow() {
+        actualRows++;
+    }
+
+    /**
+     * Collects the filter steps of the plan, to count the books that pass each of them.
+     * @param filters The list to add the filter steps to.
+     */
+    void collectFilters(List<QueryPlan> filters) {
+        if (access == Access.FILTER) {
+            filters.add(this);
+        }
+        for (QueryPlan child : children) {
+            child.collectFilters(filters);
+        }
+    }
+
+    /**
+     * Describes the plan, one step per line, the children indented under their parent.
+     * @return The description, such as INDEX title = "Naruto" (estimated 12 rows, actual 12 rows) for a step.
+     */
+    @Override
+    public String toString() {
+
+        StringBuilder text = new StringBuilder();
+
+        append(text, 0);
+        return text.toString();
+    }
+
+    private void append(StringBuilder text, int depth) {
+        text.append("  ".repeat(depth)).append(access);
+        if (access != Access.FETCH && access != Access.SCAN) {
+            text.append(' ').append(query);
+        }
+        text.append(" (estimated ").append(estimatedRows).append(" rows, actual ").append(actualRows).append(" rows)\n");
+        for (QueryPlan child : children) {
+            child.append(text, depth + 1);
+        }
+    }
+}
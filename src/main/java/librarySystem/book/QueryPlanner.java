@@ -0,0 +1,199 @@
+package librarySystem.book;
+
+import librarySystem.storage.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chooses how to run a BookQuery with the secondary indexes of BookHandler, and finds the books of the indexed criteria.
+ * The number of books of each criterion is estimated from the indexes without collecting the books:
+ * - A title or an author: the number of entries of the key in its SecondayIndexManager.
+ * - A genre, a publisher or a magazine: the number of books in the bitmap of the value in the FacetIndex.
+ * - A range of years: the number of books of each year of the range in the YearIndexManager.
+ * - A matching predicate: all the books, since it has no index.
+ * An AND is estimated assuming its criteria are independent, and an OR as the sum of its criteria.
+ * The criteria of an AND are evaluated from the most selective one, and each following indexed criterion is intersected
+ * with the books found so far only while walking its index costs less than reading the books it would remove, the others
+ * being kept as filters of the books read. An OR uses the indexes only if all its criteria have one.
+ * The books of the indexed criteria are combined as bitmaps of the FacetIndex ordinals, so no book is read before
+ * the final set of books is known. The planner is not synchronized, its owner must lock the indexes.
+ */
+class QueryPlanner {
+
+    private static final int FETCH_COST = 16; // Reading a book costs about as much as walking 16 index entries
+    private static final int BITMAP_WORD_BITS = 64;
+
+    private final SecondayIndexManager titleIndexManager;
+    private final SecondayIndexManager authorIndexManager;
+    private final Map<BookHandler.YearField, YearIndexManager> yearIndexManagers;
+    private final FacetIndex facetIndex;
+    private final long totalRows;
+
+    /**
+     * Creates a new QueryPlanner object.
+     * @param titleIndexManager The title index.
+     * @param authorIndexManager The author index.
+     * @param yearIndexManagers The year indexes.
+     * @param facetIndex The bitmaps of the genres, publishers and magazines.
+     * @param totalRows The number of books.
+     */
+    QueryPlanner(SecondayIndexManager titleIndexManager, SecondayIndexManager authorIndexManager,
+                 Map<BookHandler.YearField, YearIndexManager> yearIndexManagers, FacetIndex facetIndex, long totalRows) {
+        this.titleIndexManager = titleIndexManager;
+        this.authorIndexManager = authorIndexManager;
+        this.yearIndexManagers = yearIndexManagers;
+        this.facetIndex = facetIndex;
+        this.totalRows = totalRows;
+    }
+
+    /**
+     * Plans a query.
+     * @param query The query.
+     * @return The root step of the plan: FETCH if an index applies, SCAN otherwise.
+     */
+    QueryPlan plan(BookQuery query) {
+
+        QueryPlan step = planStep(query);
+        List<QueryPlan> children = new ArrayList<>();
+
+        children.add(step);
+        if (step.getAccess() == QueryPlan.Access.FILTER) {
+            return new QueryPlan(query, QueryPlan.Access.SCAN, step.getEstimatedRows(), totalRows, children);
+        }
+        return new QueryPlan(query, QueryPlan.Access.FETCH, step.getEstimatedRows(), step.cost, children);
+    }
+
+    /**
+     * Finds the books of the indexed steps of a plan.
+     * @param plan The root step of a plan with FETCH access.
+     * @return The bitmap of the books, which may contain books rejected by the filter steps.
+     */
+    RoaringBitmap evaluate(QueryPlan plan) {
+        return evaluateStep(plan.getChildren().get(0));
+    }
+
+    private QueryPlan planStep(BookQuery query) {
+
+        long estimate;
+        List<QueryPlan> children = new ArrayList<>();
+        List<QueryPlan> filters = new ArrayList<>();
+        double rows;
+        double cost;
+        boolean indexed;
+
+        switch (query.getKind()) {
+            case TITLE:
+                estimate = titleIndexManager.countByKey(query.getValue());
+                return new QueryPlan(query, QueryPlan.Access.INDEX, estimate, estimate, children);
+            case AUTHOR:
+                estimate = authorIndexManager.countByKey(query.getValue());
+                return new QueryPlan(query, QueryPlan.Access.INDEX, estimate, estimate, children);
+            case FACET:
+                estimate = facetIndex.cardinality(query.getFacet(), query.getValue());
+                return new QueryPlan(query, QueryPlan.Access.INDEX, estimate, 1 + estimate / BITMAP_WORD_BITS, children);
+            case YEAR_RANGE:
+                estimate = yearIndexManagers.get(query.getYearField()).countByRange(query.getFrom(), query.getTo());
+                return new QueryPlan(query, QueryPlan.Access.INDEX, estimate, estimate, children);
+            case MATCHING:
+                return new QueryPlan(query, QueryPlan.Access.FILTER, totalRows, totalRows, children);
+            case AND:
+                for (BookQuery child : query.getChildren()) {
+                    children.add(planStep(child));
+                }
+                children.sort(Comparator.comparing((QueryPlan child) -> child.getAccess() == QueryPlan.Access.FILTER)
+                        .thenComparingDouble(child -> child.cost));
+                rows = totalRows;
+                cost = 0;
+                indexed = false;
+                for (QueryPlan child : children) {
+                    if (child.getAccess() != QueryPlan.Access.FILTER && (!indexed || child.cost <= FETCH_COST * rows)) {
+                        cost += child.cost;
+                        indexed = true;
+                    } else {
+                        filters.add(child);
+                    }
+                    rows = rows * child.getEstimatedRows() / Math.max(1, totalRows);
+                }
+                for (QueryPlan filter : filters) {
+                    markFilter(filter);
+                }
+                estimate = Math.round(rows);
+                return new QueryPlan(query, indexed ? QueryPlan.Access.INTERSECT : QueryPlan.Access.FILTER, estimate,
+                        indexed ? cost : totalRows, children);
+            default:
+                estimate = 0;
+                cost = 0;
+                indexed = true;
+                for (BookQuery child : query.getChildren()) {
+                    children.add(planStep(child));
+                }
+                for (QueryPlan child : children) {
+                    estimate += child.getEstimatedRows();
+                    cost += child.cost;
+                    indexed &= child.getAccess() != QueryPlan.Access.FILTER;
+                }
+                if (!indexed) {
+                    for (QueryPlan child : children) {
+                        markFilter(child);
+                    }
+                }
+                return new QueryPlan(query, indexed ? QueryPlan.Access.UNION : QueryPlan.Access.FILTER,
+                        Math.min(totalRows, estimate), indexed ? cost : totalRows, children);
+        }
+    }
+
+    /**
+     * Turns a step and its children into filters, when the books of the step are tested instead of found with its indexes.
+     * @param step The step.
+     */
+    private static void markFilter(QueryPlan step) {
+        step.setAccess(QueryPlan.Access.FILTER);
+        for (QueryPlan child : step.getChildren()) {
+            markFilter(child);
+        }
+    }
+
+    private RoaringBitmap evaluateStep(QueryPlan step) {
+
+        BookQuery query = step.getQuery();
+        RoaringBitmap bitmap = null;
+
+        switch (query.getKind()) {
+            case TITLE:
+                bitmap = facetIndex.bitmapOf(titleIndexManager.getIsbnsByKey(query.getValue()));
+                break;
+            case AUTHOR:
+                bitmap = facetIndex.bitmapOf(authorIndexManager.getIsbnsByKey(query.getValue()));
+                break;
+            case FACET:
+                bitmap = facetIndex.get(query.getFacet(), query.getValue());
+                break;
+            case YEAR_RANGE:
+                bitmap = facetIndex.bitmapOf(yearIndexManagers.get(query.getYearField()).getIsbnsByRange(query.getFrom(), query.getTo()));
+                break;
+            case AND:
+                for (QueryPlan child : step.getChildren()) {
+                    if (child.getAccess() == QueryPlan.Access.FILTER) {
+                        continue;
+                    }
+                    if (bitmap != null && bitmap.isEmpty()) {
+                        // No book left to intersect, the remaining indexes are not read
+                        break;
+                    }
+                    bitmap = bitmap == null ? evaluateStep(child) : bitmap.and(evaluateStep(child));
+                }
+                break;
+            default:
+                bitmap = new RoaringBitmap();
+                for (QueryPlan child : step.getChildren()) {
+                    bitmap = bitmap.or(evaluateStep(child));
+                }
+                break;
+        }
+        step.setActualRows(bitmap.cardinality());
+        return bitmap;
+    }
+}
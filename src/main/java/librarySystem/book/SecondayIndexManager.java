@@ -1,153 +1,472 @@
 package librarySystem.book;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
+import librarySystem.storage.AtomicFileWriter;
+import librarySystem.storage.DeltaLog;
 
+import java.io.*;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Handles a secondary index of the books (title, author or genre to ISBN), also used for the last names of the patrons (last name to CPF).
+ * The index entries are kept in memory in a sorted set, so adding, removing and finding a key costs O(log n).
+ * The entries are sorted by the collation key of their key, the key folded by TextAnalyzer in UTF-8, compared byte by byte,
+ * so "Naruto", "naruto" and "NARUTO" are the same key for the searches.
+ * The index is stored in two files:
+ * - The base file, with the name of the index, stores the sorted (key, ISBN, collation key) entries after a format number.
+ *   A base file of previous versions, with (key, ISBN) pairs only, is written again in the current format when it is loaded.
+ * - The log file, with the name of the index followed by ".log", stores the additions and removals made after the base file was written.
+ * When the log file grows beyond a threshold, the base file is rewritten by a background compaction and the log file is started again.
+ * The base file is replaced atomically, so the title, author and genre indexes can be compacted at the same time by the compactor threads.
+ * The keys are also kept in a PrefixTrie with the number of entries of each key, for the completions of a typed prefix.
+ * A TrigramIndex of the keys, for the searches of misspelled keys, is built at the first such search and then kept up to date.
+ * The entries of a key, or all the entries, can also be read one page at a time, from a cursor holding the key and the ISBN
+ * of the last entry of the previous page, so a page costs the entries it returns whatever the size of the index.
+ */
 public class SecondayIndexManager {
 
-    private static final String TEMP_FILE = "temp.dat";
-    private String filename;
+    private static final int COMPACTION_THRESHOLD = 1000;
+    private static final char ADD = '+';
+    private static final char REMOVE = '-';
+    private static final int FORMAT_MAGIC = 0xFFFE4331; // A key length of 65534 bytes would not fit a base file of previous versions
+    private static final Comparator<KeyIndexEntry> ENTRY_ORDER =
+            Comparator.comparing(KeyIndexEntry::getCollationKey, Arrays::compareUnsigned)
+                    .thenComparing(KeyIndexEntry::getKey).thenComparing(KeyIndexEntry::getIsbn);
+    private static final int COMPACTOR_THREADS = 3;
+    private static final ExecutorService COMPACTOR = Executors.newFixedThreadPool(COMPACTOR_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "secondary-index-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String filename;
+    private final TreeSet<KeyIndexEntry> entries;
+    private final Map<String, KeyIndexEntry> entriesByIsbn;
+    private final PrefixTrie keyTrie = new PrefixTrie();
+    private TrigramIndex keyTrigrams;
+    private DeltaLog log;
+    private boolean compacting;
 
+    /**
+     * Creates a new SecondayIndexManager object.
+     * The constructor loads the base file and replays the log file by calling the loadIndex method.
+     * @param filename The name of the index file.
+     */
     public SecondayIndexManager(String filename){
         this.filename = filename;
+        entries = new TreeSet<>(ENTRY_ORDER);
+        entriesByIsbn = new HashMap<>();
+        loadIndex();
     }
 
     /**
-     * Adds a key index entry to the key index file.
-     * The method reads the current key index entries from the key index file and adds the new key index entry.
-     * The method sorts the key index entries by key and writes them back to the key index file.
-     * @param key The key of the book to add to the key index file.
-     * @param isbn The ISBN of the book to add to the key index file.
+     * Loads the index into memory.
+     * The method reads the base file and then applies the operations of the log file.
+     * If a previous compaction did not finish, or the base file has the format of previous versions, the method writes the base file.
+     */
+    private void loadIndex() {
+
+        boolean legacyFormat = false;
+
+        AtomicFileWriter.deleteStaleTempFiles(Paths.get(filename));
+        try (DataInputStream secondaryIndexFile = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+            secondaryIndexFile.mark(Integer.BYTES);
+            if (secondaryIndexFile.available() >= Integer.BYTES && secondaryIndexFile.readInt() == FORMAT_MAGIC) {
+                while (secondaryIndexFile.available() > 0) {
+                    add(readEntry(secondaryIndexFile));
+                }
+            } else {
+                secondaryIndexFile.reset();
+                legacyFormat = secondaryIndexFile.available() > 0;
+                while (secondaryIndexFile.available() > 0) {
+                    add(new KeyIndexEntry(secondaryIndexFile.readUTF(), secondaryIndexFile.readUTF()));
+                }
+            }
+        } catch (FileNotFoundException e) {
+            System.out.println("File not found in loadIndex method, creating new file...");
+        } catch (IOException e) {
+            System.out.println("Error in loadIndex : " + e.getMessage());
+        }
+
+        try {
+            log = new DeltaLog(filename + ".log");
+            log.replay((operation, key, isbn) -> {
+                if (operation == ADD) {
+                    add(new KeyIndexEntry(key, isbn));
+                } else {
+                    remove(isbn);
+                }
+            });
+            if (log.hasRotated()) {
+                writeBaseFile(new ArrayList<>(entries));
+                log.deleteRotated();
+            } else if (legacyFormat) {
+                writeBaseFile(new ArrayList<>(entries));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error opening the log of " + filename, e);
+        }
+    }
+
+    /**
+     * Adds a key index entry to the key index.
+     * The method adds the new key index entry to the sorted set and appends it to the log file.
+     * @param key The key of the book to add to the key index.
+     * @param isbn The ISBN of the book to add to the key index.
      * @throws IOException If an I/O error occurs.
      */
+    public synchronized void addSecondaryIndex(String key, String isbn) throws IOException {
 
-    public void addSecondaryIndex(String key, String isbn) throws IOException {
-        String temp_currentTitle;
-        String temp_currentIsbn;
-        List<KeyIndexEntry> keyIndexEntry = new ArrayList<>();
+        log.append(ADD, key, isbn);
+        add(new KeyIndexEntry(key, isbn));
+        compactIfNeeded();
+    }
 
-        // Read all current title indexes
-        try (RandomAccessFile secondaryIndexFile = new RandomAccessFile(filename, "r")) {
+    /**
+     * Adds many key index entries to the key index.
+     * The method appends all the entries to the log file with a single flush and adds them to the sorted set.
+     * The compaction that follows writes them to the base file once, in key order.
+     * @param newEntries The key index entries to add.
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized void addSecondaryIndexes(Collection<KeyIndexEntry> newEntries) throws IOException {
 
-            while (secondaryIndexFile.getFilePointer() < secondaryIndexFile.length()) {
-                temp_currentTitle = secondaryIndexFile.readUTF();
-                temp_currentIsbn = secondaryIndexFile.readUTF();
-                keyIndexEntry.add(new KeyIndexEntry(temp_currentTitle, temp_currentIsbn));
+        List<String> keys = new ArrayList<>(newEntries.size());
+        List<String> isbns = new ArrayList<>(newEntries.size());
+
+        for (KeyIndexEntry entry : newEntries) {
+            keys.add(entry.getKey());
+            isbns.add(entry.getIsbn());
+        }
+        log.appendAll(ADD, keys, isbns);
+        for (KeyIndexEntry entry : newEntries) {
+            add(entry);
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * Retrieves the ISBNs of the books with the specified key.
+     * The method finds the first entry with the collation key of the key in the sorted set and walks the entries with the same
+     * collation key, comparing the bytes of the keys.
+     * @param key The key of the books to find, compared without case and accents.
+     * @return A list of ISBNs of books with the specified key.
+     */
+    public synchronized List<String> getIsbnsByKey(String key) {
+
+        List<String> foundIsbns = new ArrayList<>();
+        byte[] collationKey = KeyIndexEntry.collationKeyOf(key);
+
+        // The empty key and ISBN sort before every entry with the same collation key
+        for (KeyIndexEntry entry : entries.tailSet(new KeyIndexEntry("", "", collationKey), true)) {
+            if (!Arrays.equals(entry.getCollationKey(), collationKey)) {
+                break;
             }
-        }catch(FileNotFoundException e){
-            System.out.println("File not found in addTitleIndex method, creating new file...");
+            foundIsbns.add(entry.getIsbn());
         }
+        return foundIsbns;
+    }
 
-        // Add the new title index
-        keyIndexEntry.add(new KeyIndexEntry(key, isbn));
+    /**
+     * Retrieves a page of the entries of a key, or of all the entries, in collation order.
+     * The method starts the walk of the sorted set right after the entry of the cursor, or at the first entry of the key,
+     * and stops after the entries of the page and one more, to know if there is a next page.
+     * @param key The key of the entries, compared without case and accents, or null for all the entries.
+     * @param after The cursor of the previous page, or null for the first page.
+     * @param limit The maximum number of entries of the page, at least 1.
+     * @return The page of entries, with the cursor of the next page.
+     * @throws IllegalArgumentException If the limit is below 1, or the cursor is malformed or was returned for another key.
+     */
+    public synchronized Page<KeyIndexEntry> getEntriesPage(String key, String after, int limit) {
 
-        // Order the title indexes by title
-        keyIndexEntry.sort(Comparator.comparing(KeyIndexEntry::getKey));
+        List<KeyIndexEntry> pageEntries = new ArrayList<>();
+        byte[] collationKey = key == null ? null : KeyIndexEntry.collationKeyOf(key);
+        SortedSet<KeyIndexEntry> remaining;
+        KeyIndexEntry cursor;
+        KeyIndexEntry last = null;
+        boolean hasNext = false;
+        int separator;
+        int isbnLength;
 
-        // Write the title indexes back to the file
-        try (RandomAccessFile secondaryIndexFile = new RandomAccessFile(filename, "rw")) {
-            // Clear the file
-            secondaryIndexFile.setLength(0);
-            for (KeyIndexEntry entry : keyIndexEntry) {
-                secondaryIndexFile.writeUTF(entry.getKey());
-                secondaryIndexFile.writeUTF(entry.getIsbn());
+        if (limit < 1) {
+            throw new IllegalArgumentException("page limit must be at least 1");
+        }
+        if (after != null) {
+            // The cursor is the length of the ISBN, a colon, the ISBN and the key of the last entry
+            separator = after.indexOf(':');
+            try {
+                isbnLength = Integer.parseInt(after.substring(0, Math.max(0, separator)));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("malformed cursor: " + after);
+            }
+            if (isbnLength < 0 || separator + 1 + isbnLength > after.length()) {
+                throw new IllegalArgumentException("malformed cursor: " + after);
             }
+            cursor = new KeyIndexEntry(after.substring(separator + 1 + isbnLength), after.substring(separator + 1, separator + 1 + isbnLength));
+            // A cursor of another key would start the walk outside the entries of the key
+            if (collationKey != null && !Arrays.equals(cursor.getCollationKey(), collationKey)) {
+                throw new IllegalArgumentException("cursor of another key: " + after);
+            }
+            remaining = entries.tailSet(cursor, false);
+        } else if (key != null) {
+            remaining = entries.tailSet(new KeyIndexEntry("", "", collationKey), true);
+        } else {
+            remaining = entries;
         }
+        for (KeyIndexEntry entry : remaining) {
+            if (collationKey != null && !Arrays.equals(entry.getCollationKey(), collationKey)) {
+                break;
+            }
+            if (pageEntries.size() == limit) {
+                hasNext = true;
+                break;
+            }
+            pageEntries.add(entry);
+            last = entry;
+        }
+        return new Page<>(pageEntries, hasNext ? last.getIsbn().length() + ":" + last.getIsbn() + last.getKey() : null);
     }
-    
 
-        /**
-     * Retrieves the ISBNs of mangas with the specified title.
-     * The method reads the title index file and uses binary search to find the title index entries with the specified title.
-     * @param title The title of the mangas to find.
-     * @return A list of ISBNs of mangas with the specified title.
-     * @throws IOException If an I/O error occurs.
+    /**
+     * Counts the books with the specified key, walking the entries like getIsbnsByKey without collecting their ISBNs.
+     * @param key The key of the books to count, compared without case and accents.
+     * @return The number of books with the specified key.
      */
-    public List<String> getIsbnsByKey(String key) throws IOException {
+    public synchronized int countByKey(String key) {
 
-        List<KeyIndexEntry> keyIndexEntry = new ArrayList<>();
-        String temp_currentTitle;
-        String temp_isbn;
+        int count = 0;
+        byte[] collationKey = KeyIndexEntry.collationKeyOf(key);
 
-        // Read all current title indexes
-        try (RandomAccessFile secondaryIndexFile = new RandomAccessFile(filename, "r")) {
-            while (secondaryIndexFile.getFilePointer() < secondaryIndexFile.length()) {
-                temp_currentTitle = secondaryIndexFile.readUTF();
-                temp_isbn = secondaryIndexFile.readUTF();
-                keyIndexEntry.add(new KeyIndexEntry(temp_currentTitle, temp_isbn));
+        for (KeyIndexEntry entry : entries.tailSet(new KeyIndexEntry("", "", collationKey), true)) {
+            if (!Arrays.equals(entry.getCollationKey(), collationKey)) {
+                break;
             }
+            count++;
         }
+        return count;
+    }
+
+    /**
+     * Retrieves the ISBNs of the books with a key close to the specified key, such as a misspelled author.
+     * The method finds the keys within the edit distance in the trigram index, building it at the first call,
+     * and walks the entries of each key found, the closest keys first.
+     * @param key The key of the books to find, compared without case, accents and word order.
+     * @param maxDistance The maximum number of inserted, deleted or replaced characters, lowered for short keys.
+     * @return A list of ISBNs of books with a key close to the specified key.
+     */
+    public synchronized List<String> getIsbnsByFuzzyKey(String key, int maxDistance) {
 
-        // Use binary search to find the title
         List<String> foundIsbns = new ArrayList<>();
-        KeyIndexEntry midEntry;
-        int mid;
-        int cmp;
-        int index;
-        int left = 0;
-        int right = keyIndexEntry.size() - 1;
-
-        while (left <= right) {
-            mid = (left + right) / 2;
-            midEntry = keyIndexEntry.get(mid);
-            cmp = midEntry.getKey().compareTo(key);
-
-            if (cmp < 0) {
-                left = mid + 1;
-            } else if (cmp > 0) {
-                right = mid - 1;
-            } else {
-                // Found one title, now we need to find all titles with the same name
-                // Search to the left first
-                index = mid;
-                while (index >= 0 && keyIndexEntry.get(index).getKey().equals(key)) {
-                    foundIsbns.add(keyIndexEntry.get(index).getIsbn());
-                    index--;
-                }
-                // Now search to the right
-                index = mid + 1;
-                while (index < keyIndexEntry.size() && keyIndexEntry.get(index).getKey().equals(key)) {
-                    foundIsbns.add(keyIndexEntry.get(index).getIsbn());
-                    index++;
-                }
-                break;
+
+        if (keyTrigrams == null) {
+            keyTrigrams = new TrigramIndex();
+            for (KeyIndexEntry entry : entries) {
+                keyTrigrams.add(entry.getKey());
             }
         }
+        for (String foundKey : keyTrigrams.search(key, maxDistance)) {
+            foundIsbns.addAll(getIsbnsByKey(foundKey));
+        }
         return foundIsbns;
     }
 
     /**
-     * Removes a title index entry from the title index file.
-     * The method reads the current title index entries from the title index file and writes them back to a temporary file.
-     * The method skips the title index entry with the specified ISBN and renames the temporary file to the title index file.
-     * @param isbn_rem The ISBN of the book to remove from the title index file.
+     * Retrieves the most common keys starting with a prefix, for autocompletion.
+     * @param prefix The prefix typed by the user, compared without case and accents.
+     * @param limit The maximum number of keys.
+     * @return The keys with their number of entries, the most common first.
+     */
+    public synchronized List<Completion> getCompletions(String prefix, int limit) {
+        return keyTrie.complete(prefix, limit);
+    }
+
+    /**
+     * Retrieves all the keys of the key index, in collation order.
+     * A key appears once for each book that has it.
+     * @return A list of all the keys.
+     */
+    public synchronized List<String> getAllKeys() {
+
+        List<String> keys = new ArrayList<>(entries.size());
+
+        for (KeyIndexEntry entry : entries) {
+            keys.add(entry.getKey());
+        }
+        return keys;
+    }
+
+    /**
+     * Retrieves all the entries of the key index, in key order.
+     * @return A list of all the (key, ISBN) entries.
+     */
+    public synchronized List<KeyIndexEntry> getEntries() {
+        return new ArrayList<>(entries);
+    }
+
+    /**
+     * Checks if the key index has no entry.
+     * @return True if the index is empty, false otherwise.
+     */
+    public synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Removes a key index entry from the key index.
+     * The method removes the key index entry with the specified ISBN from the sorted set and appends the removal to the log file.
+     * @param isbn_rem The ISBN of the book to remove from the key index.
      * @throws IOException If an I/O error occurs.
      */
-    public void removeSecondaryIndex(String isbn_rem) throws IOException {
+    public synchronized void removeSecondaryIndex(String isbn_rem) throws IOException {
 
-        File tempFile = new File(TEMP_FILE);
-        String temp_currentTitle;    
-        String temp_currentIsbn;
+        KeyIndexEntry entry = entriesByIsbn.get(isbn_rem);
 
+        if (entry == null) {
+            return;
+        }
+        log.append(REMOVE, entry.getKey(), isbn_rem);
+        remove(isbn_rem);
+        compactIfNeeded();
+    }
 
-        try (RandomAccessFile secondaryIndexFile = new RandomAccessFile(filename, "rw");
-            RandomAccessFile tempsecondaryIndexFile = new RandomAccessFile(tempFile, "rw")) {
-            while (secondaryIndexFile.getFilePointer() < secondaryIndexFile.length()) {
-                temp_currentTitle = secondaryIndexFile.readUTF();
-                temp_currentIsbn = secondaryIndexFile.readUTF();
-                if (!temp_currentIsbn.equals(isbn_rem)) {
-                    tempsecondaryIndexFile.writeUTF(temp_currentTitle);
-                    tempsecondaryIndexFile.writeUTF(temp_currentIsbn);
-                }
+    /**
+     * Writes the base file with all the entries and empties the log file, waiting for a compaction already running.
+     * It is used by the IndexRebuildTool to write the index files in the current format ahead of time.
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized void rebuild() throws IOException {
+
+        while (compacting || !log.rotate()) {
+            try {
+                wait(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for the compaction of " + filename);
+            }
+        }
+        writeBaseFile(new ArrayList<>(entries));
+        log.deleteRotated();
+    }
+
+    /**
+     * Closes the log file, after waiting for a compaction already running.
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized void close() throws IOException {
+
+        while (compacting) {
+            try {
+                wait(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for the compaction of " + filename);
+            }
+        }
+        log.close();
+    }
+
+    /**
+     * Forces the log file to the storage device, so the changes made so far survive a power loss.
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized void force() throws IOException {
+        log.force();
+    }
+
+    /**
+     * Adds an entry to the in-memory index, replacing the entry of the same ISBN.
+     * @param entry The entry to add.
+     */
+    private void add(KeyIndexEntry entry) {
+
+        remove(entry.getIsbn());
+        entries.add(entry);
+        entriesByIsbn.put(entry.getIsbn(), entry);
+        keyTrie.add(entry.getKey());
+        if (keyTrigrams != null) {
+            keyTrigrams.add(entry.getKey());
+        }
+    }
+
+    /**
+     * Removes the entry of an ISBN from the in-memory index.
+     * @param isbn The ISBN of the entry to remove.
+     */
+    private void remove(String isbn) {
+
+        KeyIndexEntry entry = entriesByIsbn.remove(isbn);
+
+        if (entry != null) {
+            entries.remove(entry);
+            keyTrie.remove(entry.getKey());
+            if (keyTrigrams != null) {
+                keyTrigrams.remove(entry.getKey());
             }
         }
-        tempFile.renameTo(new File(filename));
     }
 
-        
+    /**
+     * Starts a background compaction if the log file reached the threshold.
+     * The method rotates the log file and writes a snapshot of the sorted set to the base file in the background.
+     * The rotated log is deleted once the base file is written.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void compactIfNeeded() throws IOException {
+
+        List<KeyIndexEntry> snapshot;
+
+        if (compacting || log.size() < COMPACTION_THRESHOLD || !log.rotate()) {
+            return;
+        }
+        snapshot = new ArrayList<>(entries);
+        compacting = true;
+        COMPACTOR.execute(() -> {
+            try {
+                writeBaseFile(snapshot);
+                log.deleteRotated();
+            } catch (IOException e) {
+                System.out.println("Error compacting " + filename + " : " + e.getMessage());
+            } finally {
+                synchronized (this) {
+                    compacting = false;
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes the base file.
+     * The method writes the format number and the sorted entries to a temporary file of its own and atomically replaces the base file with it.
+     * @param sortedEntries The entries, sorted by key.
+     * @throws IOException If an I/O error occurs, in which case the previous base file is kept.
+     */
+    private void writeBaseFile(List<KeyIndexEntry> sortedEntries) throws IOException {
+        AtomicFileWriter.write(Paths.get(filename), secondaryIndexFile -> {
+            secondaryIndexFile.writeInt(FORMAT_MAGIC);
+            for (KeyIndexEntry entry : sortedEntries) {
+                secondaryIndexFile.writeUTF(entry.getKey());
+                secondaryIndexFile.writeUTF(entry.getIsbn());
+                secondaryIndexFile.writeShort(entry.getCollationKey().length);
+                secondaryIndexFile.write(entry.getCollationKey());
+            }
+        });
+    }
+
+    /**
+     * Reads an entry of a base file in the current format, with its collation key.
+     * @param secondaryIndexFile The stream of the base file.
+     * @return The entry.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static KeyIndexEntry readEntry(DataInputStream secondaryIndexFile) throws IOException {
+
+        String key = secondaryIndexFile.readUTF();
+        String isbn = secondaryIndexFile.readUTF();
+        byte[] collationKey = new byte[secondaryIndexFile.readUnsignedShort()];
+
+        secondaryIndexFile.readFully(collationKey);
+        return new KeyIndexEntry(key, isbn, collationKey);
+    }
 }
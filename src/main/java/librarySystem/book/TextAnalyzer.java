@@ -0,0 +1,54 @@
+package librarySystem.book;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Normalizes and splits the text of the books for the text searches.
+ * - Folding lowercases the text and removes its accents, so "Pokémon" and "POKEMON" give the same text.
+ * - Tokenizing folds the text and splits it into words made of letters and digits, every other character separating two words.
+ */
+public final class TextAnalyzer {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    private TextAnalyzer() {
+    }
+
+    /**
+     * Lowercases a text and removes its accents.
+     * The method decomposes the accented letters into a base letter and combining marks, and removes the marks.
+     * @param text The text to fold.
+     * @return The folded text.
+     */
+    public static String fold(String text) {
+        return COMBINING_MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Splits a text into folded words.
+     * @param text The text to split.
+     * @return The words of the text, in order, with their repetitions.
+     */
+    public static List<String> tokenize(String text) {
+
+        String folded = fold(text);
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+
+        for (int i = 0; i <= folded.length(); i++) {
+            if (i < folded.length() && Character.isLetterOrDigit(folded.charAt(i))) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                tokens.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+}
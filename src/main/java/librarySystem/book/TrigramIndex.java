@@ -0,0 +1,247 @@
+package librarySystem.book;
+
+import java.util.*;
+
+/**
+ * Trigram index of the keys of a secondary index, used to find the keys within a small edit distance of a misspelled key.
+ * A key is normalized before it is indexed: its words are folded by TextAnalyzer and sorted, so "Oda Eiichiro" and
+ * "Eiichiro Oda" have the same normalized key, and "Oda Eiichirou" is one edit away from it.
+ * The normalized key, padded with two '$' at each end, is cut into its trigrams, the substrings of 3 characters,
+ * and each trigram keeps the ids of the normalized keys containing it.
+ * An edit changes at most 3 trigrams, so a key within k edits of the query shares all but 3k of the distinct query trigrams:
+ * the search counts the shared trigrams of the keys from the posting lists of the query trigrams, keeps the keys reaching
+ * that bound, and computes the edit distance of those keys only.
+ * The index is not synchronized, its owner must lock it.
+ */
+public class TrigramIndex {
+
+    private static final char PADDING = '$';
+
+    private final Map<String, Term> terms = new HashMap<>();
+    private final List<Term> termsById = new ArrayList<>();
+    private final Map<String, int[]> postings = new HashMap<>();
+    private final Map<String, Integer> postingSizes = new HashMap<>();
+    private int liveCount;
+
+    /**
+     * Term class
+     * It represents a normalized key and the keys it comes from
+     * - id: Number of the term in the posting lists
+     * - normalized: Folded words of the keys, sorted
+     * - keys: Keys with this normalized key, and their number of entries
+     */
+    private static class Term {
+        private final int id;
+        private final String normalized;
+        private final Map<String, Integer> keys = new TreeMap<>();
+
+        private Term(int id, String normalized) {
+            this.id = id;
+            this.normalized = normalized;
+        }
+    }
+
+    /**
+     * Adds an entry with a key.
+     * A normalized key that was removed keeps its id and its postings, so adding it again does not change the posting lists.
+     * @param key The key of the entry.
+     */
+    public void add(String key) {
+
+        String normalized = normalize(key);
+        Term term = terms.get(normalized);
+
+        if (term == null) {
+            term = new Term(termsById.size(), normalized);
+            terms.put(normalized, term);
+            termsById.add(term);
+            for (String trigram : new HashSet<>(trigrams(normalized))) {
+                addPosting(trigram, term.id);
+            }
+        }
+        if (term.keys.isEmpty()) {
+            liveCount++;
+        }
+        term.keys.merge(key, 1, Integer::sum);
+    }
+
+    /**
+     * Removes an entry with a key. Nothing is done if the key has no entry.
+     * When more than half of the normalized keys have no entry left, the index is built again without them.
+     * @param key The key of the entry.
+     */
+    public void remove(String key) {
+
+        Term term = terms.get(normalize(key));
+
+        if (term == null || !term.keys.containsKey(key)) {
+            return;
+        }
+        if (term.keys.merge(key, -1, Integer::sum) == 0) {
+            term.keys.remove(key);
+            if (term.keys.isEmpty()) {
+                liveCount--;
+            }
+        }
+        if (liveCount * 2 < termsById.size() && termsById.size() > 1024) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Finds the keys within an edit distance of a query.
+     * The allowed distance is lowered for short queries, to 0 below 3 characters and to 1 below 6 characters,
+     * since most short keys are within 2 edits of each other.
+     * @param query The misspelled key.
+     * @param maxDistance The maximum number of inserted, deleted or replaced characters.
+     * @return The keys found, the closest first, and in key order for the same distance.
+     */
+    public List<String> search(String query, int maxDistance) {
+
+        String normalized = normalize(query);
+        int distance = Math.min(maxDistance, normalized.length() < 3 ? 0 : normalized.length() < 6 ? 1 : 2);
+        Set<String> queryTrigrams = new HashSet<>(trigrams(normalized));
+        int threshold = queryTrigrams.size() - 3 * distance;
+        int[] counts = new int[termsById.size()];
+        List<Integer> candidates = new ArrayList<>();
+        TreeMap<Integer, List<String>> found = new TreeMap<>();
+        List<String> keys = new ArrayList<>();
+        int[] list;
+        Term term;
+        int termDistance;
+
+        for (String trigram : queryTrigrams) {
+            list = postings.get(trigram);
+            if (list == null) {
+                continue;
+            }
+            for (int i = 0; i < postingSizes.get(trigram); i++) {
+                if (counts[list[i]]++ == 0) {
+                    candidates.add(list[i]);
+                }
+            }
+        }
+        for (int id : candidates) {
+            term = termsById.get(id);
+            if (counts[id] < threshold || term.keys.isEmpty()
+                    || Math.abs(term.normalized.length() - normalized.length()) > distance) {
+                continue;
+            }
+            termDistance = editDistance(normalized, term.normalized, distance);
+            if (termDistance <= distance) {
+                found.computeIfAbsent(termDistance, d -> new ArrayList<>()).addAll(term.keys.keySet());
+            }
+        }
+        for (List<String> sameDistance : found.values()) {
+            Collections.sort(sameDistance);
+            keys.addAll(sameDistance);
+        }
+        return keys;
+    }
+
+    /**
+     * Computes the edit distance of two strings, stopping as soon as it exceeds a limit.
+     * Only the diagonal band of width 2 * limit + 1 of the distance matrix is computed.
+     * @param a The first string.
+     * @param b The second string.
+     * @param limit The largest distance of interest.
+     * @return The edit distance, or limit + 1 if it is larger than limit.
+     */
+    static int editDistance(String a, String b, int limit) {
+
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        int[] swap;
+        int from;
+        int to;
+        int rowMinimum;
+
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            from = Math.max(1, i - limit);
+            to = Math.min(b.length(), i + limit);
+            Arrays.fill(current, limit + 1);
+            current[0] = i;
+            rowMinimum = from == 1 ? i : limit + 1;
+            for (int j = from; j <= to; j++) {
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1),
+                        previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1));
+                rowMinimum = Math.min(rowMinimum, current[j]);
+            }
+            if (rowMinimum > limit) {
+                return limit + 1;
+            }
+            swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[b.length()], limit + 1);
+    }
+
+    /**
+     * Builds the index again with the normalized keys that still have entries, so the removed ones leave the posting lists.
+     */
+    private void rebuild() {
+
+        List<Term> live = new ArrayList<>(liveCount);
+
+        for (Term term : termsById) {
+            if (!term.keys.isEmpty()) {
+                live.add(term);
+            }
+        }
+        terms.clear();
+        termsById.clear();
+        postings.clear();
+        postingSizes.clear();
+        liveCount = 0;
+        for (Term term : live) {
+            for (Map.Entry<String, Integer> key : term.keys.entrySet()) {
+                for (int i = 0; i < key.getValue(); i++) {
+                    add(key.getKey());
+                }
+            }
+        }
+    }
+
+    private void addPosting(String trigram, int id) {
+
+        int[] list = postings.get(trigram);
+        int size = postingSizes.getOrDefault(trigram, 0);
+
+        if (list == null) {
+            list = new int[2];
+        } else if (size == list.length) {
+            list = Arrays.copyOf(list, size * 2);
+        }
+        list[size] = id;
+        postings.put(trigram, list);
+        postingSizes.put(trigram, size + 1);
+    }
+
+    /**
+     * Folds the words of a key and sorts them, so the order of the words does not count.
+     * @param key The key.
+     * @return The sorted words, separated by a space.
+     */
+    private static String normalize(String key) {
+
+        List<String> words = TextAnalyzer.tokenize(key);
+
+        Collections.sort(words);
+        return String.join(" ", words);
+    }
+
+    private static List<String> trigrams(String normalized) {
+
+        String padded = "" + PADDING + PADDING + normalized + PADDING + PADDING;
+        List<String> trigrams = new ArrayList<>(padded.length() - 2);
+
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+}
@@ -0,0 +1,38 @@
+package librarySystem.book;
+
+/**
+ * YearIndexEntry class
+ * It represents a year index entry object with its attributes
+ * - year: Start year, end year or edition year
+ * - isbn: International Standard Book Number
+ */
+public class YearIndexEntry {
+    private final int year;
+    private final String isbn;
+
+    /**
+     * Constructor
+     * @param year year
+     * @param isbn ISBN
+     */
+    public YearIndexEntry(int year, String isbn) {
+        this.year = year;
+        this.isbn = isbn;
+    }
+
+    /**
+     * Get the year
+     * @return Year
+     */
+    public int getYear() {
+        return year;
+    }
+
+    /**
+     * Get the ISBN
+     * @return ISBN
+     */
+    public String getIsbn() {
+        return isbn;
+    }
+}
@@ -0,0 +1,339 @@
+package librarySystem.book;
+
+import librarySystem.storage.AtomicFileWriter;
+import librarySystem.storage.DeltaLog;
+
+import java.io.*;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Handles a numeric secondary index of the books (start year, end year or edition year to ISBN), for the range searches.
+ * The index entries are kept in memory in a set sorted by year and then by ISBN, so the books of a range of years are
+ * found by walking the entries from the first one of the range, without reading the data file.
+ * The number of entries of each year is also kept, so the number of books of a range is known without walking the entries.
+ * The ISBNs of a range can also be read one page at a time, from a cursor holding the year and the ISBN of the last entry of the previous page.
+ * The index is stored like the other secondary indexes:
+ * - The base file, with the name of the index, stores the sorted (year, ISBN) pairs.
+ * - The log file, with the name of the index followed by ".log", stores the additions and removals made after the base file was written.
+ * When the log file grows beyond a threshold, the base file is rewritten by a background compaction and the log file is started again.
+ */
+public class YearIndexManager {
+
+    private static final int COMPACTION_THRESHOLD = 1000;
+    private static final char ADD = '+';
+    private static final char REMOVE = '-';
+    private static final Comparator<YearIndexEntry> ENTRY_ORDER =
+            Comparator.comparingInt(YearIndexEntry::getYear).thenComparing(YearIndexEntry::getIsbn);
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "year-index-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String filename;
+    private final TreeSet<YearIndexEntry> entries;
+    private final Map<String, YearIndexEntry> entriesByIsbn;
+    private final TreeMap<Integer, Integer> countsByYear;
+    private DeltaLog log;
+    private boolean compacting;
+
+    /**
+     * Creates a new YearIndexManager object.
+     * The constructor loads the base file and replays the log file by calling the loadIndex method.
+     * @param filename The name of the index file.
+     */
+    public YearIndexManager(String filename) {
+        this.filename = filename;
+        entries = new TreeSet<>(ENTRY_ORDER);
+        entriesByIsbn = new HashMap<>();
+        countsByYear = new TreeMap<>();
+        loadIndex();
+    }
+
+    /**
+     * Loads the index into memory.
+     * The method reads the base file and then applies the operations of the log file.
+     * If a previous compaction did not finish, the method finishes it.
+     */
+    private void loadIndex() {
+
+        AtomicFileWriter.deleteStaleTempFiles(Paths.get(filename));
+        try (DataInputStream yearIndexFile = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+            while (yearIndexFile.available() > 0) {
+                add(new YearIndexEntry(yearIndexFile.readInt(), yearIndexFile.readUTF()));
+            }
+        } catch (FileNotFoundException e) {
+            System.out.println("File not found in loadIndex method, creating new file...");
+        } catch (IOException e) {
+            System.out.println("Error in loadIndex : " + e.getMessage());
+        }
+
+        try {
+            log = new DeltaLog(filename + ".log");
+            log.replay((operation, year, isbn) -> {
+                if (operation == ADD) {
+                    add(new YearIndexEntry(Integer.parseInt(year), isbn));
+                } else {
+                    remove(isbn);
+                }
+            });
+            if (log.hasRotated()) {
+                writeBaseFile(new ArrayList<>(entries));
+                log.deleteRotated();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error opening the log of " + filename, e);
+        }
+    }
+
+    /**
+     * Adds a year index entry to the year index, replacing the entry of the same ISBN.
+     * @param year The year of the book.
+     * @param isbn The ISBN of the book.
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized void addYearIndex(int year, String isbn) throws IOException {
+
+        log.append(ADD, String.valueOf(year), isbn);
+        add(new YearIndexEntry(year, isbn));
+        compactIfNeeded();
+    }
+
+    /**
+     * Adds many year index entries to the year index.
+     * The method appends all the entries to the log file with a single flush and adds them to the sorted set.
+     * @param newEntries The year index entries to add.
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized void addYearIndexes(Collection<YearIndexEntry> newEntries) throws IOException {
+
+        List<String> years = new ArrayList<>(newEntries.size());
+        List<String> isbns = new ArrayList<>(newEntries.size());
+
+        for (YearIndexEntry entry : newEntries) {
+            years.add(String.valueOf(entry.getYear()));
+            isbns.add(entry.getIsbn());
+        }
+        log.appendAll(ADD, years, isbns);
+        for (YearIndexEntry entry : newEntries) {
+            add(entry);
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * Retrieves the ISBNs of the books with a year in a range.
+     * The method walks the entries of the sorted set from the first entry of the range to the last one.
+     * @param from The first year of the range.
+     * @param to The last year of the range, included.
+     * @return A list of ISBNs, sorted by year and then by ISBN.
+     */
+    public synchronized List<String> getIsbnsByRange(int from, int to) {
+
+        List<String> foundIsbns = new ArrayList<>();
+
+        for (YearIndexEntry entry : entries.tailSet(new YearIndexEntry(from, ""), true)) {
+            if (entry.getYear() > to) {
+                break;
+            }
+            foundIsbns.add(entry.getIsbn());
+        }
+        return foundIsbns;
+    }
+
+    /**
+     * Retrieves a page of the ISBNs of the books with a year in a range.
+     * The method starts the walk of the sorted set right after the entry of the cursor, or at the first entry of the range,
+     * and stops after the entries of the page and one more, to know if there is a next page.
+     * @param from The first year of the range.
+     * @param to The last year of the range, included.
+     * @param after The cursor of the previous page, or null for the first page.
+     * @param limit The maximum number of ISBNs of the page, at least 1.
+     * @return The page of ISBNs, sorted by year and then by ISBN, with the cursor of the next page.
+     * @throws IllegalArgumentException If the limit is below 1, or the cursor is malformed or has a year outside the range.
+     */
+    public synchronized Page<String> getIsbnsPage(int from, int to, String after, int limit) {
+
+        List<String> foundIsbns = new ArrayList<>();
+        SortedSet<YearIndexEntry> remaining;
+        YearIndexEntry last = null;
+        boolean hasNext = false;
+        int separator;
+        int year;
+
+        if (limit < 1) {
+            throw new IllegalArgumentException("page limit must be at least 1");
+        }
+        if (after != null) {
+            // The cursor is the year, a colon and the ISBN of the last entry
+            separator = after.indexOf(':');
+            try {
+                year = Integer.parseInt(after.substring(0, Math.max(0, separator)));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("malformed cursor: " + after);
+            }
+            if (year < from || year > to) {
+                throw new IllegalArgumentException("cursor outside the range: " + after);
+            }
+            remaining = entries.tailSet(new YearIndexEntry(year, after.substring(separator + 1)), false);
+        } else {
+            remaining = entries.tailSet(new YearIndexEntry(from, ""), true);
+        }
+        for (YearIndexEntry entry : remaining) {
+            if (entry.getYear() > to) {
+                break;
+            }
+            if (foundIsbns.size() == limit) {
+                hasNext = true;
+                break;
+            }
+            foundIsbns.add(entry.getIsbn());
+            last = entry;
+        }
+        return new Page<>(foundIsbns, hasNext ? last.getYear() + ":" + last.getIsbn() : null);
+    }
+
+    /**
+     * Counts the books with a year in a range, from the number of entries of each year.
+     * @param from The first year of the range.
+     * @param to The last year of the range, included.
+     * @return The number of books.
+     */
+    public synchronized int countByRange(int from, int to) {
+
+        int count = 0;
+
+        if (from > to) {
+            return 0;
+        }
+        for (int yearCount : countsByYear.subMap(from, true, to, true).values()) {
+            count += yearCount;
+        }
+        return count;
+    }
+
+    /**
+     * Checks if the year index has no entry.
+     * @return True if the index is empty, false otherwise.
+     */
+    public synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Removes the year index entry of an ISBN from the year index.
+     * @param isbn_rem The ISBN of the book to remove from the year index.
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized void removeYearIndex(String isbn_rem) throws IOException {
+
+        YearIndexEntry entry = entriesByIsbn.get(isbn_rem);
+
+        if (entry == null) {
+            return;
+        }
+        log.append(REMOVE, String.valueOf(entry.getYear()), isbn_rem);
+        remove(isbn_rem);
+        compactIfNeeded();
+    }
+
+    /**
+     * Closes the log file, after waiting for a compaction already running.
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized void close() throws IOException {
+
+        while (compacting) {
+            try {
+                wait(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for the compaction of " + filename);
+            }
+        }
+        log.close();
+    }
+
+    /**
+     * Forces the log file to the storage device, so the changes made so far survive a power loss.
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized void force() throws IOException {
+        log.force();
+    }
+
+    /**
+     * Adds an entry to the in-memory index, replacing the entry of the same ISBN.
+     * @param entry The entry to add.
+     */
+    private void add(YearIndexEntry entry) {
+
+        remove(entry.getIsbn());
+        entries.add(entry);
+        entriesByIsbn.put(entry.getIsbn(), entry);
+        countsByYear.merge(entry.getYear(), 1, Integer::sum);
+    }
+
+    /**
+     * Removes the entry of an ISBN from the in-memory index.
+     * @param isbn The ISBN of the entry to remove.
+     */
+    private void remove(String isbn) {
+
+        YearIndexEntry entry = entriesByIsbn.remove(isbn);
+
+        if (entry != null) {
+            entries.remove(entry);
+            if (countsByYear.merge(entry.getYear(), -1, Integer::sum) == 0) {
+                countsByYear.remove(entry.getYear());
+            }
+        }
+    }
+
+    /**
+     * Starts a background compaction if the log file reached the threshold.
+     * The method rotates the log file and writes a snapshot of the sorted set to the base file in the background.
+     * The rotated log is deleted once the base file is written.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void compactIfNeeded() throws IOException {
+
+        List<YearIndexEntry> snapshot;
+
+        if (compacting || log.size() < COMPACTION_THRESHOLD || !log.rotate()) {
+            return;
+        }
+        snapshot = new ArrayList<>(entries);
+        compacting = true;
+        COMPACTOR.execute(() -> {
+            try {
+                writeBaseFile(snapshot);
+                log.deleteRotated();
+            } catch (IOException e) {
+                System.out.println("Error compacting " + filename + " : " + e.getMessage());
+            } finally {
+                synchronized (this) {
+                    compacting = false;
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes the base file.
+     * The method writes the sorted entries to a temporary file of its own and atomically replaces the base file with it.
+     * @param sortedEntries The entries, sorted by year.
+     * @throws IOException If an I/O error occurs, in which case the previous base file is kept.
+     */
+    private void writeBaseFile(List<YearIndexEntry> sortedEntries) throws IOException {
+        AtomicFileWriter.write(Paths.get(filename), yearIndexFile -> {
+            for (YearIndexEntry entry : sortedEntries) {
+                yearIndexFile.writeInt(entry.getYear());
+                yearIndexFile.writeUTF(entry.getIsbn());
+            }
+        });
+    }
+}
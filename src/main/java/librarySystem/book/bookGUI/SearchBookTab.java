@@ -3,11 +3,13 @@ package librarySystem.book.bookGUI;
 import librarySystem.TabModel;
 import librarySystem.book.Book;
 import librarySystem.book.BookHandler;
+import librarySystem.book.BookQuery;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -31,6 +33,7 @@ public class SearchBookTab implements TabModel {
     private JButton searchByIsbnButton;
     private JButton searchByAuthorButton;
     private JButton searchByGenreButton;
+    private JButton searchByAllFieldsButton;
 
     private JTextArea searchResultsArea;
 
@@ -79,6 +82,7 @@ public class SearchBookTab implements TabModel {
         searchByIsbnButton = new JButton("Search by ISBN");
         searchByAuthorButton = new JButton("Search by Author");
         searchByGenreButton = new JButton("Search by Genre");
+        searchByAllFieldsButton = new JButton("Search by All Fields");
         
         searchResultsArea = new JTextArea();
         searchResultsArea.setEditable(false);
@@ -107,22 +111,25 @@ public class SearchBookTab implements TabModel {
         searchButtonPanel.add(searchByIsbnButton);
         searchButtonPanel.add(searchByAuthorButton);
         searchButtonPanel.add(searchByGenreButton);
+        searchButtonPanel.add(searchByAllFieldsButton);
         searchPanel.add(searchButtonPanel, BorderLayout.SOUTH);
 
         searchByTitleButton.addActionListener(this);
         searchByIsbnButton.addActionListener(this);
         searchByAuthorButton.addActionListener(this);
         searchByGenreButton.addActionListener(this);
+        searchByAllFieldsButton.addActionListener(this);
         tabbedPane.addTab("Search Book", searchPanel);
     }
 
     /**
      * Method to handle the action events
-     * It searches the manga by title or isbn
+     * It searches the manga by title, isbn, author or genre, or by all the title, author and genre fields filled in
      * @param e the ActionEvent
      */
     public void actionPerformed(ActionEvent e) {
         List<Book> mangases;
+        List<BookQuery> criteria;
         if(e.getSource() == searchByTitleButton){
             try {
                 mangases = handler.searchBooksByTitle(searchTitleField.getText());
@@ -179,6 +186,34 @@ public class SearchBookTab implements TabModel {
                 ex.printStackTrace();
                 JOptionPane.showMessageDialog(frame, "Error searching book.");
             }
+        }else if(e.getSource() == searchByAllFieldsButton){
+            criteria = new ArrayList<>();
+            if (!searchTitleField.getText().isBlank()) {
+                criteria.add(BookQuery.title(searchTitleField.getText()));
+            }
+            if (!searchAuthorField.getText().isBlank()) {
+                criteria.add(BookQuery.author(searchAuthorField.getText()));
+            }
+            if (!searchGenreField.getText().isBlank()) {
+                criteria.add(BookQuery.genre(searchGenreField.getText()));
+            }
+            if (criteria.isEmpty()) {
+                JOptionPane.showMessageDialog(frame, "Fill in the title, author or genre.");
+                return;
+            }
+            try {
+                mangases = handler.searchBooks(BookQuery.and(criteria.toArray(new BookQuery[0])));
+                searchResultsArea.setText("");
+                for (Book book : mangases) {
+                    searchResultsArea.append(book.toString() + "\n");
+                }
+                if (mangases.isEmpty()) {
+                    searchResultsArea.append("No books found.");
+                }
+            } catch (IOException ex) {
+                ex.printStackTrace();
+                JOptionPane.showMessageDialog(frame, "Error searching book.");
+            }
         }
     }
 }
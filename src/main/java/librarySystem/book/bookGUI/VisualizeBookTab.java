@@ -2,27 +2,30 @@ package librarySystem.book.bookGUI;
 
 import librarySystem.TabModel;
 import librarySystem.book.BookHandler;
+import librarySystem.book.Page;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.io.IOException;
-import java.util.List;
 
 /**
  * Tab for visualizing manga
- * It has a text area to display all the manga titles and a button to refresh the list
+ * It has a text area to display the manga titles, a button to refresh the list and a button to load more titles
+ * The titles are loaded one page at a time, so large catalogs are not read at once
  * It implements the TabModel interface
  */
 public class VisualizeBookTab implements TabModel {
     private final JFrame frame;
     private final BookHandler handler;
     private final JTabbedPane tabbedPane;
+    private static final int PAGE_SIZE = 500;
 
     private JPanel viewPanel;
     private JTextArea viewResultsArea;
     JScrollPane viewScrollPane;
     JButton refreshButton;
+    JButton loadMoreButton;
+    private String nextCursor;
 
     /**
      * Constructor for the VisualizeMangaTab
@@ -58,33 +61,48 @@ public class VisualizeBookTab implements TabModel {
         viewResultsArea.setEditable(false);
         viewScrollPane = new JScrollPane(viewResultsArea);
         refreshButton = new JButton("Refresh List");
+        loadMoreButton = new JButton("Load More");
+        loadMoreButton.setEnabled(false);
     }
     
     /**
      * Method to add the components to the panel
      */
     public void addComponents() {
+        JPanel buttonPanel = new JPanel(new GridLayout(1, 2));
+
         refreshButton.addActionListener(this);
+        loadMoreButton.addActionListener(this);
+        buttonPanel.add(refreshButton);
+        buttonPanel.add(loadMoreButton);
         viewPanel.add(viewScrollPane, BorderLayout.CENTER);
-        viewPanel.add(refreshButton, BorderLayout.SOUTH);
+        viewPanel.add(buttonPanel, BorderLayout.SOUTH);
         tabbedPane.addTab("View All Books", viewPanel);
     }
 
     /**
      * Method to handle the action events
-     * It refreshes the list of manga titles
+     * Refresh loads the first page of manga titles, Load More appends the next page
      * @param e the ActionEvent
      */
     public void actionPerformed(ActionEvent e) {
-        try {
-            List<String> mangaTitles = handler.getAllMangaTitles();
+        Page<String> page;
+
+        if (e.getSource() == refreshButton) {
             viewResultsArea.setText("");
-            for (String title : mangaTitles) {
-                viewResultsArea.append(title + "\n");
-            }
-        } catch (IOException ex) {
+            nextCursor = null;
+        }
+        try {
+            page = handler.getMangaTitles(nextCursor, PAGE_SIZE);
+        } catch (IllegalArgumentException ex) {
             ex.printStackTrace();
             JOptionPane.showMessageDialog(frame, "Error loading books titles.");
+            return;
+        }
+        for (String title : page.getItems()) {
+            viewResultsArea.append(title + "\n");
         }
+        nextCursor = page.getNextCursor();
+        loadMoreButton.setEnabled(page.hasNext());
     }
 }
@@ -1,9 +1,12 @@
 package librarySystem.login;
 
-import java.io.File;
+import librarySystem.storage.AtomicFileWriter;
+
+import java.io.DataOutput;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -14,7 +17,6 @@ import java.util.List;
 */
 public class LoginHandler {
     private static final String LOGINS_FILE = "logins.dat";
-    private static final String TEMP_FILE = "temp.dat";
     private static final String ADMIN_USERNAME = "admin";
     private static final String ADMIN_PASSWORD = "adminpsw";
 
@@ -106,25 +108,30 @@ public class LoginHandler {
 
     /**
      * Method to remove a login
+     * It keeps every other login and atomically replaces the logins file with them
      * @param login The login to remove
      * @throws IOException If the login does not exist
      */
     public void removeLogin(Login login) throws IOException {
+        List<Login> remainingLogins = new ArrayList<>();
+
         if(getLogin(login.getUsername()) == null){
             throw new IOException("Login does not exist");
         }
-        File tempFile = new File(TEMP_FILE);
-        try (RandomAccessFile dataFile = new RandomAccessFile(LOGINS_FILE, "rw");
-        RandomAccessFile tempDataFile = new RandomAccessFile(tempFile, "rw")) {
+        try (RandomAccessFile dataFile = new RandomAccessFile(LOGINS_FILE, "r")) {
             while (dataFile.getFilePointer() < dataFile.length()) {
                 String username = dataFile.readUTF();
                 String password = dataFile.readUTF();
-                if (!username.equals(login.getUsername()) && !password.equals(login.getPassword())) {
-                    writeLoginToFile(tempDataFile, login);
+                if (!username.equals(login.getUsername())) {
+                    remainingLogins.add(new Login(username, password));
                 }
             }
         }
-        tempFile.renameTo(new File(LOGINS_FILE));
+        AtomicFileWriter.write(Paths.get(LOGINS_FILE), out -> {
+            for (Login remainingLogin : remainingLogins) {
+                writeLoginToFile(out, remainingLogin);
+            }
+        });
     }
     
     /**
@@ -133,7 +140,7 @@ public class LoginHandler {
      * @param login The login to write
      * @throws IOException If an I/O error occurs
      */
-    private void writeLoginToFile(RandomAccessFile dataFile, Login login) throws IOException {
+    private void writeLoginToFile(DataOutput dataFile, Login login) throws IOException {
         dataFile.writeUTF(login.getUsername());
         dataFile.writeUTF(login.getPassword());
     }
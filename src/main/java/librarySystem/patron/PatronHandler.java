@@ -1,178 +1,444 @@
 package librarySystem.patron;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
+import librarySystem.book.Completion;
+import librarySystem.book.KeyIndexEntry;
+import librarySystem.book.Page;
+import librarySystem.book.SecondayIndexManager;
+import librarySystem.storage.AtomicFileWriter;
+import librarySystem.storage.BPlusTree;
+import librarySystem.storage.RecordBuffers;
+import librarySystem.storage.RecordStore;
+import librarySystem.storage.SlottedPageFile;
+import librarySystem.storage.WriteAheadLog;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Handles the CRUD operations for the patron class.
- * The data is stored in a binary file named "patron.dat" with a fixed record size of 2048 bytes.
- * The index is stored in a binary file named "patronIndex.dat" with a variable record size.
- * The title index is stored in a binary file named "name_index.dat" with a variable record size.
- * The deleted records spaces are stored in a list.
+ * The data is stored in a binary file named "patron.dat" with variable-length records in slotted pages of 8192 bytes.
+ * The data file stays open in a SlottedPageFile, optionally mapped in memory, and records are decoded from byte buffers.
+ * Data files with the fixed record size of 2048 bytes of previous versions are migrated to slotted pages when they are opened.
+ * The index is stored in a B+tree file named "patronIndex.dat" with a fixed page size of 4096 bytes, and maps each CPF to a record id.
+ * The last name index is kept in memory by a SecondayIndexManager object and stored in "lastName_index.dat",
+ * with a log of the changes since it was last written.
+ * The pages with space freed by deleted records are stored in a persistent free list, in a file named "patron_free.dat".
+ * The search by last name and the listing of the last names can also return one page at a time.
+ * Patrons can also be imported in bulk from a CSV file with the importPatrons method, which writes each index once for the whole file.
+ * The handler is safe for concurrent use like BookHandler: lookups and searches share a read lock and run in parallel,
+ * while adds, updates and deletes take the write lock, so two adds of the same CPF cannot both pass the check of the index.
+ * Adds, updates and deletes are first written to a write-ahead log named "patron_wal.log", replayed when the handler is created.
+ * The pages of the data file and the index file changed by a change are not written to the files before its log record is durable.
+ * The handler is closed with the close method, which leaves the changes not yet checkpointed in the log for the next handler.
  */
 
-public class PatronHandler {
+public class PatronHandler implements Closeable {
 
         private static final String DATA_FILE = "patron.dat";
+        private static final String FREE_LIST_FILE = "patron_free.dat";
         private static final String INDEX_FILE = "patronIndex.dat";
         private static final String TITLE_INDEX_FILE = "lastName_index.dat";
-        private static final String TEMP_FILE = "temp.dat";
-        private static final int RECORD_SIZE = 2048;
-        private final List<Long> deletedRecordsSpaces;
+        private static final String WAL_FILE = "patron_wal.log";
+        private static final int LEGACY_RECORD_SIZE = 2048;
+        private BPlusTree indexTree;
+        private final SlottedPageFile dataFile;
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final SecondayIndexManager lastNameIndexManager;
+        private final WriteAheadLog writeAheadLog;
 
         private static final int NOT_FOUND = -1;
 
         /**
-         * Creates a new MangaHandler object.
-         * The constructor initializes the list of deleted records spaces by calling the loadDeletedRecordsSpaces method.
+         * Creates a new MangaHandler object that reads the data file with positional channel reads.
          */
         public PatronHandler() {
-            deletedRecordsSpaces = new ArrayList<>();
-            loadDeletedRecordsSpaces();
+            this(false);
         }
 
         /**
-         * Loads the deleted records spaces from the data file.
-         * The method reads the data file and adds the file pointers of the deleted records to the deletedRecordsSpaces list.
+         * Creates a new MangaHandler object.
+         * The constructor migrates a data file with fixed-size records by calling the migrateDataFile method,
+         * opens the slotted page data file and loads the last name index.
+         * Then it guards the data file and the index file by the write-ahead log, replays the log and runs a checkpoint.
+         * @param memoryMapped True to map the data file in memory, false to read it with positional channel reads.
          */
-        private void loadDeletedRecordsSpaces(){
+        public PatronHandler(boolean memoryMapped) {
+            migrateDataFile();
+            indexTree = openIndex();
+            try {
+                dataFile = new SlottedPageFile(DATA_FILE, FREE_LIST_FILE, memoryMapped);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error opening the data file", e);
+            }
+            lastNameIndexManager = new SecondayIndexManager(TITLE_INDEX_FILE);
+            try {
+                writeAheadLog = new WriteAheadLog(WAL_FILE, this::forceFiles);
+                dataFile.setWriteAheadLog(writeAheadLog);
+                indexTree.setWriteAheadLog(writeAheadLog);
+                writeAheadLog.replay(this::redo);
+                writeAheadLog.checkpoint();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error replaying the write-ahead log", e);
+            }
+        }
 
-            char status;
+        /**
+         * Migrates a data file with the fixed record size of previous versions to slotted pages.
+         * The method copies the records that are not marked as deleted to a new slotted page file and builds a new
+         * index file with their record ids, both as temporary files.
+         * Each file is replaced atomically, the index file first and the data file last, so a migration stopped halfway is started again the next time.
+         */
+        private void migrateDataFile() {
+
+            File legacyFile = new File(DATA_FILE);
+            String pageFilename = DATA_FILE + ".tmp";
+            String freeListFilename = FREE_LIST_FILE + ".tmp";
+            String indexFilename = INDEX_FILE + ".tmp";
+            ByteBuffer record;
+            Patron patron;
 
-            try (RandomAccessFile dataFile = new RandomAccessFile(DATA_FILE, "rw")){
-                long pointer = 0;
-                while (pointer < dataFile.length()) {
-                    dataFile.seek(pointer);
-                    status = dataFile.readChar();
-                    if (status == '*') {
-                        deletedRecordsSpaces.add(pointer);
+            if (legacyFile.length() == 0 || SlottedPageFile.isPageFile(DATA_FILE)) {
+                return;
+            }
+            SlottedPageFile.deleteFiles(pageFilename, freeListFilename);
+            new File(indexFilename).delete();
+            try (RecordStore legacyStore = RecordStore.open(DATA_FILE, false);
+                 SlottedPageFile pageFile = new SlottedPageFile(pageFilename, freeListFilename, false);
+                 BPlusTree tree = new BPlusTree(indexFilename)) {
+                for (long pointer = 0; pointer < legacyStore.size(); pointer += LEGACY_RECORD_SIZE) {
+                    record = legacyStore.read(pointer, (int) Math.min(LEGACY_RECORD_SIZE, legacyStore.size() - pointer));
+                    if (record.getChar(0) != '*') {
+                        patron = readPatron(record);
+                        tree.insert(patron.getCpf(), pageFile.insert(encodePatron(patron)));
                     }
-                    pointer += RECORD_SIZE;
                 }
+                pageFile.force();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error migrating the data file", e);
+            }
+            try {
+                AtomicFileWriter.replace(Paths.get(indexFilename), Paths.get(INDEX_FILE));
+                AtomicFileWriter.replace(Paths.get(freeListFilename), Paths.get(FREE_LIST_FILE));
+                AtomicFileWriter.replace(Paths.get(pageFilename), legacyFile.toPath());
             } catch (IOException e) {
-                System.out.println("Error in loadDeletedRecordsSpaces : " + e.getMessage());
+                throw new UncheckedIOException("Error replacing the migrated files", e);
             }
         }
 
 
         /**
          * Adds a new patron to the data file.
-         * The method writes the patron object to the data file and adds an index entry to the index file.
-         * The method also adds a name index entry to the title index file.
+         * The method logs the patron in the write-ahead log, writes the patron object to a slot of the data file and adds an index entry
+         * with its record id to the index file. The method also adds a last name index entry.
+         * It returns once the log record is durable.
          * @param patron The patron object to be added.
-         * @throws IOException If an I/O error occurs.
+         * @throws IOException If an I/O error occurs, the patron already exists or its CPF is too long for the index.
          */
         public void addPatron(Patron patron) throws IOException {
 
-            long filePointer;
+            byte[] record = encodePatron(patron);
+            long sequence;
+
+            checkCpf(patron.getCpf());
+            lock.writeLock().lock();
+            try {
+                if(getPositionFromIndexFile(patron.getCpf()) != NOT_FOUND){
+                    throw new IOException("patron already exists");
+                }
 
-            if(getPositionFromIndexFile(patron.getCpf()) != NOT_FOUND){
-                throw new IOException("patron already exists");
+                sequence = writeAheadLog.log(WriteAheadLog.PUT, patron.getCpf(), record, () -> putPatron(patron.getCpf(), record, patron));
+            } finally {
+                lock.writeLock().unlock();
             }
+            writeAheadLog.awaitDurable(sequence);
+        }
 
-            if (!deletedRecordsSpaces.isEmpty()) {
-                filePointer = deletedRecordsSpaces.remove(0);
-            } else {
-                try (RandomAccessFile dataFile = new RandomAccessFile(DATA_FILE, "rw")) {
-                    filePointer = dataFile.length();
-                }catch(FileNotFoundException e){
-                    System.out.println("File not found, creating new file...");
-                    filePointer = 0;
-                }
+        /**
+         * Adds many patrons to the data file at once.
+         * The method checks the CPFs against a hash set of the CPFs already in the index file and in the batch,
+         * appends the records sequentially to new pages of the data file, then writes the B+tree of the index file once
+         * and adds the entries of the last name index in one batch.
+         * The patrons are not written to the write-ahead log, the files are forced once at the end instead.
+         * Patrons that already exist, or appear twice, and patrons with a CPF too long for the index are skipped.
+         * @param patrons The patrons to add.
+         * @return The number of patrons added.
+         * @throws IOException If an I/O error occurs.
+         */
+        public int addPatrons(Iterable<Patron> patrons) throws IOException {
+
+            Set<String> cpfs = new HashSet<>();
+            TreeMap<String, Long> indexEntries = new TreeMap<>();
+            List<KeyIndexEntry> lastNameEntries = new ArrayList<>();
+
+            lock.writeLock().lock();
+            try {
+                writeAheadLog.run(() -> {
+                    String cpf;
+
+                    indexTree.forEach(indexEntries::put);
+                    cpfs.addAll(indexEntries.keySet());
+                    try (SlottedPageFile.Appender appender = dataFile.appender()) {
+                        for (Patron patron : patrons) {
+                            cpf = patron.getCpf();
+                            if (!cpfs.add(cpf)) {
+                                System.out.println("patron already exists: " + cpf);
+                                continue;
+                            }
+                            if (RecordBuffers.utfLength(cpf) > BPlusTree.MAX_KEY_LENGTH) {
+                                System.out.println("cpf too long: " + cpf);
+                                continue;
+                            }
+                            indexEntries.put(cpf, appender.append(encodePatron(patron)));
+                            lastNameEntries.add(new KeyIndexEntry(patron.getLastName(), cpf));
+                        }
+                    } finally {
+                        // Index the patrons written so far even if the import stopped halfway
+                        rebuildIndex(indexEntries);
+                        lastNameIndexManager.addSecondaryIndexes(lastNameEntries);
+                    }
+                    forceFiles();
+                });
+            } finally {
+                lock.writeLock().unlock();
             }
+            return lastNameEntries.size();
+        }
+
+        /**
+         * Imports the patrons of a CSV file with the addPatrons method.
+         * The lines of the file are parsed on several threads, see PatronImporter for the format.
+         * @param file The path of the file.
+         * @return The number of patrons added.
+         * @throws IOException If an I/O error occurs or a line of the file is malformed.
+         */
+        public int importPatrons(Path file) throws IOException {
 
-            try (RandomAccessFile dataFile = new RandomAccessFile(DATA_FILE, "rw")) {
-                dataFile.seek(filePointer);
-                writePatron(dataFile, patron);
-                addIndex(patron.getCpf(), filePointer);
-                addLastNameIndex(patron.getLastName(), patron.getCpf());
-            }catch(FileNotFoundException e){
-                System.out.println("FIle not found, creating new file...");
+            try (PatronImporter importer = new PatronImporter(file)) {
+                return addPatrons(importer);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
             }
         }
 
         /**
          * Retrieves a patron from the data file by its CPF.
-         * The method reads the data file using the file pointer from the index file.
+         * The method reads the data file using the record id from the index file.
          * @param cpf The CPF of the patron to retrieve.
          * @return The patron object with the specified CPF, or null if not found.
          * @throws IOException If an I/O error occurs.
          */
         public Patron getPatron(String cpf) throws IOException{
 
-            long filePointer = getPositionFromIndexFile(cpf);
+            long recordId;
 
-            if (filePointer == NOT_FOUND){
-                System.out.println("patron not found");
-                return null;
-            }
-            try (RandomAccessFile dataFile = new RandomAccessFile(DATA_FILE, "r")) {
-                dataFile.seek(filePointer);
-                return readPatron(dataFile);
-            }catch (FileNotFoundException e){
-                System.out.println("File not found");
-                return null;
+            lock.readLock().lock();
+            try {
+                recordId = getPositionFromIndexFile(cpf);
+                if (recordId == NOT_FOUND){
+                    System.out.println("patron not found");
+                    return null;
+                }
+                return readPatron(dataFile.read(recordId));
+            } finally {
+                lock.readLock().unlock();
             }
         }
 
         /**
          * Updates a patron in the data file by its CPF.
-         * The method reads the data file using the file pointer from the index file and updates the patron object.
+         * The method logs the updated patron in the write-ahead log and replaces its record in the data file, see putPatron.
+         * It returns once the log record is durable.
          * @param cpf The CPF of the patron to update.
          * @param updatedPatron The updated patron object.
-         * @throws IOException If an I/O error occurs.
+         * @throws IOException If an I/O error occurs, the patron is not found or the CPF is too long for the index.
          */
         public void updatePatron(String cpf, Patron updatedPatron) throws IOException {
 
-            long filePointer = getPositionFromIndexFile(cpf);
+            byte[] record = encodePatron(updatedPatron);
+            long sequence;
 
-            if (filePointer == NOT_FOUND){
-                throw new IOException("patron not found");
-            }
-            try (RandomAccessFile dataFile = new RandomAccessFile(DATA_FILE, "rw")) {
-                dataFile.seek(filePointer);
-                // Check if the title has changed and update the title index
-                Patron tempPatron = getPatron(cpf);
-                if(!tempPatron.getLastName().equals(updatedPatron.getLastName())){
-                    removeLastNameIndex(cpf);
-                    addLastNameIndex(updatedPatron.getLastName(), cpf);
+            checkCpf(cpf);
+            lock.writeLock().lock();
+            try {
+                if (getPositionFromIndexFile(cpf) == NOT_FOUND){
+                    throw new IOException("patron not found");
                 }
-                writePatron(dataFile, updatedPatron);
-            }catch(FileNotFoundException e){
-                System.out.println("File not found");
+                sequence = writeAheadLog.log(WriteAheadLog.PUT, cpf, record, () -> putPatron(cpf, record, updatedPatron));
+            } finally {
+                lock.writeLock().unlock();
             }
+            writeAheadLog.awaitDurable(sequence);
         }
 
         /**
          * Deletes a patron from the data file by its CPF.
-         * The method reads the data file using the file pointer from the index file and marks the record as deleted.
-         * The method also removes the index entry and the last name index entry.
+         * The method logs the deletion in the write-ahead log and removes the patron, see removePatron.
+         * It returns once the log record is durable.
          * @param cpf The CPF of the patron to delete.
          * @throws IOException If an I/O error occurs.
          */
         public void deletePatron(String cpf) throws IOException {
 
-            long filePointer = getPositionFromIndexFile(cpf);
+            long sequence;
 
-            if (filePointer == NOT_FOUND){
-                throw new IOException("patron not found");
+            lock.writeLock().lock();
+            try {
+                if (getPositionFromIndexFile(cpf) == NOT_FOUND){
+                    throw new IOException("patron not found");
+                }
+
+                sequence = writeAheadLog.log(WriteAheadLog.DELETE, cpf, new byte[0], () -> removePatron(cpf));
+            } finally {
+                lock.writeLock().unlock();
             }
+            writeAheadLog.awaitDurable(sequence);
+        }
 
-            try (RandomAccessFile dataFile = new RandomAccessFile(DATA_FILE, "rw")) {
-                dataFile.seek(filePointer);
-                //Mark register as deleted
-                dataFile.writeChar('*');
-                deletedRecordsSpaces.add(filePointer);
+        /**
+         * Closes the handler: stops the write-ahead log once its records are durable and closes the data, index and index log files.
+         * The files are not checkpointed, the next handler replays the changes still in the log.
+         * The handler cannot be used after it is closed.
+         * @throws IOException If an I/O error occurs.
+         */
+        @Override
+        public void close() throws IOException {
+
+            lock.writeLock().lock();
+            try {
+                writeAheadLog.close();
+                dataFile.close();
+                indexTree.close();
+                lastNameIndexManager.close();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * Writes the record of a patron and its index entries, inserting the patron or replacing the current record of its CPF.
+         * If the updated record no longer fits in its page, it is moved and the index entry gets its new record id.
+         * The last name index entry of the CPF is replaced when the last name changed.
+         * @param cpf The CPF of the patron.
+         * @param record The record of the patron, encoded by encodePatron.
+         * @param patron The patron object.
+         * @throws IOException If an I/O error occurs.
+         */
+        private void putPatron(String cpf, byte[] record, Patron patron) throws IOException {
+
+            long recordId = getPositionFromIndexFile(cpf);
+            long updatedRecordId;
+
+            if (recordId == NOT_FOUND) {
+                recordId = dataFile.insert(record);
+                try {
+                    addIndex(cpf, recordId);
+                } catch (IOException | RuntimeException e) {
+                    // The record is freed, so a CPF rejected by the index leaves no orphan record in the data file
+                    dataFile.delete(recordId);
+                    throw e;
+                }
+                addLastNameIndex(patron.getLastName(), cpf);
+                return;
+            }
+            if (!readPatron(dataFile.read(recordId)).getLastName().equals(patron.getLastName())) {
+                addLastNameIndex(patron.getLastName(), cpf);
+            }
+            updatedRecordId = dataFile.update(recordId, record);
+            if (updatedRecordId != recordId) {
+                addIndex(cpf, updatedRecordId);
+            }
+        }
+
+        /**
+         * Removes a patron: frees the slot of its record and removes its index and last name index entries.
+         * Entries that are already gone are skipped, so the method can be applied again by the log replay.
+         * @param cpf The CPF of the patron to remove.
+         * @throws IOException If an I/O error occurs.
+         */
+        private void removePatron(String cpf) throws IOException {
+
+            long recordId = getPositionFromIndexFile(cpf);
+
+            if (recordId != NOT_FOUND) {
+                dataFile.delete(recordId);
+                removeIndex(cpf);
             }
-            removeIndex(cpf);
             removeLastNameIndex(cpf);
         }
 
+        /**
+         * Applies again a record of the write-ahead log, when the log is replayed on startup.
+         * A record that is already in the data file is not written again, and the last name index entry is added again
+         * in case the crash happened before it was written. An index entry whose slot no longer holds the patron is dropped first,
+         * see currentRecordId.
+         * @param operation The operation of the log record.
+         * @param cpf The CPF of the patron.
+         * @param record The record of the patron, empty for a deletion.
+         * @throws IOException If an I/O error occurs.
+         */
+        private void redo(byte operation, String cpf, byte[] record) throws IOException {
+
+            long recordId = currentRecordId(cpf);
+            Patron patron;
+
+            if (operation == WriteAheadLog.DELETE) {
+                removePatron(cpf);
+                return;
+            }
+            patron = readPatron(ByteBuffer.wrap(record));
+            if (recordId == NOT_FOUND || !dataFile.read(recordId).equals(ByteBuffer.wrap(record))) {
+                putPatron(cpf, record, patron);
+            }
+            addLastNameIndex(patron.getLastName(), cpf);
+        }
+
+        /**
+         * Retrieves the record id of a patron for the log replay, after checking that its slot still holds the patron.
+         * Like in BookHandler, the index file can still point to the old slot of a record moved by an update after a crash.
+         * Such an entry is removed from the index without freeing the slot, and the replayed record writes the patron again.
+         * @param cpf The CPF of the patron.
+         * @return The record id of the patron, or -1 if it is not found or its index entry was dropped.
+         * @throws IOException If an I/O error occurs.
+         */
+        private long currentRecordId(String cpf) throws IOException {
+
+            long recordId = getPositionFromIndexFile(cpf);
+            ByteBuffer record;
+            String storedCpf;
+
+            if (recordId == NOT_FOUND) {
+                return NOT_FOUND;
+            }
+            record = dataFile.read(recordId);
+            try {
+                storedCpf = record == null ? null : readPatron(record.duplicate()).getCpf();
+            } catch (IOException | RuntimeException e) {
+                storedCpf = null;
+            }
+            if (cpf.equals(storedCpf)) {
+                return recordId;
+            }
+            System.out.println("Dropping the index entry of " + cpf + ", its slot no longer holds the patron");
+            removeIndex(cpf);
+            return NOT_FOUND;
+        }
+
+        /**
+         * Forces the data file, the index file and the log of the last name index to the storage device.
+         * It is called by the checkpoints of the write-ahead log, while no change is applied.
+         * @throws IOException If an I/O error occurs.
+         */
+        private void forceFiles() throws IOException {
+            dataFile.force();
+            indexTree.force();
+            lastNameIndexManager.force();
+        }
+
 
         /**
          * Searches for patrons by last name.
@@ -184,19 +450,53 @@ public class PatronHandler {
          */
         public List<Patron> searchPatronsByLastName(String lastName) throws IOException {
 
-            List<String> cpfs = getCpfsByLastName(lastName);
             List<Patron> patrons = new ArrayList<>();
             Patron patron;
 
-            for (String cpf : cpfs) {
-                patron = getPatron(cpf);
-                if (patron != null) {
-                    patrons.add(patron);
+            lock.readLock().lock();
+            try {
+                for (String cpf : getCpfsByLastName(lastName)) {
+                    patron = getPatron(cpf);
+                    if (patron != null) {
+                        patrons.add(patron);
+                    }
                 }
+            } finally {
+                lock.readLock().unlock();
             }
             return patrons;
         }
 
+        /**
+         * Searches for patrons by last name, one page at a time.
+         * The method reads the entries of the page only from the last name index, starting after the cursor, and reads their patrons.
+         * @param lastName The last name to search for.
+         * @param after The cursor of the previous page, or null for the first page.
+         * @param limit The maximum number of patrons of the page, at least 1.
+         * @return The page of patron objects, with the cursor of the next page.
+         * @throws IOException If an I/O error occurs.
+         */
+        public Page<Patron> searchPatronsByLastName(String lastName, String after, int limit) throws IOException {
+
+            Page<KeyIndexEntry> entries;
+            List<Patron> patrons = new ArrayList<>();
+            Patron patron;
+
+            lock.readLock().lock();
+            try {
+                entries = lastNameIndexManager.getEntriesPage(lastName, after, limit);
+                for (KeyIndexEntry entry : entries.getItems()) {
+                    patron = getPatron(entry.getIsbn());
+                    if (patron != null) {
+                        patrons.add(patron);
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            return new Page<>(patrons, entries.getNextCursor());
+        }
+
         /**
          * Searches for a patron by its CPF.
          * The method retrieves the patron from the data file using the getManga method.
@@ -216,320 +516,243 @@ public class PatronHandler {
         }
 
         /**
-         * Writes a patron object to the data file.
-         * The method writes the patron object to the data file using the specified record size.
-         * The method fills the remaining space with blank bytes to complete the record size.
-         * @param data_file The RandomAccessFile object for the data file.
-         * @param patron The patron object to write.
+         * Encodes a patron object as the bytes of a record of the data file.
+         * @param patron The patron object to encode.
+         * @return The bytes of the record.
          * @throws IOException If an I/O error occurs.
          */
-        private void writePatron(RandomAccessFile data_file, Patron patron) throws IOException {
-
-            long start_Pointer = data_file.getFilePointer();
-            data_file.writeUTF(patron.getCpf());
-            data_file.writeUTF(patron.getName());
-            data_file.writeUTF(patron.getLastName());
-            data_file.writeUTF(patron.getPassword());
-            data_file.writeUTF(patron.getEmail());
-            data_file.writeUTF(patron.getPhoneNumber());
-            long end_Pointer = data_file.getFilePointer();
-            // Fill the remaining space with blank bytes to complete the record size
-            long remainingBytes = RECORD_SIZE - (end_Pointer - start_Pointer);
-            if (remainingBytes > 0) {
-                data_file.write(new byte[(int) remainingBytes]);
-            }
+        private byte[] encodePatron(Patron patron) throws IOException {
+
+            ByteArrayOutputStream record = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(record);
+
+            out.writeUTF(patron.getCpf());
+            out.writeUTF(patron.getName());
+            out.writeUTF(patron.getLastName());
+            out.writeUTF(patron.getPassword());
+            out.writeUTF(patron.getEmail());
+            out.writeUTF(patron.getPhoneNumber());
+            return record.toByteArray();
         }
 
         /**
-         * Reads a patron object from the data file.
-         * The method reads the patron object from the data file using the specified record size.
-         * @param file The RandomAccessFile object for the data file.
-         * @return The patron object read from the data file.
+         * Reads a patron object from a record of the data file.
+         * @param record The buffer with the bytes of the record.
+         * @return The patron object read from the record.
          * @throws IOException If an I/O error occurs.
          */
-        private Patron readPatron(RandomAccessFile file) throws IOException {
-
-            String cpf = file.readUTF();
-            String name = file.readUTF();
-            String lastName = file.readUTF();
-            String password = file.readUTF();
-            String email = file.readUTF();
-            String phoneNumber = file.readUTF();
-            file.seek(file.getFilePointer() + (RECORD_SIZE - (file.getFilePointer() % RECORD_SIZE)));
+        private Patron readPatron(ByteBuffer record) throws IOException {
+
+            String cpf = RecordBuffers.readUTF(record);
+            String name = RecordBuffers.readUTF(record);
+            String lastName = RecordBuffers.readUTF(record);
+            String password = RecordBuffers.readUTF(record);
+            String email = RecordBuffers.readUTF(record);
+            String phoneNumber = RecordBuffers.readUTF(record);
             return new Patron(name,lastName,cpf,password,email,phoneNumber);
         }
 
         /**
-         * Adds an index entry to the index file.
-         * The method reads the current index entries from the index file and adds the new index entry.
-         * The method sorts the index entries by CPF and writes them back to the index file.
-         * @param cpf The CPF of the  to add to the index file.
-         * @param filePointer The file pointer of the  in the data file.
+         * Opens the B+tree of the CPF index.
+         * If the index file still has the flat format of previous versions (sorted CPF and file pointer pairs) next to a data file
+         * that is already in slotted pages,
+         * the method converts it to a B+tree file first.
+         * @return The B+tree of the CPF index.
+         */
+        private BPlusTree openIndex() {
+
+            Path indexFile = Paths.get(INDEX_FILE);
+            Path convertedFile;
+
+            AtomicFileWriter.deleteStaleTempFiles(indexFile);
+            try {
+                if (new File(INDEX_FILE).length() > 0 && !BPlusTree.isTreeFile(INDEX_FILE)) {
+                    convertedFile = AtomicFileWriter.createTempFile(indexFile);
+                    try (BPlusTree tree = new BPlusTree(convertedFile.toString())) {
+                        for (PatronIndexEntry entry : readFlatIndex()) {
+                            tree.insert(entry.getCpf(), entry.getFilePointer());
+                        }
+                    }
+                    AtomicFileWriter.replace(convertedFile, indexFile);
+                }
+                return new BPlusTree(INDEX_FILE);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error opening the index file", e);
+            }
+        }
+
+        /**
+         * Reads the index entries of a flat index file.
+         * @return The index entries, sorted by CPF.
          * @throws IOException If an I/O error occurs.
          */
-        private void addIndex(String cpf, long filePointer) throws IOException {
+        private List<PatronIndexEntry> readFlatIndex() throws IOException {
 
             List<PatronIndexEntry> indexEntries = new ArrayList<>();
-            String currentCpf;
-            long currentPointer;
-
-            // Read all actual index
-            try (RandomAccessFile patronIndexFile = new RandomAccessFile(INDEX_FILE, "r")) {
-                while (patronIndexFile.getFilePointer() < patronIndexFile.length()) {
-                    currentCpf = patronIndexFile.readUTF();
-                    currentPointer = patronIndexFile.readLong();
-                    indexEntries.add(new PatronIndexEntry(currentCpf, currentPointer));
+
+            try (DataInputStream patronIndexFile = new DataInputStream(new BufferedInputStream(new FileInputStream(INDEX_FILE)))) {
+                while (patronIndexFile.available() > 0) {
+                    indexEntries.add(new PatronIndexEntry(patronIndexFile.readUTF(), patronIndexFile.readLong()));
                 }
-            }catch(FileNotFoundException e){
-                System.out.println("File not found, creating new file...");
-            }catch(IOException e){
-                System.out.println("I/O Error in addIndex method");
-            }catch(Exception e){
-                System.out.println("Error in addIndex method");
             }
+            return indexEntries;
+        }
 
-            indexEntries.add(new PatronIndexEntry(cpf, filePointer));
+        /**
+         * Checks that a CPF fits in a key of the B+tree of the index file, before anything is logged or written.
+         * @param cpf The CPF to check.
+         * @throws IOException If the CPF is too long.
+         */
+        private static void checkCpf(String cpf) throws IOException {
+            if (RecordBuffers.utfLength(cpf) > BPlusTree.MAX_KEY_LENGTH) {
+                throw new IOException("cpf too long: " + cpf);
+            }
+        }
 
-            indexEntries.sort(Comparator.comparing(PatronIndexEntry::getCpf));
+        /**
+         * Adds an index entry to the index file.
+         * The method inserts the new index entry in the B+tree of the index file.
+         * @param cpf The CPF of the patron to add to the index file.
+         * @param recordId The record id of the patron in the data file.
+         * @throws IOException If an I/O error occurs.
+         */
+        private void addIndex(String cpf, long recordId) throws IOException {
 
-            try (RandomAccessFile patronIndexFile = new RandomAccessFile(INDEX_FILE, "rw")) {
-                patronIndexFile.setLength(0); //Clear the file
-                for (PatronIndexEntry entry : indexEntries) {
-                    patronIndexFile.writeUTF(entry.getCpf());
-                    patronIndexFile.writeLong(entry.getFilePointer());
-                }
-            }
+            indexTree.insert(cpf, recordId);
         }
 
         /**
-         * Retrieves the file pointer of a  in the data file by its CPF.
-         * The method reads the index file and uses binary search to find the index entry with the specified CPF.
-         * @param cpf The CPF of the  to find.
-         * @return The file pointer of the patron in the data file, or -1 if not found.
+         * Retrieves the record id of a patron in the data file by its CPF.
+         * The method searches the B+tree of the index file, reading one page per level of the tree.
+         * @param cpf The CPF of the patron to find.
+         * @return The record id of the patron in the data file, or -1 if not found.
          * @throws IOException If an I/O error occurs.
          */
         private long getPositionFromIndexFile(String cpf) throws IOException {
 
-            List<PatronIndexEntry> indexEntries = new ArrayList<>();
-            String currentCpf;
-            long filePointer;
-
-            // Read all current indexes
-            try (RandomAccessFile patronIndexFile = new RandomAccessFile(INDEX_FILE, "r")) {
-                while (patronIndexFile.getFilePointer() < patronIndexFile.length()) {
-                    currentCpf = patronIndexFile.readUTF();
-                    filePointer = patronIndexFile.readLong();
-                    indexEntries.add(new PatronIndexEntry(currentCpf, filePointer));
-                }
-            }catch(FileNotFoundException e){
-                System.out.println("File not found in getPositionFromIndexFile method");
-            }
-
-            // Use binary search to find the index
-            PatronIndexEntry midEntry;
-            int mid;
-            int cmp;
-            int left = 0;
-            int right = indexEntries.size() - 1;
-
-            while (left <= right) {
-                mid = (left + right) / 2;
-                midEntry = indexEntries.get(mid);
-                cmp = midEntry.getCpf().compareTo(cpf);
-                if (cmp < 0) {
-                    left = mid + 1;
-                } else if (cmp > 0) {
-                    right = mid - 1;
-                } else {
-                    return midEntry.getFilePointer();
-                }
-            }
-            return NOT_FOUND;
+            return indexTree.search(cpf, NOT_FOUND);
         }
 
         /**
          * Removes an index entry from the index file.
-         * The method reads the current index entries from the index file and writes them back to a temporary file.
-         * The method skips the index entry with the specified CPF and renames the temporary file to the index file.
+         * The method deletes the index entry from the B+tree of the index file.
          * @param cpf_rem The CPF of the patron to remove from the index file.
          * @throws IOException If an I/O error occurs.
          */
         private void removeIndex(String cpf_rem) throws IOException {
 
-            File tempFile = new File(TEMP_FILE);
-            String currentCpf;
-            long filePointer;
-
-            try (RandomAccessFile patronIndexFile = new RandomAccessFile(INDEX_FILE, "rw");
-                 RandomAccessFile tempIndexFile = new RandomAccessFile(tempFile, "rw")) {
-                // Besides storing the PatronIndexEntry in a list, we write it to a temporary file to avoid reading the whole index file again
-                while (patronIndexFile.getFilePointer() < patronIndexFile.length()) {
-                    currentCpf = patronIndexFile.readUTF();
-                    filePointer = patronIndexFile.readLong();
-                    if (!currentCpf.equals(cpf_rem)) {
-                        tempIndexFile.writeUTF(currentCpf);
-                        tempIndexFile.writeLong(filePointer);
-                    }
-                }
-            }catch(FileNotFoundException e){
-                System.out.println("File not found in removeIndex method");
-            }
-            tempFile.renameTo(new File(INDEX_FILE));
+            indexTree.delete(cpf_rem);
         }
 
         /**
-         * Adds a last name index entry to the last name index file.
-         * The method reads the current last name index entries from the last name index file and adds the new last name index entry.
-         * The method sorts the last name index entries by last name and writes them back to the last name index file.
-         * @param lastName The last name of the patron to add to the last name index file.
-         * @param cpf The CPF of the patron to add to the last name index file.
+         * Writes the B+tree of the index file again from sorted index entries.
+         * The new tree is built in a temporary file, with each page written once, and atomically replaces the index file when complete.
+         * @param sortedEntries The index entries, sorted by CPF.
          * @throws IOException If an I/O error occurs.
          */
-        private void addLastNameIndex(String lastName, String cpf) throws IOException {
-            String temp_currentLastName;
-            String temp_currentIsbn;
-            List<LastNameIndexEntry> lastNameIndexEntries = new ArrayList<>();
-
-            // Read all current title indexes
-            try (RandomAccessFile lastNameIndexFile = new RandomAccessFile(TITLE_INDEX_FILE, "r")) {
-
-                while (lastNameIndexFile.getFilePointer() < lastNameIndexFile.length()) {
-                    temp_currentLastName = lastNameIndexFile.readUTF();
-                    temp_currentIsbn = lastNameIndexFile.readUTF();
-                    lastNameIndexEntries.add(new LastNameIndexEntry(temp_currentLastName, temp_currentIsbn));
-                }
-            }catch(FileNotFoundException e){
-                System.out.println("File not found in addTitleIndex method, creating new file...");
+        private void rebuildIndex(TreeMap<String, Long> sortedEntries) throws IOException {
+
+            Path rebuiltFile = AtomicFileWriter.createTempFile(Paths.get(INDEX_FILE));
+
+            indexTree.close();
+            try {
+                BPlusTree.bulkLoad(rebuiltFile.toString(), sortedEntries.entrySet());
+                AtomicFileWriter.replace(rebuiltFile, Paths.get(INDEX_FILE));
+            } catch (IOException | RuntimeException e) {
+                AtomicFileWriter.discard(rebuiltFile);
+                throw e;
+            } finally {
+                indexTree = new BPlusTree(INDEX_FILE);
+                indexTree.setWriteAheadLog(writeAheadLog);
             }
+        }
 
-            lastNameIndexEntries.add(new LastNameIndexEntry(lastName, cpf));
-
-            lastNameIndexEntries.sort(Comparator.comparing(LastNameIndexEntry::getLastName));
+        /**
+         * Adds a last name index entry to the last name index.
+         * @param lastName The last name of the patron to add to the last name index.
+         * @param cpf The CPF of the patron to add to the last name index.
+         * @throws IOException If an I/O error occurs.
+         */
+        private void addLastNameIndex(String lastName, String cpf) throws IOException {
 
-            try (RandomAccessFile lastNameIndexFile = new RandomAccessFile(TITLE_INDEX_FILE, "rw")) {
-                // Clear the file
-                lastNameIndexFile.setLength(0);
-                for (LastNameIndexEntry entry : lastNameIndexEntries) {
-                    lastNameIndexFile.writeUTF(entry.getLastName());
-                    lastNameIndexFile.writeUTF(entry.getCpf());
-                }
-            }
+            lastNameIndexManager.addSecondaryIndex(lastName, cpf);
         }
 
 
         /**
          * Retrieves the CPFs of patrons with the specified lastName.
-         * The method reads the last name index file and uses binary search to find the last name index entries with the specified last name.
+         * The method reads the CPFs from the in-memory last name index.
          * @param lastName The title of the mangas to find.
          * @return A list of CPFs of patrons with the specified last name.
          * @throws IOException If an I/O error occurs.
          */
         public List<String> getCpfsByLastName(String lastName) throws IOException {
 
-            List<LastNameIndexEntry> lastNameIndexEntries = new ArrayList<>();
-            String temp_currentLastName;
-            String temp_cpf;
-
-            // Read all current title indexes
-            try (RandomAccessFile lastNameIndexFile = new RandomAccessFile(TITLE_INDEX_FILE, "r")) {
-                while (lastNameIndexFile.getFilePointer() < lastNameIndexFile.length()) {
-                    temp_currentLastName = lastNameIndexFile.readUTF();
-                    temp_cpf = lastNameIndexFile.readUTF();
-                    lastNameIndexEntries.add(new LastNameIndexEntry(temp_currentLastName, temp_cpf));
-                }
-            }
-
-            // Use binary search to find the title
-            List<String> foundCpfs = new ArrayList<>();
-            LastNameIndexEntry midEntry;
-            int mid;
-            int cmp;
-            int index;
-            int left = 0;
-            int right = lastNameIndexEntries.size() - 1;
-
-            while (left <= right) {
-                mid = (left + right) / 2;
-                midEntry = lastNameIndexEntries.get(mid);
-                cmp = midEntry.getLastName().compareTo(lastName);
-
-                if (cmp < 0) {
-                    left = mid + 1;
-                } else if (cmp > 0) {
-                    right = mid - 1;
-                } else {
-                    // Found one title, now we need to find all lastNames with the same name
-                    // Search to the left first
-                    index = mid;
-                    while (index >= 0 && lastNameIndexEntries.get(index).getLastName().equals(lastName)) {
-                        foundCpfs.add(lastNameIndexEntries.get(index).getCpf());
-                        index--;
-                    }
-                    // Now search to the right
-                    index = mid + 1;
-                    while (index < lastNameIndexEntries.size() && lastNameIndexEntries.get(index).getLastName().equals(lastName)) {
-                        foundCpfs.add(lastNameIndexEntries.get(index).getCpf());
-                        index++;
-                    }
-                    break;
-                }
+            lock.readLock().lock();
+            try {
+                return lastNameIndexManager.getIsbnsByKey(lastName);
+            } finally {
+                lock.readLock().unlock();
             }
-            return foundCpfs;
         }
 
         /**
-         * Removes a last name index entry from the last name index file.
-         * The method reads the current last name index entries from the last name index file and writes them back to a temporary file.
-         * The method skips the last name index entry with the specified CPF and renames the temporary file to the last name index file.
-         * @param cpf_rem The CPF of the patron to remove from the last name index file.
+         * Removes a last name index entry from the last name index.
+         * @param cpf_rem The CPF of the patron to remove from the last name index.
          * @throws IOException If an I/O error occurs.
          */
         private void removeLastNameIndex(String cpf_rem) throws IOException {
 
-            File tempFile = new File(TEMP_FILE);
-            String temp_currentLastName;
-            String temp_currentCpf;
-
-
-            try (RandomAccessFile lastNameIndexFile = new RandomAccessFile(TITLE_INDEX_FILE, "rw");
-                 RandomAccessFile tempLastNameIndexFile = new RandomAccessFile(tempFile, "rw")) {
-                while (lastNameIndexFile.getFilePointer() < lastNameIndexFile.length()) {
-                    temp_currentLastName= lastNameIndexFile.readUTF();
-                    temp_currentCpf = lastNameIndexFile.readUTF();
-                    if (!temp_currentCpf.equals(cpf_rem)) {
-                        tempLastNameIndexFile.writeUTF(temp_currentLastName);
-                        tempLastNameIndexFile.writeUTF(temp_currentCpf);
-                    }
-                }
-            }
-            tempFile.renameTo(new File(TITLE_INDEX_FILE));
+            lastNameIndexManager.removeSecondaryIndex(cpf_rem);
         }
 
         /**
          * Retrieves all the last names of the patrons.
-         * The method reads the last name index file and retrieves all the last names.
+         * The method reads the last names, in last name order, from the in-memory last name index.
          * @return A list of all the lastNames of the patrons.
          * @throws IOException If an I/O error occurs.
          */
         public List<String> getAllPatronsLastNames() throws IOException {
-            List<String> lastNames = new ArrayList<>();
-            String lastName;
-
-            try (RandomAccessFile patronIndexFile = new RandomAccessFile(TITLE_INDEX_FILE, "rw")) {
 
-                patronIndexFile.seek(0);
-                while (patronIndexFile.getFilePointer() < patronIndexFile.length()) {
-                    lastName = patronIndexFile.readUTF();
-                    patronIndexFile.readUTF(); // Skip the CPF
-                    lastNames.add(lastName);
-                }
+            lock.readLock().lock();
+            try {
+                return lastNameIndexManager.getAllKeys();
+            } finally {
+                lock.readLock().unlock();
             }
-
-            return lastNames;
         }
-    }
 
+        /**
+         * Retrieves the last names of the patrons one page at a time, in last name order.
+         * @param after The cursor of the previous page, or null for the first page.
+         * @param limit The maximum number of last names of the page, at least 1.
+         * @return The page of last names, with the cursor of the next page.
+         */
+        public Page<String> getPatronsLastNames(String after, int limit) {
 
+            Page<KeyIndexEntry> entries;
+            List<String> lastNames = new ArrayList<>();
 
+            lock.readLock().lock();
+            try {
+                entries = lastNameIndexManager.getEntriesPage(null, after, limit);
+            } finally {
+                lock.readLock().unlock();
+            }
+            for (KeyIndexEntry entry : entries.getItems()) {
+                lastNames.add(entry.getKey());
+            }
+            return new Page<>(lastNames, entries.getNextCursor());
+        }
 
+        /**
+         * Retrieves the most common last names starting with a prefix, for the autocompletion of the last name search.
+         * @param prefix The beginning of the last name typed by the user, compared without case and accents.
+         * @param limit The maximum number of last names.
+         * @return The last names with their number of patrons, the most common first.
+         */
+        public List<Completion> getLastNameCompletions(String prefix, int limit) {
 
+            return lastNameIndexManager.getCompletions(prefix, limit);
+        }
+    }
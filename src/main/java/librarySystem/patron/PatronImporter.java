@@ -0,0 +1,138 @@
+package librarySystem.patron;
+
+import librarySystem.storage.CsvLines;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Reads the patrons of a CSV import file, one patron per line.
+ * The fields are name, lastName, cpf, password, email and phoneNumber, in this order, and may be quoted with double quotes.
+ * A first line starting with "name" is a header line and is skipped.
+ * The lines are read in batches, and the lines of a batch are parsed in parallel while keeping the order of the file,
+ * so only one batch is kept in memory at a time.
+ * The iterator reports malformed lines and read errors as UncheckedIOException, since Iterator methods cannot throw IOException.
+ */
+public class PatronImporter implements Iterable<Patron>, Closeable {
+
+    private static final int BATCH_SIZE = 10000;
+    private static final int FIELD_COUNT = 6;
+
+    private final BufferedReader reader;
+    private int lineNumber;
+
+    /**
+     * Opens an import file.
+     * @param file The path of the file.
+     * @throws IOException If an I/O error occurs.
+     */
+    public PatronImporter(Path file) throws IOException {
+        reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Retrieves an iterator over the patrons of the file.
+     * The file can be iterated only once.
+     * @return The iterator.
+     */
+    @Override
+    public Iterator<Patron> iterator() {
+        return new Iterator<>() {
+            private Iterator<Patron> batch = Collections.emptyIterator();
+            private boolean finished;
+
+            @Override
+            public boolean hasNext() {
+
+                List<Patron> patrons;
+
+                while (!batch.hasNext() && !finished) {
+                    patrons = readBatch();
+                    finished = patrons.isEmpty();
+                    batch = patrons.iterator();
+                }
+                return batch.hasNext();
+            }
+
+            @Override
+            public Patron next() {
+
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return batch.next();
+            }
+        };
+    }
+
+    /**
+     * Closes the import file.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Reads the next batch of lines and parses them in parallel, skipping blank lines and the header line.
+     * @return The patrons of the batch, in the order of the file, or an empty list at the end of the file.
+     */
+    private List<Patron> readBatch() {
+
+        List<String> lines = new ArrayList<>(BATCH_SIZE);
+        int[] lineNumbers = new int[BATCH_SIZE];
+        String line;
+
+        try {
+            while (lines.size() < BATCH_SIZE && (line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || (lineNumber == 1 && line.regionMatches(true, 0, "name", 0, 4))) {
+                    continue;
+                }
+                lineNumbers[lines.size()] = lineNumber;
+                lines.add(line);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return IntStream.range(0, lines.size())
+                .parallel()
+                .mapToObj(i -> parseLine(lines.get(i), lineNumbers[i]))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Parses a CSV line.
+     * @param line The line.
+     * @param number The number of the line in the file.
+     * @return The patron of the line.
+     */
+    private static Patron parseLine(String line, int number) {
+
+        List<String> fields;
+
+        try {
+            fields = CsvLines.split(line);
+        } catch (IOException e) {
+            throw malformed(number, e.getMessage());
+        }
+        if (fields.size() != FIELD_COUNT) {
+            throw malformed(number, "expected " + FIELD_COUNT + " fields but found " + fields.size());
+        }
+        if (fields.get(2).isBlank()) {
+            throw malformed(number, "missing cpf");
+        }
+        return new Patron(fields.get(0).trim(), fields.get(1).trim(), fields.get(2).trim(),
+                fields.get(3), fields.get(4).trim(), fields.get(5).trim());
+    }
+
+    private static UncheckedIOException malformed(int number, String message) {
+        return new UncheckedIOException(new IOException("malformed line " + number + ": " + message));
+    }
+}
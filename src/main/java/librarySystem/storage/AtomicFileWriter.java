@@ -0,0 +1,199 @@
+package librarySystem.storage;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Replaces whole files atomically, for the index files that are written again from the beginning.
+ * The new content is written to a temporary file with a unique name next to the target file,
+ * and the temporary file is then moved over the target file with Files.move and ATOMIC_MOVE.
+ * A reader, or a crash, sees either the old file or the new one, never a file half written, and writers of
+ * different files, or of the same file, never share a temporary file.
+ * The sync policy decides what is forced to the storage device before and after the move:
+ * - NONE: nothing, the operating system writes the file when it wants.
+ * - DATA: the content of the temporary file, so the moved file is never empty or partial after a power loss.
+ * - DATA_AND_DIRECTORY: the content and then the directory, so the move itself survives a power loss.
+ * The policy is read from the "librarySystem.fsync" system property (none, data or directory) and defaults to DATA_AND_DIRECTORY.
+ */
+public final class AtomicFileWriter {
+
+    /**
+     * Sync policy enum
+     * It lists what is forced to the storage device when a file is replaced
+     */
+    public enum SyncPolicy {
+        NONE, DATA, DATA_AND_DIRECTORY
+    }
+
+    /**
+     * Content interface
+     * It writes the new content of a file
+     */
+    public interface Content {
+        void writeTo(DataOutputStream out) throws IOException;
+    }
+
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final Set<Path> ACTIVE_TEMP_FILES = ConcurrentHashMap.newKeySet();
+    private static volatile SyncPolicy syncPolicy = parseSyncPolicy(System.getProperty("librarySystem.fsync", "directory"));
+
+    private AtomicFileWriter() {
+    }
+
+    /**
+     * Sets the sync policy used by the next replacements.
+     * @param policy The sync policy.
+     */
+    public static void setSyncPolicy(SyncPolicy policy) {
+        syncPolicy = policy;
+    }
+
+    /**
+     * Retrieves the sync policy.
+     * @return The sync policy.
+     */
+    public static SyncPolicy getSyncPolicy() {
+        return syncPolicy;
+    }
+
+    /**
+     * Writes the content of a file to a temporary file and replaces the file with it.
+     * @param target The file to replace.
+     * @param content The writer of the new content.
+     * @throws IOException If an I/O error occurs, in which case the target file is left unchanged.
+     */
+    public static void write(Path target, Content content) throws IOException {
+
+        Path temp = createTempFile(target);
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            content.writeTo(out);
+            out.flush();
+            if (syncPolicy != SyncPolicy.NONE) {
+                channel.force(true);
+            }
+        } catch (IOException | RuntimeException e) {
+            discard(temp);
+            throw e;
+        }
+        move(temp, target);
+    }
+
+    /**
+     * Creates an empty temporary file with a unique name in the directory of a file, to be filled and passed to replace.
+     * @param target The file that the temporary file will replace.
+     * @return The path of the temporary file.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static Path createTempFile(Path target) throws IOException {
+
+        Path temp = Files.createTempFile(directoryOf(target), target.getFileName() + ".", TEMP_SUFFIX);
+
+        ACTIVE_TEMP_FILES.add(temp);
+        return temp;
+    }
+
+    /**
+     * Deletes a temporary file that will not replace its target file, after an error.
+     * @param temp The temporary file, created by createTempFile.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static void discard(Path temp) throws IOException {
+        try {
+            Files.deleteIfExists(temp);
+        } finally {
+            ACTIVE_TEMP_FILES.remove(temp);
+        }
+    }
+
+    /**
+     * Replaces a file with a temporary file that is already written and closed.
+     * @param temp The temporary file, created by createTempFile.
+     * @param target The file to replace.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static void replace(Path temp, Path target) throws IOException {
+
+        if (syncPolicy != SyncPolicy.NONE) {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        }
+        move(temp, target);
+    }
+
+    /**
+     * Deletes the temporary files left next to a file by replacements that did not finish, after a crash.
+     * The temporary files of the replacements still running in this process are kept.
+     * @param target The file.
+     */
+    public static void deleteStaleTempFiles(Path target) {
+
+        String glob = target.getFileName() + ".*" + TEMP_SUFFIX;
+
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(directoryOf(target), glob)) {
+            for (Path temp : stale) {
+                if (!ACTIVE_TEMP_FILES.contains(temp)) {
+                    Files.deleteIfExists(temp);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Error deleting the temporary files of " + target + " : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Moves a temporary file over the target file, atomically when the file system supports it.
+     * @param temp The temporary file.
+     * @param target The file to replace.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static void move(Path temp, Path target) throws IOException {
+
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            ACTIVE_TEMP_FILES.remove(temp);
+        }
+        if (syncPolicy == SyncPolicy.DATA_AND_DIRECTORY) {
+            syncDirectory(directoryOf(target));
+        }
+    }
+
+    /**
+     * Forces a directory to the storage device, so the names it holds survive a power loss.
+     * Some platforms cannot open a directory as a channel, in which case nothing is done.
+     * @param directory The directory.
+     */
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not supported on this platform, the move is still atomic
+        }
+    }
+
+    private static Path directoryOf(Path target) {
+
+        Path directory = target.toAbsolutePath().getParent();
+        return directory != null ? directory : Paths.get(".");
+    }
+
+    private static SyncPolicy parseSyncPolicy(String value) {
+        switch (value.toLowerCase()) {
+            case "none":
+                return SyncPolicy.NONE;
+            case "data":
+                return SyncPolicy.DATA;
+            default:
+                return SyncPolicy.DATA_AND_DIRECTORY;
+        }
+    }
+}
@@ -0,0 +1,523 @@
+package librarySystem.storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Disk-resident B+tree mapping string keys to long values.
+ * It is used as the primary index of the data files (ISBN or CPF to file pointer).
+ * The tree is stored in a paged file with a fixed page size of 4096 bytes:
+ * - Page 0 is the header page: magic number, root page and page count.
+ * - Every other page is a node. A leaf node stores sorted (key, value) pairs and the page of the next leaf,
+ *   an internal node stores sorted separator keys and the pages of its children.
+ * Inserts, deletes and point lookups read one page per level of the tree and write only the pages they change.
+ * Deletes remove the entry from its leaf in place and never merge underfull nodes, which keeps the tree valid
+ * without having to rebalance it.
+ * A whole tree can also be built at once from sorted entries, writing each page a single time.
+ * The pages are read and written through a RecordStore, so the nodes used often stay in the shared buffer pool.
+ */
+public class BPlusTree implements Closeable {
+
+    public static final int PAGE_SIZE = 4096;
+    public static final int MAX_KEY_LENGTH = 64;
+    private static final int MAGIC = 0x42505431; // "BPT1"
+    private static final int HEADER_PAGE = 0;
+    private static final int NO_PAGE = -1;
+    // A leaf entry takes at most 2 + 64 + 8 bytes and an internal entry 2 + 64 + 4 bytes,
+    // so ORDER keys always fit in a page after the 11 bytes of node header.
+    private static final int ORDER = (PAGE_SIZE - 11) / (2 + MAX_KEY_LENGTH + 8);
+    // Nodes built by bulkLoad are filled to three quarters, so the next inserts do not split them at once
+    private static final int BULK_FILL = ORDER * 3 / 4;
+
+    private final RecordStore store;
+    private int rootPage;
+    private int pageCount;
+
+    /**
+     * Node class
+     * It represents a node of the tree read from its page
+     * - page: Page number of the node
+     * - leaf: Whether the node is a leaf
+     * - next: Page of the next leaf, only used by leaves
+     * - keys: Sorted keys
+     * - values: Values of the keys, only used by leaves
+     * - children: Pages of the children, only used by internal nodes
+     */
+    private static class Node {
+        private final int page;
+        private final boolean leaf;
+        private int next = NO_PAGE;
+        private final List<String> keys = new ArrayList<>();
+        private final List<Long> values = new ArrayList<>();
+        private final List<Integer> children = new ArrayList<>();
+
+        private Node(int page, boolean leaf) {
+            this.page = page;
+            this.leaf = leaf;
+        }
+    }
+
+    /**
+     * Split class
+     * It represents the result of splitting a node
+     * - key: Separator key to be inserted in the parent
+     * - rightPage: Page of the new right node
+     */
+    private static class Split {
+        private final String key;
+        private final int rightPage;
+
+        private Split(String key, int rightPage) {
+            this.key = key;
+            this.rightPage = rightPage;
+        }
+    }
+
+    /**
+     * Opens the tree stored in the specified file, creating an empty tree if the file does not exist.
+     * @param filename The name of the tree file.
+     * @throws IOException If an I/O error occurs or the file is not a tree file.
+     */
+    public BPlusTree(String filename) throws IOException {
+
+        ByteBuffer header;
+
+        store = RecordStore.open(filename, false);
+        if (store.size() == 0) {
+            pageCount = 2;
+            rootPage = 1;
+            writeNode(new Node(rootPage, true));
+            writeHeader();
+        } else {
+            header = store.read((long) HEADER_PAGE * PAGE_SIZE, 3 * Integer.BYTES);
+            if (header.getInt() != MAGIC) {
+                store.close();
+                throw new IOException(filename + " is not a B+tree file");
+            }
+            rootPage = header.getInt();
+            pageCount = header.getInt();
+        }
+    }
+
+    /**
+     * Checks if the specified file is a tree file.
+     * The method reads the magic number at the beginning of the file.
+     * @param filename The name of the file.
+     * @return True if the file exists and is a tree file, false otherwise.
+     */
+    public static boolean isTreeFile(String filename) {
+        if (!new File(filename).exists()) {
+            return false;
+        }
+        try (RecordStore store = RecordStore.open(filename, false)) {
+            return store.size() >= Integer.BYTES && store.read(0, Integer.BYTES).getInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Builds a tree file from entries sorted by key, replacing the file if it exists.
+     * The method writes the leaves from left to right and then each level of internal nodes above them,
+     * so every page is written once instead of once per inserted key.
+     * @param filename The name of the tree file.
+     * @param sortedEntries The entries, sorted by key without duplicates.
+     * @throws IOException If an I/O error occurs, a key is too long or the entries are not sorted.
+     */
+    public static void bulkLoad(String filename, Collection<Map.Entry<String, Long>> sortedEntries) throws IOException {
+
+        new File(filename).delete();
+        try (BPlusTree tree = new BPlusTree(filename)) {
+            tree.load(sortedEntries);
+        }
+    }
+
+    /**
+     * Retrieves the value of a key.
+     * The method descends from the root to the leaf that may contain the key.
+     * @param key The key to find.
+     * @param notFound The value to return if the key is not in the tree.
+     * @return The value of the key, or notFound if not found.
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized long search(String key, long notFound) throws IOException {
+
+        Node node = readNode(rootPage);
+        int pos;
+
+        while (!node.leaf) {
+            node = readNode(node.children.get(childIndex(node, key)));
+        }
+        pos = binarySearch(node.keys, key);
+        return pos >= 0 ? node.values.get(pos) : notFound;
+    }
+
+    /**
+     * Inserts a key in the tree, or replaces its value if the key already exists.
+     * The method inserts the key in its leaf and splits the full nodes on the way back to the root.
+     * @param key The key to insert.
+     * @param value The value of the key.
+     * @throws IOException If an I/O error occurs or the key is too long.
+     */
+    public synchronized void insert(String key, long value) throws IOException {
+
+        if (RecordBuffers.utfLength(key) > MAX_KEY_LENGTH) {
+            throw new IOException("key too long: " + key);
+        }
+
+        Split split = insert(rootPage, key, value);
+        if (split != null) {
+            // The root was split, so the tree grows one level
+            Node root = new Node(allocatePage(), false);
+            root.keys.add(split.key);
+            root.children.add(rootPage);
+            root.children.add(split.rightPage);
+            writeNode(root);
+            rootPage = root.page;
+            writeHeader();
+        }
+    }
+
+    /**
+     * Deletes a key from the tree.
+     * The method removes the key from its leaf in place.
+     * @param key The key to delete.
+     * @return True if the key was in the tree, false otherwise.
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized boolean delete(String key) throws IOException {
+
+        Node node = readNode(rootPage);
+        int pos;
+
+        while (!node.leaf) {
+            node = readNode(node.children.get(childIndex(node, key)));
+        }
+        pos = binarySearch(node.keys, key);
+        if (pos < 0) {
+            return false;
+        }
+        node.keys.remove(pos);
+        node.values.remove(pos);
+        writeNode(node);
+        return true;
+    }
+
+    /**
+     * Visits every entry of the tree in key order.
+     * The method finds the leftmost leaf and follows the chain of leaves.
+     * @param visitor The visitor called with the key and the value of each entry.
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized void forEach(BiConsumer<String, Long> visitor) throws IOException {
+
+        Node node = readNode(rootPage);
+
+        while (!node.leaf) {
+            node = readNode(node.children.get(0));
+        }
+        while (true) {
+            for (int i = 0; i < node.keys.size(); i++) {
+                visitor.accept(node.keys.get(i), node.values.get(i));
+            }
+            if (node.next == NO_PAGE) {
+                break;
+            }
+            node = readNode(node.next);
+        }
+    }
+
+    /**
+     * Guards the tree file by a write-ahead log, so the nodes changed by a logged change are not written to the file
+     * before its log record is durable. See RecordStore.setWriteAheadLog.
+     * @param log The log, or null to stop guarding the file.
+     */
+    public synchronized void setWriteAheadLog(WriteAheadLog log) {
+        store.setWriteAheadLog(log);
+    }
+
+    /**
+     * Forces the written pages of the tree to the storage device.
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized void force() throws IOException {
+        store.force();
+    }
+
+    /**
+     * Closes the tree file.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        store.close();
+    }
+
+    /**
+     * Writes the nodes of the tree from sorted entries, starting again from an empty file.
+     * The entries are spread evenly over the leaves, and the children of each level are spread evenly over their parents.
+     * @param sortedEntries The entries, sorted by key without duplicates.
+     * @throws IOException If an I/O error occurs, a key is too long or the entries are not sorted.
+     */
+    private void load(Collection<Map.Entry<String, Long>> sortedEntries) throws IOException {
+
+        Iterator<Map.Entry<String, Long>> iterator = sortedEntries.iterator();
+        int count = sortedEntries.size();
+        int leaves = Math.max(1, (count + BULK_FILL - 1) / BULK_FILL);
+        List<String> firstKeys = new ArrayList<>();
+        List<Integer> pages = new ArrayList<>();
+        List<String> parentFirstKeys;
+        List<Integer> parentPages;
+        Map.Entry<String, Long> entry;
+        String previousKey = null;
+        Node node;
+        int nodes;
+        int from;
+        int to;
+
+        pageCount = 1;
+        for (int i = 0; i < leaves; i++) {
+            node = new Node(allocatePage(), true);
+            for (long j = (long) count * i / leaves; j < (long) count * (i + 1) / leaves; j++) {
+                entry = iterator.next();
+                if (RecordBuffers.utfLength(entry.getKey()) > MAX_KEY_LENGTH) {
+                    throw new IOException("key too long: " + entry.getKey());
+                }
+                if (previousKey != null && previousKey.compareTo(entry.getKey()) >= 0) {
+                    throw new IOException("keys are not sorted: " + entry.getKey());
+                }
+                node.keys.add(entry.getKey());
+                node.values.add(entry.getValue());
+                previousKey = entry.getKey();
+            }
+            // The leaves take consecutive pages
+            node.next = i + 1 < leaves ? node.page + 1 : NO_PAGE;
+            writeNode(node);
+            firstKeys.add(node.keys.isEmpty() ? "" : node.keys.get(0));
+            pages.add(node.page);
+        }
+
+        while (pages.size() > 1) {
+            nodes = (pages.size() + BULK_FILL) / (BULK_FILL + 1);
+            parentFirstKeys = new ArrayList<>();
+            parentPages = new ArrayList<>();
+            for (int i = 0; i < nodes; i++) {
+                from = pages.size() * i / nodes;
+                to = pages.size() * (i + 1) / nodes;
+                node = new Node(allocatePage(), false);
+                node.children.add(pages.get(from));
+                for (int k = from + 1; k < to; k++) {
+                    node.keys.add(firstKeys.get(k));
+                    node.children.add(pages.get(k));
+                }
+                writeNode(node);
+                parentFirstKeys.add(firstKeys.get(from));
+                parentPages.add(node.page);
+            }
+            firstKeys = parentFirstKeys;
+            pages = parentPages;
+        }
+        rootPage = pages.get(0);
+        writeHeader();
+    }
+
+    /**
+     * Inserts a key in the subtree rooted at the specified page.
+     * @param page The page of the subtree root.
+     * @param key The key to insert.
+     * @param value The value of the key.
+     * @return The split of the subtree root, or null if it was not split.
+     * @throws IOException If an I/O error occurs.
+     */
+    private Split insert(int page, String key, long value) throws IOException {
+
+        Node node = readNode(page);
+        Split split;
+        int pos;
+
+        if (node.leaf) {
+            pos = binarySearch(node.keys, key);
+            if (pos >= 0) {
+                node.values.set(pos, value);
+            } else {
+                node.keys.add(-pos - 1, key);
+                node.values.add(-pos - 1, value);
+            }
+        } else {
+            pos = childIndex(node, key);
+            split = insert(node.children.get(pos), key, value);
+            if (split == null) {
+                return null;
+            }
+            node.keys.add(pos, split.key);
+            node.children.add(pos + 1, split.rightPage);
+        }
+
+        if (node.keys.size() <= ORDER) {
+            writeNode(node);
+            return null;
+        }
+        return split(node);
+    }
+
+    /**
+     * Splits a full node in two.
+     * A leaf keeps the lower half of its entries and the new right leaf is linked after it.
+     * An internal node moves its middle key up to the parent.
+     * @param node The node to split.
+     * @return The separator key and the page of the new right node.
+     * @throws IOException If an I/O error occurs.
+     */
+    private Split split(Node node) throws IOException {
+
+        int mid = node.keys.size() / 2;
+        Node right = new Node(allocatePage(), node.leaf);
+        String separator;
+
+        if (node.leaf) {
+            right.keys.addAll(node.keys.subList(mid, node.keys.size()));
+            right.values.addAll(node.values.subList(mid, node.values.size()));
+            node.keys.subList(mid, node.keys.size()).clear();
+            node.values.subList(mid, node.values.size()).clear();
+            right.next = node.next;
+            node.next = right.page;
+            separator = right.keys.get(0);
+        } else {
+            separator = node.keys.get(mid);
+            right.keys.addAll(node.keys.subList(mid + 1, node.keys.size()));
+            right.children.addAll(node.children.subList(mid + 1, node.children.size()));
+            node.keys.subList(mid, node.keys.size()).clear();
+            node.children.subList(mid + 1, node.children.size()).clear();
+        }
+        writeNode(right);
+        writeNode(node);
+        writeHeader();
+        return new Split(separator, right.page);
+    }
+
+    /**
+     * Retrieves the position of the child of an internal node that may contain the key.
+     * Each separator key is the smallest key of the child at its right.
+     * @param node The internal node.
+     * @param key The key to find.
+     * @return The position of the child.
+     */
+    private int childIndex(Node node, String key) {
+
+        int pos = binarySearch(node.keys, key);
+        return pos >= 0 ? pos + 1 : -pos - 1;
+    }
+
+    /**
+     * Uses binary search to find a key in a sorted list of keys.
+     * @param keys The sorted keys.
+     * @param key The key to find.
+     * @return The position of the key, or (-(insertion point) - 1) if not found.
+     */
+    private static int binarySearch(List<String> keys, String key) {
+
+        int mid;
+        int cmp;
+        int left = 0;
+        int right = keys.size() - 1;
+
+        while (left <= right) {
+            mid = (left + right) / 2;
+            cmp = keys.get(mid).compareTo(key);
+            if (cmp < 0) {
+                left = mid + 1;
+            } else if (cmp > 0) {
+                right = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -left - 1;
+    }
+
+    /**
+     * Allocates a new page at the end of the tree file.
+     * @return The number of the new page.
+     */
+    private int allocatePage() {
+        return pageCount++;
+    }
+
+    /**
+     * Writes the header page.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(3 * Integer.BYTES);
+
+        header.putInt(MAGIC).putInt(rootPage).putInt(pageCount).flip();
+        store.write((long) HEADER_PAGE * PAGE_SIZE, header);
+    }
+
+    /**
+     * Reads a node from its page.
+     * @param page The page of the node.
+     * @return The node read from the page.
+     * @throws IOException If an I/O error occurs.
+     */
+    private Node readNode(int page) throws IOException {
+
+        ByteBuffer buffer = store.read((long) page * PAGE_SIZE, PAGE_SIZE);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.array(), buffer.arrayOffset(), PAGE_SIZE));
+        Node node = new Node(page, in.readBoolean());
+        int count = in.readShort();
+
+        node.next = in.readInt();
+        if (node.leaf) {
+            for (int i = 0; i < count; i++) {
+                node.keys.add(in.readUTF());
+                node.values.add(in.readLong());
+            }
+        } else {
+            node.children.add(in.readInt());
+            for (int i = 0; i < count; i++) {
+                node.keys.add(in.readUTF());
+                node.children.add(in.readInt());
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Writes a node to its page.
+     * The method fills the remaining space with blank bytes to complete the page size.
+     * @param node The node to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void writeNode(Node node) throws IOException {
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(PAGE_SIZE);
+        DataOutputStream out = new DataOutputStream(buffer);
+
+        out.writeBoolean(node.leaf);
+        out.writeShort(node.keys.size());
+        out.writeInt(node.next);
+        if (node.leaf) {
+            for (int i = 0; i < node.keys.size(); i++) {
+                out.writeUTF(node.keys.get(i));
+                out.writeLong(node.values.get(i));
+            }
+        } else {
+            out.writeInt(node.children.get(0));
+            for (int i = 0; i < node.keys.size(); i++) {
+                out.writeUTF(node.keys.get(i));
+                out.writeInt(node.children.get(i + 1));
+            }
+        }
+        out.write(new byte[PAGE_SIZE - buffer.size()]);
+
+        store.write((long) node.page * PAGE_SIZE, ByteBuffer.wrap(buffer.toByteArray()));
+    }
+}
@@ -0,0 +1,526 @@
+package librarySystem.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pool of off-heap page buffers shared by the record files of the application.
+ * The pool holds a fixed number of frames of 8192 bytes, sliced from a single direct ByteBuffer, so the memory it uses
+ * is known in advance and the cached pages are never scanned by the garbage collector.
+ * - A file is opened in the pool once per path, so every store of the same file sees the same pages.
+ * - A page is pinned while it is read or written, and a pinned page is never evicted.
+ * - A page changed by a write is marked dirty and is written back to its file when it is evicted, when its file is forced
+ *   or closed, and when the application exits.
+ * - A file guarded by a WriteAheadLog follows the write-ahead rule: a dirty page remembers the last log record appended when
+ *   it was changed, and is not written back before that record is durable. Such a page is not chosen for eviction while its
+ *   record is not durable, unless every other page is pinned or held, in which case the log is forced first.
+ * - The page to evict is chosen by the clock algorithm: the clock hand skips the pinned pages and gives a second chance
+ *   to the pages used since it last passed them.
+ * A page missing from the pool is read from its file outside the lock of the pool, so misses of different threads run in parallel.
+ * The sequential reads of the scans bypass the pool: they copy the pages already in the pool and read the others from the file
+ * in runs, without keeping them, so a scan of a whole file does not evict the pages used by the other reads.
+ * The number of frames is read from the "librarySystem.bufferPool.pages" system property and defaults to 4096 (32 MB).
+ */
+public final class BufferPool {
+
+    public static final int PAGE_SIZE = 8192;
+    private static final int DEFAULT_PAGES = 4096;
+    private static final BufferPool SHARED = new BufferPool(Integer.getInteger("librarySystem.bufferPool.pages", DEFAULT_PAGES));
+
+    private final Frame[] frames;
+    private final Map<Long, Frame> table = new HashMap<>();
+    private final Map<Path, PooledFile> files = new HashMap<>();
+    private int nextFileId;
+    private int clockHand;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long writeBackCount;
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(SHARED::flushAll, "buffer-pool-shutdown"));
+    }
+
+    /**
+     * Frame class
+     * It represents a buffer of the pool and the page it holds
+     * - buffer: Off-heap buffer of the page
+     * - file: File of the page, or null if the frame is free
+     * - page: Page number in the file
+     * - pinCount: Number of users of the page, the page cannot be evicted while it is above 0
+     * - dirty: Whether the page was changed since it was read or written back
+     * - logSequence: Last record of the log of the file appended when the page was changed, to be durable before the page is written back
+     * - referenced: Whether the page was used since the clock hand last passed it
+     * - loading: Whether the page is being read from its file
+     */
+    static class Frame {
+        private final ByteBuffer buffer;
+        private PooledFile file;
+        private long page;
+        private int pinCount;
+        private boolean dirty;
+        private long logSequence;
+        private boolean referenced;
+        private boolean loading;
+
+        private Frame(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        ByteBuffer buffer() {
+            return buffer;
+        }
+    }
+
+    /**
+     * PooledFile class
+     * It represents a file opened in the pool
+     * - id: Number of the file in the keys of the pages
+     * - path: Normalized absolute path of the file
+     * - channel: Channel used to read and write back the pages
+     * - references: Number of stores that opened the file
+     * - size: Size of the file including the pages not written back yet
+     * - log: Write-ahead log guarding the file, or null
+     */
+    static class PooledFile {
+        private final int id;
+        private final Path path;
+        private final FileChannel channel;
+        private int references;
+        private long size;
+        private WriteAheadLog log;
+
+        private PooledFile(int id, Path path, FileChannel channel) throws IOException {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            size = channel.size();
+        }
+    }
+
+    /**
+     * Creates a pool.
+     * @param pageCount The number of pages the pool can hold, 0 to disable the pool.
+     */
+    public BufferPool(int pageCount) {
+
+        ByteBuffer memory = ByteBuffer.allocateDirect(Math.max(0, pageCount) * PAGE_SIZE);
+
+        frames = new Frame[Math.max(0, pageCount)];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new Frame(memory.slice(i * PAGE_SIZE, PAGE_SIZE));
+        }
+    }
+
+    /**
+     * Retrieves the pool shared by the record files of the application.
+     * @return The shared pool.
+     */
+    public static BufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Retrieves the number of pages the pool can hold.
+     * @return The number of frames.
+     */
+    public int getCapacity() {
+        return frames.length;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized long getWriteBackCount() {
+        return writeBackCount;
+    }
+
+    /**
+     * Opens a file in the pool, creating it if it does not exist, or adds a reference to it if it is already open.
+     * @param filename The name of the file.
+     * @return The file opened in the pool.
+     * @throws IOException If an I/O error occurs.
+     */
+    synchronized PooledFile open(String filename) throws IOException {
+
+        Path path = Path.of(filename).toAbsolutePath().normalize();
+        PooledFile file = files.get(path);
+
+        if (file == null) {
+            file = new PooledFile(nextFileId++, path,
+                    FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+            files.put(path, file);
+        }
+        file.references++;
+        return file;
+    }
+
+    /**
+     * Removes a reference to a file. When the last reference is removed, the dirty pages of the file are written back,
+     * its pages leave the pool and the file is closed.
+     * @param file The file.
+     * @throws IOException If an I/O error occurs.
+     */
+    synchronized void close(PooledFile file) throws IOException {
+
+        if (--file.references > 0) {
+            return;
+        }
+        try {
+            for (Frame frame : frames) {
+                if (frame.file == file) {
+                    if (frame.dirty) {
+                        writeBack(frame);
+                    }
+                    table.remove(key(file, frame.page));
+                    frame.file = null;
+                    frame.dirty = false;
+                }
+            }
+        } finally {
+            files.remove(file.path);
+            file.channel.close();
+        }
+    }
+
+    /**
+     * Guards a file by a write-ahead log, so its dirty pages are not written back before the log records of their changes are durable.
+     * @param file The file.
+     * @param log The log, or null to stop guarding the file.
+     */
+    synchronized void guard(PooledFile file, WriteAheadLog log) {
+        file.log = log;
+    }
+
+    /**
+     * Retrieves the size of a file, including the pages not written back yet.
+     * @param file The file.
+     * @return The size in bytes.
+     */
+    synchronized long size(PooledFile file) {
+        return file.size;
+    }
+
+    /**
+     * Grows the size of a file after a write.
+     * @param file The file.
+     * @param size The position after the last byte written.
+     */
+    synchronized void grow(PooledFile file, long size) {
+        file.size = Math.max(file.size, size);
+    }
+
+    /**
+     * Pins a page of a file, reading it into a frame if it is not in the pool.
+     * The caller must unpin the page when it no longer uses its buffer.
+     * @param file The file.
+     * @param page The page number.
+     * @param load False if the caller overwrites the whole page, so it does not need to be read.
+     * @return The frame holding the page.
+     * @throws IOException If an I/O error occurs or every page of the pool is pinned.
+     */
+    Frame pin(PooledFile file, long page, boolean load) throws IOException {
+
+        long key = key(file, page);
+        Frame frame;
+
+        while (true) {
+            synchronized (this) {
+                frame = table.get(key);
+                if (frame != null) {
+                    frame.pinCount++;
+                    frame.referenced = true;
+                    hitCount++;
+                    while (frame.loading) {
+                        waitUninterruptibly();
+                    }
+                    if (table.get(key) == frame) {
+                        return frame;
+                    }
+                    // The read of the page failed, try again
+                    continue;
+                }
+                missCount++;
+                frame = victim();
+                frame.file = file;
+                frame.page = page;
+                frame.pinCount = 1;
+                frame.referenced = true;
+                frame.dirty = false;
+                frame.logSequence = 0;
+                frame.loading = true;
+                table.put(key, frame);
+            }
+            try {
+                if (load) {
+                    readPage(frame);
+                } else {
+                    frame.buffer.clear();
+                }
+            } catch (IOException | RuntimeException e) {
+                synchronized (this) {
+                    table.remove(key);
+                    frame.file = null;
+                    frame.pinCount = 0;
+                    frame.loading = false;
+                    notifyAll();
+                }
+                throw e;
+            }
+            synchronized (this) {
+                frame.loading = false;
+                notifyAll();
+            }
+            return frame;
+        }
+    }
+
+    /**
+     * Reads a range of whole pages of a file without adding them to the pool, for the sequential reads of the scans.
+     * The pages in the pool are copied from their frames, so the dirty pages are read as they were written, and each run
+     * of following pages not in the pool is read from the file with a single positional read.
+     * The owner of the file must not change its pages during the read.
+     * @param file The file.
+     * @param firstPage The number of the first page.
+     * @param target The buffer to fill, with a multiple of the page size remaining.
+     * @throws IOException If an I/O error occurs.
+     */
+    void readUncached(PooledFile file, long firstPage, ByteBuffer target) throws IOException {
+
+        int pages = target.remaining() / PAGE_SIZE;
+        int start = target.position();
+        boolean[] cached = new boolean[pages];
+        ByteBuffer run;
+        Frame frame;
+        int end;
+
+        synchronized (this) {
+            for (int i = 0; i < pages; i++) {
+                frame = table.get(key(file, firstPage + i));
+                if (frame != null && !frame.loading) {
+                    target.put(start + i * PAGE_SIZE, frame.buffer, 0, PAGE_SIZE);
+                    cached[i] = true;
+                    hitCount++;
+                }
+            }
+        }
+        for (int i = 0; i < pages; i = end) {
+            end = i + 1;
+            if (cached[i]) {
+                continue;
+            }
+            while (end < pages && !cached[end]) {
+                end++;
+            }
+            run = target.duplicate().limit(start + end * PAGE_SIZE).position(start + i * PAGE_SIZE);
+            while (run.hasRemaining()) {
+                if (file.channel.read(run, (firstPage + i) * PAGE_SIZE + run.position() - start - i * PAGE_SIZE) < 0) {
+                    // Beyond the end of the file, the pages were grown but not written back yet
+                    while (run.hasRemaining()) {
+                        run.put((byte) 0);
+                    }
+                }
+            }
+        }
+        target.position(start + pages * PAGE_SIZE);
+    }
+
+    /**
+     * Unpins a page.
+     * @param frame The frame holding the page.
+     * @param dirty True if the caller changed the page.
+     */
+    synchronized void unpin(Frame frame, boolean dirty) {
+        if (dirty) {
+            frame.dirty = true;
+            if (frame.file.log != null) {
+                frame.logSequence = frame.file.log.getLastSequence();
+            }
+        }
+        frame.pinCount--;
+    }
+
+    /**
+     * Writes back the dirty pages of a file, without forcing them to the storage device.
+     * If the file is guarded, the log is forced first when it holds records of the changes not durable yet.
+     * The owner of the file must not change its pages while they are written back.
+     * @param file The file.
+     * @throws IOException If an I/O error occurs.
+     */
+    synchronized void flush(PooledFile file) throws IOException {
+        for (Frame frame : frames) {
+            if (frame.file == file && frame.dirty && !frame.loading) {
+                writeBack(frame);
+            }
+        }
+    }
+
+    /**
+     * Writes back the dirty pages of a file if it is open in the pool, for a reader that does not go through the pool.
+     * @param filename The name of the file.
+     * @throws IOException If an I/O error occurs.
+     */
+    synchronized void flush(String filename) throws IOException {
+
+        PooledFile file = files.get(Path.of(filename).toAbsolutePath().normalize());
+
+        if (file != null) {
+            flush(file);
+        }
+    }
+
+    /**
+     * Forces a file to the storage device, after its dirty pages were written back.
+     * @param file The file.
+     * @throws IOException If an I/O error occurs.
+     */
+    void force(PooledFile file) throws IOException {
+        file.channel.force(false);
+    }
+
+    /**
+     * Writes back the dirty pages of every open file, when the application exits.
+     */
+    private synchronized void flushAll() {
+        for (PooledFile file : new ArrayList<>(files.values())) {
+            try {
+                flush(file);
+            } catch (IOException e) {
+                System.out.println("Error writing back the pages of " + file.path + " : " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Chooses a frame for a new page with the clock algorithm, writing back the page it holds if it is dirty.
+     * The clock hand skips the held pages, whose log records are not durable yet. If it finds no other page,
+     * the first held page it passed is evicted, after its log is forced.
+     * @return The free frame.
+     * @throws IOException If an I/O error occurs or every page of the pool is pinned.
+     */
+    private Frame victim() throws IOException {
+
+        Frame frame;
+        Frame held = null;
+
+        for (int scanned = 0; scanned < frames.length * 2; scanned++) {
+            frame = frames[clockHand];
+            clockHand = (clockHand + 1) % frames.length;
+            if (frame.pinCount > 0) {
+                continue;
+            }
+            if (isHeld(frame)) {
+                held = held == null ? frame : held;
+                continue;
+            }
+            if (frame.referenced) {
+                frame.referenced = false;
+                continue;
+            }
+            evict(frame);
+            return frame;
+        }
+        if (held == null) {
+            throw new IOException("buffer pool exhausted, all its pages are pinned");
+        }
+        evict(held);
+        return held;
+    }
+
+    /**
+     * Removes the page of a frame from the pool, writing it back if it is dirty.
+     * @param frame The frame.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void evict(Frame frame) throws IOException {
+        if (frame.file != null) {
+            if (frame.dirty) {
+                writeBack(frame);
+            }
+            table.remove(key(frame.file, frame.page));
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Checks if a frame holds a dirty page of a guarded file whose log record is not durable yet.
+     * @param frame The frame.
+     * @return True if the page cannot be written back without forcing the log, false otherwise.
+     */
+    private static boolean isHeld(Frame frame) {
+        return frame.dirty && frame.file.log != null && !frame.file.log.isDurable(frame.logSequence);
+    }
+
+    /**
+     * Reads a page from its file into its frame, filling the bytes beyond the end of the file with zeros.
+     * @param frame The frame.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void readPage(Frame frame) throws IOException {
+
+        ByteBuffer buffer = frame.buffer.duplicate().clear();
+        long position = frame.page * PAGE_SIZE;
+        int read;
+
+        while (buffer.hasRemaining()) {
+            read = frame.file.channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                break;
+            }
+        }
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) 0);
+        }
+    }
+
+    /**
+     * Writes a dirty page back to its file, up to the size of the file.
+     * If the file is guarded and the log record of the last change of the page is not durable, the method waits for
+     * the log to be forced first. The group commit thread of the log does not use the pool, so it can run meanwhile.
+     * @param frame The frame.
+     * @throws IOException If an I/O error occurs, or the log could not be written.
+     */
+    private void writeBack(Frame frame) throws IOException {
+
+        long position = frame.page * PAGE_SIZE;
+        ByteBuffer buffer = frame.buffer.duplicate().clear();
+
+        if (frame.file.log != null) {
+            frame.file.log.awaitDurable(frame.logSequence);
+        }
+
+        buffer.limit((int) Math.max(0, Math.min(PAGE_SIZE, frame.file.size - position)));
+        while (buffer.hasRemaining()) {
+            frame.file.channel.write(buffer, position + buffer.position());
+        }
+        frame.dirty = false;
+        writeBackCount++;
+    }
+
+    private void waitUninterruptibly() {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long key(PooledFile file, long page) {
+        return ((long) file.id << 40) | page;
+    }
+}
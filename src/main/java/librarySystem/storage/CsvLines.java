@@ -0,0 +1,56 @@
+package librarySystem.storage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helper methods to read the lines of the CSV import files.
+ * Fields are separated by commas and may be quoted with double quotes, so a quoted field can hold commas.
+ * A double quote inside a quoted field is written twice.
+ */
+public final class CsvLines {
+
+    private CsvLines() {
+    }
+
+    /**
+     * Splits a CSV line in fields.
+     * @param line The line.
+     * @return The fields of the line, without their quotes.
+     * @throws IOException If a quoted field is not terminated.
+     */
+    public static List<String> split(String line) throws IOException {
+
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        char c;
+
+        for (int i = 0; i < line.length(); i++) {
+            c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IOException("unterminated quoted field");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,209 @@
+package librarySystem.storage;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Append-only log of index operations.
+ * Each record has an operation character followed by a key and a value, both written with writeUTF.
+ * An in-memory index appends every change to its log and applies the log again on startup.
+ * When the log grows, the index writes a new base file and rotates the log:
+ * - The current log is renamed to "<filename>.old" and a new empty log is started.
+ * - Once the base file is written, the rotated log is deleted.
+ * Replaying the rotated log and then the current log over the base file is always correct,
+ * because replaying an operation that is already in the base file does not change it.
+ */
+public class DeltaLog implements Closeable {
+
+    private final String filename;
+    private final String rotatedFilename;
+    private FileOutputStream logStream;
+    private DataOutputStream logFile;
+    private int size;
+
+    /**
+     * Operation interface
+     * It is called with each record when the log is replayed
+     */
+    public interface Operation {
+        void apply(char operation, String key, String value);
+    }
+
+    /**
+     * Opens the log stored in the specified file for appending.
+     * @param filename The name of the log file.
+     * @throws IOException If an I/O error occurs.
+     */
+    public DeltaLog(String filename) throws IOException {
+        this.filename = filename;
+        this.rotatedFilename = filename + ".old";
+        logFile = open();
+    }
+
+    /**
+     * Replays the rotated log, if any, and then the current log.
+     * A record cut in half by a crash at the end of a log is ignored.
+     * @param operation The operation called with each record.
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized void replay(Operation operation) throws IOException {
+
+        long[] rotated = replay(rotatedFilename, operation);
+        long[] current = replay(filename, operation);
+
+        if (current[1] < new File(filename).length()) {
+            // Drop the incomplete record, so the next records are appended after the last complete one
+            logFile.close();
+            try (RandomAccessFile file = new RandomAccessFile(filename, "rw")) {
+                file.setLength(current[1]);
+            }
+            logFile = open();
+        }
+        size = (int) (rotated[0] + current[0]);
+    }
+
+    /**
+     * Appends a record to the log.
+     * @param operation The operation character.
+     * @param key The key of the record.
+     * @param value The value of the record.
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized void append(char operation, String key, String value) throws IOException {
+        logFile.writeChar(operation);
+        logFile.writeUTF(key);
+        logFile.writeUTF(value);
+        logFile.flush();
+        size++;
+    }
+
+    /**
+     * Appends records with the same operation to the log, flushing them once.
+     * @param operation The operation character.
+     * @param keys The keys of the records.
+     * @param values The values of the records, in the order of the keys.
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized void appendAll(char operation, List<String> keys, List<String> values) throws IOException {
+        for (int i = 0; i < keys.size(); i++) {
+            logFile.writeChar(operation);
+            logFile.writeUTF(keys.get(i));
+            logFile.writeUTF(values.get(i));
+        }
+        logFile.flush();
+        size += keys.size();
+    }
+
+    /**
+     * Forces the appended records to the storage device.
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized void force() throws IOException {
+        logFile.flush();
+        logStream.getFD().sync();
+    }
+
+    /**
+     * Retrieves the number of records in the log since it was last rotated.
+     * @return The number of records.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Rotates the log: the current log becomes the rotated log and a new empty log is started.
+     * @return True if the log was rotated, false if the previous rotated log was not deleted yet.
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized boolean rotate() throws IOException {
+
+        if (new File(rotatedFilename).exists()) {
+            return false;
+        }
+        logFile.flush();
+        logStream.getFD().sync();
+        logFile.close();
+        new File(filename).renameTo(new File(rotatedFilename));
+        logFile = open();
+        size = 0;
+        return true;
+    }
+
+    /**
+     * Checks if there is a rotated log, left by a base file write that did not finish.
+     * @return True if the rotated log exists, false otherwise.
+     */
+    public boolean hasRotated() {
+        return new File(rotatedFilename).exists();
+    }
+
+    /**
+     * Deletes the rotated log, after its records were written to the base file.
+     */
+    public void deleteRotated() {
+        new File(rotatedFilename).delete();
+    }
+
+    /**
+     * Closes the log file.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        logFile.close();
+    }
+
+    /**
+     * Opens the current log file for appending.
+     * @return The stream to append records to.
+     * @throws IOException If an I/O error occurs.
+     */
+    private DataOutputStream open() throws IOException {
+        logStream = new FileOutputStream(filename, true);
+        return new DataOutputStream(new BufferedOutputStream(logStream));
+    }
+
+    /**
+     * Replays the records of a log file.
+     * @param filename The name of the log file.
+     * @param operation The operation called with each record.
+     * @return The number of records replayed and the length of the log up to the last complete record.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static long[] replay(String filename, Operation operation) throws IOException {
+
+        byte[] content;
+        ByteArrayInputStream buffer;
+        DataInputStream log;
+        long count = 0;
+        long validLength = 0;
+        char op;
+        String key;
+        String value;
+
+        try {
+            content = Files.readAllBytes(Path.of(filename));
+        } catch (NoSuchFileException e) {
+            return new long[] {0, 0};
+        }
+        buffer = new ByteArrayInputStream(content);
+        log = new DataInputStream(buffer);
+        try {
+            while (buffer.available() > 0) {
+                op = log.readChar();
+                key = log.readUTF();
+                value = log.readUTF();
+                operation.apply(op, key, value);
+                count++;
+                validLength = content.length - buffer.available();
+            }
+        } catch (EOFException e) {
+            System.out.println("Ignoring incomplete record at the end of " + filename);
+        }
+        return new long[] {count, validLength};
+    }
+}
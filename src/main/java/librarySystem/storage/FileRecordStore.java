@@ -0,0 +1,75 @@
+package librarySystem.storage;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Record store that reads and writes the file with positional FileChannel calls.
+ * Reading a record costs one system call, instead of one per field.
+ * The writes reach the operating system at once, so a write to a guarded file first waits for the write-ahead log to be durable.
+ */
+public class FileRecordStore implements RecordStore {
+
+    private final FileChannel channel;
+    private volatile WriteAheadLog log;
+
+    /**
+     * Opens the store, creating the file if it does not exist.
+     * @param filename The name of the data file.
+     * @throws IOException If an I/O error occurs.
+     */
+    public FileRecordStore(String filename) throws IOException {
+        channel = FileChannel.open(Path.of(filename), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    @Override
+    public ByteBuffer read(long position, int length) throws IOException {
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("read beyond the end of the file");
+            }
+        }
+        return buffer.flip();
+    }
+
+    @Override
+    public void write(long position, ByteBuffer source) throws IOException {
+
+        long current = position;
+        WriteAheadLog guard = log;
+
+        if (guard != null) {
+            guard.awaitDurable(guard.getLastSequence());
+        }
+        while (source.hasRemaining()) {
+            current += channel.write(source, current);
+        }
+    }
+
+    @Override
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public void force() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public void setWriteAheadLog(WriteAheadLog log) {
+        this.log = log;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,122 @@
+package librarySystem.storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Persistent stack of free record slots, or pages with free space, of a data file.
+ * The slots are stored in a sidecar file as a sequence of longs, the top of the stack being the last one.
+ * The stack is kept in memory in a primitive array, so pushing and popping a slot costs O(1):
+ * - Pushing a slot appends 8 bytes to the sidecar file.
+ * - Popping a slot truncates the last 8 bytes of the sidecar file.
+ * Opening the stack reads the sidecar file with a single read, whatever the size of the data file.
+ */
+public class FreeList implements Closeable {
+
+    private final RandomAccessFile file;
+    private long[] slots;
+    private int size;
+
+    /**
+     * Opens the free list stored in the specified file, creating an empty one if the file does not exist.
+     * @param filename The name of the free list file.
+     * @throws IOException If an I/O error occurs.
+     */
+    public FreeList(String filename) throws IOException {
+
+        ByteBuffer content;
+
+        if (Files.exists(Path.of(filename))) {
+            content = ByteBuffer.wrap(Files.readAllBytes(Path.of(filename)));
+        } else {
+            content = ByteBuffer.allocate(0);
+        }
+        size = content.remaining() / Long.BYTES;
+        slots = new long[Math.max(16, size)];
+        for (int i = 0; i < size; i++) {
+            slots[i] = content.getLong();
+        }
+        file = new RandomAccessFile(filename, "rw");
+        // Drop a slot cut in half by a crash
+        file.setLength((long) size * Long.BYTES);
+    }
+
+    /**
+     * Checks if the free list is empty.
+     * @return True if there is no free slot, false otherwise.
+     */
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Retrieves the number of free slots.
+     * @return The number of free slots.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Pushes a free slot on the stack.
+     * @param slot The number of the slot.
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized void push(long slot) throws IOException {
+
+        if (size == slots.length) {
+            slots = Arrays.copyOf(slots, size * 2);
+        }
+        file.seek((long) size * Long.BYTES);
+        file.writeLong(slot);
+        slots[size++] = slot;
+    }
+
+    /**
+     * Retrieves the last freed slot without removing it from the stack.
+     * @return The number of the slot.
+     * @throws IOException If the stack is empty.
+     */
+    public synchronized long peek() throws IOException {
+
+        if (size == 0) {
+            throw new IOException("free list is empty");
+        }
+        return slots[size - 1];
+    }
+
+    /**
+     * Pops the last freed slot from the stack.
+     * @return The number of the slot.
+     * @throws IOException If an I/O error occurs or the stack is empty.
+     */
+    public synchronized long pop() throws IOException {
+
+        if (size == 0) {
+            throw new IOException("free list is empty");
+        }
+        size--;
+        file.setLength((long) size * Long.BYTES);
+        return slots[size];
+    }
+
+    /**
+     * Forces the free list file to the storage device.
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized void force() throws IOException {
+        file.getFD().sync();
+    }
+
+    /**
+     * Closes the free list file.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,129 @@
+package librarySystem.storage;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Record store that maps the file in memory.
+ * The file is mapped in segments of 64 MB, so reads and writes inside the file are plain memory accesses
+ * and a read returns a slice of the mapping, without copying the bytes. The sequential reads of the scans get a copy instead,
+ * since a scan decodes its records after releasing the lock of the data file.
+ * Appends are written through the channel, so the file never has a gap of unwritten bytes,
+ * and the mapping of the last segment grows the next time a read reaches the appended bytes.
+ * Records must not cross a segment boundary, which holds for any record size that divides the segment size.
+ * The operating system may write the mapped pages at any time, so a write to a guarded file first waits for the write-ahead log to be durable.
+ */
+public class MappedRecordStore implements RecordStore {
+
+    private static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> segments;
+    private long size;
+    private WriteAheadLog log;
+
+    /**
+     * Opens the store, creating the file if it does not exist.
+     * @param filename The name of the data file.
+     * @throws IOException If an I/O error occurs.
+     */
+    public MappedRecordStore(String filename) throws IOException {
+        channel = FileChannel.open(Path.of(filename), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segments = new ArrayList<>();
+        size = channel.size();
+    }
+
+    @Override
+    public synchronized ByteBuffer read(long position, int length) throws IOException {
+
+        if (position + length > size) {
+            throw new EOFException("read beyond the end of the file");
+        }
+        MappedByteBuffer segment = segment(position, length);
+        return segment.slice((int) (position % SEGMENT_SIZE), length).asReadOnlyBuffer();
+    }
+
+    @Override
+    public synchronized ByteBuffer readSequential(long position, int length) throws IOException {
+        return ByteBuffer.allocate(length).put(read(position, length)).flip();
+    }
+
+    @Override
+    public synchronized void write(long position, ByteBuffer source) throws IOException {
+
+        long current = position;
+
+        if (log != null) {
+            log.awaitDurable(log.getLastSequence());
+        }
+        if (position + source.remaining() <= size) {
+            segment(position, source.remaining()).put((int) (position % SEGMENT_SIZE), source, source.position(), source.remaining());
+            source.position(source.limit());
+            return;
+        }
+        while (source.hasRemaining()) {
+            current += channel.write(source, current);
+        }
+        size = Math.max(size, current);
+    }
+
+    @Override
+    public synchronized long size() {
+        return size;
+    }
+
+    @Override
+    public synchronized void force() throws IOException {
+        for (MappedByteBuffer segment : segments) {
+            if (segment != null) {
+                segment.force();
+            }
+        }
+        channel.force(false);
+    }
+
+    @Override
+    public synchronized void setWriteAheadLog(WriteAheadLog log) {
+        this.log = log;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        segments.clear();
+        channel.close();
+    }
+
+    /**
+     * Retrieves the mapped segment that holds a byte range, mapping or growing it if needed.
+     * @param position The position of the first byte.
+     * @param length The number of bytes.
+     * @return The mapped segment.
+     * @throws IOException If an I/O error occurs or the range crosses a segment boundary.
+     */
+    private MappedByteBuffer segment(long position, int length) throws IOException {
+
+        int index = (int) (position / SEGMENT_SIZE);
+        long start = (long) index * SEGMENT_SIZE;
+        MappedByteBuffer segment;
+
+        if (position + length > start + SEGMENT_SIZE) {
+            throw new IOException("record crosses a segment boundary");
+        }
+        while (segments.size() <= index) {
+            segments.add(null);
+        }
+        segment = segments.get(index);
+        if (segment == null || start + segment.capacity() < position + length) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(SEGMENT_SIZE, size - start));
+            segments.set(index, segment);
+        }
+        return segment;
+    }
+}
@@ -0,0 +1,117 @@
+package librarySystem.storage;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Record store that reads and writes the file through the pages of a BufferPool.
+ * A read copies the bytes out of the pinned pages, so the returned buffer stays valid after the pages are evicted,
+ * and a write copies the bytes into the pinned pages and marks them dirty, to be written back by the pool.
+ * A write that covers a whole page does not read the page from the file first.
+ * A sequential read of whole pages bypasses the pool, see BufferPool.readUncached, and other sequential reads are plain reads.
+ */
+public class PooledRecordStore implements RecordStore {
+
+    private final BufferPool pool;
+    private final BufferPool.PooledFile file;
+
+    /**
+     * Opens the store, creating the file if it does not exist.
+     * @param filename The name of the data file.
+     * @param pool The pool to read and write the pages through.
+     * @throws IOException If an I/O error occurs.
+     */
+    public PooledRecordStore(String filename, BufferPool pool) throws IOException {
+        this.pool = pool;
+        file = pool.open(filename);
+    }
+
+    @Override
+    public ByteBuffer read(long position, int length) throws IOException {
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        long current = position;
+        int offset;
+        int count;
+        BufferPool.Frame frame;
+
+        if (position + length > pool.size(file)) {
+            throw new EOFException("read beyond the end of the file");
+        }
+        while (buffer.hasRemaining()) {
+            offset = (int) (current % BufferPool.PAGE_SIZE);
+            count = Math.min(buffer.remaining(), BufferPool.PAGE_SIZE - offset);
+            frame = pool.pin(file, current / BufferPool.PAGE_SIZE, true);
+            try {
+                buffer.put(buffer.position(), frame.buffer(), offset, count);
+            } finally {
+                pool.unpin(frame, false);
+            }
+            buffer.position(buffer.position() + count);
+            current += count;
+        }
+        return buffer.flip();
+    }
+
+    @Override
+    public ByteBuffer readSequential(long position, int length) throws IOException {
+
+        ByteBuffer buffer;
+
+        if (position % BufferPool.PAGE_SIZE != 0 || length % BufferPool.PAGE_SIZE != 0) {
+            return read(position, length);
+        }
+        if (position + length > pool.size(file)) {
+            throw new EOFException("read beyond the end of the file");
+        }
+        buffer = ByteBuffer.allocate(length);
+        pool.readUncached(file, position / BufferPool.PAGE_SIZE, buffer);
+        return buffer.flip();
+    }
+
+    @Override
+    public void write(long position, ByteBuffer source) throws IOException {
+
+        long current = position;
+        int offset;
+        int count;
+        BufferPool.Frame frame;
+
+        // Grow the file first, so a page evicted right after the write is written back whole
+        pool.grow(file, position + source.remaining());
+        while (source.hasRemaining()) {
+            offset = (int) (current % BufferPool.PAGE_SIZE);
+            count = Math.min(source.remaining(), BufferPool.PAGE_SIZE - offset);
+            frame = pool.pin(file, current / BufferPool.PAGE_SIZE, count < BufferPool.PAGE_SIZE);
+            try {
+                frame.buffer().put(offset, source, source.position(), count);
+            } finally {
+                pool.unpin(frame, true);
+            }
+            source.position(source.position() + count);
+            current += count;
+        }
+    }
+
+    @Override
+    public long size() {
+        return pool.size(file);
+    }
+
+    @Override
+    public void force() throws IOException {
+        pool.flush(file);
+        pool.force(file);
+    }
+
+    @Override
+    public void setWriteAheadLog(WriteAheadLog log) {
+        pool.guard(file, log);
+    }
+
+    @Override
+    public void close() throws IOException {
+        pool.close(file);
+    }
+}
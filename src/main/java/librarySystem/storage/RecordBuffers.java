@@ -0,0 +1,188 @@
+package librarySystem.storage;
+
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+
+/**
+ * Helper methods to read and write strings and integers in byte buffers.
+ * The strings use the modified UTF-8 format of DataOutput.writeUTF, so records written by
+ * RandomAccessFile.writeUTF and records written to a buffer have the same bytes.
+ * The variable-length integers use 7 bits per byte, the high bit meaning that another byte follows,
+ * so small values take a single byte.
+ */
+public final class RecordBuffers {
+
+    private RecordBuffers() {
+    }
+
+    /**
+     * Computes the length of a string in modified UTF-8, as written by writeUTF.
+     * @param value The string.
+     * @return The length in bytes, without the 2 bytes of the length prefix.
+     */
+    public static int utfLength(String value) {
+
+        int length = 0;
+        char c;
+
+        for (int i = 0; i < value.length(); i++) {
+            c = value.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                length += 1;
+            } else if (c > 0x07FF) {
+                length += 3;
+            } else {
+                length += 2;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Writes a string to a buffer, with a 2-byte length prefix.
+     * @param buffer The buffer to write to.
+     * @param value The string to write.
+     * @throws UTFDataFormatException If the encoded string is longer than 65535 bytes.
+     */
+    public static void writeUTF(ByteBuffer buffer, String value) throws UTFDataFormatException {
+
+        int length = utfLength(value);
+        char c;
+
+        if (length > 0xFFFF) {
+            throw new UTFDataFormatException("encoded string too long: " + length + " bytes");
+        }
+        buffer.putShort((short) length);
+        for (int i = 0; i < value.length(); i++) {
+            c = value.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                buffer.put((byte) c);
+            } else if (c > 0x07FF) {
+                buffer.put((byte) (0xE0 | ((c >> 12) & 0x0F)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else {
+                buffer.put((byte) (0xC0 | ((c >> 6) & 0x1F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * Reads a string written by writeUTF from a buffer.
+     * @param buffer The buffer to read from.
+     * @return The string read.
+     * @throws UTFDataFormatException If the bytes are not valid modified UTF-8.
+     */
+    public static String readUTF(ByteBuffer buffer) throws UTFDataFormatException {
+
+        int length = buffer.getShort() & 0xFFFF;
+        int end = buffer.position() + length;
+        char[] chars = new char[length];
+        int count = 0;
+        int b;
+
+        while (buffer.position() < end) {
+            b = buffer.get() & 0xFF;
+            if (b < 0x80) {
+                chars[count++] = (char) b;
+            } else if ((b & 0xE0) == 0xC0 && buffer.position() < end) {
+                chars[count++] = (char) (((b & 0x1F) << 6) | continuation(buffer));
+            } else if ((b & 0xF0) == 0xE0 && buffer.position() + 1 < end) {
+                chars[count++] = (char) (((b & 0x0F) << 12) | (continuation(buffer) << 6) | continuation(buffer));
+            } else {
+                throw new UTFDataFormatException("malformed input around byte " + buffer.position());
+            }
+        }
+        return new String(chars, 0, count);
+    }
+
+    /**
+     * Computes the number of bytes of an unsigned variable-length integer.
+     * @param value The value, read as an unsigned integer.
+     * @return The number of bytes, from 1 to 5.
+     */
+    public static int varIntLength(int value) {
+
+        int length = 1;
+
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Writes an unsigned variable-length integer to a buffer.
+     * @param buffer The buffer to write to.
+     * @param value The value, written as an unsigned integer.
+     */
+    public static void putVarInt(ByteBuffer buffer, int value) {
+
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Reads an unsigned variable-length integer from a buffer.
+     * @param buffer The buffer to read from.
+     * @return The value read.
+     * @throws IOException If the integer is longer than 5 bytes.
+     */
+    public static int getVarInt(ByteBuffer buffer) throws IOException {
+
+        int value = 0;
+        int b;
+
+        for (int shift = 0; shift < 35; shift += 7) {
+            b = buffer.get() & 0xFF;
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed variable-length integer around byte " + buffer.position());
+    }
+
+    /**
+     * Writes a signed variable-length integer to a buffer, using zigzag encoding so small negative values take a single byte.
+     * @param buffer The buffer to write to.
+     * @param value The value.
+     */
+    public static void putSignedVarInt(ByteBuffer buffer, int value) {
+        putVarInt(buffer, (value << 1) ^ (value >> 31));
+    }
+
+    /**
+     * Reads a signed variable-length integer written by putSignedVarInt from a buffer.
+     * @param buffer The buffer to read from.
+     * @return The value read.
+     * @throws IOException If the integer is longer than 5 bytes.
+     */
+    public static int getSignedVarInt(ByteBuffer buffer) throws IOException {
+
+        int value = getVarInt(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads a continuation byte of a modified UTF-8 character.
+     * @param buffer The buffer to read from.
+     * @return The 6 bits of the continuation byte.
+     * @throws UTFDataFormatException If the byte is not a continuation byte.
+     */
+    private static int continuation(ByteBuffer buffer) throws UTFDataFormatException {
+
+        int b = buffer.get() & 0xFF;
+
+        if ((b & 0xC0) != 0x80) {
+            throw new UTFDataFormatException("malformed input around byte " + buffer.position());
+        }
+        return b & 0x3F;
+    }
+}
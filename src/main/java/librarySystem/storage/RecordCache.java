@@ -0,0 +1,399 @@
+package librarySystem.storage;
+
+import java.util.LinkedHashMap;
+
+/**
+ * Bounded cache of decoded records by key, limited both by a number of entries and by a total weight in bytes.
+ * The admission and eviction follow W-TinyLFU:
+ * - New entries go to a small window LRU segment, about 1% of the cache, so bursts of new keys do not flush the cache.
+ * - Entries leaving the window compete with the least recently used entry of the main segment, and the one requested
+ *   more often recently, according to a frequency sketch, stays in the cache.
+ * - The main segment is a segmented LRU: entries hit again move from the probation part to the protected part,
+ *   about 80% of the main segment, and the entries leaving the protected part go back to probation.
+ * The frequency sketch is a count-min sketch of 4-bit counters over the requested keys, halved periodically so
+ * old popularity fades.
+ * The cache is safe for concurrent use. The owner must invalidate a key when its record changes.
+ * @param <V> The type of the cached records.
+ */
+public class RecordCache<V> {
+
+    private static final int WINDOW_PERCENT = 1;
+    private static final int PROTECTED_PERCENT = 80;
+
+    private final long maxEntries;
+    private final long maxBytes;
+    private final Segment window;
+    private final Segment probation;
+    private final Segment protectedSegment;
+    private final FrequencySketch sketch;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * Entry class
+     * It represents a cached record and its weight
+     */
+    private static class Entry<V> {
+        private final V value;
+        private final long weight;
+
+        private Entry(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Segment class
+     * It represents an LRU segment of the cache with its limits, the least recently used entry being the first one
+     */
+    private class Segment {
+        private final LinkedHashMap<String, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final long maxEntries;
+        private final long maxBytes;
+        private long bytes;
+
+        private Segment(long maxEntries, long maxBytes) {
+            this.maxEntries = Math.max(1, maxEntries);
+            this.maxBytes = Math.max(1, maxBytes);
+        }
+
+        private void put(String key, Entry<V> entry) {
+            entries.put(key, entry);
+            bytes += entry.weight;
+        }
+
+        private Entry<V> remove(String key) {
+
+            Entry<V> entry = entries.remove(key);
+
+            if (entry != null) {
+                bytes -= entry.weight;
+            }
+            return entry;
+        }
+
+        private boolean isFull() {
+            return entries.size() > maxEntries || bytes > maxBytes;
+        }
+
+        private String eldestKey() {
+            return entries.isEmpty() ? null : entries.keySet().iterator().next();
+        }
+    }
+
+    /**
+     * Stats class
+     * It represents a snapshot of the counters of the cache
+     * - hits: Number of lookups that found their record
+     * - misses: Number of lookups that did not find their record
+     * - evictions: Number of entries removed to stay within the limits, including rejected new entries
+     * - entries: Number of entries in the cache
+     * - bytes: Total weight of the entries in the cache
+     */
+    public static class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long entries;
+        private final long bytes;
+
+        private Stats(long hits, long misses, long evictions, long entries, long bytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.entries = entries;
+            this.bytes = bytes;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getEntries() {
+            return entries;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Retrieves the fraction of the lookups that found their record.
+         * @return The hit rate, between 0 and 1, or 0 if there was no lookup.
+         */
+        public double getHitRate() {
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + hits + " misses=" + misses + " evictions=" + evictions + " entries=" + entries + " bytes=" + bytes;
+        }
+    }
+
+    /**
+     * Creates an empty cache.
+     * @param maxEntries The maximum number of entries.
+     * @param maxBytes The maximum total weight of the entries, in bytes.
+     */
+    public RecordCache(long maxEntries, long maxBytes) {
+
+        long windowEntries = Math.max(1, maxEntries * WINDOW_PERCENT / 100);
+        long windowBytes = Math.max(1, maxBytes * WINDOW_PERCENT / 100);
+
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        window = new Segment(windowEntries, windowBytes);
+        probation = new Segment(maxEntries, maxBytes);
+        protectedSegment = new Segment((maxEntries - windowEntries) * PROTECTED_PERCENT / 100,
+                (maxBytes - windowBytes) * PROTECTED_PERCENT / 100);
+        sketch = new FrequencySketch(maxEntries);
+    }
+
+    /**
+     * Retrieves the cached record of a key, and counts the request in the frequency sketch.
+     * @param key The key of the record.
+     * @return The cached record, or null if the key is not cached.
+     */
+    public synchronized V get(String key) {
+
+        Entry<V> entry;
+
+        sketch.increment(key);
+        entry = window.entries.get(key);
+        if (entry == null) {
+            entry = protectedSegment.entries.get(key);
+        }
+        if (entry == null) {
+            entry = probation.remove(key);
+            if (entry != null) {
+                protectedSegment.put(key, entry);
+                demoteProtected();
+            }
+        }
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.value;
+    }
+
+    /**
+     * Adds a record to the cache, replacing the cached record of its key.
+     * The record enters the window segment and may be rejected later if it is requested less often than the records it competes with.
+     * @param key The key of the record.
+     * @param value The record.
+     * @param weight The weight of the record, in bytes.
+     */
+    public synchronized void put(String key, V value, long weight) {
+
+        if (maxEntries <= 0 || weight > maxBytes) {
+            return;
+        }
+        invalidate(key);
+        window.put(key, new Entry<>(value, weight));
+        while (window.isFull() && window.entries.size() > 1) {
+            admit(window.eldestKey());
+        }
+        // The window may still have room while the main segment is already full
+        while (mainIsFull(0, 0) && evictMain()) {
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Removes the cached record of a key, after the record was changed or deleted.
+     * @param key The key of the record.
+     */
+    public synchronized void invalidate(String key) {
+        if (window.remove(key) == null && probation.remove(key) == null) {
+            protectedSegment.remove(key);
+        }
+    }
+
+    /**
+     * Removes all the cached records.
+     */
+    public synchronized void clear() {
+        window.entries.clear();
+        probation.entries.clear();
+        protectedSegment.entries.clear();
+        window.bytes = 0;
+        probation.bytes = 0;
+        protectedSegment.bytes = 0;
+    }
+
+    /**
+     * Retrieves a snapshot of the counters of the cache.
+     * @return The counters.
+     */
+    public synchronized Stats getStats() {
+        return new Stats(hitCount, missCount, evictionCount,
+                window.entries.size() + probation.entries.size() + protectedSegment.entries.size(),
+                window.bytes + probation.bytes + protectedSegment.bytes);
+    }
+
+    /**
+     * Moves the least recently used entry of the window to the main segment, if the main segment has room for it
+     * or if it is requested more often than the entries it would evict.
+     * @param candidateKey The key of the entry leaving the window.
+     */
+    private void admit(String candidateKey) {
+
+        Entry<V> candidate = window.remove(candidateKey);
+        String victimKey;
+
+        while (mainIsFull(1, candidate.weight)) {
+            victimKey = probation.eldestKey();
+            if (victimKey == null) {
+                victimKey = protectedSegment.eldestKey();
+            }
+            if (victimKey == null || sketch.frequency(candidateKey) <= sketch.frequency(victimKey)) {
+                evictionCount++;
+                return;
+            }
+            if (probation.remove(victimKey) == null) {
+                protectedSegment.remove(victimKey);
+            }
+            evictionCount++;
+        }
+        probation.put(candidateKey, candidate);
+    }
+
+    /**
+     * Evicts the least recently used entry of the main segment, from probation first.
+     * @return True if an entry was evicted, false if the main segment is empty.
+     */
+    private boolean evictMain() {
+
+        String victimKey = probation.eldestKey();
+
+        if (victimKey != null) {
+            probation.remove(victimKey);
+            return true;
+        }
+        victimKey = protectedSegment.eldestKey();
+        if (victimKey != null) {
+            protectedSegment.remove(victimKey);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks if the cache would exceed its limits with more entries in the main segment.
+     * @param newEntries The number of new entries, 0 to check the entries already in the cache.
+     * @param weight The weight of the new entries.
+     * @return True if an entry must be evicted first, false otherwise.
+     */
+    private boolean mainIsFull(int newEntries, long weight) {
+
+        long entries = window.entries.size() + probation.entries.size() + protectedSegment.entries.size() + newEntries;
+        long bytes = window.bytes + probation.bytes + protectedSegment.bytes + weight;
+
+        return entries > maxEntries || bytes > maxBytes;
+    }
+
+    /**
+     * Moves the least recently used entries of the protected segment back to probation while it exceeds its limits.
+     */
+    private void demoteProtected() {
+
+        String key;
+
+        while (protectedSegment.isFull() && protectedSegment.entries.size() > 1) {
+            key = protectedSegment.eldestKey();
+            probation.put(key, protectedSegment.remove(key));
+        }
+    }
+
+    /**
+     * FrequencySketch class
+     * It estimates how often each key was requested recently with a count-min sketch of 4-bit counters
+     * - table: Counters, 16 per long, each key using one counter in each of 4 rows
+     * - sampleSize: Number of increments after which all the counters are halved
+     */
+    private static class FrequencySketch {
+        private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        private final long[] table;
+        private final int rowMask;
+        private final int sampleSize;
+        private int increments;
+
+        private FrequencySketch(long maxEntries) {
+
+            int counters = Integer.highestOneBit((int) Math.max(64, Math.min(1 << 24, maxEntries * 4)) - 1) << 1;
+
+            table = new long[counters / 16 * SEEDS.length];
+            rowMask = counters - 1;
+            sampleSize = (int) Math.min(Integer.MAX_VALUE, Math.max(640, maxEntries * 10));
+        }
+
+        private int frequency(String key) {
+
+            int hash = key.hashCode();
+            int minimum = 15;
+
+            for (int row = 0; row < SEEDS.length; row++) {
+                minimum = Math.min(minimum, counter(row, index(hash, row)));
+            }
+            return minimum;
+        }
+
+        private void increment(String key) {
+
+            int hash = key.hashCode();
+            int index;
+
+            for (int row = 0; row < SEEDS.length; row++) {
+                index = index(hash, row);
+                if (counter(row, index) < 15) {
+                    table[slot(row, index)] += 1L << shift(index);
+                }
+            }
+            if (++increments >= sampleSize) {
+                reset();
+            }
+        }
+
+        /**
+         * Halves all the counters, so the keys that stopped being requested lose their frequency.
+         */
+        private void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+            }
+            increments /= 2;
+        }
+
+        private int index(int hash, int row) {
+
+            long mixed = (hash + SEEDS[row]) * SEEDS[row];
+
+            return (int) (mixed ^ (mixed >>> 32)) & rowMask;
+        }
+
+        private int counter(int row, int index) {
+            return (int) (table[slot(row, index)] >>> shift(index)) & 0xF;
+        }
+
+        private int slot(int row, int index) {
+            return row * (table.length / SEEDS.length) + index / 16;
+        }
+
+        private int shift(int index) {
+            return (index % 16) * 4;
+        }
+    }
+}
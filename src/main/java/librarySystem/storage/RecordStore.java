@@ -0,0 +1,82 @@
+package librarySystem.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Interface for the stores of the data files
+ * It reads and writes byte ranges of a file at absolute positions
+ * The file stays open until the store is closed
+ */
+public interface RecordStore extends Closeable {
+
+    /**
+     * Opens a store for the specified file.
+     * Without memory mapping, the file is read through the shared BufferPool, or with positional channel reads if the pool is disabled.
+     * Before a file is mapped, the pages of the file still dirty in the shared pool are written back, so the mapping sees them.
+     * @param filename The name of the data file.
+     * @param memoryMapped True to map the file in memory, false to read it through the pages of the shared buffer pool.
+     * @return The store of the file.
+     * @throws IOException If an I/O error occurs.
+     */
+    static RecordStore open(String filename, boolean memoryMapped) throws IOException {
+        if (memoryMapped) {
+            BufferPool.shared().flush(filename);
+            return new MappedRecordStore(filename);
+        }
+        return BufferPool.shared().getCapacity() > 0 ? new PooledRecordStore(filename, BufferPool.shared()) : new FileRecordStore(filename);
+    }
+
+    /**
+     * Reads a byte range of the file.
+     * @param position The position of the first byte.
+     * @param length The number of bytes to read.
+     * @return A buffer with the bytes, from position 0 to limit length.
+     * @throws IOException If an I/O error occurs or the range is beyond the end of the file.
+     */
+    ByteBuffer read(long position, int length) throws IOException;
+
+    /**
+     * Reads a byte range of the file for a scan, which reads each byte once, so the store does not need to cache it.
+     * The stores with a cache read the range around it, the others read it like the read method.
+     * Unlike read, the bytes are always a copy, so the caller can keep using them after releasing its locks.
+     * @param position The position of the first byte.
+     * @param length The number of bytes to read.
+     * @return A buffer with a copy of the bytes, from position 0 to limit length.
+     * @throws IOException If an I/O error occurs or the range is beyond the end of the file.
+     */
+    default ByteBuffer readSequential(long position, int length) throws IOException {
+        return read(position, length);
+    }
+
+    /**
+     * Writes the remaining bytes of a buffer to the file, growing the file if needed.
+     * @param position The position of the first byte.
+     * @param source The buffer with the bytes to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    void write(long position, ByteBuffer source) throws IOException;
+
+    /**
+     * Retrieves the size of the file.
+     * @return The size of the file in bytes.
+     * @throws IOException If an I/O error occurs.
+     */
+    long size() throws IOException;
+
+    /**
+     * Forces the written bytes to the storage device.
+     * @throws IOException If an I/O error occurs.
+     */
+    void force() throws IOException;
+
+    /**
+     * Guards the file by a write-ahead log: the bytes written to the store do not reach the file before the last record
+     * appended to the log is durable.
+     * The pooled store keeps the pages in the pool until then, see BufferPool. The other stores write through to the file,
+     * so each of their writes waits for the log to be forced first.
+     * @param log The log, or null to stop guarding the file.
+     */
+    void setWriteAheadLog(WriteAheadLog log);
+}
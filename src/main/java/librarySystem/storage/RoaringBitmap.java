@@ -0,0 +1,546 @@
+package librarySystem.storage;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of non-negative integers, split like a Roaring bitmap.
+ * The integers are grouped by their 16 high bits, and the 16 low bits of each group are stored in a container:
+ * - An array container stores up to 4096 values as a sorted char array, 2 bytes per value, for the sparse groups.
+ * - A bitmap container stores the group as 65536 bits in 1024 longs, 8 KB whatever the number of values, for the dense groups.
+ * A container changes kind when its number of values crosses 4096, where both kinds take the same space.
+ * The intersection, union and difference of two bitmaps combine the containers of the same group only,
+ * with word-wide operations between bitmap containers and merges or lookups with array containers.
+ * The combinations return new bitmaps and leave their operands unchanged. A bitmap is not synchronized.
+ */
+public class RoaringBitmap {
+
+    private static final int ARRAY_LIMIT = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    private char[] keys = new char[4];
+    private Container[] containers = new Container[4];
+    private int size;
+
+    /**
+     * Adds a value to the bitmap.
+     * @param value The value, non-negative.
+     */
+    public void add(int value) {
+
+        char high = (char) (value >>> 16);
+        int index = Arrays.binarySearch(keys, 0, size, high);
+
+        if (index < 0) {
+            index = -index - 1;
+            insertContainer(index, high, new ArrayContainer());
+        }
+        containers[index] = containers[index].add((char) value);
+    }
+
+    /**
+     * Removes a value from the bitmap.
+     * @param value The value.
+     */
+    public void remove(int value) {
+
+        int index = Arrays.binarySearch(keys, 0, size, (char) (value >>> 16));
+
+        if (index < 0) {
+            return;
+        }
+        containers[index] = containers[index].remove((char) value);
+        if (containers[index].cardinality() == 0) {
+            removeContainer(index);
+        }
+    }
+
+    /**
+     * Checks if the bitmap contains a value.
+     * @param value The value.
+     * @return True if the value is in the bitmap, false otherwise.
+     */
+    public boolean contains(int value) {
+
+        int index = Arrays.binarySearch(keys, 0, size, (char) (value >>> 16));
+
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    /**
+     * Retrieves the number of values of the bitmap.
+     * @return The number of values.
+     */
+    public int cardinality() {
+
+        int cardinality = 0;
+
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Computes the intersection of this bitmap and another one.
+     * @param other The other bitmap.
+     * @return A new bitmap with the values of both bitmaps.
+     */
+    public RoaringBitmap and(RoaringBitmap other) {
+
+        RoaringBitmap result = new RoaringBitmap();
+        Container container;
+        int i = 0;
+        int j = 0;
+
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                container = containers[i].and(other.containers[j]);
+                if (container.cardinality() > 0) {
+                    result.appendContainer(keys[i], container);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes the union of this bitmap and another one.
+     * @param other The other bitmap.
+     * @return A new bitmap with the values of either bitmap.
+     */
+    public RoaringBitmap or(RoaringBitmap other) {
+
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                result.appendContainer(keys[i], containers[i].copy());
+                i++;
+            } else if (i == size || keys[i] > other.keys[j]) {
+                result.appendContainer(other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                result.appendContainer(keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes the difference of this bitmap and another one, used for NOT together with a bitmap of all the values.
+     * @param other The other bitmap.
+     * @return A new bitmap with the values of this bitmap that are not in the other one.
+     */
+    public RoaringBitmap andNot(RoaringBitmap other) {
+
+        RoaringBitmap result = new RoaringBitmap();
+        Container container;
+        int i = 0;
+        int j = 0;
+
+        while (i < size) {
+            while (j < other.size && other.keys[j] < keys[i]) {
+                j++;
+            }
+            if (j < other.size && other.keys[j] == keys[i]) {
+                container = containers[i].andNot(other.containers[j]);
+            } else {
+                container = containers[i].copy();
+            }
+            if (container.cardinality() > 0) {
+                result.appendContainer(keys[i], container);
+            }
+            i++;
+        }
+        return result;
+    }
+
+    /**
+     * Creates a copy of the bitmap, which can be changed without changing this bitmap.
+     * @return The copy.
+     */
+    public RoaringBitmap copy() {
+
+        RoaringBitmap result = new RoaringBitmap();
+
+        for (int i = 0; i < size; i++) {
+            result.appendContainer(keys[i], containers[i].copy());
+        }
+        return result;
+    }
+
+    /**
+     * Calls an action with each value of the bitmap, in increasing order.
+     * @param action The action.
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            containers[i].forEach(keys[i] << 16, action);
+        }
+    }
+
+    /**
+     * Retrieves the values of the bitmap.
+     * @return The values, in increasing order.
+     */
+    public int[] toArray() {
+
+        int[] values = new int[cardinality()];
+        int[] position = {0};
+
+        forEach(value -> values[position[0]++] = value);
+        return values;
+    }
+
+    private void insertContainer(int index, char key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    private void appendContainer(char key, Container container) {
+        insertContainer(size, key, container);
+    }
+
+    private void removeContainer(int index) {
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+        containers[--size] = null;
+    }
+
+    /**
+     * Container class
+     * It stores the 16 low bits of the values of a group
+     * The changes return the container to use from then on, which is another kind of container when the number of values crosses 4096
+     */
+    private abstract static class Container {
+        abstract Container add(char value);
+
+        abstract Container remove(char value);
+
+        abstract boolean contains(char value);
+
+        abstract int cardinality();
+
+        abstract Container and(Container other);
+
+        abstract Container or(Container other);
+
+        abstract Container andNot(Container other);
+
+        abstract Container copy();
+
+        abstract void forEach(int high, IntConsumer action);
+    }
+
+    /**
+     * ArrayContainer class
+     * It stores the values of a sparse group in a sorted char array
+     */
+    private static final class ArrayContainer extends Container {
+        private char[] values;
+        private int cardinality;
+
+        private ArrayContainer() {
+            values = new char[4];
+        }
+
+        private ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(char value) {
+
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+
+            if (index >= 0) {
+                return this;
+            }
+            if (cardinality == ARRAY_LIMIT) {
+                return toBitmap().add(value);
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_LIMIT, cardinality * 2));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+
+            if (index >= 0) {
+                System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        Container and(Container other) {
+
+            char[] result = new char[cardinality];
+            int count = 0;
+
+            if (other instanceof BitmapContainer) {
+                for (int i = 0; i < cardinality; i++) {
+                    if (other.contains(values[i])) {
+                        result[count++] = values[i];
+                    }
+                }
+                return new ArrayContainer(result, count);
+            }
+            ArrayContainer array = (ArrayContainer) other;
+            for (int i = 0, j = 0; i < cardinality && j < array.cardinality; ) {
+                if (values[i] < array.values[j]) {
+                    i++;
+                } else if (values[i] > array.values[j]) {
+                    j++;
+                } else {
+                    result[count++] = values[i];
+                    i++;
+                    j++;
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        Container or(Container other) {
+
+            char[] result;
+            int count = 0;
+            int i = 0;
+            int j = 0;
+
+            if (other instanceof BitmapContainer) {
+                return other.or(this);
+            }
+            ArrayContainer array = (ArrayContainer) other;
+            if (cardinality + array.cardinality > ARRAY_LIMIT) {
+                return toBitmap().or(array);
+            }
+            result = new char[cardinality + array.cardinality];
+            while (i < cardinality || j < array.cardinality) {
+                if (j == array.cardinality || (i < cardinality && values[i] < array.values[j])) {
+                    result[count++] = values[i++];
+                } else if (i == cardinality || values[i] > array.values[j]) {
+                    result[count++] = array.values[j++];
+                } else {
+                    result[count++] = values[i++];
+                    j++;
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        Container andNot(Container other) {
+
+            char[] result = new char[cardinality];
+            int count = 0;
+
+            for (int i = 0; i < cardinality; i++) {
+                if (!other.contains(values[i])) {
+                    result[count++] = values[i];
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, Math.max(4, cardinality)), cardinality);
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int i = 0; i < cardinality; i++) {
+                action.accept(high | values[i]);
+            }
+        }
+
+        private BitmapContainer toBitmap() {
+
+            BitmapContainer bitmap = new BitmapContainer();
+
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.add(values[i]);
+            }
+            return bitmap;
+        }
+    }
+
+    /**
+     * BitmapContainer class
+     * It stores the values of a dense group as 65536 bits
+     */
+    private static final class BitmapContainer extends Container {
+        private final long[] words;
+        private int cardinality;
+
+        private BitmapContainer() {
+            words = new long[BITMAP_WORDS];
+        }
+
+        private BitmapContainer(long[] words) {
+            this.words = words;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+        }
+
+        @Override
+        Container add(char value) {
+
+            long bit = 1L << value;
+
+            if ((words[value >>> 6] & bit) == 0) {
+                words[value >>> 6] |= bit;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+
+            long bit = 1L << value;
+
+            if ((words[value >>> 6] & bit) != 0) {
+                words[value >>> 6] &= ~bit;
+                cardinality--;
+            }
+            return cardinality <= ARRAY_LIMIT ? toArray() : this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        Container and(Container other) {
+
+            long[] result;
+
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+            result = new long[BITMAP_WORDS];
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                result[i] = words[i] & ((BitmapContainer) other).words[i];
+            }
+            return new BitmapContainer(result).shrink();
+        }
+
+        @Override
+        Container or(Container other) {
+
+            long[] result = Arrays.copyOf(words, BITMAP_WORDS);
+            BitmapContainer bitmap;
+
+            if (other instanceof ArrayContainer) {
+                bitmap = new BitmapContainer(result);
+                other.forEach(0, value -> bitmap.add((char) value));
+                return bitmap;
+            }
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                result[i] |= ((BitmapContainer) other).words[i];
+            }
+            return new BitmapContainer(result);
+        }
+
+        @Override
+        Container andNot(Container other) {
+
+            long[] result = Arrays.copyOf(words, BITMAP_WORDS);
+            BitmapContainer bitmap;
+
+            if (other instanceof ArrayContainer) {
+                bitmap = new BitmapContainer(result);
+                other.forEach(0, value -> bitmap.remove((char) value));
+                return bitmap.shrink();
+            }
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                result[i] &= ~((BitmapContainer) other).words[i];
+            }
+            return new BitmapContainer(result).shrink();
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(Arrays.copyOf(words, BITMAP_WORDS));
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+
+            long word;
+
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                word = words[i];
+                while (word != 0) {
+                    action.accept(high | (i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        private Container shrink() {
+            return cardinality <= ARRAY_LIMIT ? toArray() : this;
+        }
+
+        private ArrayContainer toArray() {
+
+            char[] values = new char[Math.max(4, cardinality)];
+            int[] count = {0};
+
+            forEach(0, value -> values[count[0]++] = (char) value);
+            return new ArrayContainer(values, count[0]);
+        }
+    }
+}
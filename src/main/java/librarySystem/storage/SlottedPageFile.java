@@ -0,0 +1,930 @@
+package librarySystem.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Data file of variable-length records stored in slotted pages.
+ * The file is divided in pages of 8192 bytes:
+ * - Page 0 is the header page, with the magic number of the format.
+ * - A data page has a header (page type, slot count, start of the record area and fragmented bytes),
+ *   followed by a slot directory that grows forward, while the records grow backward from the end of the page.
+ *   Each slot stores the offset and the length of its record, an offset of 0 meaning a free slot.
+ * - An overflow page stores a part of a record too large for a data page, and the page of the next part.
+ * A record is identified by a record id made of its page and its slot, which does not change when
+ * the records of the page are moved to join their free space.
+ * Records larger than a quarter of a page are stored in a chain of overflow pages, and their slot keeps a small stub.
+ * The pages with reusable space are kept in a persistent FreeList, so opening the file reads only the header page.
+ * Bulk loads use an Appender, which fills new pages in memory and writes each of them once.
+ * Full scans use a Scanner, which reads the pages in file order in chunks of 128 pages with sequential reads of the store.
+ * Reads share a read lock and run in parallel, while inserts, updates and deletes take the write lock.
+ */
+public class SlottedPageFile implements Closeable {
+
+    public static final int PAGE_SIZE = 8192;
+    private static final int MAGIC = 0x534C5031; // "SLP1"
+    private static final int PAGE_HEADER_SIZE = 8;
+    private static final int SLOT_SIZE = 4;
+    private static final int MAX_INLINE_LENGTH = PAGE_SIZE / 4;
+    private static final int REUSE_THRESHOLD = PAGE_SIZE / 4;
+    private static final int MAX_BATCH_PAGES = 32;
+    public static final int SCAN_CHUNK_PAGES = 128;
+
+    private static final byte FREE_PAGE = 0;
+    private static final byte DATA_PAGE = 1;
+    private static final byte OVERFLOW_PAGE = 2;
+
+    private static final byte INLINE_RECORD = 0;
+    private static final byte OVERFLOW_RECORD = 1;
+
+    private final RecordStore store;
+    private final FreeList freePages;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private int pageCount;
+    private int tailPage;
+
+    /**
+     * Opens the file, creating it if it does not exist.
+     * @param filename The name of the data file.
+     * @param freeListFilename The name of the file with the pages that have reusable space.
+     * @param memoryMapped True to map the data file in memory, false to read it with positional channel reads.
+     * @throws IOException If an I/O error occurs or the file is not a slotted page file.
+     */
+    public SlottedPageFile(String filename, String freeListFilename, boolean memoryMapped) throws IOException {
+
+        ByteBuffer header;
+
+        store = RecordStore.open(filename, memoryMapped);
+        if (store.size() == 0) {
+            header = ByteBuffer.allocate(PAGE_SIZE);
+            header.putInt(MAGIC).clear();
+            store.write(0, header);
+        } else if (store.read(0, Integer.BYTES).getInt() != MAGIC) {
+            store.close();
+            throw new IOException(filename + " is not a slotted page file");
+        }
+        freePages = new FreeList(freeListFilename);
+        pageCount = (int) (store.size() / PAGE_SIZE);
+        tailPage = pageCount - 1;
+        if (tailPage > 0 && readPage(tailPage).get(0) != DATA_PAGE) {
+            tailPage = 0;
+        }
+    }
+
+    /**
+     * Checks if the specified file is a slotted page file.
+     * @param filename The name of the file.
+     * @return True if the file exists and starts with the magic number of the format, false otherwise.
+     */
+    public static boolean isPageFile(String filename) {
+
+        if (!new File(filename).exists()) {
+            return false;
+        }
+        try (RecordStore store = RecordStore.open(filename, false)) {
+            return store.size() >= Integer.BYTES && store.read(0, Integer.BYTES).getInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Builds the record id of a slot.
+     * @param page The page number.
+     * @param slot The slot number.
+     * @return The record id.
+     */
+    public static long recordId(int page, int slot) {
+        return ((long) page << 16) | slot;
+    }
+
+    /**
+     * Retrieves the page number of a record id.
+     * @param recordId The record id.
+     * @return The page number.
+     */
+    public static int pageOf(long recordId) {
+        return (int) (recordId >>> 16);
+    }
+
+    /**
+     * Retrieves the slot number of a record id.
+     * @param recordId The record id.
+     * @return The slot number.
+     */
+    public static int slotOf(long recordId) {
+        return (int) (recordId & 0xFFFF);
+    }
+
+    /**
+     * Inserts a record in the file.
+     * The method places the record in a page with reusable space, or else in the last data page, or else in a new page.
+     * @param record The bytes of the record.
+     * @return The record id of the new record.
+     * @throws IOException If an I/O error occurs.
+     */
+    public long insert(byte[] record) throws IOException {
+
+        lock.writeLock().lock();
+        try {
+            return insertStored(toStoredRecord(record));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Inserts the stored bytes of a record in the file.
+     * @param stored The bytes to store in the slot.
+     * @return The record id of the new record.
+     * @throws IOException If an I/O error occurs.
+     */
+    private long insertStored(byte[] stored) throws IOException {
+
+        ByteBuffer page;
+        int pageNumber;
+        int slot;
+
+        // Try the pages that got space back from deleted records first
+        while (!freePages.isEmpty()) {
+            pageNumber = (int) freePages.peek();
+            page = copyPage(pageNumber);
+            if (page.get(0) == FREE_PAGE) {
+                initDataPage(page);
+            }
+            slot = page.get(0) == DATA_PAGE ? placeRecord(page, stored) : -1;
+            if (slot >= 0) {
+                writePage(pageNumber, page);
+                if (freeSpace(page) < REUSE_THRESHOLD) {
+                    freePages.pop();
+                }
+                return recordId(pageNumber, slot);
+            }
+            freePages.pop();
+        }
+
+        if (tailPage > 0) {
+            page = copyPage(tailPage);
+            slot = placeRecord(page, stored);
+            if (slot >= 0) {
+                writePage(tailPage, page);
+                return recordId(tailPage, slot);
+            }
+        }
+
+        page = ByteBuffer.allocate(PAGE_SIZE);
+        initDataPage(page);
+        slot = placeRecord(page, stored);
+        tailPage = allocatePage();
+        writePage(tailPage, page);
+        return recordId(tailPage, slot);
+    }
+
+    /**
+     * Appender class
+     * It writes records sequentially to new pages at the end of the file
+     * A page is filled in memory and written once, when the next record does not fit in it or when the appender is closed
+     */
+    public class Appender implements Closeable {
+        private ByteBuffer page;
+        private int pageNumber;
+
+        private Appender() {
+        }
+
+        /**
+         * Appends a record.
+         * @param record The bytes of the record.
+         * @return The record id of the new record.
+         * @throws IOException If an I/O error occurs.
+         */
+        public long append(byte[] record) throws IOException {
+
+            byte[] stored;
+            int slot;
+
+            lock.writeLock().lock();
+            try {
+                stored = toStoredRecord(record);
+                slot = page == null ? -1 : placeRecord(page, stored);
+                if (slot < 0) {
+                    flush();
+                    page = ByteBuffer.allocate(PAGE_SIZE);
+                    initDataPage(page);
+                    pageNumber = allocatePage();
+                    slot = placeRecord(page, stored);
+                }
+                return recordId(pageNumber, slot);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * Writes the last page and makes it the page that receives the next inserts.
+         * @throws IOException If an I/O error occurs.
+         */
+        @Override
+        public void close() throws IOException {
+            lock.writeLock().lock();
+            try {
+                flush();
+                if (page != null) {
+                    tailPage = pageNumber;
+                    page = null;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void flush() throws IOException {
+            if (page != null) {
+                writePage(pageNumber, page);
+            }
+        }
+    }
+
+    /**
+     * Opens an appender to write records sequentially to new pages at the end of the file.
+     * @return The appender.
+     */
+    public Appender appender() {
+        return new Appender();
+    }
+
+    /**
+     * Scanner class
+     * It iterates over the records of a range of pages in file order, reading 128 pages (1 MB) at a time
+     * with a sequential read of the store, so a scan keeps a single chunk of the file in memory.
+     * The free slots, the free pages and the overflow pages are skipped, and the records stored in overflow pages are read whole.
+     * Each chunk is copied to a buffer of the scanner under the read lock, so a record changed during the scan is seen as it was
+     * when its chunk was read, and a record moved to another page may be seen at both places, or at none.
+     * The scan stops at the last page written to the store, so the page an Appender is still filling is not read.
+     * A read error is thrown as an UncheckedIOException.
+     */
+    public class Scanner implements Iterator<ByteBuffer> {
+        private final int endPage;
+        private int nextPage;
+        private final List<ByteBuffer> records = new ArrayList<>();
+        private final List<Long> recordIds = new ArrayList<>();
+        private int position;
+        private long recordId = -1;
+
+        private Scanner(int firstPage, int endPage) {
+            this.nextPage = Math.max(1, firstPage);
+            this.endPage = endPage;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (position == records.size() && nextPage < endPage) {
+                try {
+                    readChunk();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return position < records.size();
+        }
+
+        @Override
+        public ByteBuffer next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            recordId = recordIds.get(position);
+            return records.get(position++);
+        }
+
+        /**
+         * Retrieves the number of records of the current chunk not returned yet, which next returns without reading the file.
+         * A caller that holds its own lock for a whole chunk reads records until it reaches 0.
+         * @return The number of records.
+         */
+        public int remainingInChunk() {
+            return records.size() - position;
+        }
+
+        /**
+         * Retrieves the record id of the record returned by the last call of next.
+         * @return The record id, or -1 before the first record.
+         */
+        public long recordId() {
+            return recordId;
+        }
+
+        /**
+         * Reads the next chunk of pages and keeps the records of its data pages, dropping the records of the previous chunk.
+         * @throws IOException If an I/O error occurs.
+         */
+        private void readChunk() throws IOException {
+
+            ByteBuffer chunk;
+            ByteBuffer page;
+            ByteBuffer record;
+            int count;
+
+            records.clear();
+            recordIds.clear();
+            position = 0;
+            lock.readLock().lock();
+            try {
+                // A page allocated by an Appender is only in the store once the Appender writes it
+                count = Math.min(SCAN_CHUNK_PAGES, Math.min(endPage, (int) (store.size() / PAGE_SIZE)) - nextPage);
+                if (count <= 0) {
+                    nextPage = endPage;
+                    return;
+                }
+                // readSequential returns a copy of the pages, which later writes do not change
+                chunk = store.readSequential((long) nextPage * PAGE_SIZE, count * PAGE_SIZE);
+                for (int i = 0; i < count; i++) {
+                    page = chunk.slice(i * PAGE_SIZE, PAGE_SIZE);
+                    if (page.get(0) != DATA_PAGE) {
+                        continue;
+                    }
+                    for (int slot = 0; slot < slotCount(page); slot++) {
+                        record = readSlot(page, slot);
+                        if (record != null) {
+                            records.add(record);
+                            recordIds.add(SlottedPageFile.recordId(nextPage + i, slot));
+                        }
+                    }
+                }
+                nextPage += count;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Creates a Scanner over all the records of the file, including the records of the pages added during the scan.
+     * @return The scanner.
+     */
+    public Scanner scan() {
+        return new Scanner(1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a Scanner over the records of a range of pages.
+     * @param firstPage The number of the first page, the header page being skipped.
+     * @param endPage The number of the page after the last one, the pages beyond the end of the file being skipped.
+     * @return The scanner.
+     */
+    public Scanner scan(int firstPage, int endPage) {
+        return new Scanner(firstPage, endPage);
+    }
+
+    /**
+     * Reads a record from the file.
+     * @param recordId The record id of the record.
+     * @return A buffer with the bytes of the record, or null if the slot is free.
+     * @throws IOException If an I/O error occurs.
+     */
+    public ByteBuffer read(long recordId) throws IOException {
+
+        lock.readLock().lock();
+        try {
+            return readSlot(readPage(pageOf(recordId)), slotOf(recordId));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads several records, visiting their pages in ascending order and reading each page once.
+     * Runs of adjacent pages are read with a single read of the store, up to MAX_BATCH_PAGES pages at a time.
+     * @param recordIds The record ids of the records, in any order.
+     * @return The buffers with the bytes of the records, in the order of the record ids, null for a free slot.
+     * @throws IOException If an I/O error occurs.
+     */
+    public ByteBuffer[] readAll(long[] recordIds) throws IOException {
+
+        ByteBuffer[] records = new ByteBuffer[recordIds.length];
+        Integer[] order = new Integer[recordIds.length];
+        ByteBuffer run = null;
+        int runStart = 0;
+        int runEnd = 0;
+        int pageNumber;
+        int next;
+
+        for (int k = 0; k < order.length; k++) {
+            order[k] = k;
+        }
+        Arrays.sort(order, Comparator.comparingLong(k -> recordIds[k]));
+
+        lock.readLock().lock();
+        try {
+            for (int k = 0; k < order.length; k++) {
+                pageNumber = pageOf(recordIds[order[k]]);
+                if (run == null || pageNumber >= runEnd) {
+                    // Extend the run while the following records are on the same page or on the next one
+                    runStart = pageNumber;
+                    runEnd = pageNumber + 1;
+                    for (int j = k + 1; j < order.length && runEnd - runStart < MAX_BATCH_PAGES; j++) {
+                        next = pageOf(recordIds[order[j]]);
+                        if (next > runEnd || next >= pageCount) {
+                            break;
+                        }
+                        runEnd = next + 1;
+                    }
+                    run = store.read((long) runStart * PAGE_SIZE, (runEnd - runStart) * PAGE_SIZE);
+                }
+                records[order[k]] = readSlot(run.slice((pageNumber - runStart) * PAGE_SIZE, PAGE_SIZE), slotOf(recordIds[order[k]]));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return records;
+    }
+
+    /**
+     * Reads a record from a page already read.
+     * @param page The buffer with the bytes of the page.
+     * @param slot The slot number of the record.
+     * @return A buffer with the bytes of the record, or null if the slot is free.
+     * @throws IOException If an I/O error occurs.
+     */
+    public ByteBuffer read(ByteBuffer page, int slot) throws IOException {
+
+        lock.readLock().lock();
+        try {
+            return readSlot(page, slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads a record from a page, the caller holding the lock.
+     * @param page The buffer with the bytes of the page.
+     * @param slot The slot number of the record.
+     * @return A buffer with the bytes of the record, or null if the slot is free.
+     * @throws IOException If an I/O error occurs.
+     */
+    private ByteBuffer readSlot(ByteBuffer page, int slot) throws IOException {
+
+        int offset;
+        int length;
+        ByteBuffer record;
+
+        if (page.get(0) != DATA_PAGE || slot >= slotCount(page)) {
+            return null;
+        }
+        offset = slotOffset(page, slot);
+        length = slotLength(page, slot);
+        if (offset == 0) {
+            return null;
+        }
+        if (page.get(offset) == INLINE_RECORD) {
+            return page.slice(offset + 1, length - 1);
+        }
+        record = page.slice(offset + 1, length - 1);
+        return readOverflow(record.getInt(), record.getInt());
+    }
+
+    /**
+     * Updates a record.
+     * The record stays in its slot if its page has room for the new bytes, otherwise it is moved to another page.
+     * @param recordId The record id of the record.
+     * @param record The new bytes of the record.
+     * @return The record id of the record, which changes only if the record was moved.
+     * @throws IOException If an I/O error occurs.
+     */
+    public long update(long recordId, byte[] record) throws IOException {
+
+        int pageNumber = pageOf(recordId);
+        int slot = slotOf(recordId);
+        ByteBuffer page;
+        byte[] stored;
+
+        lock.writeLock().lock();
+        try {
+            page = copyPage(pageNumber);
+            freeOverflow(page, slot);
+            stored = toStoredRecord(record);
+            removeRecord(page, slot);
+            if (placeRecord(page, stored, slot)) {
+                writePage(pageNumber, page);
+                return recordId;
+            }
+            writePage(pageNumber, page);
+            releaseSpace(pageNumber, page);
+            return insertStored(stored);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes a record.
+     * The method frees the slot of the record and the overflow pages of the record, if any.
+     * @param recordId The record id of the record.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void delete(long recordId) throws IOException {
+
+        int pageNumber = pageOf(recordId);
+        int slot = slotOf(recordId);
+        ByteBuffer page;
+
+        lock.writeLock().lock();
+        try {
+            page = copyPage(pageNumber);
+            if (slot >= slotCount(page) || slotOffset(page, slot) == 0) {
+                return;
+            }
+            freeOverflow(page, slot);
+            removeRecord(page, slot);
+            setSlot(page, slot, 0, 0);
+            writePage(pageNumber, page);
+            releaseSpace(pageNumber, page);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of pages of the file, including the header page.
+     * @return The number of pages.
+     */
+    public int pageCount() {
+
+        lock.readLock().lock();
+        try {
+            return pageCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Guards the data file by a write-ahead log, so the pages changed by a logged change are not written to the file
+     * before its log record is durable. See RecordStore.setWriteAheadLog.
+     * @param log The log, or null to stop guarding the file.
+     */
+    public void setWriteAheadLog(WriteAheadLog log) {
+        store.setWriteAheadLog(log);
+    }
+
+    /**
+     * Forces the written pages and the free list to the storage device.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void force() throws IOException {
+
+        lock.writeLock().lock();
+        try {
+            store.force();
+            freePages.force();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Closes the file.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+
+        lock.writeLock().lock();
+        try {
+            store.close();
+            freePages.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes the files of a slotted page file.
+     * @param filename The name of the data file.
+     * @param freeListFilename The name of the free list file.
+     */
+    public static void deleteFiles(String filename, String freeListFilename) {
+        new File(filename).delete();
+        new File(freeListFilename).delete();
+    }
+
+    /**
+     * Builds the bytes stored in a slot for a record: a flag byte followed by the record,
+     * or by the first overflow page and the length of a record too large for a data page.
+     * @param record The bytes of the record.
+     * @return The bytes to store in the slot.
+     * @throws IOException If an I/O error occurs.
+     */
+    private byte[] toStoredRecord(byte[] record) throws IOException {
+
+        ByteBuffer stored;
+
+        if (record.length <= MAX_INLINE_LENGTH) {
+            stored = ByteBuffer.allocate(record.length + 1);
+            stored.put(INLINE_RECORD).put(record);
+        } else {
+            stored = ByteBuffer.allocate(1 + 2 * Integer.BYTES);
+            stored.put(OVERFLOW_RECORD).putInt(writeOverflow(record)).putInt(record.length);
+        }
+        return stored.array();
+    }
+
+    /**
+     * Places stored bytes in a new or free slot of a data page.
+     * @param page The buffer with the bytes of the page.
+     * @param stored The bytes to store.
+     * @return The slot number, or -1 if the page has no room for the bytes.
+     */
+    private int placeRecord(ByteBuffer page, byte[] stored) {
+
+        int count = slotCount(page);
+
+        for (int slot = 0; slot < count; slot++) {
+            if (slotOffset(page, slot) == 0) {
+                return placeRecord(page, stored, slot) ? slot : -1;
+            }
+        }
+        if (stored.length + SLOT_SIZE > freeSpace(page)) {
+            return -1;
+        }
+        if (stored.length + SLOT_SIZE > contiguousFreeSpace(page)) {
+            compactPage(page);
+        }
+        page.putShort(2, (short) (count + 1));
+        setSlot(page, count, 0, 0);
+        placeRecord(page, stored, count);
+        return count;
+    }
+
+    /**
+     * Places stored bytes in a specific free slot of a data page, joining the free space of the page if needed.
+     * @param page The buffer with the bytes of the page.
+     * @param stored The bytes to store.
+     * @param slot The slot number.
+     * @return True if the bytes were placed, false if the page has no room for them.
+     */
+    private boolean placeRecord(ByteBuffer page, byte[] stored, int slot) {
+
+        int offset;
+
+        if (stored.length > freeSpace(page)) {
+            return false;
+        }
+        if (stored.length > contiguousFreeSpace(page)) {
+            compactPage(page);
+        }
+        offset = recordAreaStart(page) - stored.length;
+        page.put(offset, stored);
+        page.putShort(4, (short) offset);
+        setSlot(page, slot, offset, stored.length);
+        return true;
+    }
+
+    /**
+     * Removes the bytes of a slot from a data page, counting them as fragmented space.
+     * The slot keeps its number, the caller decides if it is freed or reused.
+     * @param page The buffer with the bytes of the page.
+     * @param slot The slot number.
+     */
+    private void removeRecord(ByteBuffer page, int slot) {
+
+        int offset = slotOffset(page, slot);
+        int length = slotLength(page, slot);
+
+        if (offset == 0) {
+            return;
+        }
+        if (offset == recordAreaStart(page)) {
+            page.putShort(4, (short) (offset + length));
+        } else {
+            page.putShort(6, (short) (fragmentedSpace(page) + length));
+        }
+        setSlot(page, slot, 0, 0);
+    }
+
+    /**
+     * Moves the records of a data page to the end of the page, so all its free space is contiguous.
+     * @param page The buffer with the bytes of the page.
+     */
+    private void compactPage(ByteBuffer page) {
+
+        ByteBuffer original = ByteBuffer.allocate(PAGE_SIZE).put(0, page, 0, PAGE_SIZE);
+        int count = slotCount(page);
+        int end = PAGE_SIZE;
+        int offset;
+        int length;
+
+        for (int slot = 0; slot < count; slot++) {
+            offset = slotOffset(original, slot);
+            length = slotLength(original, slot);
+            if (offset != 0) {
+                end -= length;
+                page.put(end, original, offset, length);
+                setSlot(page, slot, end, length);
+            }
+        }
+        page.putShort(4, (short) end);
+        page.putShort(6, (short) 0);
+    }
+
+    /**
+     * Adds a data page to the free list when a removal brings its free space over the reuse threshold.
+     * @param pageNumber The page number.
+     * @param page The buffer with the bytes of the page.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void releaseSpace(int pageNumber, ByteBuffer page) throws IOException {
+
+        if (pageNumber != tailPage && freeSpace(page) >= REUSE_THRESHOLD
+                && (freePages.isEmpty() || freePages.peek() != pageNumber)) {
+            freePages.push(pageNumber);
+        }
+    }
+
+    /**
+     * Writes a record to a chain of new overflow pages.
+     * @param record The bytes of the record.
+     * @return The page number of the first overflow page.
+     * @throws IOException If an I/O error occurs.
+     */
+    private int writeOverflow(byte[] record) throws IOException {
+
+        int capacity = PAGE_SIZE - PAGE_HEADER_SIZE;
+        int[] pages = new int[(record.length + capacity - 1) / capacity];
+        int length;
+        ByteBuffer page;
+
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = allocateOverflowPage();
+        }
+        for (int i = 0; i < pages.length; i++) {
+            length = Math.min(capacity, record.length - i * capacity);
+            page = ByteBuffer.allocate(PAGE_SIZE);
+            page.put(0, OVERFLOW_PAGE);
+            page.putShort(2, (short) length);
+            page.putInt(4, i + 1 < pages.length ? pages[i + 1] : -1);
+            page.put(PAGE_HEADER_SIZE, record, i * capacity, length);
+            writePage(pages[i], page);
+        }
+        return pages[0];
+    }
+
+    /**
+     * Reads a record from its chain of overflow pages.
+     * @param firstPage The page number of the first overflow page.
+     * @param length The length of the record.
+     * @return A buffer with the bytes of the record.
+     * @throws IOException If an I/O error occurs.
+     */
+    private ByteBuffer readOverflow(int firstPage, int length) throws IOException {
+
+        ByteBuffer record = ByteBuffer.allocate(length);
+        int pageNumber = firstPage;
+        ByteBuffer page;
+
+        while (pageNumber != -1 && record.hasRemaining()) {
+            page = readPage(pageNumber);
+            record.put(page.slice(PAGE_HEADER_SIZE, page.getShort(2)));
+            pageNumber = page.getInt(4);
+        }
+        return record.flip();
+    }
+
+    /**
+     * Frees the overflow pages of a slot, if its record is stored in overflow pages.
+     * The freed pages are added to the free list, to be reused as data pages.
+     * @param page The buffer with the bytes of the data page.
+     * @param slot The slot number.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void freeOverflow(ByteBuffer page, int slot) throws IOException {
+
+        int offset = slotOffset(page, slot);
+        int pageNumber;
+        ByteBuffer overflowPage;
+
+        if (offset == 0 || page.get(offset) != OVERFLOW_RECORD) {
+            return;
+        }
+        pageNumber = page.getInt(offset + 1);
+        while (pageNumber != -1) {
+            overflowPage = copyPage(pageNumber);
+            overflowPage.put(0, FREE_PAGE);
+            writePage(pageNumber, overflowPage);
+            freePages.push(pageNumber);
+            pageNumber = overflowPage.getInt(4);
+        }
+    }
+
+    private void initDataPage(ByteBuffer page) {
+        page.put(0, DATA_PAGE);
+        page.putShort(2, (short) 0);
+        page.putShort(4, (short) PAGE_SIZE);
+        page.putShort(6, (short) 0);
+    }
+
+    private static int slotCount(ByteBuffer page) {
+        return page.getShort(2);
+    }
+
+    private static int recordAreaStart(ByteBuffer page) {
+        return page.getShort(4);
+    }
+
+    private static int fragmentedSpace(ByteBuffer page) {
+        return page.getShort(6);
+    }
+
+    private static int slotOffset(ByteBuffer page, int slot) {
+        return page.getShort(PAGE_HEADER_SIZE + slot * SLOT_SIZE);
+    }
+
+    private static int slotLength(ByteBuffer page, int slot) {
+        return page.getShort(PAGE_HEADER_SIZE + slot * SLOT_SIZE + 2);
+    }
+
+    private static void setSlot(ByteBuffer page, int slot, int offset, int length) {
+        page.putShort(PAGE_HEADER_SIZE + slot * SLOT_SIZE, (short) offset);
+        page.putShort(PAGE_HEADER_SIZE + slot * SLOT_SIZE + 2, (short) length);
+    }
+
+    private static int contiguousFreeSpace(ByteBuffer page) {
+        return recordAreaStart(page) - PAGE_HEADER_SIZE - slotCount(page) * SLOT_SIZE;
+    }
+
+    private static int freeSpace(ByteBuffer page) {
+        return contiguousFreeSpace(page) + fragmentedSpace(page);
+    }
+
+    /**
+     * Allocates a page for an overflow chain.
+     * The method reuses the page at the top of the free list if it is a free page, otherwise it allocates a new page.
+     * @return The page number of the page.
+     * @throws IOException If an I/O error occurs.
+     */
+    private int allocateOverflowPage() throws IOException {
+
+        int pageNumber;
+
+        if (!freePages.isEmpty()) {
+            pageNumber = (int) freePages.peek();
+            if (readPage(pageNumber).get(0) == FREE_PAGE) {
+                freePages.pop();
+                // Mark the page as used right away, so a stale copy of its number in the free list is skipped
+                writePage(pageNumber, ByteBuffer.allocate(PAGE_SIZE).put(0, OVERFLOW_PAGE));
+                return pageNumber;
+            }
+        }
+        return allocatePage();
+    }
+
+    /**
+     * Allocates a new page at the end of the file.
+     * @return The page number of the new page.
+     */
+    private int allocatePage() {
+        return pageCount++;
+    }
+
+    /**
+     * Reads a page without copying it, for reading only.
+     * @param pageNumber The page number.
+     * @return A buffer with the bytes of the page.
+     * @throws IOException If an I/O error occurs.
+     */
+    private ByteBuffer readPage(int pageNumber) throws IOException {
+        return store.read((long) pageNumber * PAGE_SIZE, PAGE_SIZE);
+    }
+
+    /**
+     * Reads a copy of a page, to be changed and written back.
+     * @param pageNumber The page number.
+     * @return A buffer with a copy of the bytes of the page.
+     * @throws IOException If an I/O error occurs.
+     */
+    private ByteBuffer copyPage(int pageNumber) throws IOException {
+        return ByteBuffer.allocate(PAGE_SIZE).put(0, readPage(pageNumber), 0, PAGE_SIZE);
+    }
+
+    /**
+     * Writes a page.
+     * @param pageNumber The page number.
+     * @param page The buffer with the bytes of the page.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void writePage(int pageNumber, ByteBuffer page) throws IOException {
+        store.write((long) pageNumber * PAGE_SIZE, page.clear());
+    }
+}
@@ -0,0 +1,466 @@
+package librarySystem.storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead log of the changes to the records of a data file, used by the book and patron handlers.
+ * Each change is appended as a record with an operation, the key of the record and its new bytes, and is then applied
+ * to the data file and the indexes without forcing them to the storage device.
+ * The files a change is applied to are guarded by the log, see RecordStore.setWriteAheadLog: the bytes of a change do not reach
+ * a guarded file before its log record is durable, so a crash never leaves a change in the files that the replay does not know.
+ * A log record is stored as its length, its bytes and a CRC32 checksum, so a record cut in half by a crash is detected.
+ * The log is made durable by a group commit thread: the callers wait for their records with awaitDurable, and the thread
+ * writes all the records appended since its previous write and forces them with a single fsync.
+ * A checkpoint forces the log, then the data file and the indexes, and empties the log. It runs in the background when the log reaches
+ * a size limit or a time limit, and blocks the changes while it runs, so the files it forces hold every change of the log.
+ * On startup, the handler replays the log, applying again the changes that may not have reached its files.
+ * Replaying a change that is already in the files does not modify them, so replaying the log is always correct.
+ * A change that fails while it is applied is cancelled by an ABORT record naming its position in the log, and the replay
+ * skips it. A record that still fails when it is replayed is reported and copied to "<filename>.rejected" instead of
+ * stopping the startup.
+ */
+public class WriteAheadLog implements Closeable {
+
+    public static final byte PUT = 1;
+    public static final byte DELETE = 2;
+    private static final byte ABORT = 3;
+
+    private static final long CHECKPOINT_BYTES = 4L * 1024 * 1024;
+    private static final long CHECKPOINT_INTERVAL_MILLIS = 30_000;
+    private static final long CHECKPOINT_POLL_MILLIS = 1_000;
+    private static final ScheduledExecutorService CHECKPOINTER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "write-ahead-log-checkpointer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String filename;
+    private final Flusher flusher;
+    private final FileChannel channel;
+    private final ReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final Thread committer;
+    private ScheduledFuture<?> checkpoints;
+    private long appendedCount;
+    private long durableCount;
+    private long truncatedCount; // Number of records appended before the last time the log was emptied
+    private long logBytes;
+    private long lastCheckpoint = System.currentTimeMillis();
+    private boolean forcing;
+    private boolean closed;
+    private IOException failure;
+
+    /**
+     * Redo interface
+     * It is called with each record when the log is replayed
+     */
+    public interface Redo {
+        void apply(byte operation, String key, byte[] record) throws IOException;
+    }
+
+    /**
+     * Mutation interface
+     * It applies a change to the data file and the indexes
+     */
+    public interface Mutation {
+        void run() throws IOException;
+    }
+
+    /**
+     * Flusher interface
+     * It forces the data file and the indexes to the storage device during a checkpoint
+     */
+    public interface Flusher {
+        void force() throws IOException;
+    }
+
+    /**
+     * Opens the log stored in the specified file and starts its group commit thread.
+     * The checkpoints start once the log is replayed.
+     * @param filename The name of the log file.
+     * @param flusher The flusher called by the checkpoints.
+     * @throws IOException If an I/O error occurs.
+     */
+    public WriteAheadLog(String filename, Flusher flusher) throws IOException {
+        this.filename = filename;
+        this.flusher = flusher;
+        channel = FileChannel.open(Path.of(filename), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        logBytes = channel.size();
+        committer = new Thread(this::commitLoop, "write-ahead-log-committer " + filename);
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    /**
+     * Replays the records of the log, then starts the background checkpoints.
+     * A record cut in half by a crash at the end of the log is dropped, and the records cancelled by an ABORT record are skipped.
+     * A record the redo operation fails to apply is reported and copied to the rejected file, and the replay goes on.
+     * @param redo The operation called with each record, in the order they were appended.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void replay(Redo redo) throws IOException {
+
+        ByteBuffer content;
+        CRC32 checksum = new CRC32();
+        long validLength = 0;
+        int length;
+        byte[] body;
+        List<byte[]> bodies = new ArrayList<>();
+        Set<Integer> aborted = new HashSet<>();
+        DataInputStream record;
+        byte operation;
+        String key;
+        byte[] bytes;
+
+        try {
+            content = ByteBuffer.wrap(Files.readAllBytes(Path.of(filename)));
+        } catch (NoSuchFileException e) {
+            content = ByteBuffer.allocate(0);
+        }
+        while (content.remaining() >= Integer.BYTES) {
+            length = content.getInt();
+            if (length < 0 || content.remaining() < length + Integer.BYTES) {
+                break;
+            }
+            body = new byte[length];
+            content.get(body);
+            checksum.reset();
+            checksum.update(body);
+            if (content.getInt() != (int) checksum.getValue()) {
+                break;
+            }
+            if (body[0] == ABORT) {
+                aborted.add(ByteBuffer.wrap(body, body.length - Integer.BYTES, Integer.BYTES).getInt());
+            }
+            bodies.add(body);
+            validLength = content.position();
+        }
+
+        for (int i = 0; i < bodies.size(); i++) {
+            // The position of a record is its number in the log, from 1
+            if (bodies.get(i)[0] == ABORT || aborted.contains(i + 1)) {
+                continue;
+            }
+            record = new DataInputStream(new ByteArrayInputStream(bodies.get(i)));
+            operation = record.readByte();
+            key = record.readUTF();
+            bytes = new byte[record.readInt()];
+            record.readFully(bytes);
+            try {
+                redo.apply(operation, key, bytes);
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Skipping record of " + key + " in " + filename + " : " + e.getMessage());
+                reject(bodies.get(i));
+            }
+        }
+
+        synchronized (this) {
+            if (validLength < logBytes) {
+                System.out.println("Ignoring incomplete record at the end of " + filename);
+                channel.truncate(validLength);
+                logBytes = validLength;
+            }
+            // The records already in the log keep their positions, the next ones are numbered after them
+            appendedCount += bodies.size();
+            durableCount = appendedCount;
+            if (checkpoints == null) {
+                checkpoints = CHECKPOINTER.scheduleWithFixedDelay(this::checkpointIfNeeded,
+                        CHECKPOINT_POLL_MILLIS, CHECKPOINT_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Appends a change to the log and applies it, without waiting for the log record to be durable.
+     * No checkpoint runs while the change is applied. The caller then waits for the record with awaitDurable,
+     * preferably after releasing its own locks, so the records of other callers join the same fsync.
+     * The caller checks the change before calling the method. If the mutation still fails, an ABORT record cancels the log record,
+     * so the change is not applied again when the log is replayed.
+     * @param operation The operation, PUT or DELETE.
+     * @param key The key of the record.
+     * @param record The new bytes of the record, empty for a delete.
+     * @param mutation The mutation that applies the change to the data file and the indexes.
+     * @return The sequence number of the log record, to pass to awaitDurable.
+     * @throws IOException If an I/O error occurs.
+     */
+    public long log(byte operation, String key, byte[] record, Mutation mutation) throws IOException {
+
+        long sequence;
+
+        checkpointLock.readLock().lock();
+        try {
+            sequence = append(operation, key, record);
+            try {
+                mutation.run();
+            } catch (IOException | RuntimeException e) {
+                abort(sequence);
+                throw e;
+            }
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+        return sequence;
+    }
+
+    /**
+     * Applies a change that is not written to the log, such as a bulk import that forces its files itself.
+     * No checkpoint runs while the change is applied.
+     * @param mutation The mutation that applies the change.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void run(Mutation mutation) throws IOException {
+
+        checkpointLock.readLock().lock();
+        try {
+            mutation.run();
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Waits until a log record is forced to the storage device by the group commit thread, or by a checkpoint.
+     * @param sequence The sequence number of the log record.
+     * @throws IOException If the log could not be written or the thread is interrupted.
+     */
+    public synchronized void awaitDurable(long sequence) throws IOException {
+        while (durableCount < sequence && failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for the write-ahead log");
+            }
+        }
+        if (durableCount < sequence) {
+            throw new IOException("error writing the write-ahead log " + filename, failure);
+        }
+    }
+
+    /**
+     * Retrieves the sequence number of the last record appended to the log.
+     * A guarded file whose bytes were changed up to now must not be written before this record is durable.
+     * @return The sequence number, 0 if no record was appended yet.
+     */
+    public synchronized long getLastSequence() {
+        return appendedCount;
+    }
+
+    /**
+     * Checks if a log record is forced to the storage device, without waiting for it.
+     * @param sequence The sequence number of the log record.
+     * @return True if the record and the records before it are durable, false otherwise.
+     */
+    public synchronized boolean isDurable(long sequence) {
+        return durableCount >= sequence;
+    }
+
+    /**
+     * Forces the log, then the data file and the indexes with the flusher, and empties the log.
+     * The log is forced first, so the pages the flusher writes back only hold changes whose log records are durable.
+     * The changes wait until the checkpoint ends. If the flusher fails, the log is kept.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void checkpoint() throws IOException {
+
+        checkpointLock.writeLock().lock();
+        try {
+            awaitDurable(getLastSequence());
+            flusher.force();
+            synchronized (this) {
+                while (forcing) {
+                    waitUninterruptibly();
+                }
+                pending.reset();
+                channel.truncate(0);
+                channel.force(true);
+                logBytes = 0;
+                durableCount = appendedCount;
+                truncatedCount = appendedCount;
+                failure = null;
+                lastCheckpoint = System.currentTimeMillis();
+                notifyAll();
+            }
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Stops the checkpoints and the group commit thread, after the records already appended are forced.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+
+        synchronized (this) {
+            if (checkpoints != null) {
+                checkpoints.cancel(false);
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    /**
+     * Adds a record to the records waiting for the group commit thread.
+     * @param operation The operation.
+     * @param key The key of the record.
+     * @param record The new bytes of the record.
+     * @return The sequence number of the record.
+     * @throws IOException If an I/O error occurs or the log is closed.
+     */
+    private synchronized long append(byte operation, String key, byte[] record) throws IOException {
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream(record.length + key.length() + 8);
+        DataOutputStream bodyOut = new DataOutputStream(body);
+        DataOutputStream frame = new DataOutputStream(pending);
+        CRC32 checksum = new CRC32();
+
+        if (closed) {
+            throw new IOException("write-ahead log closed");
+        }
+        bodyOut.writeByte(operation);
+        bodyOut.writeUTF(key);
+        bodyOut.writeInt(record.length);
+        bodyOut.write(record);
+        checksum.update(body.toByteArray());
+
+        frame.writeInt(body.size());
+        body.writeTo(frame);
+        frame.writeInt((int) checksum.getValue());
+        logBytes += Integer.BYTES * 2 + body.size();
+        appendedCount++;
+        notifyAll();
+        return appendedCount;
+    }
+
+    /**
+     * Appends an ABORT record cancelling a log record whose mutation failed.
+     * Its body holds the position of the cancelled record in the log, which is not emptied in between
+     * since no checkpoint runs while a change is applied.
+     * @param sequence The sequence number of the cancelled record.
+     * @throws IOException If an I/O error occurs.
+     */
+    private synchronized void abort(long sequence) throws IOException {
+        append(ABORT, "", ByteBuffer.allocate(Integer.BYTES).putInt((int) (sequence - truncatedCount)).array());
+    }
+
+    /**
+     * Copies a log record that could not be replayed to the rejected file, so it can still be inspected after the log is emptied.
+     * @param body The body of the log record.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void reject(byte[] body) throws IOException {
+
+        ByteBuffer frame = ByteBuffer.allocate(body.length + 2 * Integer.BYTES);
+        CRC32 checksum = new CRC32();
+
+        checksum.update(body);
+        frame.putInt(body.length).put(body).putInt((int) checksum.getValue()).flip();
+        try (FileChannel rejected = FileChannel.open(Path.of(filename + ".rejected"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (frame.hasRemaining()) {
+                rejected.write(frame);
+            }
+            rejected.force(false);
+        }
+    }
+
+    /**
+     * Loop of the group commit thread.
+     * It takes all the records appended since its previous write, writes them and forces them with a single fsync,
+     * while the next records are appended.
+     */
+    private void commitLoop() {
+
+        ByteBuffer batch;
+        long batchCount;
+        IOException error = null;
+
+        while (true) {
+            synchronized (this) {
+                while (pending.size() == 0 && !closed) {
+                    waitUninterruptibly();
+                }
+                if (pending.size() == 0) {
+                    return;
+                }
+                batch = ByteBuffer.wrap(pending.toByteArray());
+                batchCount = appendedCount;
+                pending.reset();
+                forcing = true;
+            }
+            try {
+                while (batch.hasRemaining()) {
+                    channel.write(batch);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                error = e;
+            }
+            synchronized (this) {
+                forcing = false;
+                if (error != null) {
+                    failure = error;
+                    error = null;
+                } else {
+                    durableCount = Math.max(durableCount, batchCount);
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Runs a checkpoint if the log reached the size limit, or has records older than the time limit.
+     */
+    private void checkpointIfNeeded() {
+
+        boolean needed;
+
+        synchronized (this) {
+            needed = !closed && (logBytes >= CHECKPOINT_BYTES
+                    || (logBytes > 0 && System.currentTimeMillis() - lastCheckpoint >= CHECKPOINT_INTERVAL_MILLIS));
+        }
+        if (needed) {
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                System.out.println("Error in checkpoint of " + filename + " : " + e.getMessage());
+            }
+        }
+    }
+
+    private void waitUninterruptibly() {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
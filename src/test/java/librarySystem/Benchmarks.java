@@ -0,0 +1,83 @@
+package librarySystem;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Helpers for the benchmarks, the test classes tagged with TAG.
+ * They are excluded from the normal build by the excludedGroups property of the pom, run them with:
+ * mvn test -Dgroups=benchmark -DexcludedGroups=
+ * Each benchmark prints its figures and only checks that the measured operations return results.
+ */
+public final class Benchmarks {
+
+    public static final String TAG = "benchmark";
+
+    private static final String LETTERS = "abcdefghijklmnopqrstuvwxyz";
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Runs the queries once to warm up, then once more timed, and prints the median, the 99th percentile and the mean.
+     * @param name The name printed with the figures.
+     * @param queries The queries.
+     * @param search The search measured, which returns the results of a query.
+     */
+    public static void report(String name, List<String> queries, Function<String, List<?>> search) {
+
+        long[] times = new long[queries.size()];
+        long start;
+        long results = 0;
+
+        for (String query : queries) {
+            search.apply(query);
+        }
+        for (int i = 0; i < times.length; i++) {
+            start = System.nanoTime();
+            results += search.apply(queries.get(i)).size();
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        System.out.printf("%s: median %.1f us, p99 %.1f us, mean %.1f us over %d queries%n", name, times[times.length / 2] / 1e3,
+                times[times.length * 99 / 100] / 1e3, Arrays.stream(times).average().orElse(0) / 1e3, times.length);
+        assertTrue(results > 0, name + " found nothing");
+    }
+
+    /**
+     * Builds words of 4 to 9 random letters, with a capitalized first letter.
+     * @param random The source of the letters.
+     * @param count The number of words, separated by spaces.
+     * @return The words.
+     */
+    public static String words(Random random, int count) {
+
+        StringBuilder text = new StringBuilder();
+        int length;
+
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            length = 4 + random.nextInt(6);
+            text.append(Character.toUpperCase(letter(random)));
+            for (int j = 1; j < length; j++) {
+                text.append(letter(random));
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Picks a random lowercase letter.
+     * @param random The source of the letter.
+     * @return The letter.
+     */
+    public static char letter(Random random) {
+        return LETTERS.charAt(random.nextInt(LETTERS.length()));
+    }
+}
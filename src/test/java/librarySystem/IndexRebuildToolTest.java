@@ -0,0 +1,64 @@
+package librarySystem;
+
+import librarySystem.book.SecondayIndexManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of IndexRebuildTool with index files of a previous version in the working directory.
+ */
+class IndexRebuildToolTest {
+
+    @BeforeEach
+    void clearFiles() throws IOException {
+        TestFiles.clearWorkingDirectory();
+    }
+
+    @Test
+    void indexFilesOfPreviousVersionsAreRewrittenWithTheirLog() throws IOException {
+
+        SecondayIndexManager index;
+        byte[] rewritten;
+
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(Path.of("title_index.dat")))) {
+            out.writeUTF("Naruto");
+            out.writeUTF("1");
+            out.writeUTF("Pokémon");
+            out.writeUTF("2");
+        }
+        index = new SecondayIndexManager("author_index.dat");
+        index.addSecondaryIndex("Kishimoto", "1");
+        index.close();
+
+        IndexRebuildTool.main(new String[0]);
+
+        rewritten = Files.readAllBytes(Path.of("title_index.dat"));
+        assertTrue(Files.size(Path.of("author_index.dat")) > 0);
+        assertFalse(Files.exists(Path.of("author_index.dat.log")) && Files.size(Path.of("author_index.dat.log")) > 0);
+        assertFalse(Files.exists(Path.of("genre_index.dat")));
+
+        // The files are already in the current format, so they are not changed by the next start
+        index = new SecondayIndexManager("title_index.dat");
+        try {
+            assertEquals(List.of("Naruto", "Pokémon"), index.getAllKeys());
+            assertEquals(List.of("2"), index.getIsbnsByKey("POKEMON"));
+        } finally {
+            index.close();
+        }
+        assertArrayEquals(rewritten, Files.readAllBytes(Path.of("title_index.dat")));
+        index = new SecondayIndexManager("author_index.dat");
+        try {
+            assertEquals(List.of("1"), index.getIsbnsByKey("kishimoto"));
+        } finally {
+            index.close();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package librarySystem;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Helpers for the tests of the handlers, which keep their files in the working directory.
+ */
+public final class TestFiles {
+
+    private TestFiles() {
+    }
+
+    /**
+     * Deletes the files left in the working directory by the handlers of the previous test.
+     * Surefire runs the tests in target/test-work, so nothing else is in the directory.
+     * @throws IOException If a file cannot be deleted.
+     */
+    public static void clearWorkingDirectory() throws IOException {
+
+        File[] files = new File("").getAbsoluteFile().listFiles();
+
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isFile() && !file.delete()) {
+                throw new IOException("cannot delete " + file);
+            }
+        }
+    }
+}
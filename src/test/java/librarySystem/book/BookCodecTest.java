@@ -0,0 +1,136 @@
+package librarySystem.book;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of BookCodec: round trips of the compact layout with every encoding of the volumes, and records of the legacy layout.
+ */
+class BookCodecTest {
+
+    @Test
+    void everyEncodingOfTheVolumesRoundTrips() throws IOException {
+
+        List<Integer> everyOther = IntStream.rangeClosed(1, 200).filter(v -> v % 2 == 0).boxed().collect(Collectors.toList());
+
+        assertRoundTrip(book(72, List.of()));
+        // Runs of consecutive volumes
+        assertRoundTrip(book(72, IntStream.rangeClosed(1, 72).boxed().collect(Collectors.toList())));
+        assertRoundTrip(book(72, List.of(1, 2, 3, 10, 11, 72)));
+        // A bitset, smaller than 100 runs of one volume
+        assertRoundTrip(book(200, everyOther));
+        // A list of differences, for volumes not sorted, repeated or outside 1..totalVolumes
+        assertRoundTrip(book(10, List.of(5, 3, 9)));
+        assertRoundTrip(book(10, List.of(2, 2, 4)));
+        assertRoundTrip(book(10, List.of(0, 11, -4)));
+        assertRoundTrip(book(0, List.of(1)));
+    }
+
+    @Test
+    void bitsetIsChosenWhenItIsSmaller() {
+
+        List<Integer> everyOther = IntStream.rangeClosed(1, 200).filter(v -> v % 2 == 0).boxed().collect(Collectors.toList());
+        byte[] record = BookCodec.encode(book(200, everyOther));
+
+        // About 85 bytes of other fields and 25 bytes of bits, where 100 runs or differences would take 200 bytes
+        assertTrue(record.length < 150, "record of " + record.length + " bytes");
+    }
+
+    @Test
+    void fieldsOfAnySizeAndSignRoundTrip() throws IOException {
+
+        assertRoundTrip(new Book("978-85-0000-000-0", "Ação 進撃の巨人 " + "t".repeat(400), "", -3000, 1, "", "é", "x".repeat(70_000),
+                Integer.MAX_VALUE, 1_000_000, 3, List.of(1, 500_000, 1_000_000)));
+        assertRoundTrip(new Book("1", "", "", 2020, 1990, "", "", "", 1900, 5, 9, List.of(1, 2)));
+    }
+
+    @Test
+    void randomBooksRoundTrip() throws IOException {
+
+        Random random = new Random(42);
+        List<Integer> volumes;
+        int totalVolumes;
+
+        for (int i = 0; i < 2_000; i++) {
+            totalVolumes = random.nextInt(300);
+            volumes = new ArrayList<>();
+            for (int volume = 1; volume <= totalVolumes; volume++) {
+                if (random.nextInt(4) > i % 4) {
+                    volumes.add(volume);
+                }
+            }
+            if (i % 10 == 0) {
+                volumes.add(random.nextInt(1_000) - 500);
+            }
+            assertRoundTrip(new Book("isbn" + i, "Title " + random.nextInt(), "Author " + i, 1900 + random.nextInt(200),
+                    1900 + random.nextInt(200), "Genre", "Magazine", "Publisher", 1900 + random.nextInt(200), totalVolumes,
+                    volumes.size(), volumes));
+        }
+    }
+
+    @Test
+    void recordsOfTheLegacyLayoutAreDecoded() throws IOException {
+
+        Book book = book(72, List.of(1, 2, 3, 40));
+        ByteBuffer record = ByteBuffer.wrap(Arrays.copyOf(legacyRecord(book), 2048));
+
+        assertEquals(book.toString(), BookCodec.decode(record).toString());
+        assertTrue(BookCodec.encode(book).length < legacyRecord(book).length);
+    }
+
+    @Test
+    void unknownVersionIsRejected() {
+
+        byte[] record = BookCodec.encode(book(72, List.of(1)));
+
+        record[1] = 9;
+        assertThrows(IOException.class, () -> BookCodec.decode(ByteBuffer.wrap(record)));
+    }
+
+    private static void assertRoundTrip(Book book) throws IOException {
+
+        ByteBuffer record = ByteBuffer.wrap(BookCodec.encode(book));
+
+        assertEquals(book.toString(), BookCodec.decode(record).toString());
+        assertFalse(record.hasRemaining());
+    }
+
+    private static byte[] legacyRecord(Book book) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(bytes);
+
+        record.writeUTF(book.getIsbn());
+        record.writeUTF(book.getTitle());
+        record.writeUTF(book.getAuthor());
+        record.writeInt(book.getStartYear());
+        record.writeInt(book.getEndYear());
+        record.writeUTF(book.getGenre());
+        record.writeUTF(book.getMagazine());
+        record.writeUTF(book.getPublisher());
+        record.writeInt(book.getEditionYear());
+        record.writeInt(book.getTotalVolumes());
+        record.writeInt(book.getAcquiredVolumesCounter());
+        for (int volume : book.getAcquiredVolumes()) {
+            record.writeInt(volume);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Book book(int totalVolumes, List<Integer> volumes) {
+        return new Book("9788542600000", "Naruto", "Masashi Kishimoto", 1999, 2014, "Shonen", "Weekly Shonen Jump", "Shueisha",
+                2000, totalVolumes, volumes.size(), volumes);
+    }
+}
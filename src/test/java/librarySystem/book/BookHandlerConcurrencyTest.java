@@ -0,0 +1,185 @@
+package librarySystem.book;
+
+import librarySystem.TestFiles;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of BookHandler used by readers and writers at once.
+ * Each book is in one of two states, a short title by one author or a long title by another, and the long title does not
+ * fit in the slot of the short one, so each update moves the record and frees its previous slot for the next record written.
+ */
+class BookHandlerConcurrencyTest {
+
+    private static final int READERS = 6;
+    private static final int BOOKS = 40;
+    private static final int ROUNDS = 6;
+
+    @BeforeEach
+    void clearFiles() throws IOException {
+        TestFiles.clearWorkingDirectory();
+    }
+
+    @Test
+    void readersSeeWholeBooksWhileTheyAreMovedAddedAndDeleted() throws Exception {
+
+        // Without the record cache every read goes through the index to the data file
+        BookHandler handler = new BookHandler(false, 0, 0);
+
+        try {
+            readWhileWriting(handler);
+        } finally {
+            handler.close();
+        }
+    }
+
+    @Test
+    void cachedReadersSeeWholeBooksWhileTheyAreMovedAddedAndDeleted() throws Exception {
+
+        BookHandler handler = new BookHandler(false, 100, 1_000_000);
+
+        try {
+            readWhileWriting(handler);
+        } finally {
+            handler.close();
+        }
+    }
+
+    /**
+     * Runs an updater, which moves every book to its other state, and an adder, which adds and deletes other books in the
+     * slots freed by the updater, while the readers check each book they get. Then checks that the index and the data file agree.
+     */
+    private static void readWhileWriting(BookHandler handler) throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(READERS + 2);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Future<?>> writers = new ArrayList<>();
+        List<Future<?>> readers = new ArrayList<>();
+        Map<String, Book> scanned;
+
+        try {
+            for (int i = 0; i < BOOKS; i++) {
+                handler.addBook(book(String.valueOf(i), false));
+            }
+            writers.add(executor.submit(() -> {
+                for (int round = 0; round < ROUNDS; round++) {
+                    for (int i = 0; i < BOOKS; i++) {
+                        handler.updateBook(String.valueOf(i), book(String.valueOf(i), round % 2 == 0));
+                    }
+                }
+                return null;
+            }));
+            writers.add(executor.submit(() -> {
+                for (int round = 0; round < ROUNDS; round++) {
+                    for (int i = 0; i < BOOKS / 2; i++) {
+                        handler.addBook(book("extra" + i, round % 2 == 0));
+                    }
+                    for (int i = 0; i < BOOKS / 2; i++) {
+                        handler.deleteBook("extra" + i);
+                    }
+                }
+                return null;
+            }));
+            for (int reader = 0; reader < READERS; reader++) {
+                int number = reader;
+                readers.add(executor.submit(() -> {
+                    String isbn;
+                    int round = 0;
+                    while (writing.get() || round < 50) {
+                        isbn = String.valueOf((round * 7 + number) % BOOKS);
+                        assertWhole(isbn, handler.getBook(isbn));
+                        assertWholeIfFound("extra" + round % (BOOKS / 2), handler.getBook("extra" + round % (BOOKS / 2)));
+                        for (Book found : handler.getBooks(List.of(isbn, "extra" + number, String.valueOf((round + 1) % BOOKS)))) {
+                            assertWhole(found.getIsbn(), found);
+                        }
+                        assertSearch(handler.searchBooksByTitle(title(isbn, false)), isbn, false);
+                        assertSearch(handler.searchBooksByTitle(title(isbn, true)), isbn, true);
+                        for (Book found : handler.searchBooksByAuthor(author(round % 2 == 0))) {
+                            assertWhole(found.getIsbn(), found);
+                            assertEquals(author(round % 2 == 0), found.getAuthor());
+                        }
+                        round++;
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+            writing.set(false);
+            for (Future<?> reader : readers) {
+                reader.get();
+            }
+
+            // The index and the data file agree: each record scanned is the one the index points to, and each book is scanned once
+            scanned = handler.scanBooks().collect(Collectors.toMap(Book::getIsbn, Function.identity()));
+            assertEquals(BOOKS, scanned.size());
+            for (int i = 0; i < BOOKS; i++) {
+                assertWhole(String.valueOf(i), scanned.get(String.valueOf(i)));
+                assertEquals(scanned.get(String.valueOf(i)).toString(), handler.getBook(String.valueOf(i)).toString());
+                assertEquals(ROUNDS % 2 == 1, scanned.get(String.valueOf(i)).getTitle().length() > 100);
+            }
+            for (int i = 0; i < BOOKS / 2; i++) {
+                assertNull(handler.getBook("extra" + i));
+            }
+            assertEquals(BOOKS, handler.searchBooksByAuthor(author(ROUNDS % 2 == 1)).size());
+            assertTrue(handler.searchBooksByAuthor(author(ROUNDS % 2 == 0)).isEmpty());
+        } finally {
+            writing.set(false);
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Checks that a book is found, has the ISBN it was read by, and is in one of its two states.
+     */
+    private static void assertWhole(String isbn, Book book) {
+
+        assertNotNull(book, "book " + isbn + " not found");
+        assertWholeIfFound(isbn, book);
+    }
+
+    private static void assertWholeIfFound(String isbn, Book book) {
+
+        if (book != null) {
+            assertEquals(isbn, book.getIsbn());
+            assertEquals(book(isbn, book.getTitle().length() > 100).toString(), book.toString());
+        }
+    }
+
+    /**
+     * Checks that a search by the title of a book in one state finds at most that book, in that state.
+     */
+    private static void assertSearch(List<Book> found, String isbn, boolean moved) {
+
+        assertTrue(found.size() <= 1, "title of book " + isbn + " found " + found.size() + " times");
+        for (Book book : found) {
+            assertEquals(book(isbn, moved).toString(), book.toString());
+        }
+    }
+
+    private static Book book(String isbn, boolean moved) {
+        return new Book(isbn, title(isbn, moved), author(moved), 1999, 2014, "Shonen", "Jump", "Shueisha", 2000, 72, 2, List.of(1, 2));
+    }
+
+    private static String title(String isbn, boolean moved) {
+        return moved ? "Naruto " + isbn + " " + "Shippuden ".repeat(30) : "Naruto " + isbn;
+    }
+
+    private static String author(boolean moved) {
+        return moved ? "Masashi Kishimoto" : "Kishimoto";
+    }
+}
@@ -0,0 +1,186 @@
+package librarySystem.book;
+
+import librarySystem.TestFiles;
+import librarySystem.storage.SlottedPageFile;
+import librarySystem.storage.WriteAheadLog;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the write-ahead log of BookHandler: changes replayed after a restart, and changes that failed or cannot be replayed,
+ * and index files that cannot be read.
+ */
+class BookHandlerRecoveryTest {
+
+    private static final String LONG_ISBN = "9".repeat(70);
+
+    @BeforeEach
+    void clearFiles() throws IOException {
+        TestFiles.clearWorkingDirectory();
+    }
+
+    @Test
+    void changesInTheLogSurviveARestart() throws IOException {
+
+        BookHandler handler = new BookHandler();
+
+        handler.addBook(book("1", "Naruto"));
+        handler.addBook(book("2", "Bleach"));
+        handler.addBook(book("3", "Monster"));
+        handler.updateBook("2", book("2", "Bleach Remastered"));
+        handler.deleteBook("3");
+        // Closing does not checkpoint, so the next handler gets the changes from the log
+        handler.close();
+
+        handler = new BookHandler();
+        try {
+            assertEquals(book("1", "Naruto").toString(), handler.getBook("1").toString());
+            assertEquals("Bleach Remastered", handler.getBook("2").getTitle());
+            assertNull(handler.getBook("3"));
+            assertEquals(1, handler.searchBooksByTitle("bleach remastered").size());
+            assertTrue(handler.searchBooksByTitle("Bleach").isEmpty());
+            assertTrue(handler.searchBooksByTitle("Monster").isEmpty());
+            assertEquals(2, handler.scanBooks().count());
+        } finally {
+            handler.close();
+        }
+    }
+
+    @Test
+    void failedAddDoesNotBreakTheNextStart() throws IOException {
+
+        BookHandler handler = new BookHandler();
+
+        handler.addBook(book("1", "Naruto"));
+        assertThrows(IOException.class, () -> handler.addBook(book(LONG_ISBN, "Too Long")));
+        assertThrows(IOException.class, () -> handler.addBook(book("1", "Duplicate")));
+        handler.close();
+
+        BookHandler restarted = new BookHandler();
+        try {
+            assertNull(restarted.getBook(LONG_ISBN));
+            assertEquals("Naruto", restarted.getBook("1").getTitle());
+            assertTrue(restarted.searchBooksByTitle("Too Long").isEmpty());
+        } finally {
+            restarted.close();
+        }
+        assertEquals(1, countRecords(), "the rejected book left no record in the data file");
+    }
+
+    @Test
+    void logRecordThatCannotBeAppliedIsSkippedOnStart() throws IOException {
+
+        new BookHandler().close();
+        // A log written before the keys were checked up front could hold a change the index rejects
+        try (WriteAheadLog log = new WriteAheadLog("book_wal.log", () -> { })) {
+            log.awaitDurable(log.log(WriteAheadLog.PUT, LONG_ISBN, BookCodec.encode(book(LONG_ISBN, "Too Long")), () -> { }));
+            log.awaitDurable(log.log(WriteAheadLog.PUT, "2", BookCodec.encode(book("2", "Bleach")), () -> { }));
+        }
+
+        BookHandler handler = new BookHandler();
+        try {
+            assertNull(handler.getBook(LONG_ISBN));
+            assertEquals("Bleach", handler.getBook("2").getTitle());
+            assertTrue(handler.searchBooksByTitle("Too Long").isEmpty());
+            handler.addBook(book("3", "Monster"));
+        } finally {
+            handler.close();
+        }
+        assertEquals(2, countRecords());
+    }
+
+    @Test
+    void indexEntryOfAMovedRecordLeftAtItsFreedSlotIsRepairedOnReplay() throws IOException {
+
+        BookHandler handler = new BookHandler();
+        String longTitle = "Naruto ".repeat(200);
+
+        // Long titles fill the first data page, so a longer record no longer fits in it
+        for (int i = 0; i < 40; i++) {
+            handler.addBook(book(String.valueOf(i), "Title " + i + " " + "t".repeat(150)));
+        }
+        handler.close();
+        new BookHandler().close();
+        Files.copy(Path.of("index.dat"), Path.of("index.dat.saved"));
+        handler = new BookHandler();
+        handler.updateBook("1", book("1", longTitle));
+        handler.close();
+        // A crash after the data page was written back and before the index page was: the index file has the freed slot
+        Files.copy(Path.of("index.dat.saved"), Path.of("index.dat"), StandardCopyOption.REPLACE_EXISTING);
+
+        handler = new BookHandler();
+        try {
+            assertEquals(longTitle, handler.getBook("1").getTitle());
+            assertEquals(1, handler.searchBooksByTitle(longTitle).size());
+            assertEquals(40, handler.scanBooks().count());
+            assertEquals(1, handler.scanBooks().filter(book -> book.getIsbn().equals("1")).count());
+        } finally {
+            handler.close();
+        }
+        handler = new BookHandler();
+        try {
+            assertEquals(longTitle, handler.getBook("1").getTitle());
+        } finally {
+            handler.close();
+        }
+    }
+
+    @Test
+    void unreadableFullTextIndexIsRebuiltFromTheDataFile() throws IOException {
+
+        BookHandler handler = new BookHandler();
+
+        handler.addBook(book("1", "Naruto"));
+        handler.addBook(book("2", "Naruto Shippuden"));
+        handler.close();
+        // The next start replays the write-ahead log and checkpoints it, so only the full-text index has the first two books
+        new BookHandler().close();
+        // Leave a rotated log behind, so the next start writes the base file of the full-text index
+        Files.move(Path.of("title_text_index.dat.log"), Path.of("title_text_index.dat.log.old"));
+        handler = new BookHandler();
+        handler.addBook(book("3", "Boruto Naruto Next Generations"));
+        handler.close();
+        assertTrue(Files.size(Path.of("title_text_index.dat")) > 8);
+        Files.write(Path.of("title_text_index.dat"), new byte[] {0x46, 0x54, 0x58, 0x32, 0, 0, 0, 9});
+
+        handler = new BookHandler();
+        try {
+            // The log of the full-text index only has the third book, the other two come from the data file
+            assertEquals(List.of("1", "2", "3"), handler.searchBooksByTitleWords("naruto", FullTextIndex.Mode.ALL, 10).stream()
+                    .map(Book::getIsbn).sorted().collect(Collectors.toList()));
+        } finally {
+            handler.close();
+        }
+        handler = new BookHandler();
+        try {
+            assertEquals(3, handler.searchBooksByTitleWords("naruto", FullTextIndex.Mode.ANY, 10).size());
+        } finally {
+            handler.close();
+        }
+    }
+
+    private static int countRecords() throws IOException {
+
+        int count = 0;
+
+        try (SlottedPageFile dataFile = new SlottedPageFile("book.dat", "book_free.dat", false)) {
+            for (SlottedPageFile.Scanner scanner = dataFile.scan(); scanner.hasNext(); scanner.next()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static Book book(String isbn, String title) {
+        return new Book(isbn, title, "Author", 1999, 2014, "Shonen", "Jump", "Shueisha", 2000, 72, 2, List.of(1, 2));
+    }
+}
@@ -0,0 +1,159 @@
+package librarySystem.book;
+
+import librarySystem.TestFiles;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of BookHandler.scanBooks, alone and while other threads change the books.
+ */
+class BookHandlerScanTest {
+
+    private static final int BOOKS = 20_000;
+
+    @BeforeEach
+    void clearFiles() throws IOException {
+        TestFiles.clearWorkingDirectory();
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void scanReturnsEveryCurrentBookOnce(boolean memoryMapped) throws IOException {
+
+        BookHandler handler = new BookHandler(memoryMapped);
+        Set<String> expected = new HashSet<>();
+        List<String> scanned;
+
+        try {
+            handler.addBooks(books());
+            for (int i = 0; i < BOOKS; i++) {
+                expected.add(isbn(i));
+            }
+            for (int i = 0; i < 300; i++) {
+                handler.deleteBook(isbn(i * 7));
+                expected.remove(isbn(i * 7));
+                // A longer title moves the record to another page
+                handler.updateBook(isbn(i * 11 + 1), book(i * 11 + 1, "Moved ".repeat(40)));
+            }
+            handler.addBook(book(BOOKS, "x".repeat(6_000)));
+            expected.add(isbn(BOOKS));
+
+            scanned = handler.scanBooks().map(Book::getIsbn).collect(Collectors.toList());
+            assertEquals(expected.size(), scanned.size());
+            assertEquals(expected, new HashSet<>(scanned));
+            assertEquals(6_000, handler.scanBooks().filter(book -> book.getIsbn().equals(isbn(BOOKS)))
+                    .findFirst().orElseThrow().getTitle().length());
+        } finally {
+            handler.close();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void parallelScanReturnsTheBooksOfTheSequentialScan(boolean memoryMapped) throws Exception {
+
+        BookHandler handler = new BookHandler(memoryMapped);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        List<String> sequential;
+        List<String> parallel;
+        List<Book> books = new ArrayList<>();
+
+        try {
+            // Long titles spread the books over more than two chunks of pages, so the stream is split between the workers
+            for (int i = 0; i < BOOKS; i++) {
+                books.add(book(i, "Title " + i + " " + "p".repeat(200)));
+            }
+            handler.addBooks(books);
+            for (int i = 0; i < 200; i++) {
+                handler.deleteBook(isbn(i * 13));
+            }
+            sequential = handler.scanBooks().map(Book::getIsbn).collect(Collectors.toList());
+            assertTrue(handler.scanBooks(true).spliterator().trySplit() != null);
+            parallel = pool.submit(() -> handler.scanBooks(true).map(Book::getIsbn).collect(Collectors.toList())).get();
+            assertEquals(sequential, parallel);
+            assertEquals(BOOKS - 200, parallel.size());
+            assertEquals(sequential.size(), pool.submit(() -> handler.scanBooks(true).filter(book -> book.getTitle().startsWith("Title"))
+                    .count()).get());
+        } finally {
+            pool.shutdown();
+            handler.close();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void scanDecodesWholeBooksWhileTheyAreUpdated(boolean memoryMapped) throws Exception {
+
+        BookHandler handler = new BookHandler(memoryMapped);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer;
+
+        try {
+            handler.addBooks(books());
+            writer = new Thread(() -> {
+                int round = 0;
+                try {
+                    while (running.get()) {
+                        // Titles of the same length are rewritten in place, in the pages the scan is reading
+                        for (int i = 0; i < BOOKS && running.get(); i += 97) {
+                            handler.updateBook(isbn(i), book(i, (round % 2 == 0 ? "Updated " : "Changed ") + i));
+                        }
+                        round++;
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            });
+            writer.start();
+            try {
+                for (int pass = 0; pass < 5; pass++) {
+                    handler.scanBooks(pass % 2 == 1).forEach(book -> {
+                        String number = book.getIsbn().substring(4);
+                        assertTrue(book.getTitle().matches("(Title|Updated|Changed) " + Integer.parseInt(number)),
+                                book.getTitle() + " of " + book.getIsbn());
+                        assertEquals("Author " + Integer.parseInt(number) % 50, book.getAuthor());
+                    });
+                }
+            } finally {
+                running.set(false);
+                writer.join();
+            }
+            assertNull(failure.get());
+        } finally {
+            handler.close();
+        }
+    }
+
+    private static List<Book> books() {
+
+        List<Book> books = new ArrayList<>(BOOKS);
+
+        for (int i = 0; i < BOOKS; i++) {
+            books.add(book(i, "Title " + i));
+        }
+        return books;
+    }
+
+    private static Book book(int number, String title) {
+        return new Book(isbn(number), title, "Author " + number % 50, 1990 + number % 30, 2020, "Shonen", "Jump", "Shueisha",
+                2000, 10, 1, List.of(1));
+    }
+
+    private static String isbn(int number) {
+        return String.format("isbn%06d", number);
+    }
+}
@@ -0,0 +1,374 @@
+package librarySystem.book;
+
+import librarySystem.TestFiles;
+import librarySystem.storage.BPlusTree;
+import librarySystem.storage.RoaringBitmap;
+import librarySystem.storage.SlottedPageFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the CRUD operations of BookHandler and of its files, including the files of previous versions.
+ */
+class BookHandlerTest {
+
+    @BeforeEach
+    void clearFiles() throws IOException {
+        TestFiles.clearWorkingDirectory();
+    }
+
+    @Test
+    void addedBooksAreFoundUpdatedAndDeleted() throws IOException {
+
+        BookHandler handler = new BookHandler();
+
+        try {
+            handler.addBook(book("1", "Naruto"));
+            handler.addBook(book("2", "Bleach"));
+            assertEquals(book("1", "Naruto").toString(), handler.getBook("1").toString());
+            assertThrows(IOException.class, () -> handler.addBook(book("1", "Again")));
+
+            handler.updateBook("1", book("1", "Naruto Shippuden"));
+            assertEquals("Naruto Shippuden", handler.getBook("1").getTitle());
+            assertThrows(IOException.class, () -> handler.updateBook("3", book("3", "Missing")));
+
+            handler.deleteBook("2");
+            assertNull(handler.getBook("2"));
+            assertThrows(IOException.class, () -> handler.deleteBook("2"));
+            assertEquals(List.of("1"), handler.searchBookByIsbn("1").stream().map(Book::getIsbn).toList());
+            assertTrue(handler.searchBookByIsbn("2").isEmpty());
+        } finally {
+            handler.close();
+        }
+    }
+
+    @Test
+    void cachedBooksAreReplacedByUpdatesAndDeletes() throws IOException {
+
+        BookHandler handler = new BookHandler(false, 100, 1_000_000);
+
+        try {
+            handler.addBook(book("1", "Naruto"));
+            handler.addBook(book("2", "Bleach"));
+            handler.getBook("1");
+            handler.getBook("1");
+            handler.getBook("1");
+            assertEquals(2, handler.getCacheStats().getHits());
+            assertEquals(1, handler.getCacheStats().getMisses());
+
+            handler.updateBook("1", book("1", "Naruto Shippuden"));
+            assertEquals("Naruto Shippuden", handler.getBook("1").getTitle());
+            assertEquals("Naruto Shippuden", handler.getBooks(List.of("1", "2")).get(0).getTitle());
+            handler.getBook("2");
+            handler.deleteBook("2");
+            assertNull(handler.getBook("2"));
+            assertTrue(handler.getBooks(List.of("2")).isEmpty());
+        } finally {
+            handler.close();
+        }
+        handler = new BookHandler(false, 0, 0);
+        try {
+            assertEquals("Naruto Shippuden", handler.getBook("1").getTitle());
+            assertEquals("Naruto Shippuden", handler.getBook("1").getTitle());
+            assertEquals(0, handler.getCacheStats().getHits());
+            assertEquals(0, handler.getCacheStats().getEntries());
+        } finally {
+            handler.close();
+        }
+    }
+
+    @Test
+    void cachedBooksCannotBeChangedByTheirReaders() throws IOException {
+
+        BookHandler handler = new BookHandler(false, 100, 1_000_000);
+        Book book;
+
+        try {
+            handler.addBook(book("1", "Naruto"));
+            book = handler.getBook("1");
+            assertThrows(UnsupportedOperationException.class, () -> book.getAcquiredVolumes().add(3));
+            assertThrows(UnsupportedOperationException.class, () -> book.getAcquiredVolumes().clear());
+            assertThrows(UnsupportedOperationException.class, () -> handler.getBooks(List.of("1")).get(0).getAcquiredVolumes().remove(0));
+            assertThrows(UnsupportedOperationException.class, () -> handler.searchBooksByTitle("Naruto").get(0).getAcquiredVolumes().set(0, 9));
+            assertEquals(List.of(1, 2), handler.getBook("1").getAcquiredVolumes());
+            assertTrue(handler.getCacheStats().getHits() > 0);
+        } finally {
+            handler.close();
+        }
+    }
+
+    @Test
+    void getBooksReturnsTheBooksOfGetBookInTheOrderOfTheIsbns() throws IOException {
+
+        BookHandler handler = new BookHandler(false, 50, 1_000_000);
+        List<String> isbns = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        Random random = new Random(3);
+        Book book;
+
+        try {
+            for (int i = 0; i < 2_000; i++) {
+                // Every hundredth title is long enough for overflow pages
+                handler.addBook(new Book(String.format("%05d", i), "Title " + i + (i % 100 == 0 ? "x".repeat(3_000) : ""),
+                        "Author " + i % 7, 1999, 2014, "Genre " + i % 3, "Jump", "Shueisha", 2000, 72, 1, List.of(1)));
+            }
+            for (int i = 0; i < 2_000; i += 5) {
+                handler.deleteBook(String.format("%05d", i));
+            }
+            for (int i = 0; i < 1_000; i++) {
+                isbns.add(String.format("%05d", random.nextInt(2_100)));
+            }
+            // Some of the books are already cached
+            for (int i = 0; i < 30; i++) {
+                handler.getBook(isbns.get(i * 7));
+            }
+            for (String isbn : isbns) {
+                book = handler.getBook(isbn);
+                if (book != null) {
+                    expected.add(book.toString());
+                }
+            }
+            assertEquals(expected, handler.getBooks(isbns).stream().map(Book::toString).collect(Collectors.toList()));
+            assertTrue(handler.getBooks(List.of()).isEmpty());
+
+            assertEquals(IntStream.range(0, 2_000).filter(i -> i % 5 != 0 && i % 7 == 3).count(),
+                    handler.searchBooksByAuthor("Author 3").stream().filter(each -> each.getAuthor().equals("Author 3")).count());
+            assertTrue(handler.searchBooksByGenre("Genre 1").stream().allMatch(each -> each.getGenre().equals("Genre 1")));
+            assertEquals(List.of("00001"), handler.searchBooksByTitle("Title 1").stream().map(Book::getIsbn).toList());
+        } finally {
+            handler.close();
+        }
+    }
+
+    @Test
+    void completionsFollowTheChangesAndSurviveARestart() throws IOException {
+
+        BookHandler handler = new BookHandler();
+
+        try {
+            handler.addBook(book("1", "One Piece"));
+            handler.addBook(book("2", "One Piece"));
+            handler.addBook(book("3", "One Punch Man"));
+            handler.addBook(book("4", "Oshi no Ko"));
+            handler.updateBook("4", book("4", "Monster"));
+            handler.deleteBook("3");
+            assertEquals(List.of("One Piece (2)"), handler.getTitleCompletions("o", 10).stream().map(Completion::toString).toList());
+            assertEquals(List.of("Kishimoto (3)"), handler.getAuthorCompletions("KISHI", 10).stream().map(Completion::toString).toList());
+        } finally {
+            handler.close();
+        }
+        handler = new BookHandler();
+        try {
+            assertEquals(List.of("One Piece (2)"), handler.getTitleCompletions("one", 10).stream().map(Completion::toString).toList());
+            assertEquals(List.of("Monster (1)"), handler.getTitleCompletions("mon", 10).stream().map(Completion::toString).toList());
+        } finally {
+            handler.close();
+        }
+    }
+
+    @Test
+    void fuzzySearchesFindMisspelledAuthorsAndTitles() throws IOException {
+
+        BookHandler handler = new BookHandler();
+
+        try {
+            handler.addBook(new Book("1", "One Piece", "Eiichiro Oda", 1997, 0, "Shonen", "Jump", "Shueisha", 1997, 100, 0, List.of()));
+            handler.addBook(new Book("2", "Wanted", "Eiichiro Oda", 1998, 0, "Shonen", "Jump", "Shueisha", 1998, 1, 0, List.of()));
+            handler.addBook(book("3", "Naruto"));
+            assertEquals(List.of("1", "2"), handler.searchBooksByAuthorFuzzy("Oda Eiichirou", 2).stream().map(Book::getIsbn)
+                    .sorted().toList());
+            assertEquals(List.of("3"), handler.searchBooksByTitleFuzzy("Narutto", 2).stream().map(Book::getIsbn).toList());
+            handler.updateBook("3", book("3", "Boruto"));
+            assertTrue(handler.searchBooksByTitleFuzzy("Narutto", 2).isEmpty());
+            handler.deleteBook("2");
+            assertEquals(List.of("1"), handler.searchBooksByAuthorFuzzy("Eichiro Oda", 2).stream().map(Book::getIsbn).toList());
+        } finally {
+            handler.close();
+        }
+    }
+
+    @Test
+    void yearRangesReturnTheBooksOfAScanInYearOrder() throws IOException {
+
+        BookHandler handler = new BookHandler();
+        List<Book> books = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < 600; i++) {
+                books.add(new Book(String.format("%04d", i), "Title " + i, "Author", 1960 + i % 60, 1970 + i % 50, "Genre",
+                        "Jump", "Shueisha", 1980 + i % 40, 10, 0, List.of()));
+            }
+            handler.addBooks(books);
+            for (int i = 0; i < 600; i += 4) {
+                handler.updateBook(String.format("%04d", i), new Book(String.format("%04d", i), "Title " + i, "Author", 1995,
+                        1970 + i % 50, "Genre", "Jump", "Shueisha", 1980 + i % 40, 10, 0, List.of()));
+            }
+            handler.deleteBook("0001");
+            for (BookHandler.YearField field : BookHandler.YearField.values()) {
+                assertEquals(scanRange(handler, field, 1990, 2000),
+                        handler.searchBooksByYearRange(field, 1990, 2000).map(Book::getIsbn).toList(), field.toString());
+            }
+            assertTrue(handler.searchBooksByYearRange(BookHandler.YearField.START_YEAR, 2000, 1990).findAny().isEmpty());
+        } finally {
+            handler.close();
+        }
+    }
+
+    @Test
+    void facetsFollowTheChangesAndAreRebuiltOnStart() throws IOException {
+
+        BookHandler handler = new BookHandler();
+        RoaringBitmap filter;
+
+        try {
+            handler.addBook(new Book("1", "Naruto", "Kishimoto", 1999, 2014, "Shonen", "Jump", "Shueisha", 2000, 72, 0, List.of()));
+            handler.addBook(new Book("2", "Monster", "Urasawa", 1994, 2001, "Seinen", "Big Comic", "Shogakukan", 2008, 18, 0, List.of()));
+            handler.addBook(new Book("3", "Akira", "Otomo", 1982, 1990, "Seinen", "Young", "Kodansha", 1984, 6, 0, List.of()));
+            handler.addBook(new Book("4", "Bleach", "Kubo", 2001, 2016, "Shonen", "Jump", "Shueisha", 2002, 74, 0, List.of()));
+            handler.updateBook("4", new Book("4", "Bleach", "Kubo", 2001, 2016, "Shonen", "Jump", "Viz", 2002, 74, 0, List.of()));
+            handler.deleteBook("1");
+        } finally {
+            handler.close();
+        }
+        handler = new BookHandler();
+        try {
+            filter = handler.getFacetBitmap(BookHandler.Facet.GENRE, "seinen")
+                    .or(handler.getFacetBitmap(BookHandler.Facet.PUBLISHER, "viz"))
+                    .andNot(handler.getFacetBitmap(BookHandler.Facet.PUBLISHER, "KODANSHA"));
+            assertEquals(List.of("2", "4"), handler.getBooks(filter).stream().map(Book::getIsbn).sorted().toList());
+            assertTrue(handler.getFacetBitmap(BookHandler.Facet.PUBLISHER, "Shueisha").isEmpty());
+            assertEquals(Map.of("Jump", 1), handler.getFacetCounts(BookHandler.Facet.MAGAZINE, handler.getAllBooksBitmap()
+                    .andNot(handler.getFacetBitmap(BookHandler.Facet.GENRE, "Seinen"))));
+        } finally {
+            handler.close();
+        }
+    }
+
+    @Test
+    void indexInMemoryMatchesTheIndexFileAfterARestart() throws IOException {
+
+        BookHandler handler = new BookHandler();
+        Map<String, Long> indexFile = new TreeMap<>();
+
+        for (int i = 0; i < 500; i++) {
+            handler.addBook(book(String.format("%04d", i), "Title " + i));
+        }
+        for (int i = 0; i < 500; i += 3) {
+            handler.deleteBook(String.format("%04d", i));
+        }
+        handler.close();
+        // The second start replays the write-ahead log and checkpoints the index file
+        new BookHandler().close();
+
+        try (BPlusTree tree = new BPlusTree("index.dat")) {
+            tree.forEach(indexFile::put);
+        }
+        assertEquals(333, indexFile.size());
+        assertFalse(indexFile.containsKey("0000"));
+        assertTrue(indexFile.containsKey("0001"));
+
+        BookHandler restarted = new BookHandler();
+        try {
+            for (int i = 0; i < 500; i++) {
+                Book book = restarted.getBook(String.format("%04d", i));
+                if (i % 3 == 0) {
+                    assertNull(book);
+                } else {
+                    assertEquals("Title " + i, book.getTitle());
+                }
+            }
+        } finally {
+            restarted.close();
+        }
+    }
+
+    @Test
+    void dataFileWithFixedSizeRecordsIsMigratedToSlottedPages() throws IOException {
+
+        try (DataOutputStream data = new DataOutputStream(new FileOutputStream("book.dat"));
+             DataOutputStream index = new DataOutputStream(new FileOutputStream("index.dat"))) {
+            writeLegacyRecord(data, book("1", "Naruto"), false);
+            writeLegacyRecord(data, book("2", "Deleted"), true);
+            writeLegacyRecord(data, book("3", "Bleach"), false);
+            index.writeUTF("1");
+            index.writeLong(0);
+            index.writeUTF("3");
+            index.writeLong(2 * 2048);
+        }
+
+        BookHandler handler = new BookHandler();
+        try {
+            assertTrue(SlottedPageFile.isPageFile("book.dat"));
+            assertEquals(book("1", "Naruto").toString(), handler.getBook("1").toString());
+            assertEquals("Bleach", handler.getBook("3").getTitle());
+            assertNull(handler.getBook("2"));
+            assertEquals(2, handler.scanBooks().count());
+            handler.addBook(book("4", "Monster"));
+        } finally {
+            handler.close();
+        }
+        handler = new BookHandler();
+        try {
+            assertEquals(3, handler.scanBooks().count());
+        } finally {
+            handler.close();
+        }
+    }
+
+    /**
+     * Writes a record in the layout of the first versions: writeUTF strings and 4-byte integers, padded to 2048 bytes,
+     * a deleted record starting with the character '*'.
+     */
+    private static void writeLegacyRecord(DataOutputStream data, Book book, boolean deleted) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(bytes);
+
+        if (deleted) {
+            record.writeChar('*');
+        }
+        record.writeUTF(book.getIsbn());
+        record.writeUTF(book.getTitle());
+        record.writeUTF(book.getAuthor());
+        record.writeInt(book.getStartYear());
+        record.writeInt(book.getEndYear());
+        record.writeUTF(book.getGenre());
+        record.writeUTF(book.getMagazine());
+        record.writeUTF(book.getPublisher());
+        record.writeInt(book.getEditionYear());
+        record.writeInt(book.getTotalVolumes());
+        record.writeInt(book.getAcquiredVolumesCounter());
+        for (int volume : book.getAcquiredVolumes()) {
+            record.writeInt(volume);
+        }
+        data.write(Arrays.copyOf(bytes.toByteArray(), 2048));
+    }
+
+    private static List<String> scanRange(BookHandler handler, BookHandler.YearField field, int from, int to) {
+        return handler.scanBooks()
+                .filter(book -> field.yearOf(book) >= from && field.yearOf(book) <= to)
+                .sorted(Comparator.comparingInt(field::yearOf).thenComparing(Book::getIsbn))
+                .map(Book::getIsbn)
+                .toList();
+    }
+
+    static Book book(String isbn, String title) {
+        return new Book(isbn, title, "Kishimoto", 1999, 2014, "Shonen", "Jump", "Shueisha", 2000, 72, 2, List.of(1, 2));
+    }
+}
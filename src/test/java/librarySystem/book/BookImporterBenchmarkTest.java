@@ -0,0 +1,59 @@
+package librarySystem.book;
+
+import librarySystem.Benchmarks;
+import librarySystem.TestFiles;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static librarySystem.Benchmarks.words;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Benchmark of the bulk import of books from a CSV file. See Benchmarks for how to run it.
+ */
+@Tag(Benchmarks.TAG)
+class BookImporterBenchmarkTest {
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void clearFiles() throws IOException {
+        TestFiles.clearWorkingDirectory();
+    }
+
+    @Test
+    void importOfTwoHundredThousandBooks() throws IOException {
+
+        Path file = directory.resolve("books.csv");
+        Random random = new Random(1);
+        BookHandler handler;
+        long start;
+        int added;
+
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < 200_000; i++) {
+                writer.write(String.format("978%07d,%s,%s,%d,%d,Genre %d,Magazine %d,Publisher %d,%d,%d,\"1,2,3\"%n", i,
+                        words(random, 3), words(random, 2), 1950 + i % 70, 2020, i % 20, i % 50, i % 30, 1950 + i % 70, 10 + i % 90));
+            }
+        }
+        handler = new BookHandler();
+        try {
+            start = System.nanoTime();
+            added = handler.importBooks(file);
+            System.out.printf("import: %d books in %.2f s%n", added, (System.nanoTime() - start) / 1e9);
+            assertEquals(200_000, added);
+        } finally {
+            handler.close();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package librarySystem.book;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of BookImporter with JSON Lines and CSV files.
+ */
+class BookImporterTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void jsonLinesAreReadInOrder() throws IOException {
+
+        List<Book> books = read("books.jsonl",
+                "{\"isbn\": \"1\", \"title\": \"Naruto \\\"Gaiden\\\"\", \"author\": \"Kishimoto\", \"startYear\": 1999, \"endYear\": 2014,"
+                        + " \"genre\": \"Shonen\", \"magazine\": \"Jump\", \"publisher\": \"Shueisha\", \"editionYear\": 2000,"
+                        + " \"totalVolumes\": 72, \"acquiredVolumes\": [1, 2, 3]}",
+                "",
+                "{\"isbn\": \"2\", \"title\": \"Caf\\u00e9\"}");
+
+        assertEquals(2, books.size());
+        assertEquals(new Book("1", "Naruto \"Gaiden\"", "Kishimoto", 1999, 2014, "Shonen", "Jump", "Shueisha", 2000, 72, 3,
+                List.of(1, 2, 3)).toString(), books.get(0).toString());
+        assertEquals(new Book("2", "Café", "", 0, 0, "", "", "", 0, 0, 0, List.of()).toString(), books.get(1).toString());
+    }
+
+    @Test
+    void csvLinesSkipTheHeaderAndReadQuotedVolumes() throws IOException {
+
+        List<Book> books = read("books.csv",
+                "isbn,title,author,startYear,endYear,genre,magazine,publisher,editionYear,totalVolumes,acquiredVolumes",
+                "1,\"Berserk, Deluxe\",Miura,1989,2021,Seinen,Young Animal,Hakusensha,2019,14,\"1,2\"",
+                "2,Monster,Urasawa,1994,2001,Seinen,Big Comic Original,Shogakukan,2008,9");
+
+        assertEquals(2, books.size());
+        assertEquals("Berserk, Deluxe", books.get(0).getTitle());
+        assertEquals(List.of(1, 2), books.get(0).getAcquiredVolumes());
+        assertEquals(2, books.get(0).getAcquiredVolumesCounter());
+        assertEquals(List.of(), books.get(1).getAcquiredVolumes());
+        assertEquals(2008, books.get(1).getEditionYear());
+    }
+
+    @Test
+    void wholeNumbersWithAFractionOrAnExponentAreAccepted() throws IOException {
+
+        Book json = read("books.jsonl", "{\"isbn\": \"1\", \"startYear\": 1999.0, \"endYear\": 2.014e3, \"totalVolumes\": 7E1}").get(0);
+        Book csv = read("books.csv", "1,T,A,1999.00,2.014E3,G,M,P,2000,72").get(0);
+
+        assertEquals(1999, json.getStartYear());
+        assertEquals(2014, json.getEndYear());
+        assertEquals(70, json.getTotalVolumes());
+        assertEquals(1999, csv.getStartYear());
+        assertEquals(2014, csv.getEndYear());
+    }
+
+    @Test
+    void malformedNumbersAreReportedWithTheirLine() {
+        assertMalformed("line 2: startYear is out of range: 4294969295", "books.jsonl",
+                "{\"isbn\": \"1\"}", "{\"isbn\": \"2\", \"startYear\": 4294969295}");
+        assertMalformed("line 1: totalVolumes is out of range: 99999999999999999999", "books.jsonl",
+                "{\"isbn\": \"1\", \"totalVolumes\": 99999999999999999999}");
+        assertMalformed("line 1: acquiredVolumes is not a whole number: 1.5", "books.jsonl",
+                "{\"isbn\": \"1\", \"acquiredVolumes\": [1, 1.5]}");
+        assertMalformed("line 1: unexpected value at column 26", "books.jsonl",
+                "{\"isbn\": \"1\", \"endYear\": 1e}");
+        assertMalformed("line 3: editionYear is out of range: 3000000000", "books.csv",
+                "isbn,title", "1,T,A,1999,2014,G,M,P,2000,72", "2,T,A,1999,2014,G,M,P,3000000000,72");
+        assertMalformed("line 1: startYear is not a whole number: 1999.5", "books.csv",
+                "1,T,A,1999.5,2014,G,M,P,2000,72");
+        assertMalformed("line 1: startYear is not a number: MCMXCIX", "books.csv",
+                "1,T,A,MCMXCIX,2014,G,M,P,2000,72");
+        assertMalformed("line 1: missing isbn", "books.jsonl", "{\"title\": \"No ISBN\"}");
+        assertMalformed("line 1: expected 11 fields but found 3", "books.csv", "1,T,A");
+    }
+
+    private void assertMalformed(String message, String name, String... lines) {
+
+        UncheckedIOException error = assertThrows(UncheckedIOException.class, () -> read(name, lines));
+
+        assertEquals("malformed " + message, error.getCause().getMessage());
+    }
+
+    private List<Book> read(String name, String... lines) throws IOException {
+
+        Path file = directory.resolve(name);
+        List<Book> books = new ArrayList<>();
+
+        Files.write(file, List.of(lines), StandardCharsets.UTF_8);
+        try (BookImporter importer = new BookImporter(file)) {
+            for (Book book : importer) {
+                books.add(book);
+            }
+        }
+        return books;
+    }
+}
@@ -0,0 +1,154 @@
+package librarySystem.book;
+
+import librarySystem.TestFiles;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of BookHandler.searchBooks and explain, against the books of a scan tested with BookQuery.test.
+ */
+class BookQueryTest {
+
+    private static final int BOOKS = 3_000;
+    private static final String[] TITLES = {"Naruto", "Bleach", "Monster", "Akira", "Berserk", "Pokémon"};
+    private static final String[] AUTHORS = {"Kishimoto", "Kubo", "Urasawa", "Otomo", "Miura"};
+    private static final String[] GENRES = {"Shonen", "Seinen", "Shojo"};
+    private static final String[] PUBLISHERS = {"Shueisha", "Kodansha", "Shogakukan", "Hakusensha"};
+    private static final String[] MAGAZINES = {"Jump", "Magazine", "Big Comic"};
+
+    private BookHandler handler;
+
+    @BeforeEach
+    void openHandler() throws IOException {
+
+        Random random = new Random(31);
+        List<Book> books = new ArrayList<>();
+
+        TestFiles.clearWorkingDirectory();
+        handler = new BookHandler();
+        for (int i = 0; i < BOOKS; i++) {
+            books.add(new Book(String.format("%05d", i), pick(random, TITLES) + " " + i % 40, pick(random, AUTHORS),
+                    1970 + random.nextInt(50), 1980 + random.nextInt(50), pick(random, GENRES), pick(random, MAGAZINES),
+                    pick(random, PUBLISHERS), 1990 + random.nextInt(30), 10, 0, List.of()));
+        }
+        handler.addBooks(books);
+        for (int i = 0; i < BOOKS; i += 9) {
+            handler.deleteBook(String.format("%05d", i));
+        }
+        for (int i = 1; i < BOOKS; i += 13) {
+            if (i % 9 == 0) {
+                continue;
+            }
+            handler.updateBook(String.format("%05d", i), new Book(String.format("%05d", i), "Naruto 1", "Kishimoto", 1999, 2014,
+                    "Shonen", "Jump", "Shueisha", 2000, 72, 0, List.of()));
+        }
+    }
+
+    @AfterEach
+    void closeHandler() throws IOException {
+        handler.close();
+    }
+
+    @Test
+    void randomQueriesFindTheBooksOfAScan() throws IOException {
+
+        Random random = new Random(37);
+        List<Book> books = handler.scanBooks().collect(Collectors.toList());
+        BookQuery query;
+
+        for (int i = 0; i < 200; i++) {
+            query = randomQuery(random, 3);
+            assertEquals(books.stream().filter(query::test).map(Book::getIsbn).sorted().collect(Collectors.toList()),
+                    isbns(handler.searchBooks(query)), query.toString());
+        }
+    }
+
+    @Test
+    void explainReportsTheAccessAndTheRowsOfEachStep() throws IOException {
+
+        BookQuery selective = BookQuery.and(BookQuery.title("NARUTO 1"), BookQuery.genre("shonen"),
+                BookQuery.yearRange(BookHandler.YearField.START_YEAR, 1990, 2005));
+        BookQuery unindexed = BookQuery.matching(book -> book.getTitle().startsWith("Akira"));
+        QueryPlan plan = handler.explain(selective);
+        List<QueryPlan> steps;
+
+        assertEquals(QueryPlan.Access.FETCH, plan.getAccess());
+        assertEquals(scan(selective).size(), plan.getActualRows());
+        steps = plan.getChildren().get(0).getChildren();
+        assertEquals(QueryPlan.Access.INTERSECT, plan.getChildren().get(0).getAccess());
+        // The cheapest index is walked first: a bitmap costs one word per 64 books, the other indexes one entry per book
+        assertEquals(BookQuery.Kind.FACET, steps.get(0).getQuery().getKind());
+        for (int i = 1; i < steps.size(); i++) {
+            assertTrue(steps.get(i - 1).cost <= steps.get(i).cost);
+        }
+        // The estimates of the single criteria are exact counts
+        for (QueryPlan step : steps) {
+            assertEquals(QueryPlan.Access.INDEX, step.getAccess());
+            assertEquals(scan(step.getQuery()).size(), step.getEstimatedRows(), step.getQuery().toString());
+            assertEquals(step.getEstimatedRows(), step.getActualRows());
+        }
+
+        plan = handler.explain(unindexed);
+        assertEquals(QueryPlan.Access.SCAN, plan.getAccess());
+        assertEquals(scan(unindexed).size(), plan.getActualRows());
+
+        plan = handler.explain(BookQuery.title("One Piece"));
+        assertEquals(0, plan.getActualRows());
+        assertTrue(handler.searchBooks(BookQuery.title("One Piece").and(unindexed)).isEmpty());
+    }
+
+    private List<String> scan(BookQuery query) {
+        return handler.scanBooks().filter(query::test).map(Book::getIsbn).sorted().collect(Collectors.toList());
+    }
+
+    private static List<String> isbns(List<Book> books) {
+        return books.stream().map(Book::getIsbn).collect(Collectors.toList());
+    }
+
+    /**
+     * Builds a query of up to three levels of AND and OR over every kind of criterion, with some values that no book has.
+     */
+    private static BookQuery randomQuery(Random random, int depth) {
+
+        BookQuery[] children;
+        int year;
+
+        if (depth > 1 && random.nextInt(3) > 0) {
+            children = new BookQuery[2 + random.nextInt(2)];
+            for (int i = 0; i < children.length; i++) {
+                children[i] = randomQuery(random, depth - 1);
+            }
+            return random.nextBoolean() ? BookQuery.and(children) : BookQuery.or(children);
+        }
+        switch (random.nextInt(8)) {
+            case 0:
+                return BookQuery.title(random.nextInt(10) == 0 ? "Missing" : pick(random, TITLES).toUpperCase() + " " + random.nextInt(40));
+            case 1:
+                return BookQuery.author(pick(random, AUTHORS).toLowerCase());
+            case 2:
+                return BookQuery.genre(pick(random, GENRES));
+            case 3:
+                return BookQuery.publisher(random.nextInt(10) == 0 ? "Viz" : pick(random, PUBLISHERS));
+            case 4:
+                return BookQuery.magazine(pick(random, MAGAZINES));
+            case 5:
+                return BookQuery.matching(book -> book.getIsbn().endsWith("7"));
+            default:
+                year = 1970 + random.nextInt(60);
+                return BookQuery.yearRange(BookHandler.YearField.values()[random.nextInt(3)], year, year + random.nextInt(15));
+        }
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
@@ -0,0 +1,99 @@
+package librarySystem.book;
+
+import librarySystem.storage.RoaringBitmap;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of FacetIndex against the values of the books kept in maps.
+ */
+class FacetIndexTest {
+
+    private static final String[] GENRES = {"Shonen", "SHŌNEN", "Seinen", "Shojo", "Josei"};
+    private static final String[] PUBLISHERS = {"Shueisha", "Kodansha", "Shogakukan"};
+
+    @Test
+    void valuesAreComparedWithoutCaseAndAccents() {
+
+        FacetIndex index = new FacetIndex();
+
+        index.set(BookHandler.Facet.GENRE, "1", "Shōnen");
+        index.set(BookHandler.Facet.GENRE, "2", "SHONEN");
+        index.set(BookHandler.Facet.GENRE, "3", "Seinen");
+        index.set(BookHandler.Facet.PUBLISHER, "1", "Shueisha");
+
+        assertEquals(List.of("1", "2"), index.isbnsOf(index.get(BookHandler.Facet.GENRE, "shonen")));
+        assertEquals(2, index.cardinality(BookHandler.Facet.GENRE, "Shonen"));
+        assertEquals(Map.of("Seinen", 1, "Shōnen", 2), index.count(BookHandler.Facet.GENRE, index.allBooks()));
+        assertTrue(index.get(BookHandler.Facet.MAGAZINE, "Jump").isEmpty());
+
+        index.set(BookHandler.Facet.GENRE, "2", "Seinen");
+        index.remove("1");
+        index.remove("missing");
+        assertTrue(index.get(BookHandler.Facet.GENRE, "shonen").isEmpty());
+        assertEquals(List.of("2", "3"), index.isbnsOf(index.get(BookHandler.Facet.GENRE, "seinen")));
+        assertTrue(index.isbnsOf(index.bitmapOf(List.of("1"))).isEmpty());
+    }
+
+    @Test
+    void combinedFiltersMatchTheBooksOfAMap() {
+
+        FacetIndex index = new FacetIndex();
+        Map<String, String> genres = new HashMap<>();
+        Map<String, String> publishers = new HashMap<>();
+        Random random = new Random(29);
+        String isbn;
+        RoaringBitmap filter;
+        RoaringBitmap oldBitmap;
+
+        for (int i = 0; i < 30_000; i++) {
+            isbn = "isbn" + random.nextInt(12_000);
+            if (random.nextInt(6) == 0) {
+                index.remove(isbn);
+                genres.remove(isbn);
+                publishers.remove(isbn);
+            } else {
+                genres.put(isbn, GENRES[random.nextInt(GENRES.length)]);
+                publishers.put(isbn, PUBLISHERS[random.nextInt(PUBLISHERS.length)]);
+                index.set(BookHandler.Facet.GENRE, isbn, genres.get(isbn));
+                index.set(BookHandler.Facet.PUBLISHER, isbn, publishers.get(isbn));
+            }
+        }
+        oldBitmap = index.get(BookHandler.Facet.GENRE, "seinen");
+
+        // Shonen and Shueisha, or Seinen, but not Kodansha
+        filter = index.get(BookHandler.Facet.GENRE, "shonen").and(index.get(BookHandler.Facet.PUBLISHER, "shueisha"))
+                .or(index.get(BookHandler.Facet.GENRE, "seinen"))
+                .andNot(index.get(BookHandler.Facet.PUBLISHER, "kodansha"));
+        assertEquals(genres.keySet().stream()
+                        .filter(each -> (fold(genres, each).equals("shonen") && fold(publishers, each).equals("shueisha"))
+                                || fold(genres, each).equals("seinen"))
+                        .filter(each -> !fold(publishers, each).equals("kodansha"))
+                        .sorted().collect(Collectors.toList()),
+                index.isbnsOf(filter).stream().sorted().collect(Collectors.toList()));
+
+        assertEquals(genres.size(), index.allBooks().cardinality());
+        assertEquals(genres.keySet().stream().sorted().collect(Collectors.toList()),
+                index.isbnsOf(index.bitmapOf(genres.keySet())).stream().sorted().collect(Collectors.toList()));
+        assertEquals(publishers.keySet().stream().filter(each -> fold(genres, each).equals("josei"))
+                        .collect(Collectors.groupingBy(publishers::get, TreeMap::new, Collectors.summingInt(each -> 1))),
+                new TreeMap<>(index.count(BookHandler.Facet.PUBLISHER, index.get(BookHandler.Facet.GENRE, "Josei"))));
+
+        // A book deleted after a bitmap was taken is left out of its ISBNs
+        isbn = index.isbnsOf(oldBitmap).get(0);
+        index.remove(isbn);
+        assertFalse(index.isbnsOf(oldBitmap).contains(isbn));
+    }
+
+    private static String fold(Map<String, String> values, String isbn) {
+        return TextAnalyzer.fold(values.get(isbn));
+    }
+}
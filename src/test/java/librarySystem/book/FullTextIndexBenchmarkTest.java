@@ -0,0 +1,60 @@
+package librarySystem.book;
+
+import librarySystem.Benchmarks;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static librarySystem.Benchmarks.report;
+import static librarySystem.Benchmarks.words;
+
+/**
+ * Benchmark of the word searches of FullTextIndex. See Benchmarks for how to run it.
+ */
+@Tag(Benchmarks.TAG)
+class FullTextIndexBenchmarkTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void fullTextSearchOverOneMillionTitles() throws IOException {
+
+        FullTextIndex index = new FullTextIndex(directory.resolve("text_index.dat").toString());
+        Random random = new Random(2);
+        List<KeyIndexEntry> entries = new ArrayList<>();
+        List<String> rare = new ArrayList<>();
+        List<String> common = new ArrayList<>();
+        String title;
+
+        try {
+            for (int i = 0; i < 1_000_000; i++) {
+                // "volume" is in a quarter of the titles, the random words are in almost none of the others
+                title = words(random, 3) + (i % 4 == 0 ? " volume " + i % 100 : "");
+                entries.add(new KeyIndexEntry(title, String.format("isbn%07d", i)));
+                if (i % 10_000 == 0) {
+                    rare.add(title.substring(0, title.indexOf(' ')));
+                    common.add(rare.get(rare.size() - 1) + " volume");
+                }
+                if (entries.size() == 50_000) {
+                    index.addAll(entries);
+                    entries.clear();
+                }
+            }
+            report("full-text, rare word, ALL", rare, query -> index.search(query, FullTextIndex.Mode.ALL, 10));
+            report("full-text, word in a quarter of the titles", Collections.nCopies(100, "volume"),
+                    query -> index.search(query, FullTextIndex.Mode.ALL, 10));
+            report("full-text, rare word or word in a quarter of the titles, ANY", common,
+                    query -> index.search(query, FullTextIndex.Mode.ANY, 10));
+        } finally {
+            index.close();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package librarySystem.book;
+
+import librarySystem.storage.DeltaLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of FullTextIndex: ranking, restarts over a base file and a log, and a base file that cannot be read.
+ */
+class FullTextIndexTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void searchRanksRareWordsAndShortTextsFirst() throws IOException {
+
+        FullTextIndex index = new FullTextIndex(indexFile());
+
+        try {
+            index.add("1", "One Piece");
+            index.add("2", "One Punch Man");
+            index.add("3", "One Piece Film Red Special Edition");
+            index.add("4", "Dragon Ball");
+            // "piece" is rarer than "one", and the shorter title of the two with "piece" comes first
+            assertEquals(List.of("1", "3", "2"), index.search("one piece", FullTextIndex.Mode.ANY, 10));
+            assertEquals(List.of("1", "3"), index.search("ONE piece", FullTextIndex.Mode.ALL, 10));
+            assertEquals(List.of("1"), index.search("one piece", FullTextIndex.Mode.ALL, 1));
+            assertTrue(index.search("one zoro", FullTextIndex.Mode.ALL, 10).isEmpty());
+            assertEquals(List.of("4"), index.search("ball zoro", FullTextIndex.Mode.ANY, 10));
+
+            index.add("1", "Naruto");
+            index.remove("4");
+            assertEquals(List.of("3"), index.search("piece", FullTextIndex.Mode.ANY, 10));
+            assertEquals(List.of("1"), index.search("naruto", FullTextIndex.Mode.ALL, 10));
+            assertTrue(index.search("dragon", FullTextIndex.Mode.ANY, 10).isEmpty());
+        } finally {
+            index.close();
+        }
+    }
+
+    @Test
+    void replayingAdditionsAlreadyInTheBaseFileChangesNothing() throws IOException {
+
+        String filename = indexFile();
+        Path log = Path.of(filename + ".log");
+        Path rotated = Path.of(filename + ".log.old");
+        Path savedLog = directory.resolve("saved.log");
+        FullTextIndex index = new FullTextIndex(filename);
+        List<String> ranking;
+
+        index.add("1", "Common");
+        index.add("2", "Rare " + "filler ".repeat(7));
+        index.add("3", "Common Title");
+        index.add("4", "Common Title");
+        index.add("3", "Common Title");
+        ranking = index.search("common rare", FullTextIndex.Mode.ANY, 10);
+        index.close();
+        // A rotated log left by a base file write that did not finish is written to the base file on the next start
+        Files.copy(log, savedLog);
+        Files.move(log, rotated);
+        new FullTextIndex(filename).close();
+        assertFalse(Files.exists(rotated));
+
+        for (int restart = 0; restart < 5; restart++) {
+            // A crash after the base file was written and before the rotated log was deleted replays the same log again
+            Files.copy(savedLog, rotated, StandardCopyOption.REPLACE_EXISTING);
+            index = new FullTextIndex(filename);
+            try {
+                assertEquals(ranking, index.search("common rare", FullTextIndex.Mode.ANY, 10), "restart " + restart);
+                assertEquals(List.of("3", "4"), index.search("title", FullTextIndex.Mode.ALL, 10));
+            } finally {
+                index.close();
+            }
+        }
+
+        // An addition with other words still replaces the text of the book
+        try (DeltaLog delta = new DeltaLog(filename + ".log")) {
+            delta.append('+', "Other Title", "3");
+        }
+        index = new FullTextIndex(filename);
+        try {
+            assertEquals(List.of("4", "3"), index.search("title", FullTextIndex.Mode.ALL, 10));
+            assertEquals(List.of("3"), index.search("other", FullTextIndex.Mode.ALL, 10));
+        } finally {
+            index.close();
+        }
+    }
+
+    @Test
+    void scoresDoNotCountTheRemovedBooks() throws IOException {
+
+        FullTextIndex index = new FullTextIndex(indexFile());
+        FullTextIndex fresh = new FullTextIndex(directory.resolve("fresh.dat").toString());
+
+        try {
+            for (int i = 0; i < 50; i++) {
+                index.add("gone" + i, "Filler words of a long removed title number " + i);
+                index.remove("gone" + i);
+            }
+            for (FullTextIndex each : List.of(index, fresh)) {
+                each.add("1", "Berserk");
+                each.add("2", "Berserk Deluxe");
+                each.add("3", "Vagabond Sword Saint Musashi Miyamoto Legend");
+            }
+            // Removed books change neither the number of books nor the average length used by BM25:
+            // counting them would make "berserk" look rare and the long title look short, and rank the book 1 first
+            assertEquals(fresh.search("berserk vagabond", FullTextIndex.Mode.ANY, 10),
+                    index.search("berserk vagabond", FullTextIndex.Mode.ANY, 10));
+            assertEquals(List.of("3", "1", "2"), index.search("berserk vagabond", FullTextIndex.Mode.ANY, 10));
+        } finally {
+            index.close();
+            fresh.close();
+        }
+    }
+
+    @Test
+    void unreadableBaseFileEmptiesTheIndexAndItsLog() throws IOException {
+
+        String filename = indexFile();
+        FullTextIndex index = new FullTextIndex(filename);
+
+        index.add("1", "Monster");
+        index.close();
+        Files.write(Path.of(filename), new byte[] {0x46, 0x54, 0x58, 0x32, 0x7F, 0x7F});
+
+        index = new FullTextIndex(filename);
+        try {
+            // The log only has the changes made after the lost base file, so it is not applied alone
+            assertTrue(index.isEmpty());
+            assertFalse(Files.exists(Path.of(filename + ".log")) && Files.size(Path.of(filename + ".log")) > 0);
+            index.add("2", "Pluto");
+        } finally {
+            index.close();
+        }
+        index = new FullTextIndex(filename);
+        try {
+            assertEquals(List.of("2"), index.search("pluto", FullTextIndex.Mode.ALL, 10));
+            assertTrue(index.search("monster", FullTextIndex.Mode.ALL, 10).isEmpty());
+        } finally {
+            index.close();
+        }
+    }
+
+    private String indexFile() {
+        return directory.resolve("text_index.dat").toString();
+    }
+}
@@ -0,0 +1,37 @@
+package librarySystem.book;
+
+import librarySystem.Benchmarks;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static librarySystem.Benchmarks.report;
+import static librarySystem.Benchmarks.words;
+
+/**
+ * Benchmark of the completions of PrefixTrie. See Benchmarks for how to run it.
+ */
+@Tag(Benchmarks.TAG)
+class PrefixTrieBenchmarkTest {
+
+    @Test
+    void topTenCompletionsOverOneMillionKeys() {
+
+        PrefixTrie trie = new PrefixTrie();
+        Random random = new Random(3);
+        List<String> prefixes = new ArrayList<>();
+        String key;
+
+        for (int i = 0; i < 1_000_000; i++) {
+            key = words(random, 2);
+            trie.add(key);
+            if (i % 1_000 == 0) {
+                prefixes.add(key.substring(0, 1 + i / 1_000 % 3));
+            }
+        }
+        report("completions, top 10 of 1M keys", prefixes, prefix -> trie.complete(prefix, 10));
+    }
+}
@@ -0,0 +1,130 @@
+package librarySystem.book;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of PrefixTrie, against the completions found by counting every key.
+ */
+class PrefixTrieTest {
+
+    @Test
+    void completionsAreTheMostCommonKeysOfThePrefix() {
+
+        PrefixTrie trie = new PrefixTrie();
+
+        for (String key : List.of("Naruto", "Naruto", "naruto", "Nana", "Nausicaä", "Nausicaa", "Nausicaa", "Monster")) {
+            trie.add(key);
+        }
+
+        assertEquals(List.of("naruto (3)", "Nausicaa (3)"), sorted(trie.complete("NA", 2)));
+        assertEquals(List.of("naruto (3)", "Nausicaa (3)", "Nana (1)"), sorted(trie.complete("n", 10)));
+        assertEquals(List.of("Nausicaa (3)"), strings(trie.complete("nausicaä", 10)));
+        assertEquals(List.of("naruto (3)"), strings(trie.complete("naruto", 10)));
+        assertTrue(trie.complete("narutos", 10).isEmpty());
+        assertTrue(trie.complete("x", 10).isEmpty());
+        assertTrue(trie.complete("n", 0).isEmpty());
+        assertEquals(4, trie.complete("", 10).size());
+    }
+
+    @Test
+    void removedKeysAreNoLongerSuggested() {
+
+        PrefixTrie trie = new PrefixTrie();
+
+        trie.add("Dragon Ball");
+        trie.add("Dragon Ball Z");
+        trie.add("Dragon Quest");
+        trie.remove("Dragon Ball");
+        trie.remove("Dragon Ball");
+        trie.remove("Dragon");
+
+        assertEquals(List.of("Dragon Ball Z (1)", "Dragon Quest (1)"), sorted(trie.complete("drag", 10)));
+        trie.remove("Dragon Ball Z");
+        assertEquals(List.of("Dragon Quest (1)"), strings(trie.complete("d", 10)));
+        assertEquals(List.of("Dragon Quest (1)"), strings(trie.complete("dragon q", 10)));
+        trie.clear();
+        assertTrue(trie.complete("", 10).isEmpty());
+    }
+
+    @Test
+    void randomKeysGiveTheCompletionsOfACountOfEveryKey() {
+
+        PrefixTrie trie = new PrefixTrie();
+        Map<String, Integer> counts = new HashMap<>();
+        List<String> added = new ArrayList<>();
+        Random random = new Random(11);
+        String key;
+        String prefix;
+        int limit;
+
+        for (int operation = 0; operation < 20_000; operation++) {
+            if (added.isEmpty() || random.nextInt(3) > 0) {
+                key = randomKey(random, 1 + random.nextInt(8));
+                trie.add(key);
+                counts.merge(key, 1, Integer::sum);
+                added.add(key);
+            } else {
+                key = added.remove(random.nextInt(added.size()));
+                trie.remove(key);
+                counts.merge(key, -1, Integer::sum);
+            }
+            if (operation % 50 == 0) {
+                prefix = randomKey(random, random.nextInt(4));
+                limit = 1 + random.nextInt(10);
+                assertCompletions(counts, prefix, limit, trie.complete(prefix, limit));
+            }
+        }
+    }
+
+    private static void assertCompletions(Map<String, Integer> counts, String prefix, int limit, List<Completion> completions) {
+
+        List<Integer> expectedCounts = counts.entrySet().stream()
+                .filter(entry -> entry.getValue() > 0 && entry.getKey().startsWith(prefix))
+                .map(Map.Entry::getValue)
+                .sorted((a, b) -> b - a)
+                .limit(limit)
+                .collect(Collectors.toList());
+        Set<String> keys = new HashSet<>();
+
+        // Keys of the same count may come in any order, so only the counts are compared in order
+        assertEquals(expectedCounts, completions.stream().map(Completion::getCount).collect(Collectors.toList()), prefix);
+        for (Completion completion : completions) {
+            assertTrue(keys.add(completion.getKey()));
+            assertTrue(completion.getKey().startsWith(prefix));
+            assertEquals(counts.get(completion.getKey()), completion.getCount());
+        }
+    }
+
+    /**
+     * Builds a key of a small alphabet, so the keys share long prefixes and the edges of the tree are split and joined often.
+     */
+    private static String randomKey(Random random, int length) {
+
+        StringBuilder key = new StringBuilder();
+
+        for (int i = 0; i < length; i++) {
+            key.append("abc".charAt(random.nextInt(3)));
+        }
+        return key.toString();
+    }
+
+    private static List<String> strings(List<Completion> completions) {
+        return completions.stream().map(Completion::toString).collect(Collectors.toList());
+    }
+
+    private static List<String> sorted(List<Completion> completions) {
+        return completions.stream().sorted((a, b) -> a.getCount() != b.getCount() ? b.getCount() - a.getCount()
+                : a.getKey().compareToIgnoreCase(b.getKey())).map(Completion::toString).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,269 @@
+package librarySystem.book;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of SecondayIndexManager: changes kept by the base file and the log across restarts, and pages of entries.
+ */
+class SecondayIndexManagerTest {
+
+    @TempDir
+    Path directory;
+
+    private SecondayIndexManager index;
+
+    @BeforeEach
+    void openIndex() {
+        index = new SecondayIndexManager(indexFile().toString());
+    }
+
+    @AfterEach
+    void closeIndex() throws IOException {
+        index.close();
+    }
+
+    @Test
+    void changesInTheLogSurviveARestart() throws IOException {
+
+        index.addSecondaryIndex("Naruto", "1");
+        index.addSecondaryIndex("Bleach", "2");
+        index.addSecondaryIndex("Monster", "3");
+        // A new key of the same ISBN replaces its entry
+        index.addSecondaryIndex("Naruto Shippuden", "1");
+        index.removeSecondaryIndex("3");
+        index.removeSecondaryIndex("missing");
+        reopen();
+
+        assertFalse(Files.exists(indexFile()));
+        assertEquals(List.of("Bleach", "Naruto Shippuden"), index.getAllKeys());
+        assertEquals(List.of("1"), index.getIsbnsByKey("NARUTO SHIPPUDEN"));
+        assertTrue(index.getIsbnsByKey("Naruto").isEmpty());
+        assertTrue(index.getIsbnsByKey("Monster").isEmpty());
+    }
+
+    @Test
+    void compactionWritesTheBaseFileAndEmptiesTheLog() throws IOException {
+
+        List<KeyIndexEntry> expected;
+
+        for (int i = 0; i < 1_500; i++) {
+            index.addSecondaryIndex("Key " + i % 100, String.format("isbn%04d", i));
+        }
+        for (int i = 0; i < 1_500; i += 2) {
+            index.removeSecondaryIndex(String.format("isbn%04d", i));
+        }
+        expected = index.getEntries();
+        // Closing waits for the compaction started by the log reaching its threshold
+        index.close();
+        assertTrue(Files.size(indexFile()) > 0);
+        assertFalse(Files.exists(Path.of(indexFile() + ".log.old")));
+        assertTrue(Files.size(Path.of(indexFile() + ".log")) < Files.size(indexFile()));
+        index = new SecondayIndexManager(indexFile().toString());
+
+        assertEquals(keysAndIsbns(expected), keysAndIsbns(index.getEntries()));
+        assertEquals(750, index.getEntries().size());
+        assertEquals(15, index.countByKey("key 1"));
+        assertEquals(0, index.countByKey("key 2"));
+    }
+
+    @Test
+    void recordCutByACrashAtTheEndOfTheLogIsIgnored() throws IOException {
+
+        index.addSecondaryIndex("Naruto", "1");
+        index.addSecondaryIndex("Bleach", "2");
+        index.close();
+        // Half of a record: the operation and the length of a key longer than the rest of the file
+        Files.write(Path.of(indexFile() + ".log"), new byte[] {0, '+', 0, 40, 'M', 'o'}, StandardOpenOption.APPEND);
+        index = new SecondayIndexManager(indexFile().toString());
+
+        assertEquals(List.of("Bleach", "Naruto"), index.getAllKeys());
+        index.addSecondaryIndex("Monster", "3");
+        reopen();
+        assertEquals(List.of("Bleach", "Monster", "Naruto"), index.getAllKeys());
+    }
+
+    @Test
+    void baseFileOfPreviousVersionsIsRewrittenInTheCurrentFormat() throws IOException {
+
+        byte[] legacy;
+
+        index.close();
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(indexFile()))) {
+            out.writeUTF("Bleach");
+            out.writeUTF("2");
+            out.writeUTF("naruto");
+            out.writeUTF("1");
+        }
+        legacy = Files.readAllBytes(indexFile());
+        index = new SecondayIndexManager(indexFile().toString());
+
+        assertEquals(List.of("Bleach", "naruto"), index.getAllKeys());
+        assertEquals(List.of("1"), index.getIsbnsByKey("NARUTO"));
+        assertFalse(Arrays.equals(legacy, Files.readAllBytes(indexFile())));
+        reopen();
+        assertEquals(List.of("Bleach", "naruto"), index.getAllKeys());
+    }
+
+    @Test
+    void keysCollateWithoutCaseAndAccentsInTheOrderOfTheirFoldedBytes() throws IOException {
+
+        List<String> keys = new ArrayList<>();
+        Random random = new Random(13);
+        String[] parts = {"a", "á", "A", "é", "e", "E", "z", "Z", "ø", "Ø", "1", " ", "進", "ō"};
+        StringBuilder key;
+
+        for (int i = 0; i < 2_000; i++) {
+            key = new StringBuilder();
+            for (int j = 0, length = 1 + random.nextInt(5); j < length; j++) {
+                key.append(parts[random.nextInt(parts.length)]);
+            }
+            keys.add(key.toString());
+            index.addSecondaryIndex(key.toString(), "isbn" + i);
+        }
+        keys.sort(Comparator.comparing(each -> TextAnalyzer.fold(each).getBytes(StandardCharsets.UTF_8), Arrays::compareUnsigned));
+
+        for (List<String> indexKeys : List.of(index.getAllKeys(), reopened())) {
+            assertEquals(keys.stream().map(TextAnalyzer::fold).collect(Collectors.toList()),
+                    indexKeys.stream().map(TextAnalyzer::fold).collect(Collectors.toList()));
+        }
+        for (String each : keys.subList(0, 200)) {
+            assertEquals(keys.stream().filter(other -> TextAnalyzer.fold(other).equals(TextAnalyzer.fold(each))).count(),
+                    index.countByKey(each.toUpperCase()));
+        }
+        index.addSecondaryIndex("Pokémon", "p1");
+        index.addSecondaryIndex("POKEMON", "p2");
+        index.addSecondaryIndex("pokemon", "p3");
+        assertEquals(List.of("p1", "p2", "p3"), index.getIsbnsByKey("Pókemon").stream().sorted().collect(Collectors.toList()));
+    }
+
+    @Test
+    void pagesOfAKeyHoldTheEntriesOfTheKeyOnce() throws IOException {
+
+        List<String> paged = new ArrayList<>();
+        Page<KeyIndexEntry> page;
+        String after = null;
+
+        for (int i = 0; i < 25; i++) {
+            index.addSecondaryIndex(i % 2 == 0 ? "Shōnen" : "Seinen", "isbn" + (100 + i));
+        }
+        index.addSecondaryIndex("SHONEN", "isbn200");
+        do {
+            page = index.getEntriesPage("shonen", after, 4);
+            assertTrue(page.getItems().size() <= 4);
+            for (KeyIndexEntry entry : page.getItems()) {
+                paged.add(entry.getIsbn());
+            }
+            after = page.getNextCursor();
+        } while (after != null);
+        assertEquals(index.getIsbnsByKey("shonen"), paged);
+        assertEquals(14, paged.size());
+    }
+
+    @Test
+    void cursorStaysValidAfterItsEntryIsRemoved() throws IOException {
+
+        Page<KeyIndexEntry> first;
+        Page<KeyIndexEntry> second;
+
+        for (int i = 0; i < 10; i++) {
+            index.addSecondaryIndex("Seinen", "isbn" + i);
+        }
+        first = index.getEntriesPage("Seinen", null, 3);
+        assertEquals(List.of("isbn0", "isbn1", "isbn2"), isbns(first));
+        index.removeSecondaryIndex("isbn2");
+        index.removeSecondaryIndex("isbn3");
+        second = index.getEntriesPage("Seinen", first.getNextCursor(), 3);
+        assertEquals(List.of("isbn4", "isbn5", "isbn6"), isbns(second));
+    }
+
+    @Test
+    void listingPagesWalkEveryKey() throws IOException {
+
+        List<String> paged = new ArrayList<>();
+        Page<KeyIndexEntry> page;
+        String after = null;
+
+        index.addSecondaryIndex("Berserk", "1");
+        index.addSecondaryIndex("akira", "2");
+        index.addSecondaryIndex("Ãlbum", "3");
+        index.addSecondaryIndex("Claymore", "4");
+        do {
+            page = index.getEntriesPage(null, after, 2);
+            paged.addAll(isbns(page));
+            after = page.getNextCursor();
+        } while (after != null);
+        assertEquals(List.of("2", "3", "1", "4"), paged);
+    }
+
+    @Test
+    void malformedCursorsAndCursorsOfAnotherKeyAreRejected() throws IOException {
+
+        String cursor;
+
+        for (int i = 0; i < 5; i++) {
+            index.addSecondaryIndex("Seinen", "isbn" + i);
+            index.addSecondaryIndex("Shonen", "isbn" + (10 + i));
+        }
+        cursor = index.getEntriesPage("Seinen", null, 2).getNextCursor();
+        assertThrows(IllegalArgumentException.class, () -> index.getEntriesPage("Shonen", cursor, 2));
+        assertThrows(IllegalArgumentException.class, () -> index.getEntriesPage("Seinen", "x:isbn1Seinen", 2));
+        assertThrows(IllegalArgumentException.class, () -> index.getEntriesPage("Seinen", "50:isbn1Seinen", 2));
+        assertThrows(IllegalArgumentException.class, () -> index.getEntriesPage("Seinen", "no separator", 2));
+        assertThrows(IllegalArgumentException.class, () -> index.getEntriesPage("Seinen", null, 0));
+        // The same key written with other case and accents collates equal, and a listing accepts any cursor
+        assertEquals(List.of("isbn2", "isbn3"), isbns(index.getEntriesPage("SÉINEN", cursor, 2)));
+        assertEquals(List.of("isbn2", "isbn3"), isbns(index.getEntriesPage(null, cursor, 2)));
+    }
+
+    private void reopen() throws IOException {
+        index.close();
+        index = new SecondayIndexManager(indexFile().toString());
+    }
+
+    private List<String> reopened() throws IOException {
+        reopen();
+        return index.getAllKeys();
+    }
+
+    private Path indexFile() {
+        return directory.resolve("index.dat");
+    }
+
+    private static List<String> keysAndIsbns(List<KeyIndexEntry> entries) {
+
+        List<String> values = new ArrayList<>();
+
+        for (KeyIndexEntry entry : entries) {
+            values.add(entry.getKey() + "=" + entry.getIsbn());
+        }
+        return values;
+    }
+
+    private static List<String> isbns(Page<KeyIndexEntry> page) {
+
+        List<String> isbns = new ArrayList<>();
+
+        for (KeyIndexEntry entry : page.getItems()) {
+            isbns.add(entry.getIsbn());
+        }
+        return isbns;
+    }
+}
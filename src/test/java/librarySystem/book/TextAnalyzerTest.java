@@ -0,0 +1,34 @@
+package librarySystem.book;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the folding and splitting of TextAnalyzer.
+ */
+class TextAnalyzerTest {
+
+    @Test
+    void foldingRemovesCaseAndAccents() {
+        assertEquals("pokemon", TextAnalyzer.fold("Pokémon"));
+        assertEquals("pokemon", TextAnalyzer.fold("POKÉMON"));
+        assertEquals("nausicaa", TextAnalyzer.fold("Nausicaä"));
+        // Decomposed accents are removed too
+        assertEquals("cafe", TextAnalyzer.fold("Café"));
+        assertEquals("shingeki no kyojin", TextAnalyzer.fold("Shingeki no Kyōjin"));
+        assertEquals("進撃の巨人", TextAnalyzer.fold("進撃の巨人"));
+        assertEquals("", TextAnalyzer.fold(""));
+    }
+
+    @Test
+    void tokenizingSplitsOnEveryOtherCharacter() {
+        assertEquals(List.of("one", "piece", "film", "red", "2022"), TextAnalyzer.tokenize("One Piece: Film RED (2022)"));
+        assertEquals(List.of("jojo", "s", "bizarre", "adventure"), TextAnalyzer.tokenize("JoJo's  Bizarre—Adventure"));
+        assertEquals(List.of("pokemon", "pokemon"), TextAnalyzer.tokenize("Pokémon/POKEMON"));
+        assertEquals(List.of("進撃の巨人"), TextAnalyzer.tokenize(" 進撃の巨人 "));
+        assertTrue(TextAnalyzer.tokenize(" -- ").isEmpty());
+    }
+}
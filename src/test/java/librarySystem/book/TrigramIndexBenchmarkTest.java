@@ -0,0 +1,42 @@
+package librarySystem.book;
+
+import librarySystem.Benchmarks;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static librarySystem.Benchmarks.report;
+import static librarySystem.Benchmarks.words;
+
+/**
+ * Benchmark of the fuzzy search of TrigramIndex. See Benchmarks for how to run it.
+ */
+@Tag(Benchmarks.TAG)
+class TrigramIndexBenchmarkTest {
+
+    @Test
+    void fuzzySearchOverThreeHundredThousandKeys() {
+
+        TrigramIndex index = new TrigramIndex();
+        Random random = new Random(4);
+        List<String> queries = new ArrayList<>();
+        StringBuilder query;
+        String key;
+
+        for (int i = 0; i < 300_000; i++) {
+            key = words(random, 2);
+            index.add(key);
+            if (i % 1_000 == 0) {
+                // Two typos: a changed letter and a dropped letter
+                query = new StringBuilder(key);
+                query.setCharAt(1, Benchmarks.letter(random));
+                query.deleteCharAt(query.length() - 2);
+                queries.add(query.toString());
+            }
+        }
+        report("fuzzy search, distance 2 over 300k keys", queries, each -> index.search(each, 2));
+    }
+}
@@ -0,0 +1,209 @@
+package librarySystem.book;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of TrigramIndex, against the keys found by computing the edit distance of every key.
+ */
+class TrigramIndexTest {
+
+    private static final String LETTERS = "abcde";
+
+    @Test
+    void misspelledAndReorderedNamesAreFound() {
+
+        TrigramIndex index = new TrigramIndex();
+
+        for (String key : List.of("Eiichiro Oda", "Masashi Kishimoto", "Naoki Urasawa", "Kentaro Miura", "Oda")) {
+            index.add(key);
+        }
+
+        assertEquals(List.of("Eiichiro Oda"), index.search("Oda Eiichirou", 2));
+        assertEquals(List.of("Eiichiro Oda"), index.search("ODA EIICHIRO", 0));
+        assertEquals(List.of("Masashi Kishimoto"), index.search("Masashi Kishimotto", 1));
+        assertTrue(index.search("Masashi Kishimotto", 0).isEmpty());
+        // Short queries allow fewer edits
+        assertEquals(List.of("Oda"), index.search("odd", 2));
+        assertTrue(index.search("oa", 2).isEmpty());
+        assertTrue(index.search("oxx", 2).isEmpty());
+        assertTrue(index.search("Kentaro", 2).isEmpty());
+
+        index.remove("Eiichiro Oda");
+        assertTrue(index.search("Oda Eiichirou", 2).isEmpty());
+        index.add("Eiichiro Oda");
+        assertEquals(List.of("Eiichiro Oda"), index.search("Oda Eiichirou", 2));
+    }
+
+    @Test
+    void searchFindsTheKeysOfABruteForceSearch() {
+
+        TrigramIndex index = new TrigramIndex();
+        Map<String, Integer> counts = new HashMap<>();
+        List<String> keys = new ArrayList<>();
+        Random random = new Random(5);
+        String key;
+
+        for (int i = 0; i < 2_500; i++) {
+            key = randomKey(random);
+            index.add(key);
+            counts.merge(key, 1, Integer::sum);
+            keys.add(key);
+        }
+        assertSearchesMatch(index, counts, keys, random);
+
+        // Removing most of the keys builds the index again
+        Collections.shuffle(keys, random);
+        for (int i = 0; i < 1_500; i++) {
+            key = keys.remove(keys.size() - 1);
+            index.remove(key);
+            counts.merge(key, -1, Integer::sum);
+        }
+        index.remove("not a key");
+        assertSearchesMatch(index, counts, keys, random);
+    }
+
+    @Test
+    void bandedEditDistanceMatchesTheFullMatrix() {
+
+        Random random = new Random(9);
+        String a;
+        String b;
+        int distance;
+
+        for (int i = 0; i < 20_000; i++) {
+            a = randomWord(random, random.nextInt(9));
+            b = randomWord(random, random.nextInt(9));
+            distance = editDistance(a, b);
+            for (int limit = 0; limit <= 3; limit++) {
+                assertEquals(Math.min(distance, limit + 1), TrigramIndex.editDistance(a, b, limit), a + " " + b + " " + limit);
+            }
+        }
+    }
+
+    private static void assertSearchesMatch(TrigramIndex index, Map<String, Integer> counts, List<String> keys, Random random) {
+
+        Map<String, Integer> distances = new HashMap<>();
+        Map<String, String> normalizedKeys = new HashMap<>();
+        String query;
+        String normalized;
+        String key;
+
+        for (String each : counts.keySet()) {
+            normalizedKeys.put(each, normalize(each));
+        }
+
+        for (int i = 0; i < 300; i++) {
+            // Queries near a key, and random queries that are usually far from all of them
+            query = i % 4 == 0 ? randomKey(random) : mutate(keys.get(random.nextInt(keys.size())), random.nextInt(4), random);
+            normalized = normalize(query);
+            distances.clear();
+            for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+                key = normalizedKeys.get(entry.getKey());
+                // Keys whose length differs by more than 2 are more than 2 edits away
+                if (entry.getValue() > 0 && Math.abs(key.length() - normalized.length()) <= 2) {
+                    distances.put(entry.getKey(), editDistance(key, normalized));
+                }
+            }
+            for (int maxDistance = 0; maxDistance <= 2; maxDistance++) {
+                assertEquals(bruteForce(distances, normalized, maxDistance), index.search(query, maxDistance), query + " " + maxDistance);
+            }
+        }
+    }
+
+    /**
+     * Keeps the keys within the distance of the query, with the rules of TrigramIndex.search.
+     */
+    private static List<String> bruteForce(Map<String, Integer> distances, String normalized, int maxDistance) {
+
+        int distance = Math.min(maxDistance, normalized.length() < 3 ? 0 : normalized.length() < 6 ? 1 : 2);
+
+        return distances.keySet().stream()
+                .filter(key -> distances.get(key) <= distance)
+                .sorted(Comparator.<String>comparingInt(distances::get).thenComparing(Comparator.naturalOrder()))
+                .collect(Collectors.toList());
+    }
+
+    private static String normalize(String key) {
+
+        List<String> words = TextAnalyzer.tokenize(key);
+
+        Collections.sort(words);
+        return String.join(" ", words);
+    }
+
+    private static int editDistance(String a, String b) {
+
+        int[][] distances = new int[a.length() + 1][b.length() + 1];
+
+        for (int i = 0; i <= a.length(); i++) {
+            for (int j = 0; j <= b.length(); j++) {
+                if (i == 0 || j == 0) {
+                    distances[i][j] = i + j;
+                } else {
+                    distances[i][j] = Math.min(Math.min(distances[i - 1][j] + 1, distances[i][j - 1] + 1),
+                            distances[i - 1][j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1));
+                }
+            }
+        }
+        return distances[a.length()][b.length()];
+    }
+
+    /**
+     * Inserts, deletes or replaces random characters of a key, spaces included.
+     */
+    private static String mutate(String key, int edits, Random random) {
+
+        StringBuilder mutated = new StringBuilder(key);
+        int position;
+
+        for (int i = 0; i < edits && mutated.length() > 0; i++) {
+            position = random.nextInt(mutated.length());
+            switch (random.nextInt(3)) {
+                case 0:
+                    mutated.insert(position, LETTERS.charAt(random.nextInt(LETTERS.length())));
+                    break;
+                case 1:
+                    mutated.deleteCharAt(position);
+                    break;
+                default:
+                    mutated.setCharAt(position, LETTERS.charAt(random.nextInt(LETTERS.length())));
+            }
+        }
+        return mutated.toString();
+    }
+
+    /**
+     * Builds a key of one to three words of a small alphabet, so many keys are within two edits of each other.
+     */
+    private static String randomKey(Random random) {
+
+        List<String> words = new ArrayList<>();
+
+        for (int i = 0, count = 1 + random.nextInt(3); i < count; i++) {
+            words.add(random.nextInt(4) == 0 ? randomWord(random, 2 + random.nextInt(5)).toUpperCase()
+                    : randomWord(random, 2 + random.nextInt(5)));
+        }
+        return String.join(" ", words);
+    }
+
+    private static String randomWord(Random random, int length) {
+
+        StringBuilder word = new StringBuilder();
+
+        for (int i = 0; i < length; i++) {
+            word.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+        }
+        return word.toString();
+    }
+}
@@ -0,0 +1,131 @@
+package librarySystem.book;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of YearIndexManager: ranges and counts across compactions and restarts, and pages of a range.
+ */
+class YearIndexManagerTest {
+
+    @TempDir
+    Path directory;
+
+    private YearIndexManager index;
+
+    @BeforeEach
+    void openIndex() {
+        index = new YearIndexManager(directory.resolve("year_index.dat").toString());
+    }
+
+    @AfterEach
+    void closeIndex() throws IOException {
+        index.close();
+    }
+
+    @Test
+    void rangesAndCountsMatchTheBooksOfTheRangeAcrossRestarts() throws IOException {
+
+        Map<String, Integer> years = new HashMap<>();
+        Random random = new Random(17);
+        List<YearIndexEntry> batch = new ArrayList<>();
+        String isbn;
+        int year;
+
+        // Enough changes for several compactions of the log
+        for (int i = 0; i < 5_000; i++) {
+            isbn = "isbn" + random.nextInt(1_500);
+            if (random.nextInt(4) == 0) {
+                index.removeYearIndex(isbn);
+                years.remove(isbn);
+            } else {
+                year = 1900 + random.nextInt(130);
+                index.addYearIndex(year, isbn);
+                years.put(isbn, year);
+            }
+        }
+        for (int i = 0; i < 300; i++) {
+            year = i % 2 == 0 ? -50 + i : Integer.MAX_VALUE - i;
+            batch.add(new YearIndexEntry(year, "batch" + i));
+            years.put("batch" + i, year);
+        }
+        index.addYearIndexes(batch);
+        assertRangesMatch(years, random);
+
+        index.close();
+        index = new YearIndexManager(directory.resolve("year_index.dat").toString());
+        assertRangesMatch(years, random);
+    }
+
+    @Test
+    void pagesOfARangeHoldTheBooksOfTheRangeOnce() throws IOException {
+
+        List<String> paged = new ArrayList<>();
+        Page<String> page;
+        String after = null;
+
+        for (int i = 0; i < 40; i++) {
+            index.addYearIndex(1980 + i % 20, String.format("isbn%02d", i));
+        }
+        do {
+            page = index.getIsbnsPage(1985, 1994, after, 3);
+            assertTrue(page.getItems().size() <= 3);
+            paged.addAll(page.getItems());
+            after = page.getNextCursor();
+        } while (after != null);
+        assertEquals(index.getIsbnsByRange(1985, 1994), paged);
+        assertEquals(20, paged.size());
+    }
+
+    @Test
+    void cursorOutsideTheRangeIsRejected() throws IOException {
+
+        String cursor;
+
+        for (int i = 0; i < 10; i++) {
+            index.addYearIndex(2000 + i, "isbn" + i);
+        }
+        cursor = index.getIsbnsPage(2000, 2009, null, 2).getNextCursor();
+        assertEquals("2001:isbn1", cursor);
+        assertThrows(IllegalArgumentException.class, () -> index.getIsbnsPage(2005, 2009, cursor, 2));
+        assertThrows(IllegalArgumentException.class, () -> index.getIsbnsPage(1990, 2000, cursor, 2));
+        assertThrows(IllegalArgumentException.class, () -> index.getIsbnsPage(2000, 2009, "year:isbn1", 2));
+        assertEquals(List.of("isbn2", "isbn3"), index.getIsbnsPage(2001, 2003, cursor, 2).getItems());
+    }
+
+    private void assertRangesMatch(Map<String, Integer> years, Random random) {
+
+        int from;
+        int to;
+        List<String> expected;
+
+        for (int i = 0; i < 300; i++) {
+            from = i == 0 ? Integer.MIN_VALUE : 1890 + random.nextInt(150);
+            to = i == 0 ? Integer.MAX_VALUE : from + random.nextInt(40) - 5;
+            expected = expectedRange(years, from, to);
+            assertEquals(expected, index.getIsbnsByRange(from, to), from + ".." + to);
+            assertEquals(expected.size(), index.countByRange(from, to));
+        }
+    }
+
+    private static List<String> expectedRange(Map<String, Integer> years, int from, int to) {
+        return years.entrySet().stream()
+                .filter(entry -> entry.getValue() >= from && entry.getValue() <= to)
+                .sorted(Map.Entry.<String, Integer>comparingByValue().thenComparing(Map.Entry.comparingByKey()))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,123 @@
+package librarySystem.patron;
+
+import librarySystem.TestFiles;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of PatronHandler used by several threads at once.
+ */
+class PatronHandlerConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int PATRONS = 40;
+
+    @BeforeEach
+    void clearFiles() throws IOException {
+        TestFiles.clearWorkingDirectory();
+    }
+
+    @Test
+    void concurrentAddsOfTheSameCpfAddItOnce() throws Exception {
+
+        PatronHandler handler = new PatronHandler();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger added = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        List<Future<?>> tasks = new ArrayList<>();
+
+        try {
+            for (int thread = 0; thread < THREADS; thread++) {
+                int number = thread;
+                tasks.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < PATRONS; i++) {
+                        try {
+                            handler.addPatron(patron("cpf" + i, "Thread" + number));
+                            added.incrementAndGet();
+                        } catch (IOException e) {
+                            assertEquals("patron already exists", e.getMessage());
+                            rejected.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+            assertEquals(PATRONS, added.get());
+            assertEquals(PATRONS * (THREADS - 1), rejected.get());
+            // Each CPF has the last name of the one add that passed, and a single entry in the last name index
+            for (int i = 0; i < PATRONS; i++) {
+                String lastName = handler.getPatron("cpf" + i).getLastName();
+                assertTrue(handler.getCpfsByLastName(lastName).contains("cpf" + i));
+            }
+            assertEquals(PATRONS, handler.getPatronsLastNames(null, 1000).getItems().size());
+        } finally {
+            executor.shutdown();
+            handler.close();
+        }
+    }
+
+    @Test
+    void readersSeeWholePatronsWhileTheyAreUpdated() throws Exception {
+
+        PatronHandler handler = new PatronHandler();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> tasks = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < PATRONS; i++) {
+                handler.addPatron(patron("cpf" + i, "Silva"));
+            }
+            tasks.add(executor.submit(() -> {
+                for (int round = 0; round < 6; round++) {
+                    for (int i = 0; i < PATRONS; i++) {
+                        // A longer last name moves the record to another slot and changes the last name index
+                        handler.updatePatron("cpf" + i, patron("cpf" + i, round % 2 == 0 ? "Souza de Oliveira" : "Silva"));
+                    }
+                }
+                return null;
+            }));
+            for (int reader = 1; reader < THREADS; reader++) {
+                tasks.add(executor.submit(() -> {
+                    Patron patron;
+                    for (int round = 0; round < 200; round++) {
+                        patron = handler.getPatron("cpf" + round % PATRONS);
+                        assertNotNull(patron);
+                        assertTrue(patron.getLastName().equals("Silva") || patron.getLastName().equals("Souza de Oliveira"));
+                        for (Patron found : handler.searchPatronsByLastName("Silva")) {
+                            assertEquals("Ana", found.getName());
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+            assertEquals(PATRONS, handler.searchPatronsByLastName("Silva").size());
+        } finally {
+            executor.shutdown();
+            handler.close();
+        }
+    }
+
+    private static Patron patron(String cpf, String lastName) {
+        return new Patron("Ana", lastName, cpf, "secret", "ana@example.com", "5511999999999");
+    }
+}
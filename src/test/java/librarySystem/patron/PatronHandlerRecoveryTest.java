@@ -0,0 +1,107 @@
+package librarySystem.patron;
+
+import librarySystem.TestFiles;
+import librarySystem.storage.SlottedPageFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the write-ahead log of PatronHandler: changes replayed after a restart, and changes that failed.
+ */
+class PatronHandlerRecoveryTest {
+
+    @BeforeEach
+    void clearFiles() throws IOException {
+        TestFiles.clearWorkingDirectory();
+    }
+
+    @Test
+    void changesInTheLogSurviveARestart() throws IOException {
+
+        PatronHandler handler = new PatronHandler();
+
+        handler.addPatron(patron("111", "Silva"));
+        handler.addPatron(patron("222", "Souza"));
+        handler.updatePatron("111", patron("111", "Santos"));
+        handler.deletePatron("222");
+        handler.close();
+
+        handler = new PatronHandler();
+        try {
+            assertEquals("Santos", handler.getPatron("111").getLastName());
+            assertNull(handler.getPatron("222"));
+            assertEquals(1, handler.searchPatronsByLastName("santos").size());
+            assertTrue(handler.searchPatronsByLastName("Silva").isEmpty());
+        } finally {
+            handler.close();
+        }
+    }
+
+    @Test
+    void failedAddDoesNotBreakTheNextStart() throws IOException {
+
+        PatronHandler handler = new PatronHandler();
+        String longCpf = "1".repeat(70);
+
+        handler.addPatron(patron("111", "Silva"));
+        assertThrows(IOException.class, () -> handler.addPatron(patron(longCpf, "Long")));
+        assertThrows(IOException.class, () -> handler.addPatron(patron("111", "Again")));
+        handler.close();
+
+        PatronHandler restarted = new PatronHandler();
+        try {
+            assertNull(restarted.getPatron(longCpf));
+            assertEquals("Silva", restarted.getPatron("111").getLastName());
+        } finally {
+            restarted.close();
+        }
+        try (SlottedPageFile dataFile = new SlottedPageFile("patron.dat", "patron_free.dat", false)) {
+            int count = 0;
+            for (SlottedPageFile.Scanner scanner = dataFile.scan(); scanner.hasNext(); scanner.next()) {
+                count++;
+            }
+            assertEquals(1, count, "the rejected patron left no record in the data file");
+        }
+    }
+
+    @Test
+    void indexEntryOfAMovedRecordLeftAtItsFreedSlotIsRepairedOnReplay() throws IOException {
+
+        PatronHandler handler = new PatronHandler();
+        String longName = "Souza".repeat(300);
+
+        // Long last names fill the first data page, so a longer record no longer fits in it
+        for (int i = 0; i < 40; i++) {
+            handler.addPatron(patron(String.valueOf(100 + i), "Silva" + "s".repeat(150)));
+        }
+        handler.close();
+        new PatronHandler().close();
+        Files.copy(Path.of("patronIndex.dat"), Path.of("patronIndex.dat.saved"));
+        handler = new PatronHandler();
+        handler.updatePatron("101", patron("101", longName));
+        handler.close();
+        // A crash after the data page was written back and before the index page was: the index file has the freed slot
+        Files.copy(Path.of("patronIndex.dat.saved"), Path.of("patronIndex.dat"), StandardCopyOption.REPLACE_EXISTING);
+
+        handler = new PatronHandler();
+        try {
+            assertEquals(longName, handler.getPatron("101").getLastName());
+            assertEquals(List.of("101"), handler.getCpfsByLastName(longName));
+            assertEquals("Silva" + "s".repeat(150), handler.getPatron("102").getLastName());
+        } finally {
+            handler.close();
+        }
+    }
+
+    private static Patron patron(String cpf, String lastName) {
+        return new Patron("Ana", lastName, cpf, "secret", "ana@example.com", "5511999999999");
+    }
+}
@@ -0,0 +1,149 @@
+package librarySystem.patron;
+
+import librarySystem.TestFiles;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of PatronImporter and of the bulk import of PatronHandler.
+ */
+class PatronImporterTest {
+
+    @BeforeEach
+    void clearFiles() throws IOException {
+        TestFiles.clearWorkingDirectory();
+    }
+
+    @Test
+    void linesAreReadInOrderAcrossBatches() throws IOException {
+
+        List<String> lines = new ArrayList<>();
+        List<Patron> patrons;
+
+        lines.add("name,lastName,cpf,password,email,phoneNumber");
+        for (int i = 0; i < 25_000; i++) {
+            lines.add("Ana," + lastName(i) + "," + cpf(i) + ",secret,ana" + i + "@example.com,5511999999999");
+            if (i % 1_000 == 0) {
+                lines.add("   ");
+            }
+        }
+        patrons = read(lines);
+
+        assertEquals(25_000, patrons.size());
+        for (int i = 0; i < patrons.size(); i++) {
+            assertEquals(cpf(i), patrons.get(i).getCpf());
+        }
+        assertEquals("ana24999@example.com", patrons.get(24_999).getEmail());
+    }
+
+    @Test
+    void quotedFieldsKeepTheirCommasAndQuotes() throws IOException {
+
+        Patron patron = read(List.of("\" Ana, Maria \",\"Silva \"\"Jr\"\"\", 111 ,\" se,cret \",ana@example.com,")).get(0);
+
+        assertEquals("Ana, Maria", patron.getName());
+        assertEquals("Silva \"Jr\"", patron.getLastName());
+        assertEquals("111", patron.getCpf());
+        // Passwords are not trimmed
+        assertEquals(" se,cret ", patron.getPassword());
+        assertEquals("", patron.getPhoneNumber());
+    }
+
+    @Test
+    void malformedLinesAreReportedWithTheirNumber() {
+        assertMalformed("malformed line 3: expected 6 fields but found 3", "Ana,Silva,111,a,b,c", "", "Ana,Silva,222");
+        assertMalformed("malformed line 1: missing cpf", "Ana,Silva, ,a,b,c");
+        assertMalformed("malformed line 2: unterminated quoted field", "Ana,Silva,111,a,b,c", "\"Ana,Silva,222,a,b,c");
+    }
+
+    @Test
+    void importAddsNewPatronsAndSkipsRepeatedCpfs() throws IOException {
+
+        Path file = Path.of("patrons.csv");
+        PatronHandler handler = new PatronHandler();
+        List<String> lines = new ArrayList<>();
+
+        try {
+            handler.addPatron(new Patron("Ana", "Existing", cpf(0), "secret", "ana@example.com", "5511999999999"));
+            for (int i = 0; i < 3_000; i++) {
+                lines.add("Ana," + lastName(i) + "," + cpf(i) + ",secret,ana@example.com,5511999999999");
+            }
+            lines.add("Ana,Repeated," + cpf(10) + ",secret,ana@example.com,5511999999999");
+            lines.add("Ana,Long," + "1".repeat(70) + ",secret,ana@example.com,5511999999999");
+            Files.write(file, lines, StandardCharsets.UTF_8);
+
+            assertEquals(2_999, handler.importPatrons(file));
+            assertEquals("Existing", handler.getPatron(cpf(0)).getLastName());
+            assertEquals(lastName(10), handler.getPatron(cpf(10)).getLastName());
+            assertEquals(lastName(2_999), handler.getPatron(cpf(2_999)).getLastName());
+            assertNull(handler.getPatron("1".repeat(70)));
+            // A tenth of the patrons share each last name, less the one added before the import
+            assertEquals(299, handler.searchPatronsByLastName(lastName(0)).size());
+            assertEquals(300, handler.searchPatronsByLastName(lastName(1)).size());
+        } finally {
+            handler.close();
+        }
+
+        handler = new PatronHandler();
+        try {
+            assertEquals(lastName(1_234), handler.getPatron(cpf(1_234)).getLastName());
+            assertEquals(300, handler.getCpfsByLastName(lastName(3)).size());
+        } finally {
+            handler.close();
+        }
+    }
+
+    @Test
+    void malformedImportFileIsReportedAsIOException() throws IOException {
+
+        Path file = Path.of("patrons.csv");
+        PatronHandler handler = new PatronHandler();
+
+        try {
+            Files.write(file, List.of("Ana,Silva,111,a,b,c", "Ana,Silva"), StandardCharsets.UTF_8);
+            assertEquals("malformed line 2: expected 6 fields but found 2",
+                    assertThrows(IOException.class, () -> handler.importPatrons(file)).getMessage());
+        } finally {
+            handler.close();
+        }
+    }
+
+    private void assertMalformed(String message, String... lines) {
+
+        UncheckedIOException error = assertThrows(UncheckedIOException.class, () -> read(List.of(lines)));
+
+        assertEquals(message, error.getCause().getMessage());
+    }
+
+    private static List<Patron> read(List<String> lines) throws IOException {
+
+        Path file = Path.of("patrons.csv");
+        List<Patron> patrons = new ArrayList<>();
+
+        Files.write(file, lines, StandardCharsets.UTF_8);
+        try (PatronImporter importer = new PatronImporter(file)) {
+            for (Patron patron : importer) {
+                patrons.add(patron);
+            }
+        }
+        return patrons;
+    }
+
+    private static String cpf(int number) {
+        return String.format("%011d", number);
+    }
+
+    private static String lastName(int number) {
+        return "Last" + number % 10;
+    }
+}
@@ -0,0 +1,141 @@
+package librarySystem.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of AtomicFileWriter: replacements, failed writes, concurrent writers and temporary files left by a crash.
+ */
+class AtomicFileWriterTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void writeReplacesTheWholeFile() throws IOException {
+
+        Path target = directory.resolve("index.dat");
+
+        Files.write(target, new byte[10_000]);
+        AtomicFileWriter.write(target, out -> out.writeUTF("new"));
+
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(target))) {
+            assertEquals("new", in.readUTF());
+            assertEquals(-1, in.read());
+        }
+        assertEquals(List.of(target), files());
+    }
+
+    @Test
+    void failedWriteLeavesTheFileUnchanged() throws IOException {
+
+        Path target = directory.resolve("index.dat");
+
+        Files.write(target, new byte[] {1, 2, 3});
+        assertThrows(IOException.class, () -> AtomicFileWriter.write(target, out -> {
+            out.write(new byte[100_000]);
+            throw new IOException("disk full");
+        }));
+        assertThrows(IllegalStateException.class, () -> AtomicFileWriter.write(target, out -> {
+            throw new IllegalStateException();
+        }));
+
+        assertArrayEquals(new byte[] {1, 2, 3}, Files.readAllBytes(target));
+        assertEquals(List.of(target), files());
+    }
+
+    @Test
+    void concurrentWritersOfTheSameFileNeverMixTheirContent() throws Exception {
+
+        Path target = directory.resolve("index.dat");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> writes = new ArrayList<>();
+        byte[] content;
+
+        try {
+            for (int i = 0; i < 200; i++) {
+                byte value = (byte) i;
+                writes.add(executor.submit(() -> {
+                    AtomicFileWriter.write(target, out -> {
+                        for (int j = 0; j < 20_000; j++) {
+                            out.writeByte(value);
+                        }
+                    });
+                    return null;
+                }));
+            }
+            for (Future<?> write : writes) {
+                write.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        content = Files.readAllBytes(target);
+        assertEquals(20_000, content.length);
+        for (byte b : content) {
+            assertEquals(content[0], b);
+        }
+        assertEquals(List.of(target), files());
+    }
+
+    @Test
+    void staleTempFilesAreDeletedButActiveOnesAreKept() throws IOException {
+
+        Path target = directory.resolve("index.dat");
+        Path other = directory.resolve("other.dat");
+        Path stale = Files.createFile(directory.resolve("index.dat.123.tmp"));
+        Path otherStale = Files.createFile(directory.resolve("other.dat.456.tmp"));
+        Path active = AtomicFileWriter.createTempFile(target);
+
+        assertNotEquals(active, AtomicFileWriter.createTempFile(other));
+        AtomicFileWriter.deleteStaleTempFiles(target);
+        assertFalse(Files.exists(stale));
+        assertTrue(Files.exists(otherStale));
+        assertTrue(Files.exists(active));
+
+        Files.write(active, new byte[] {7});
+        AtomicFileWriter.replace(active, target);
+        assertArrayEquals(new byte[] {7}, Files.readAllBytes(target));
+        assertFalse(Files.exists(active));
+    }
+
+    @Test
+    void everySyncPolicyReplacesTheFile() throws IOException {
+
+        Path target = directory.resolve("index.dat");
+        AtomicFileWriter.SyncPolicy policy = AtomicFileWriter.getSyncPolicy();
+
+        try {
+            for (AtomicFileWriter.SyncPolicy each : AtomicFileWriter.SyncPolicy.values()) {
+                AtomicFileWriter.setSyncPolicy(each);
+                AtomicFileWriter.write(target, out -> out.writeUTF(each.name()));
+                try (DataInputStream in = new DataInputStream(Files.newInputStream(target))) {
+                    assertEquals(each.name(), in.readUTF());
+                }
+            }
+        } finally {
+            AtomicFileWriter.setSyncPolicy(policy);
+        }
+    }
+
+    private List<Path> files() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.collect(Collectors.toList());
+        }
+    }
+}
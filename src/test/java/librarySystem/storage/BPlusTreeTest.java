@@ -0,0 +1,187 @@
+package librarySystem.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of BPlusTree: inserts that split leaves and internal nodes, deletes, bulk loads and reopening the file.
+ */
+class BPlusTreeTest {
+
+    private static final long NOT_FOUND = -1;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void insertsSplitNodesAndKeepKeysInOrder() throws IOException {
+
+        String filename = directory.resolve("tree.dat").toString();
+        TreeMap<String, Long> expected = new TreeMap<>();
+        Random random = new Random(42);
+        String key;
+
+        try (BPlusTree tree = new BPlusTree(filename)) {
+            // Enough keys for three levels, inserted in random order
+            for (int i = 0; i < 20_000; i++) {
+                key = "isbn" + random.nextInt(1_000_000);
+                tree.insert(key, i);
+                expected.put(key, (long) i);
+            }
+            assertEquals(expected, entries(tree));
+            for (Map.Entry<String, Long> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), tree.search(entry.getKey(), NOT_FOUND));
+            }
+            assertEquals(NOT_FOUND, tree.search("missing", NOT_FOUND));
+        }
+    }
+
+    @Test
+    void insertReplacesTheValueOfAnExistingKey() throws IOException {
+        try (BPlusTree tree = new BPlusTree(directory.resolve("tree.dat").toString())) {
+            tree.insert("a", 1);
+            tree.insert("a", 2);
+            assertEquals(2, tree.search("a", NOT_FOUND));
+            assertEquals(1, entries(tree).size());
+        }
+    }
+
+    @Test
+    void deletesRemoveKeysFromTheirLeaves() throws IOException {
+
+        TreeMap<String, Long> expected = new TreeMap<>();
+
+        try (BPlusTree tree = new BPlusTree(directory.resolve("tree.dat").toString())) {
+            for (int i = 0; i < 5_000; i++) {
+                tree.insert(String.format("k%05d", i), i);
+                expected.put(String.format("k%05d", i), (long) i);
+            }
+            for (int i = 0; i < 5_000; i += 3) {
+                assertTrue(tree.delete(String.format("k%05d", i)));
+                expected.remove(String.format("k%05d", i));
+            }
+            assertFalse(tree.delete("k00000"));
+            assertFalse(tree.delete("missing"));
+            assertEquals(expected, entries(tree));
+            assertEquals(NOT_FOUND, tree.search("k00003", NOT_FOUND));
+            assertEquals(4, tree.search("k00004", NOT_FOUND));
+
+            // Keys deleted from underfull leaves can be inserted again
+            tree.insert("k00003", 33);
+            assertEquals(33, tree.search("k00003", NOT_FOUND));
+        }
+    }
+
+    @Test
+    void deletingEveryKeyLeavesAnEmptyTree() throws IOException {
+        try (BPlusTree tree = new BPlusTree(directory.resolve("tree.dat").toString())) {
+            for (int i = 0; i < 1_000; i++) {
+                tree.insert("k" + i, i);
+            }
+            for (int i = 0; i < 1_000; i++) {
+                assertTrue(tree.delete("k" + i));
+            }
+            assertTrue(entries(tree).isEmpty());
+            tree.insert("again", 7);
+            assertEquals(7, tree.search("again", NOT_FOUND));
+        }
+    }
+
+    @Test
+    void reopenedTreeKeepsItsEntries() throws IOException {
+
+        String filename = directory.resolve("tree.dat").toString();
+        TreeMap<String, Long> expected = new TreeMap<>();
+
+        try (BPlusTree tree = new BPlusTree(filename)) {
+            for (int i = 0; i < 3_000; i++) {
+                tree.insert("k" + i, i);
+                expected.put("k" + i, (long) i);
+            }
+            tree.delete("k7");
+            expected.remove("k7");
+            tree.force();
+        }
+        assertTrue(BPlusTree.isTreeFile(filename));
+        try (BPlusTree tree = new BPlusTree(filename)) {
+            assertEquals(expected, entries(tree));
+        }
+    }
+
+    @Test
+    void bulkLoadBuildsTheSameTreeAsInserts() throws IOException {
+
+        String filename = directory.resolve("bulk.dat").toString();
+        TreeMap<String, Long> expected = new TreeMap<>();
+
+        for (int i = 0; i < 10_000; i++) {
+            expected.put(String.format("isbn%06d", i), (long) i * 3);
+        }
+        BPlusTree.bulkLoad(filename, expected.entrySet());
+        try (BPlusTree tree = new BPlusTree(filename)) {
+            assertEquals(expected, entries(tree));
+            assertEquals(300, tree.search("isbn000100", NOT_FOUND));
+            // The bulk loaded nodes still split on later inserts
+            for (int i = 0; i < 2_000; i++) {
+                tree.insert(String.format("isbn%06da", i), i);
+                expected.put(String.format("isbn%06da", i), (long) i);
+            }
+            assertEquals(expected, entries(tree));
+        }
+    }
+
+    @Test
+    void bulkLoadRejectsUnsortedEntries() {
+
+        List<Map.Entry<String, Long>> entries = new ArrayList<>();
+
+        entries.add(Map.entry("b", 1L));
+        entries.add(Map.entry("a", 2L));
+        assertThrows(IOException.class, () -> BPlusTree.bulkLoad(directory.resolve("bulk.dat").toString(), entries));
+    }
+
+    @Test
+    void insertRejectsKeysLongerThanTheLimit() throws IOException {
+        try (BPlusTree tree = new BPlusTree(directory.resolve("tree.dat").toString())) {
+            tree.insert("x".repeat(BPlusTree.MAX_KEY_LENGTH), 1);
+            assertThrows(IOException.class, () -> tree.insert("x".repeat(BPlusTree.MAX_KEY_LENGTH + 1), 2));
+            // The limit counts the encoded bytes, not the characters
+            assertThrows(IOException.class, () -> tree.insert("é".repeat(BPlusTree.MAX_KEY_LENGTH / 2 + 1), 3));
+            assertEquals(1, entries(tree).size());
+        }
+    }
+
+    @Test
+    void otherFilesAreNotTreeFiles() throws IOException {
+
+        Path other = directory.resolve("other.dat");
+
+        java.nio.file.Files.write(other, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        assertFalse(BPlusTree.isTreeFile(other.toString()));
+        assertFalse(BPlusTree.isTreeFile(directory.resolve("missing.dat").toString()));
+        assertThrows(IOException.class, () -> new BPlusTree(other.toString()));
+    }
+
+    private static TreeMap<String, Long> entries(BPlusTree tree) throws IOException {
+
+        TreeMap<String, Long> entries = new TreeMap<>();
+        List<String> order = new ArrayList<>();
+
+        tree.forEach((key, value) -> {
+            entries.put(key, value);
+            order.add(key);
+        });
+        assertEquals(new ArrayList<>(entries.keySet()), order, "forEach visits the keys in order");
+        return entries;
+    }
+}
@@ -0,0 +1,212 @@
+package librarySystem.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of BufferPool through PooledRecordStore: hits and evictions, write-back of dirty pages, files shared by several stores,
+ * sequential reads around the pool, pinned pages and files guarded by a write-ahead log.
+ */
+class BufferPoolTest {
+
+    private static final int PAGE = BufferPool.PAGE_SIZE;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void evictedDirtyPagesAreWrittenBackAndReadAgain() throws IOException {
+
+        BufferPool pool = new BufferPool(4);
+        String filename = file("data.dat");
+
+        try (PooledRecordStore store = new PooledRecordStore(filename, pool)) {
+            for (int page = 0; page < 20; page++) {
+                // Every write but the first crosses into the next page
+                store.write((long) page * PAGE + (page == 0 ? 0 : PAGE - 2), filled(page, 4));
+            }
+            assertTrue(pool.getEvictionCount() >= 16);
+            assertTrue(pool.getWriteBackCount() >= 16);
+            for (int page = 1; page < 20; page++) {
+                assertArrayEquals(filled(page, 4).array(), bytes(store.read((long) page * PAGE + PAGE - 2, 4)));
+            }
+        }
+        assertEquals(20L * PAGE + 2, Files.size(Path.of(filename)));
+        try (PooledRecordStore store = new PooledRecordStore(filename, new BufferPool(4))) {
+            assertArrayEquals(filled(19, 4).array(), bytes(store.read(19L * PAGE + PAGE - 2, 4)));
+        }
+    }
+
+    @Test
+    void pagesInThePoolAreHits() throws IOException {
+
+        BufferPool pool = new BufferPool(8);
+        long misses;
+
+        try (PooledRecordStore store = new PooledRecordStore(file("data.dat"), pool)) {
+            store.write(0, filled(1, 3 * PAGE));
+            misses = pool.getMissCount();
+            for (int i = 0; i < 10; i++) {
+                store.read(PAGE + 100, 10);
+            }
+            assertEquals(misses, pool.getMissCount());
+            assertTrue(pool.getHitCount() >= 10);
+        }
+    }
+
+    @Test
+    void storesOfTheSameFileShareItsPages() throws IOException {
+
+        BufferPool pool = new BufferPool(4);
+        String filename = file("data.dat");
+
+        PooledRecordStore first = new PooledRecordStore(filename, pool);
+
+        try (PooledRecordStore second = new PooledRecordStore(directory.resolve(".").resolve("data.dat").toString(), pool)) {
+            try {
+                first.write(10, filled(7, 5));
+                // Not written back yet, the second store reads the dirty page of the first one
+                assertEquals(0, Files.size(Path.of(filename)));
+                assertArrayEquals(filled(7, 5).array(), bytes(second.read(10, 5)));
+                assertEquals(15, second.size());
+            } finally {
+                first.close();
+            }
+            // The file stays open in the pool for the second store
+            second.write(15, filled(8, 1));
+        }
+        assertEquals(16, Files.size(Path.of(filename)));
+    }
+
+    @Test
+    void sequentialReadsSeeDirtyPagesWithoutFillingThePool() throws IOException {
+
+        BufferPool pool = new BufferPool(4);
+        ByteBuffer pages;
+        long misses;
+
+        try (PooledRecordStore store = new PooledRecordStore(file("data.dat"), pool)) {
+            for (int page = 0; page < 12; page++) {
+                store.write((long) page * PAGE, filled(page, PAGE));
+            }
+            // The last pages are still dirty in the pool, the others were written back
+            misses = pool.getMissCount();
+            pages = store.readSequential(0, 12 * PAGE);
+            assertEquals(misses, pool.getMissCount());
+            for (int page = 0; page < 12; page++) {
+                assertEquals((byte) page, pages.get(page * PAGE));
+                assertEquals((byte) page, pages.get(page * PAGE + PAGE - 1));
+            }
+            // An unaligned sequential read goes through the pool
+            assertEquals((byte) 3, store.readSequential(3L * PAGE + 5, 10).get(0));
+        }
+    }
+
+    @Test
+    void poolWithEveryPagePinnedFails() throws IOException {
+
+        BufferPool pool = new BufferPool(2);
+        BufferPool.PooledFile file = pool.open(file("data.dat"));
+        BufferPool.Frame first = pool.pin(file, 0, false);
+        BufferPool.Frame second = pool.pin(file, 1, false);
+
+        try {
+            assertThrows(IOException.class, () -> pool.pin(file, 2, false));
+            pool.unpin(first, false);
+            pool.unpin(pool.pin(file, 2, false), false);
+        } finally {
+            pool.unpin(second, false);
+            pool.close(file);
+        }
+    }
+
+    @Test
+    void pagesOfAGuardedFileAreWrittenBackAfterTheirLogRecord() throws IOException {
+
+        BufferPool pool = new BufferPool(2);
+        String filename = file("data.dat");
+        Path logFile = directory.resolve("data.log");
+        long[] sizes = new long[2];
+
+        try (WriteAheadLog log = new WriteAheadLog(logFile.toString(), () -> { });
+             PooledRecordStore store = new PooledRecordStore(filename, pool)) {
+            log.replay((operation, key, record) -> { });
+            store.setWriteAheadLog(log);
+            log.awaitDurable(log.log(WriteAheadLog.PUT, "a", new byte[100], () -> {
+                // The third page evicts a page of this change, so its log record has to reach the log file first
+                for (int page = 0; page < 3; page++) {
+                    store.write((long) page * PAGE, filled(page, PAGE));
+                }
+                sizes[0] = Files.size(Path.of(filename));
+                sizes[1] = Files.size(logFile);
+            }));
+        }
+        assertEquals(PAGE, sizes[0]);
+        assertTrue(sizes[1] > 100, "log of " + sizes[1] + " bytes when the page was written back");
+        assertEquals(3L * PAGE, Files.size(Path.of(filename)));
+    }
+
+    @Test
+    void concurrentReadersAndWritersOfASmallPoolSeeTheirOwnPages() throws Exception {
+
+        // Each thread pins one page at a time, so with more frames than threads the clock always finds a page to evict
+        BufferPool pool = new BufferPool(12);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> tasks = new ArrayList<>();
+
+        try (PooledRecordStore store = new PooledRecordStore(file("data.dat"), pool)) {
+            store.write(64L * PAGE - 1, filled(0, 1));
+            for (int thread = 0; thread < 8; thread++) {
+                int owner = thread;
+                tasks.add(executor.submit(() -> {
+                    long position;
+                    for (int round = 0; round < 200; round++) {
+                        // Each thread owns the pages owner, owner + 8, owner + 16...
+                        position = (long) (owner + 8 * (round % 8)) * PAGE + round % 100;
+                        store.write(position, filled(round, 50));
+                        assertArrayEquals(filled(round, 50).array(), bytes(store.read(position, 50)));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private String file(String name) {
+        return directory.resolve(name).toString();
+    }
+
+    private static ByteBuffer filled(int value, int length) {
+
+        byte[] bytes = new byte[length];
+
+        Arrays.fill(bytes, (byte) value);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+
+        byte[] bytes = new byte[buffer.remaining()];
+
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
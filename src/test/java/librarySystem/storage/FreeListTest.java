@@ -0,0 +1,88 @@
+package librarySystem.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of FreeList: stack order, persistence and a slot cut in half by a crash.
+ */
+class FreeListTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void slotsArePoppedInReverseOrder() throws IOException {
+
+        try (FreeList list = open()) {
+            assertTrue(list.isEmpty());
+            for (long slot = 0; slot < 100; slot++) {
+                list.push(slot * 8192);
+            }
+            assertEquals(100, list.size());
+            assertEquals(99 * 8192, list.peek());
+            for (long slot = 99; slot >= 0; slot--) {
+                assertEquals(slot * 8192, list.pop());
+            }
+            assertTrue(list.isEmpty());
+            assertThrows(IOException.class, list::pop);
+            assertThrows(IOException.class, list::peek);
+        }
+    }
+
+    @Test
+    void slotsSurviveAReopen() throws IOException {
+
+        try (FreeList list = open()) {
+            list.push(10);
+            list.push(20);
+            list.push(30);
+            list.pop();
+        }
+        assertEquals(2 * Long.BYTES, Files.size(file()));
+        try (FreeList list = open()) {
+            assertEquals(2, list.size());
+            assertEquals(20, list.pop());
+            list.push(40);
+        }
+        try (FreeList list = open()) {
+            assertEquals(40, list.pop());
+            assertEquals(10, list.pop());
+            assertTrue(list.isEmpty());
+        }
+    }
+
+    @Test
+    void slotCutInHalfByACrashIsDropped() throws IOException {
+
+        try (FreeList list = open()) {
+            list.push(10);
+            list.push(20);
+        }
+        Files.write(file(), new byte[] {0, 0, 0, 1}, StandardOpenOption.APPEND);
+        try (FreeList list = open()) {
+            assertEquals(2, list.size());
+            assertEquals(2 * Long.BYTES, Files.size(file()));
+            list.push(30);
+        }
+        try (FreeList list = open()) {
+            assertEquals(30, list.pop());
+            assertEquals(20, list.pop());
+        }
+    }
+
+    private FreeList open() throws IOException {
+        return new FreeList(file().toString());
+    }
+
+    private Path file() {
+        return directory.resolve("free.dat");
+    }
+}
@@ -0,0 +1,112 @@
+package librarySystem.storage;
+
+import librarySystem.Benchmarks;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Benchmark of the hit rate of RecordCache against an LRU cache and the optimum. See Benchmarks for how to run it.
+ */
+@Tag(Benchmarks.TAG)
+class RecordCacheBenchmarkTest {
+
+    @Test
+    void recordCacheHitRateAgainstLruAndTheOptimum() {
+
+        RecordCache<Integer> cache = new RecordCache<>(1_000, Long.MAX_VALUE);
+        Map<String, Integer> lru = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > 1_000;
+            }
+        };
+        Random random = new Random(42);
+        double[] cumulative = zipf(100_000);
+        String[] keys = new String[300_000];
+        int lruHits = 0;
+
+        // The stream of RecordCacheTest: Zipf requests over 100k books, a third of them scan noise never requested again
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = i % 3 == 0 ? "scan" + i : "book" + rank(cumulative, random.nextDouble());
+        }
+        for (String key : keys) {
+            if (cache.get(key) == null) {
+                cache.put(key, 0, 100);
+            }
+            if (lru.get(key) != null) {
+                lruHits++;
+            } else {
+                lru.put(key, 0);
+            }
+        }
+        System.out.printf("record cache: %.3f hit rate, LRU %.3f, optimum %.3f (1000 entries, %d requests)%n",
+                cache.getStats().getHitRate(), (double) lruHits / keys.length, optimalHitRate(keys, 1_000), keys.length);
+        assertTrue(cache.getStats().getHits() > 0);
+    }
+
+    /**
+     * Computes the hit rate of Belady's algorithm, which evicts the key requested again the furthest in the future.
+     * A key whose next request comes after those of all the cached keys is not cached.
+     */
+    private static double optimalHitRate(String[] keys, int capacity) {
+
+        int[] next = new int[keys.length];
+        Map<String, Integer> seen = new HashMap<>();
+        TreeMap<Integer, String> cached = new TreeMap<>();
+        int hits = 0;
+
+        for (int i = keys.length - 1; i >= 0; i--) {
+            // Keys never requested again get distinct positions past the end of the stream
+            next[i] = seen.getOrDefault(keys[i], keys.length + i);
+            seen.put(keys[i], i);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (cached.remove(i) != null) {
+                hits++;
+                cached.put(next[i], keys[i]);
+            } else if (next[i] < keys.length) {
+                if (cached.size() < capacity) {
+                    cached.put(next[i], keys[i]);
+                } else if (cached.lastKey() > next[i]) {
+                    cached.pollLastEntry();
+                    cached.put(next[i], keys[i]);
+                }
+            }
+        }
+        return (double) hits / keys.length;
+    }
+
+    /**
+     * Builds the cumulative distribution of a Zipf distribution of exponent 1.
+     */
+    private static double[] zipf(int keys) {
+
+        double[] cumulative = new double[keys];
+        double sum = 0;
+
+        for (int i = 0; i < keys; i++) {
+            sum += 1.0 / (i + 1);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < keys; i++) {
+            cumulative[i] /= sum;
+        }
+        return cumulative;
+    }
+
+    private static int rank(double[] cumulative, double value) {
+
+        int index = Arrays.binarySearch(cumulative, value);
+
+        return index >= 0 ? index : Math.min(cumulative.length - 1, -index - 1);
+    }
+}
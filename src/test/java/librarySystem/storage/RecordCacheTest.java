@@ -0,0 +1,164 @@
+package librarySystem.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of RecordCache: counters, limits, invalidation, and admission against a plain LRU cache.
+ */
+class RecordCacheTest {
+
+    @Test
+    void lookupsAreCountedAndInvalidatedKeysMiss() {
+
+        RecordCache<String> cache = new RecordCache<>(100, 100_000);
+        RecordCache.Stats stats;
+
+        assertNull(cache.get("1"));
+        cache.put("1", "one", 10);
+        cache.put("2", "two", 20);
+        assertEquals("one", cache.get("1"));
+        assertEquals("one", cache.get("1"));
+        cache.put("1", "uno", 15);
+        assertEquals("uno", cache.get("1"));
+        cache.invalidate("2");
+        assertNull(cache.get("2"));
+
+        stats = cache.getStats();
+        assertEquals(3, stats.getHits());
+        assertEquals(2, stats.getMisses());
+        assertEquals(1, stats.getEntries());
+        assertEquals(15, stats.getBytes());
+        assertEquals(0.6, stats.getHitRate(), 1e-9);
+
+        cache.clear();
+        assertNull(cache.get("1"));
+        assertEquals(0, cache.getStats().getEntries());
+        assertEquals(0, cache.getStats().getBytes());
+    }
+
+    @Test
+    void entriesAndBytesStayWithinTheLimits() {
+
+        RecordCache<Integer> entryBound = new RecordCache<>(200, Long.MAX_VALUE);
+        RecordCache<Integer> byteBound = new RecordCache<>(1_000_000, 50_000);
+        Random random = new Random(7);
+        int key;
+
+        for (int i = 0; i < 100_000; i++) {
+            key = random.nextInt(5_000);
+            if (entryBound.get(String.valueOf(key)) == null) {
+                entryBound.put(String.valueOf(key), key, 1);
+            }
+            if (byteBound.get(String.valueOf(key)) == null) {
+                byteBound.put(String.valueOf(key), key, 100 + key % 900);
+            }
+            assertTrue(entryBound.getStats().getEntries() <= 200);
+            assertTrue(byteBound.getStats().getBytes() <= 50_000);
+        }
+        assertTrue(entryBound.getStats().getEvictions() > 0);
+        assertTrue(byteBound.getStats().getEntries() > 40, byteBound.getStats().toString());
+    }
+
+    @Test
+    void recordsLargerThanTheCacheOrADisabledCacheAreNotKept() {
+
+        RecordCache<String> small = new RecordCache<>(100, 1_000);
+        RecordCache<String> disabled = new RecordCache<>(0, 1_000);
+
+        small.put("big", "big", 1_001);
+        disabled.put("1", "one", 1);
+        assertNull(small.get("big"));
+        assertNull(disabled.get("1"));
+    }
+
+    @Test
+    void frequentRecordsSurviveAScan() {
+
+        RecordCache<Integer> cache = new RecordCache<>(1_000, Long.MAX_VALUE);
+        int kept = 0;
+
+        for (int round = 0; round < 5; round++) {
+            for (int key = 0; key < 500; key++) {
+                lookUp(cache, "hot" + key);
+            }
+        }
+        // One pass over ten times as many keys as the cache holds, each requested once
+        for (int key = 0; key < 10_000; key++) {
+            lookUp(cache, "scan" + key);
+        }
+        for (int key = 0; key < 500; key++) {
+            if (cache.get("hot" + key) != null) {
+                kept++;
+            }
+        }
+        assertTrue(kept >= 450, kept + " hot records kept");
+    }
+
+    @Test
+    void skewedRequestsWithScansHitMoreThanWithLru() {
+
+        RecordCache<Integer> cache = new RecordCache<>(1_000, Long.MAX_VALUE);
+        Map<String, Integer> lru = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > 1_000;
+            }
+        };
+        Random random = new Random(42);
+        double[] cumulative = zipf(100_000);
+        int lruHits = 0;
+        int requests = 300_000;
+        String key;
+
+        for (int i = 0; i < requests; i++) {
+            // A third of the requests are scan noise that is never requested again
+            key = i % 3 == 0 ? "scan" + i : "book" + rank(cumulative, random.nextDouble());
+            lookUp(cache, key);
+            if (lru.get(key) != null) {
+                lruHits++;
+            } else {
+                lru.put(key, 0);
+            }
+        }
+        assertTrue(cache.getStats().getHitRate() > (double) lruHits / requests + 0.05,
+                cache.getStats().getHitRate() + " against " + (double) lruHits / requests + " with LRU");
+    }
+
+    private static void lookUp(RecordCache<Integer> cache, String key) {
+        if (cache.get(key) == null) {
+            cache.put(key, 0, 100);
+        }
+    }
+
+    /**
+     * Builds the cumulative distribution of a Zipf distribution of exponent 1.
+     */
+    private static double[] zipf(int keys) {
+
+        double[] cumulative = new double[keys];
+        double sum = 0;
+
+        for (int i = 0; i < keys; i++) {
+            sum += 1.0 / (i + 1);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < keys; i++) {
+            cumulative[i] /= sum;
+        }
+        return cumulative;
+    }
+
+    private static int rank(double[] cumulative, double value) {
+
+        int index = Arrays.binarySearch(cumulative, value);
+
+        return index >= 0 ? index : Math.min(cumulative.length - 1, -index - 1);
+    }
+}
@@ -0,0 +1,101 @@
+package librarySystem.storage;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the record stores read with positional channel reads and mapped in memory.
+ */
+class RecordStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void writtenBytesAreReadBackAfterAReopen(boolean memoryMapped) throws IOException {
+
+        try (RecordStore store = open(memoryMapped)) {
+            assertEquals(0, store.size());
+            store.write(0, bytes("hello world"));
+            store.write(6, bytes("there"));
+            assertEquals(11, store.size());
+            assertEquals("hello there", string(store.read(0, 11)));
+            store.force();
+        }
+        try (RecordStore store = open(memoryMapped)) {
+            assertEquals(11, store.size());
+            assertEquals("there", string(store.read(6, 5)));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void appendedBytesAreReadAfterAnEarlierRead(boolean memoryMapped) throws IOException {
+
+        try (RecordStore store = open(memoryMapped)) {
+            store.write(0, bytes("first"));
+            // The mapped store maps the 5 bytes of the file here, and grows the mapping for the next read
+            assertEquals("first", string(store.read(0, 5)));
+            store.write(5, bytes(" second"));
+            assertEquals("first second", string(store.read(0, 12)));
+            store.write(20_000, bytes("far"));
+            assertEquals(20_003, store.size());
+            assertEquals("far", string(store.read(20_000, 3)));
+            assertEquals(0, store.read(12, 1).get(0));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void readBeyondTheEndOfTheFileFails(boolean memoryMapped) throws IOException {
+
+        try (RecordStore store = open(memoryMapped)) {
+            store.write(0, bytes("short"));
+            assertThrows(EOFException.class, () -> store.read(2, 10));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void sequentialReadsAreCopies(boolean memoryMapped) throws IOException {
+
+        ByteBuffer copy;
+
+        try (RecordStore store = open(memoryMapped)) {
+            store.write(0, bytes("before"));
+            copy = store.readSequential(0, 6);
+            store.write(0, bytes("after!"));
+            assertEquals("before", string(copy));
+            assertEquals("after!", string(store.read(0, 6)));
+        }
+    }
+
+    private RecordStore open(boolean memoryMapped) throws IOException {
+
+        String filename = directory.resolve("records.dat").toString();
+
+        return memoryMapped ? new MappedRecordStore(filename) : new FileRecordStore(filename);
+    }
+
+    private static ByteBuffer bytes(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String string(ByteBuffer buffer) {
+
+        byte[] bytes = new byte[buffer.remaining()];
+
+        buffer.duplicate().get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,144 @@
+package librarySystem.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of RoaringBitmap against java.util.BitSet, with sparse and dense containers.
+ */
+class RoaringBitmapTest {
+
+    @Test
+    void containersChangeKindWithoutLosingValues() {
+
+        RoaringBitmap bitmap = new RoaringBitmap();
+        BitSet expected = new BitSet();
+
+        // One group grows past the array limit and shrinks back under it
+        for (int value = 0; value < 10_000; value += 2) {
+            bitmap.add(65_536 + value);
+            expected.set(65_536 + value);
+        }
+        bitmap.add(65_536);
+        assertEquals(expected, bitSet(bitmap));
+        for (int value = 0; value < 10_000; value += 4) {
+            bitmap.remove(65_536 + value);
+            expected.clear(65_536 + value);
+        }
+        bitmap.remove(3);
+        assertEquals(expected, bitSet(bitmap));
+        assertEquals(expected.cardinality(), bitmap.cardinality());
+        assertTrue(bitmap.contains(65_538));
+        assertFalse(bitmap.contains(65_540));
+
+        for (int value = 0; value < 10_000; value++) {
+            bitmap.remove(65_536 + value);
+        }
+        assertTrue(bitmap.isEmpty());
+        assertEquals(0, bitmap.toArray().length);
+    }
+
+    @Test
+    void randomBitmapsMatchBitSets() {
+
+        Random random = new Random(23);
+        List<RoaringBitmap> bitmaps = new ArrayList<>();
+        List<BitSet> bitSets = new ArrayList<>();
+        RoaringBitmap bitmap;
+        BitSet bitSet;
+        int value;
+
+        for (int i = 0; i < 6; i++) {
+            bitmap = new RoaringBitmap();
+            bitSet = new BitSet();
+            // Dense groups, sparse groups, and groups of every kind for the other bitmaps
+            for (int j = 0; j < 40_000; j++) {
+                value = (i % 3) * 65_536 + random.nextInt(i < 3 ? 20_000 : 300_000);
+                if (random.nextInt(5) == 0) {
+                    bitmap.remove(value);
+                    bitSet.clear(value);
+                } else {
+                    bitmap.add(value);
+                    bitSet.set(value);
+                }
+            }
+            assertEquals(bitSet, bitSet(bitmap));
+            assertEquals(bitSet.cardinality(), bitmap.cardinality());
+            bitmaps.add(bitmap);
+            bitSets.add(bitSet);
+        }
+        for (int i = 0; i < bitmaps.size(); i++) {
+            for (int j = 0; j < bitmaps.size(); j++) {
+                assertCombinations(bitmaps.get(i), bitSets.get(i), bitmaps.get(j), bitSets.get(j));
+            }
+            assertCombinations(bitmaps.get(i), bitSets.get(i), new RoaringBitmap(), new BitSet());
+        }
+    }
+
+    @Test
+    void copiesAreIndependent() {
+
+        RoaringBitmap bitmap = new RoaringBitmap();
+        RoaringBitmap copy;
+
+        for (int value = 0; value < 5_000; value++) {
+            bitmap.add(value * 3);
+        }
+        copy = bitmap.copy();
+        copy.add(1);
+        copy.remove(0);
+        assertTrue(bitmap.contains(0));
+        assertFalse(bitmap.contains(1));
+        assertEquals(5_000, bitmap.cardinality());
+        assertEquals(5_000, copy.cardinality());
+    }
+
+    private static void assertCombinations(RoaringBitmap a, BitSet expectedA, RoaringBitmap b, BitSet expectedB) {
+
+        BitSet and = (BitSet) expectedA.clone();
+        BitSet or = (BitSet) expectedA.clone();
+        BitSet andNot = (BitSet) expectedA.clone();
+
+        and.and(expectedB);
+        or.or(expectedB);
+        andNot.andNot(expectedB);
+
+        assertEquals(and, bitSet(a.and(b)));
+        assertEquals(or, bitSet(a.or(b)));
+        assertEquals(andNot, bitSet(a.andNot(b)));
+        assertEquals(and.cardinality(), a.and(b).cardinality());
+        assertEquals(or.cardinality(), a.or(b).cardinality());
+        assertEquals(andNot.cardinality(), a.andNot(b).cardinality());
+        // The operands are left unchanged
+        assertEquals(expectedA, bitSet(a));
+        assertEquals(expectedB, bitSet(b));
+    }
+
+    /**
+     * Turns a bitmap into a BitSet with toArray, checking that forEach visits the same values in the same order.
+     */
+    private static BitSet bitSet(RoaringBitmap bitmap) {
+
+        BitSet bitSet = new BitSet();
+        int[] values = bitmap.toArray();
+        List<Integer> visited = new ArrayList<>();
+
+        for (int i = 0; i < values.length; i++) {
+            assertTrue(i == 0 || values[i - 1] < values[i]);
+            assertTrue(bitmap.contains(values[i]));
+            bitSet.set(values[i]);
+        }
+        bitmap.forEach(visited::add);
+        assertEquals(values.length, visited.size());
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(values[i], visited.get(i));
+        }
+        return bitSet;
+    }
+}
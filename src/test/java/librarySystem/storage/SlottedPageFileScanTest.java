@@ -0,0 +1,120 @@
+package librarySystem.storage;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the Scanner of SlottedPageFile, with the pooled store and the memory-mapped store.
+ */
+class SlottedPageFileScanTest {
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void scanReturnsEveryRecordOnce(boolean memoryMapped) throws IOException {
+
+        Set<String> expected = new HashSet<>();
+        Set<String> scanned = new HashSet<>();
+        List<Long> recordIds = new ArrayList<>();
+        SlottedPageFile.Scanner scanner;
+        String record;
+
+        try (SlottedPageFile file = open(memoryMapped)) {
+            for (int i = 0; i < 5_000; i++) {
+                // Every hundredth record is stored in overflow pages
+                recordIds.add(file.insert(bytes(i % 100 == 0 ? "big" + i + "x".repeat(5_000) : "record" + i)));
+            }
+            for (int i = 0; i < 5_000; i += 7) {
+                file.delete(recordIds.get(i));
+            }
+            for (int i = 0; i < 5_000; i++) {
+                if (i % 7 != 0) {
+                    expected.add(i % 100 == 0 ? "big" + i + "x".repeat(5_000) : "record" + i);
+                }
+            }
+            scanner = file.scan();
+            while (scanner.hasNext()) {
+                record = string(scanner.next());
+                assertTrue(scanned.add(record));
+                assertEquals(record, string(file.read(scanner.recordId())));
+            }
+            assertEquals(expected, scanned);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void scanSkipsThePageAnAppenderIsFilling(boolean memoryMapped) throws IOException {
+
+        List<String> scanned = new ArrayList<>();
+        SlottedPageFile.Scanner scanner;
+
+        try (SlottedPageFile file = open(memoryMapped)) {
+            file.insert(bytes("written"));
+            try (SlottedPageFile.Appender appender = file.appender()) {
+                appender.append(bytes("pending"));
+                // The page of the appender is allocated but not written yet
+                scanner = file.scan();
+                while (scanner.hasNext()) {
+                    scanned.add(string(scanner.next()));
+                }
+                assertEquals(List.of("written"), scanned);
+            }
+            scanned.clear();
+            scanner = file.scan();
+            while (scanner.hasNext()) {
+                scanned.add(string(scanner.next()));
+            }
+            assertEquals(List.of("written", "pending"), scanned);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void scannedRecordsAreNotChangedByLaterWrites(boolean memoryMapped) throws IOException {
+
+        long recordId;
+        SlottedPageFile.Scanner scanner;
+        ByteBuffer scanned;
+
+        try (SlottedPageFile file = open(memoryMapped)) {
+            recordId = file.insert(bytes("before"));
+            scanner = file.scan();
+            scanned = scanner.next();
+            // An update of the same length stays in place, in the bytes the mapped store would have returned
+            assertEquals(recordId, file.update(recordId, bytes("after!")));
+            assertEquals("before", string(scanned));
+            assertEquals("after!", string(file.read(recordId)));
+        }
+    }
+
+    private SlottedPageFile open(boolean memoryMapped) throws IOException {
+        return new SlottedPageFile(directory.resolve("data.dat").toString(), directory.resolve("free.dat").toString(), memoryMapped);
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(ByteBuffer record) {
+
+        byte[] bytes = new byte[record.remaining()];
+
+        record.duplicate().get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,188 @@
+package librarySystem.storage;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of SlottedPageFile: inline and overflow records, updates that move records, reuse of freed space and reopening.
+ */
+class SlottedPageFileTest {
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void recordsSurviveAReopen(boolean memoryMapped) throws IOException {
+
+        List<Long> recordIds = new ArrayList<>();
+        int pageCount;
+
+        try (SlottedPageFile file = open(memoryMapped)) {
+            for (int i = 0; i < 2_000; i++) {
+                recordIds.add(file.insert(bytes(record(i))));
+            }
+            pageCount = file.pageCount();
+            file.force();
+        }
+        assertTrue(SlottedPageFile.isPageFile(dataFile()));
+        try (SlottedPageFile file = open(memoryMapped)) {
+            assertEquals(pageCount, file.pageCount());
+            for (int i = 0; i < 2_000; i++) {
+                assertEquals(record(i), string(file.read(recordIds.get(i))));
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void updateStaysInPlaceUntilThePageIsFull(boolean memoryMapped) throws IOException {
+
+        List<Long> recordIds = new ArrayList<>();
+        long moved;
+
+        try (SlottedPageFile file = open(memoryMapped)) {
+            // 40 records of 190 bytes nearly fill a data page
+            for (int i = 0; i < 40; i++) {
+                recordIds.add(file.insert(bytes(String.format("%03d", i) + "r".repeat(187))));
+            }
+            assertEquals(SlottedPageFile.pageOf(recordIds.get(0)), SlottedPageFile.pageOf(recordIds.get(39)));
+            assertEquals(recordIds.get(5), file.update(recordIds.get(5), bytes("short")));
+            assertEquals("short", string(file.read(recordIds.get(5))));
+
+            moved = file.update(recordIds.get(6), bytes("m".repeat(1_500)));
+            assertNotEquals(SlottedPageFile.pageOf(recordIds.get(6)), SlottedPageFile.pageOf(moved));
+            assertNull(file.read(recordIds.get(6)));
+            assertEquals("m".repeat(1_500), string(file.read(moved)));
+            for (int i = 7; i < 40; i++) {
+                assertEquals(String.format("%03d", i) + "r".repeat(187), string(file.read(recordIds.get(i))));
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void overflowRecordsAreReadUpdatedAndFreed(boolean memoryMapped) throws IOException {
+
+        String big = "b".repeat(50_000);
+        String bigger = "B".repeat(70_000);
+        long recordId;
+        int pageCount;
+
+        try (SlottedPageFile file = open(memoryMapped)) {
+            recordId = file.insert(bytes(big));
+            assertEquals(big, string(file.read(recordId)));
+            recordId = file.update(recordId, bytes(bigger));
+            assertEquals(bigger, string(file.read(recordId)));
+            recordId = file.update(recordId, bytes("small now"));
+            assertEquals("small now", string(file.read(recordId)));
+            recordId = file.update(recordId, bytes(big));
+            pageCount = file.pageCount();
+
+            // The overflow pages of a deleted record are used again by the next large record
+            file.delete(recordId);
+            assertNull(file.read(recordId));
+            recordId = file.insert(bytes(big));
+            assertEquals(big, string(file.read(recordId)));
+            assertEquals(pageCount, file.pageCount());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void spaceOfDeletedRecordsIsReused(boolean memoryMapped) throws IOException {
+
+        List<Long> recordIds = new ArrayList<>();
+        int pageCount;
+
+        try (SlottedPageFile file = open(memoryMapped)) {
+            for (int i = 0; i < 1_000; i++) {
+                recordIds.add(file.insert(bytes(record(i))));
+            }
+            pageCount = file.pageCount();
+            for (int i = 0; i < 1_000; i += 2) {
+                file.delete(recordIds.get(i));
+            }
+            file.delete(recordIds.get(0));
+        }
+        try (SlottedPageFile file = open(memoryMapped)) {
+            // Half of the freed bytes fit in the pages with reusable space, which keep a quarter of a page free at most
+            for (int i = 0; i < 1_000; i += 4) {
+                file.insert(bytes(record(i)));
+            }
+            assertEquals(pageCount, file.pageCount());
+            for (int i = 1; i < 1_000; i += 2) {
+                assertEquals(record(i), string(file.read(recordIds.get(i))));
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void readAllReturnsTheRecordsInTheOrderOfTheIds(boolean memoryMapped) throws IOException {
+
+        long[] recordIds = new long[300];
+        long[] wanted = new long[100];
+        ByteBuffer[] records;
+
+        try (SlottedPageFile file = open(memoryMapped)) {
+            for (int i = 0; i < recordIds.length; i++) {
+                recordIds[i] = file.insert(bytes(i % 50 == 0 ? "big" + i + "x".repeat(4_000) : record(i)));
+            }
+            file.delete(recordIds[7]);
+            for (int i = 0; i < wanted.length; i++) {
+                wanted[i] = recordIds[(wanted.length - i) * 3 % recordIds.length];
+            }
+            records = file.readAll(wanted);
+            for (int i = 0; i < wanted.length; i++) {
+                assertEquals(file.read(wanted[i]) == null ? null : string(file.read(wanted[i])),
+                        records[i] == null ? null : string(records[i]));
+            }
+            assertNull(file.readAll(new long[] {recordIds[7]})[0]);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void fileOfAnotherFormatIsRejected(boolean memoryMapped) throws IOException {
+
+        Files.write(Path.of(dataFile()), new byte[SlottedPageFile.PAGE_SIZE]);
+        assertFalse(SlottedPageFile.isPageFile(dataFile()));
+        assertThrows(IOException.class, () -> open(memoryMapped));
+    }
+
+    private SlottedPageFile open(boolean memoryMapped) throws IOException {
+        return new SlottedPageFile(dataFile(), directory.resolve("free.dat").toString(), memoryMapped);
+    }
+
+    private String dataFile() {
+        return directory.resolve("data.dat").toString();
+    }
+
+    private static String record(int number) {
+        return "record " + number + " " + "v".repeat(number % 300);
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(ByteBuffer record) {
+
+        byte[] bytes = new byte[record.remaining()];
+
+        record.duplicate().get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,160 @@
+package librarySystem.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of WriteAheadLog: replay after a restart, torn records, cancelled changes and records that cannot be replayed.
+ */
+class WriteAheadLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replayAppliesTheDurableRecordsInOrder() throws IOException {
+
+        String filename = logFile();
+        List<String> replayed = new ArrayList<>();
+
+        try (WriteAheadLog log = new WriteAheadLog(filename, () -> { })) {
+            log.replay((operation, key, record) -> fail("the log is empty"));
+            log.awaitDurable(log.log(WriteAheadLog.PUT, "a", bytes("1"), () -> { }));
+            log.awaitDurable(log.log(WriteAheadLog.DELETE, "b", new byte[0], () -> { }));
+            log.awaitDurable(log.log(WriteAheadLog.PUT, "c", bytes("3"), () -> { }));
+        }
+        try (WriteAheadLog log = new WriteAheadLog(filename, () -> { })) {
+            log.replay((operation, key, record) -> replayed.add(operation + key + new String(record, StandardCharsets.UTF_8)));
+        }
+        assertEquals(List.of("1a1", "2b", "1c3"), replayed);
+    }
+
+    @Test
+    void checkpointEmptiesTheLog() throws IOException {
+
+        String filename = logFile();
+        int[] forced = {0};
+        List<String> replayed = new ArrayList<>();
+
+        try (WriteAheadLog log = new WriteAheadLog(filename, () -> forced[0]++)) {
+            log.replay((operation, key, record) -> { });
+            log.awaitDurable(log.log(WriteAheadLog.PUT, "a", bytes("1"), () -> { }));
+            log.checkpoint();
+            log.awaitDurable(log.log(WriteAheadLog.PUT, "b", bytes("2"), () -> { }));
+        }
+        assertEquals(1, forced[0]);
+        try (WriteAheadLog log = new WriteAheadLog(filename, () -> { })) {
+            log.replay((operation, key, record) -> replayed.add(key));
+        }
+        assertEquals(List.of("b"), replayed);
+    }
+
+    @Test
+    void replayDropsARecordCutInHalf() throws IOException {
+
+        String filename = logFile();
+        List<String> replayed = new ArrayList<>();
+        long length;
+
+        try (WriteAheadLog log = new WriteAheadLog(filename, () -> { })) {
+            log.replay((operation, key, record) -> { });
+            log.awaitDurable(log.log(WriteAheadLog.PUT, "a", bytes("1"), () -> { }));
+            log.awaitDurable(log.log(WriteAheadLog.PUT, "b", bytes("22222222"), () -> { }));
+        }
+        length = Files.size(Path.of(filename));
+        try (RandomAccessFile file = new RandomAccessFile(filename, "rw")) {
+            file.setLength(length - 5);
+        }
+        try (WriteAheadLog log = new WriteAheadLog(filename, () -> { })) {
+            log.replay((operation, key, record) -> replayed.add(key));
+            // The next records are appended after the last complete one
+            log.awaitDurable(log.log(WriteAheadLog.PUT, "c", bytes("3"), () -> { }));
+        }
+        assertEquals(List.of("a"), replayed);
+        replayed.clear();
+        try (WriteAheadLog log = new WriteAheadLog(filename, () -> { })) {
+            log.replay((operation, key, record) -> replayed.add(key));
+        }
+        assertEquals(List.of("a", "c"), replayed);
+    }
+
+    @Test
+    void failedMutationIsNotReplayed() throws IOException {
+
+        String filename = logFile();
+        List<String> replayed = new ArrayList<>();
+
+        try (WriteAheadLog log = new WriteAheadLog(filename, () -> { })) {
+            log.replay((operation, key, record) -> { });
+            log.awaitDurable(log.log(WriteAheadLog.PUT, "a", bytes("1"), () -> { }));
+            assertThrows(IOException.class, () -> log.log(WriteAheadLog.PUT, "bad", bytes("2"), () -> {
+                throw new IOException("rejected");
+            }));
+            assertThrows(IllegalStateException.class, () -> log.log(WriteAheadLog.DELETE, "worse", new byte[0], () -> {
+                throw new IllegalStateException("rejected");
+            }));
+            log.awaitDurable(log.log(WriteAheadLog.PUT, "c", bytes("3"), () -> { }));
+        }
+        try (WriteAheadLog log = new WriteAheadLog(filename, () -> { })) {
+            log.replay((operation, key, record) -> replayed.add(key));
+            // A change cancelled after the replay is numbered after the records already in the log
+            assertThrows(IOException.class, () -> log.log(WriteAheadLog.PUT, "later", bytes("4"), () -> {
+                throw new IOException("rejected");
+            }));
+            log.checkpoint();
+            // And so is a change cancelled after a checkpoint emptied the log
+            assertThrows(IOException.class, () -> log.log(WriteAheadLog.PUT, "after checkpoint", bytes("5"), () -> {
+                throw new IOException("rejected");
+            }));
+            log.awaitDurable(log.log(WriteAheadLog.PUT, "d", bytes("6"), () -> { }));
+        }
+        assertEquals(List.of("a", "c"), replayed);
+        replayed.clear();
+        try (WriteAheadLog log = new WriteAheadLog(filename, () -> { })) {
+            log.replay((operation, key, record) -> replayed.add(key));
+        }
+        assertEquals(List.of("d"), replayed);
+    }
+
+    @Test
+    void recordThatCannotBeReplayedIsSkippedAndKept() throws IOException {
+
+        String filename = logFile();
+        List<String> replayed = new ArrayList<>();
+
+        try (WriteAheadLog log = new WriteAheadLog(filename, () -> { })) {
+            log.replay((operation, key, record) -> { });
+            log.awaitDurable(log.log(WriteAheadLog.PUT, "a", bytes("1"), () -> { }));
+            log.awaitDurable(log.log(WriteAheadLog.PUT, "poison", bytes("2"), () -> { }));
+            log.awaitDurable(log.log(WriteAheadLog.PUT, "c", bytes("3"), () -> { }));
+        }
+        try (WriteAheadLog log = new WriteAheadLog(filename, () -> { })) {
+            log.replay((operation, key, record) -> {
+                if (key.equals("poison")) {
+                    throw new IOException("cannot apply");
+                }
+                replayed.add(key);
+            });
+        }
+        assertEquals(List.of("a", "c"), replayed);
+        assertTrue(Files.size(Path.of(filename + ".rejected")) > 0);
+    }
+
+    private String logFile() {
+        return directory.resolve("test_wal.log").toString();
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}